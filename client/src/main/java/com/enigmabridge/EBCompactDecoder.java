@@ -0,0 +1,437 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBConnectionSettings;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Flyweight decoder of the compact records, see {@link EBCompactEncoding}.
+ *
+ * Decoder is reusable - wrap() points it to a new record without allocation.
+ * Primitive fields are read directly from the backing buffer (heap, direct or memory mapped).
+ * API keys and endpoints are interned in the decoder cache so loading many keys
+ * with the same settings does not allocate new strings / endpoints for each record.
+ *
+ * Not thread safe, use one decoder per thread.
+ */
+public class EBCompactDecoder {
+    protected static final int CACHE_SIZE = 64;
+
+    protected ByteBuffer buffer;
+    protected int start;
+    protected int length;
+    protected int flags;
+    protected int recordType;
+
+    // Offsets of the variable length fields, relative to the buffer start.
+    protected int offApiKey;
+    protected int offEndpoint;
+    protected int offConnSettings;
+    protected int offKey;
+    protected int offReplicas;
+    protected int offExtension;
+
+    // Extension read cursor.
+    protected int cursor;
+
+    // Intern caches.
+    protected final byte[][] cacheKeys = new byte[CACHE_SIZE][];
+    protected final String[] cacheStrings = new String[CACHE_SIZE];
+    protected final EBEndpointInfo[] cacheEndpoints = new EBEndpointInfo[CACHE_SIZE];
+
+    public EBCompactDecoder() {
+    }
+
+    public EBCompactDecoder(ByteBuffer buffer) throws IOException {
+        wrap(buffer, buffer.position());
+    }
+
+    public EBCompactDecoder(byte[] encoded) throws IOException {
+        wrap(ByteBuffer.wrap(encoded), 0);
+    }
+
+    /**
+     * Points decoder to the record starting at the current buffer position.
+     * @param buffer buffer with record
+     * @return this decoder
+     * @throws IOException if record is invalid
+     */
+    public EBCompactDecoder wrap(ByteBuffer buffer) throws IOException {
+        return wrap(buffer, buffer.position());
+    }
+
+    /**
+     * Points decoder to the record starting at the given absolute offset.
+     * Does not allocate, only record header is parsed.
+     *
+     * @param buffer buffer with record
+     * @param offset absolute offset of the record in the buffer
+     * @return this decoder
+     * @throws IOException if record is invalid
+     */
+    public EBCompactDecoder wrap(ByteBuffer buffer, int offset) throws IOException {
+        if (buffer.order() != ByteOrder.BIG_ENDIAN){
+            throw new IllegalArgumentException("Buffer has to be in big endian order");
+        }
+        if (buffer.limit() - offset < EBCompactEncoding.HEADER_LENGTH){
+            throw new IOException("Record too short");
+        }
+        if ((buffer.get(offset) & 0xff) != EBCompactEncoding.MAGIC){
+            throw new IOException("Invalid record magic");
+        }
+
+        final int version = buffer.get(offset + 1) & 0xff;
+        if (version != EBCompactEncoding.VERSION_1){
+            throw new IOException("Unsupported record version: " + version);
+        }
+
+        this.buffer = buffer;
+        this.start = offset;
+        this.recordType = buffer.get(offset + EBCompactEncoding.OFFSET_RECORD_TYPE) & 0xff;
+        this.flags = buffer.get(offset + EBCompactEncoding.OFFSET_FLAGS) & 0xff;
+        this.length = buffer.getInt(offset + EBCompactEncoding.OFFSET_LENGTH);
+        if (length < EBCompactEncoding.OFFSET_COMMKEYS + 1 || buffer.limit() - offset < length){
+            throw new IOException("Invalid record length");
+        }
+
+        // Each field is bounds checked before it is read, corrupted record fails with IOException.
+        final int end = offset + length;
+        int pos = offset + EBCompactEncoding.OFFSET_COMMKEYS;
+        final int commKeysLength = buffer.get(pos) & 0xff;
+        if (commKeysLength != 0 && commKeysLength != EBCommKeys.ENC_KEY_LEN + EBCommKeys.MAC_KEY_LEN){
+            throw new IOException("Invalid comm keys length");
+        }
+        pos = checkedSkip(pos, 1 + commKeysLength, end);
+
+        offApiKey = -1;
+        offEndpoint = -1;
+        offConnSettings = -1;
+        offKey = -1;
+        offReplicas = -1;
+        if ((flags & EBCompactEncoding.FLAG_API_KEY) != 0){
+            offApiKey = pos;
+            pos = skipField16(pos, end);
+        }
+        if ((flags & EBCompactEncoding.FLAG_ENDPOINT) != 0){
+            offEndpoint = pos;
+            pos = skipField16(pos, end);
+        }
+        if ((flags & EBCompactEncoding.FLAG_CONN_SETTINGS) != 0){
+            offConnSettings = pos;
+            pos = skipField16(pos, end);
+        }
+        if ((flags & EBCompactEncoding.FLAG_KEY) != 0){
+            offKey = pos;
+            checkedSkip(pos, 1 + 4 + 1, end);
+            EBCompactEncoding.getKeyType(buffer.get(pos) & 0xff);
+
+            pos += 1 + 4;
+            pos = checkedSkip(pos, 1 + (buffer.get(pos) & 0xff), end);
+        }
+        if ((flags & EBCompactEncoding.FLAG_REPLICAS) != 0){
+            offReplicas = pos;
+            checkedSkip(pos, 1, end);
+            final int count = buffer.get(pos) & 0xff;
+            pos += 1;
+            for(int i = 0; i < count; i++){
+                if (pos + EBCompactEncoding.HEADER_LENGTH > end){
+                    throw new IOException("Corrupted replica record");
+                }
+
+                final int replicaLength = buffer.getInt(pos + EBCompactEncoding.OFFSET_LENGTH);
+                if (replicaLength < EBCompactEncoding.HEADER_LENGTH){
+                    throw new IOException("Invalid replica record length");
+                }
+                pos = checkedSkip(pos, replicaLength, end);
+            }
+        }
+
+        offExtension = pos;
+        cursor = pos;
+        return this;
+    }
+
+    // Primitive accessors, no allocation.
+
+    public int getRecordType() {
+        return recordType;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public long getUoid(){
+        return buffer.getLong(start + EBCompactEncoding.OFFSET_UOID);
+    }
+
+    public long getUserObjectTypeValue(){
+        return buffer.getLong(start + EBCompactEncoding.OFFSET_UOTYPE);
+    }
+
+    public boolean hasCommKeys(){
+        return buffer.get(start + EBCompactEncoding.OFFSET_COMMKEYS) != 0;
+    }
+
+    public boolean isKey(){
+        return offKey >= 0;
+    }
+
+    /**
+     * Key length in bits, -1 if record is not a key.
+     * @return key length
+     */
+    public int getKeyLength(){
+        return offKey < 0 ? -1 : buffer.getInt(offKey + 1);
+    }
+
+    public UserObjectKeyType getKeyType(){
+        if (offKey < 0){
+            return null;
+        }
+
+        try {
+            return EBCompactEncoding.getKeyType(buffer.get(offKey) & 0xff);
+        } catch (IOException e) {
+            // Validated when the record was parsed.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Materializing accessors.
+
+    public UserObjectType getUserObjectType(){
+        return UserObjectType.valueOf(getUserObjectTypeValue());
+    }
+
+    /**
+     * Copies comm keys from the record to a new object.
+     * @return comm keys or null if not present
+     */
+    public EBCommKeys getCommKeys(){
+        final int off = start + EBCompactEncoding.OFFSET_COMMKEYS;
+        final int len = buffer.get(off) & 0xff;
+        if (len == 0){
+            return null;
+        }
+
+        final byte[] encKey = new byte[EBCommKeys.ENC_KEY_LEN];
+        final byte[] macKey = new byte[EBCommKeys.MAC_KEY_LEN];
+        getBytes(off + 1, encKey, 0, EBCommKeys.ENC_KEY_LEN);
+        getBytes(off + 1 + EBCommKeys.ENC_KEY_LEN, macKey, 0, EBCommKeys.MAC_KEY_LEN);
+        return new EBCommKeys(encKey, macKey);
+    }
+
+    /**
+     * Interned API key.
+     * @return api key or null
+     */
+    public String getApiKey(){
+        return offApiKey < 0 ? null : internString(offApiKey + 2, buffer.getShort(offApiKey) & 0xffff);
+    }
+
+    /**
+     * Endpoint info, parsed once per distinct connection string and copied for each caller,
+     * so keys do not share mutable endpoint instances.
+     * @return endpoint or null
+     * @throws MalformedURLException
+     */
+    public EBEndpointInfo getEndpointInfo() throws MalformedURLException {
+        if (offEndpoint < 0){
+            return null;
+        }
+
+        final int len = buffer.getShort(offEndpoint) & 0xffff;
+        final int slot = findSlot(offEndpoint + 2, len);
+        final String connString = internString(offEndpoint + 2, len);
+        if (cacheEndpoints[slot] == null || cacheStrings[slot] != connString){
+            cacheEndpoints[slot] = new EBEndpointInfo(connString);
+        }
+
+        return cacheEndpoints[slot].copy();
+    }
+
+    public EBConnectionSettings getConnectionSettings(){
+        if (offConnSettings < 0){
+            return null;
+        }
+
+        final String json = readString(offConnSettings + 2, buffer.getShort(offConnSettings) & 0xffff);
+        return new EBConnectionSettings(new JSONObject(json));
+    }
+
+    public String getAlgorithm(){
+        if (offKey < 0){
+            return null;
+        }
+
+        final int len = buffer.get(offKey + 5) & 0xff;
+        return len == 0 ? null : internString(offKey + 6, len);
+    }
+
+    /**
+     * Returns decoders of the replica records, empty array if the record has no replicas.
+     * @return replica decoders
+     * @throws IOException
+     */
+    public EBCompactDecoder[] getReplicas() throws IOException {
+        if (offReplicas < 0){
+            return new EBCompactDecoder[0];
+        }
+
+        final int count = buffer.get(offReplicas) & 0xff;
+        final EBCompactDecoder[] res = new EBCompactDecoder[count];
+        int pos = offReplicas + 1;
+        for(int i = 0; i < count; i++){
+            res[i] = new EBCompactDecoder(this);
+            res[i].wrap(buffer, pos);
+            pos += res[i].getLength();
+        }
+
+        return res;
+    }
+
+    // Extension sequential reader.
+
+    /**
+     * Absolute offset of the extension section.
+     * @return extension offset
+     */
+    public int getExtensionOffset(){
+        return offExtension;
+    }
+
+    public boolean hasExtension(){
+        return cursor < start + length;
+    }
+
+    public int readByte() throws IOException {
+        checkCursor(1);
+        return buffer.get(cursor++) & 0xff;
+    }
+
+    public byte[] readBytes16() throws IOException {
+        checkCursor(2);
+        final int len = buffer.getShort(cursor) & 0xffff;
+        cursor += 2;
+
+        checkCursor(len);
+        final byte[] ret = new byte[len];
+        getBytes(cursor, ret, 0, len);
+        cursor += len;
+        return ret;
+    }
+
+    /**
+     * Returns a decoder for the record nested at the current extension cursor, skips it.
+     * Nested decoder shares intern caches with this one.
+     *
+     * @return nested record decoder
+     * @throws IOException
+     */
+    public EBCompactDecoder readNested() throws IOException {
+        final EBCompactDecoder nested = new EBCompactDecoder(this);
+        nested.wrap(buffer, cursor);
+        cursor += nested.getLength();
+        if (cursor > start + length){
+            throw new IOException("Corrupted nested record");
+        }
+
+        return nested;
+    }
+
+    protected EBCompactDecoder(EBCompactDecoder parent){
+        System.arraycopy(parent.cacheKeys, 0, cacheKeys, 0, CACHE_SIZE);
+        System.arraycopy(parent.cacheStrings, 0, cacheStrings, 0, CACHE_SIZE);
+        System.arraycopy(parent.cacheEndpoints, 0, cacheEndpoints, 0, CACHE_SIZE);
+    }
+
+    // Helpers
+
+    /**
+     * Returns pos + len if the skipped field fits the record.
+     */
+    protected static int checkedSkip(int pos, int len, int end) throws IOException {
+        if (len < 0 || pos + len > end || pos + len < pos){
+            throw new IOException("Corrupted record");
+        }
+
+        return pos + len;
+    }
+
+    /**
+     * Skips field with 2 B length prefix, bounds checked.
+     */
+    protected int skipField16(int pos, int end) throws IOException {
+        checkedSkip(pos, 2, end);
+        return checkedSkip(pos, 2 + (buffer.getShort(pos) & 0xffff), end);
+    }
+
+    protected void checkCursor(int len) throws IOException {
+        if (cursor + len > start + length){
+            throw new IOException("Read beyond record end");
+        }
+    }
+
+    protected void getBytes(int absOffset, byte[] dst, int dstOffset, int len){
+        if (buffer.hasArray()){
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + absOffset, dst, dstOffset, len);
+            return;
+        }
+
+        for(int i = 0; i < len; i++){
+            dst[dstOffset + i] = buffer.get(absOffset + i);
+        }
+    }
+
+    protected String readString(int absOffset, int len){
+        final byte[] bytes = new byte[len];
+        getBytes(absOffset, bytes, 0, len);
+        return new String(bytes, EBCompactEncoding.UTF8);
+    }
+
+    /**
+     * Returns cached string instance if the bytes match, allocates only on cache miss.
+     */
+    protected String internString(int absOffset, int len){
+        final int slot = findSlot(absOffset, len);
+        final byte[] cached = cacheKeys[slot];
+        if (cached != null && cached.length == len && bytesEqual(absOffset, cached)){
+            return cacheStrings[slot];
+        }
+
+        final byte[] bytes = new byte[len];
+        getBytes(absOffset, bytes, 0, len);
+        cacheKeys[slot] = bytes;
+        cacheStrings[slot] = new String(bytes, EBCompactEncoding.UTF8);
+        cacheEndpoints[slot] = null;
+        return cacheStrings[slot];
+    }
+
+    protected int findSlot(int absOffset, int len){
+        int hash = len;
+        for(int i = 0; i < len; i++){
+            hash = 31 * hash + buffer.get(absOffset + i);
+        }
+
+        return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    protected boolean bytesEqual(int absOffset, byte[] cached){
+        for(int i = 0; i < cached.length; i++){
+            if (buffer.get(absOffset + i) != cached[i]){
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,258 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBConnectionSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Compact versioned binary encoding of user objects and EB keys.
+ * Intended for storing large amounts of key handles, e.g., in databases and key stores.
+ * JSON / URL forms remain the interoperable representation.
+ *
+ * <pre>
+ *  Record v1:
+ *      u8  magic 0xEB
+ *      u8  version
+ *      u8  record type
+ *      u8  flags
+ *      i32 record length (whole record, header included)
+ *      i64 UOID
+ *      i64 UO type
+ *      u8  comm keys length, comm keys (encKey || macKey)
+ *      [FLAG_API_KEY]          u16 length, UTF-8 API key
+ *      [FLAG_ENDPOINT]         u16 length, UTF-8 endpoint connection string
+ *      [FLAG_CONN_SETTINGS]    u16 length, UTF-8 JSON connection settings
+ *      [FLAG_KEY]              u8 key type code, i32 key length, u8 length, ASCII algorithm
+ *      [FLAG_REPLICAS]         u8 count, nested UO key records of the replicas
+ *      extension (record type specific) up to the record length
+ * </pre>
+ */
+public class EBCompactEncoding {
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final int MAGIC = 0xEB;
+    public static final int VERSION_1 = 1;
+    public static final int VERSION = VERSION_1;
+
+    public static final int HEADER_LENGTH = 8;
+    public static final int OFFSET_RECORD_TYPE = 2;
+    public static final int OFFSET_FLAGS = 3;
+    public static final int OFFSET_LENGTH = 4;
+    public static final int OFFSET_UOID = 8;
+    public static final int OFFSET_UOTYPE = 16;
+    public static final int OFFSET_COMMKEYS = 24;
+
+    // Record types
+    public static final int RECORD_UO_INFO = 0x01;
+    public static final int RECORD_UO_KEY = 0x02;
+    public static final int RECORD_KEY = 0x10;
+    public static final int RECORD_KEY_SYMMETRIC = 0x11;
+    public static final int RECORD_KEY_RSA = 0x12;
+    public static final int RECORD_KEY_RSA_PRIVATE = 0x13;
+    public static final int RECORD_KEY_RSA_PUBLIC = 0x14;
+
+    // Flags
+    public static final int FLAG_API_KEY = 0x01;
+    public static final int FLAG_ENDPOINT = 0x02;
+    public static final int FLAG_CONN_SETTINGS = 0x04;
+    public static final int FLAG_KEY = 0x08;
+    public static final int FLAG_REPLICAS = 0x10;
+
+    // Persisted key type codes, independent of the UserObjectKeyType declaration order.
+    public static final int KEY_TYPE_NONE = 0;
+    public static final int KEY_TYPE_PUBLIC = 1;
+    public static final int KEY_TYPE_PRIVATE = 2;
+    public static final int KEY_TYPE_SECRET = 3;
+
+    /**
+     * Returns persisted code of the key type.
+     *
+     * @param keyType key type, may be null
+     * @return key type code
+     */
+    public static int getKeyTypeCode(UserObjectKeyType keyType){
+        if (keyType == null){
+            return KEY_TYPE_NONE;
+        }
+
+        switch(keyType){
+            case PUBLIC:
+                return KEY_TYPE_PUBLIC;
+            case PRIVATE:
+                return KEY_TYPE_PRIVATE;
+            case SECRET:
+                return KEY_TYPE_SECRET;
+            default:
+                throw new IllegalArgumentException("Key type has no compact code: " + keyType);
+        }
+    }
+
+    /**
+     * Returns key type of the persisted code.
+     *
+     * @param code key type code
+     * @return key type, null for KEY_TYPE_NONE
+     * @throws IOException if the code is unknown
+     */
+    public static UserObjectKeyType getKeyType(int code) throws IOException {
+        switch(code){
+            case KEY_TYPE_NONE:
+                return null;
+            case KEY_TYPE_PUBLIC:
+                return UserObjectKeyType.PUBLIC;
+            case KEY_TYPE_PRIVATE:
+                return UserObjectKeyType.PRIVATE;
+            case KEY_TYPE_SECRET:
+                return UserObjectKeyType.SECRET;
+            default:
+                throw new IOException("Invalid key type: " + code);
+        }
+    }
+
+    /**
+     * Encodes user object to the compact record.
+     *
+     * @param recordType record type
+     * @param uo user object to encode
+     * @param extension record type specific extension, may be null
+     * @return encoded record
+     * @throws IOException
+     */
+    public static byte[] encode(int recordType, UserObjectInfo uo, byte[] extension) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(192);
+        final DataOutputStream out = new DataOutputStream(bos);
+
+        final String apiKey = uo.getApiKey();
+        final EBEndpointInfo endpoint = uo.getEndpointInfo();
+        final EBConnectionSettings connectionSettings = uo.getConnectionSettings();
+        final UserObjectType uoType = uo.getUserObjectType();
+        final EBCommKeys commKeys = uo.getCommKeys();
+        final boolean isKey = uo instanceof UserObjectKey;
+        final boolean isReplicated = uo instanceof UserObjectKeyBase && ((UserObjectKeyBase) uo).isReplicated();
+
+        int flags = 0;
+        flags |= apiKey == null ? 0 : FLAG_API_KEY;
+        flags |= endpoint == null ? 0 : FLAG_ENDPOINT;
+        flags |= connectionSettings == null ? 0 : FLAG_CONN_SETTINGS;
+        flags |= isKey ? FLAG_KEY : 0;
+        flags |= isReplicated ? FLAG_REPLICAS : 0;
+
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(recordType);
+        out.writeByte(flags);
+        out.writeInt(0);    // length placeholder
+        out.writeLong(uo.getUoid());
+        out.writeLong(uoType == null ? UserObjectType.INVALID_TYPE : uoType.getValue());
+
+        if (commKeys == null || !commKeys.areKeysOK()){
+            out.writeByte(0);
+        } else {
+            out.writeByte(EBCommKeys.ENC_KEY_LEN + EBCommKeys.MAC_KEY_LEN);
+            out.write(commKeys.getEncKey());
+            out.write(commKeys.getMacKey());
+        }
+
+        if (apiKey != null){
+            writeString16(out, apiKey);
+        }
+        if (endpoint != null){
+            writeString16(out, endpoint.getConnectionString());
+        }
+        if (connectionSettings != null){
+            writeString16(out, connectionSettings.toJSON(null).toString());
+        }
+        if (isKey){
+            final UserObjectKey key = (UserObjectKey) uo;
+            final UserObjectKeyType keyType = key.getKeyType();
+            final String algorithm = key.getAlgorithm();
+            final byte[] algBytes = algorithm == null ? new byte[0] : algorithm.getBytes(UTF8);
+            if (algBytes.length > 0xff){
+                throw new IOException("Algorithm name too long");
+            }
+
+            out.writeByte(getKeyTypeCode(keyType));
+            out.writeInt(key.length());
+            out.writeByte(algBytes.length);
+            out.write(algBytes);
+        }
+        if (isReplicated){
+            final List<UserObjectKeyBase> replicas = ((UserObjectKeyBase) uo).getReplicaSet().getReplicas();
+            if (replicas.size() > 0xff){
+                throw new IOException("Too many replicas");
+            }
+
+            out.writeByte(replicas.size());
+            for (UserObjectKeyBase replica : replicas) {
+                out.write(encode(RECORD_UO_KEY, replica, null));
+            }
+        }
+
+        if (extension != null){
+            out.write(extension);
+        }
+
+        out.flush();
+        final byte[] record = bos.toByteArray();
+        setInt(record, OFFSET_LENGTH, record.length);
+        return record;
+    }
+
+    /**
+     * Writes string prefixed with u16 length of its UTF-8 representation.
+     * @param out output stream
+     * @param str string to write
+     * @throws IOException
+     */
+    public static void writeString16(DataOutputStream out, String str) throws IOException {
+        final byte[] bytes = str.getBytes(UTF8);
+        if (bytes.length > 0xffff){
+            throw new IOException("String too long");
+        }
+
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes byte array prefixed with u16 length.
+     * @param out output stream
+     * @param bytes bytes to write, null is written as empty array
+     * @throws IOException
+     */
+    public static void writeBytes16(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null){
+            out.writeShort(0);
+            return;
+        }
+
+        if (bytes.length > 0xffff){
+            throw new IOException("Byte array too long");
+        }
+
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Returns true if the buffer starts with compact record magic.
+     * @param encoded encoded data
+     * @return true if compact record
+     */
+    public static boolean isCompact(byte[] encoded){
+        return encoded != null
+                && encoded.length >= HEADER_LENGTH
+                && (encoded[0] & 0xff) == MAGIC;
+    }
+
+    private static void setInt(byte[] buffer, int offset, int value){
+        buffer[offset]     = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
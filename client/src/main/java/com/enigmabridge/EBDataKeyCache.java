@@ -0,0 +1,311 @@
+package com.enigmabridge;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of unwrapped data keys, keyed by the fingerprint of the wrapped key.
+ * Repeated decryption of the same object then does not need EB round trip for the key unwrap.
+ *
+ * Each cached key is valid for maxAge and maxUses, whichever comes first.
+ * Expired keys are removed on access and periodically on {@link #put(Fingerprint, byte[])}.
+ * Key material is zeroized on eviction, expiration and {@link #clear()}.
+ * Returned keys are copies, the caller should zeroize them after use.
+ *
+ * Cache is not used unless configured on the engine, see {@link EBEngine#setDataKeyCache(EBDataKeyCache)}.
+ */
+public class EBDataKeyCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_MAX_AGE_MILLI = 5 * 60 * 1000L;
+    public static final long DEFAULT_MAX_USES = 10000;
+    public static final long PURGE_INTERVAL_MILLI = 1000;
+
+    /**
+     * Maximal number of cached keys, LRU key is evicted when exceeded.
+     */
+    protected int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Maximal time the key is kept since the unwrap.
+     */
+    protected long maxAgeMilli = DEFAULT_MAX_AGE_MILLI;
+
+    /**
+     * Maximal number of cache hits per key. 0 for unlimited.
+     */
+    protected long maxUses = DEFAULT_MAX_USES;
+
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+    protected final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Time of the next expired keys purge on put.
+     */
+    protected long nextPurgeAt;
+
+    protected final LinkedHashMap<Fingerprint, CachedKey> entries = new LinkedHashMap<Fingerprint, CachedKey>(16, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Fingerprint, CachedKey> eldest) {
+            if (size() <= maxEntries){
+                return false;
+            }
+
+            eldest.getValue().destroy();
+            evictions.incrementAndGet();
+            return true;
+        }
+    };
+
+    public static class Builder {
+        private final EBDataKeyCache parent = new EBDataKeyCache();
+
+        public Builder setMaxEntries(int maxEntries) {
+            parent.setMaxEntries(maxEntries);
+            return this;
+        }
+
+        public Builder setMaxAgeMilli(long maxAgeMilli) {
+            parent.setMaxAgeMilli(maxAgeMilli);
+            return this;
+        }
+
+        public Builder setMaxUses(long maxUses) {
+            parent.setMaxUses(maxUses);
+            return this;
+        }
+
+        public EBDataKeyCache build(){
+            return parent;
+        }
+    }
+
+    /**
+     * Wrapped key fingerprint, hash of the wrapped key and its context.
+     */
+    public static final class Fingerprint {
+        private final byte[] digest;
+        private final int hash;
+
+        public Fingerprint(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return MessageDigest.isEqual(digest, ((Fingerprint) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    protected static class CachedKey {
+        final byte[] key;
+        final long expiresAt;
+        long uses;
+
+        CachedKey(byte[] key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        void destroy(){
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Computes fingerprint of the wrapped key. Parts are length-prefixed so they cannot be shifted.
+     * @param parts wrapped key and its context, e.g., wrapping key id.
+     * @return fingerprint
+     */
+    public static Fingerprint fingerprint(byte[]... parts){
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for(byte[] part : parts){
+                md.update(new byte[]{(byte)(part.length >>> 24), (byte)(part.length >>> 16), (byte)(part.length >>> 8), (byte)part.length});
+                md.update(part);
+            }
+
+            return new Fingerprint(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new EBCryptoException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns copy of the cached key, null if not cached or no longer valid.
+     * @param fingerprint wrapped key fingerprint
+     * @return unwrapped key copy or null
+     */
+    public synchronized byte[] get(Fingerprint fingerprint){
+        final CachedKey entry = entries.get(fingerprint);
+        if (entry == null){
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (isExpired(entry, currentTimeMillis())){
+            entries.remove(fingerprint);
+            entry.destroy();
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+
+        entry.uses += 1;
+        hits.incrementAndGet();
+        return entry.key.clone();
+    }
+
+    /**
+     * Stores copy of the unwrapped key.
+     * @param fingerprint wrapped key fingerprint
+     * @param key unwrapped key, caller keeps ownership
+     */
+    public synchronized void put(Fingerprint fingerprint, byte[] key){
+        if (maxEntries <= 0 || maxAgeMilli <= 0){
+            return;
+        }
+
+        final long now = currentTimeMillis();
+        if (now >= nextPurgeAt){
+            purgeExpired(now);
+            nextPurgeAt = now + PURGE_INTERVAL_MILLI;
+        }
+
+        final CachedKey old = entries.put(fingerprint, new CachedKey(key.clone(), now + maxAgeMilli));
+        if (old != null){
+            old.destroy();
+        }
+    }
+
+    /**
+     * Removes all expired keys.
+     * @return number of removed keys
+     */
+    public synchronized int purgeExpired(){
+        return purgeExpired(currentTimeMillis());
+    }
+
+    protected int purgeExpired(long now){
+        int removed = 0;
+
+        final Iterator<CachedKey> it = entries.values().iterator();
+        while(it.hasNext()){
+            final CachedKey entry = it.next();
+            if (isExpired(entry, now)){
+                it.remove();
+                entry.destroy();
+                removed += 1;
+            }
+        }
+
+        expirations.addAndGet(removed);
+        return removed;
+    }
+
+    protected boolean isExpired(CachedKey entry, long now){
+        return now >= entry.expiresAt || (maxUses > 0 && entry.uses >= maxUses);
+    }
+
+    /**
+     * Time source for the key expiration. Override point.
+     * @return current time in milliseconds
+     */
+    protected long currentTimeMillis(){
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Removes and zeroizes all keys.
+     */
+    public synchronized void clear(){
+        for(CachedKey entry : entries.values()){
+            entry.destroy();
+        }
+        entries.clear();
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    // Metrics
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    public double getHitRatio(){
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    // Settings
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxAgeMilli() {
+        return maxAgeMilli;
+    }
+
+    public long getMaxUses() {
+        return maxUses;
+    }
+
+    protected synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    protected synchronized void setMaxAgeMilli(long maxAgeMilli) {
+        this.maxAgeMilli = maxAgeMilli;
+    }
+
+    protected synchronized void setMaxUses(long maxUses) {
+        this.maxUses = maxUses;
+    }
+
+    @Override
+    public String toString() {
+        return "EBDataKeyCache{" +
+                "size=" + size() +
+                ", maxEntries=" + maxEntries +
+                ", maxAgeMilli=" + maxAgeMilli +
+                ", maxUses=" + maxUses +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", expirations=" + expirations +
+                '}';
+    }
+}
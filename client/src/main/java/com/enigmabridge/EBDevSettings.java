@@ -2,27 +2,35 @@ package com.enigmabridge;
 
 /**
  * Debugging and dev settings.
+ * Capture of failed requests is configured in {@link EBDiagnostics}.
  *
  * Created by dusanklinec on 25.07.16.
  */
 public class EBDevSettings {
     /**
-     * If true createUO logs the request that caused the error.
-     * Should be turned off in the production mode.
+     * If true createUO captures the request that caused the error.
      *
-     * @return true if failed UO logging should be enabled.
+     * @return true if failed UO capture is enabled.
+     * @deprecated use {@link EBDiagnostics#setSamplingRate(EBDiagnostics.Kind, double)}
      */
+    @Deprecated
     public static boolean shouldLogFailedCreateUO(){
-        return true;
+        return isCaptured(EBDiagnostics.Kind.CREATE_UO_FAILED);
     }
 
     /**
-     * If true processData call logs request and response that caused
+     * If true processData call captures request and response that caused
      * 6f00 error.
      *
-     * @return true if log request and response
+     * @return true if 6f00 capture is enabled
+     * @deprecated use {@link EBDiagnostics#setSamplingRate(EBDiagnostics.Kind, double)}
      */
+    @Deprecated
     public static boolean shouldLog6f00RequestResponse(){
-        return true;
+        return isCaptured(EBDiagnostics.Kind.PROCESS_DATA_6F00);
+    }
+
+    private static boolean isCaptured(EBDiagnostics.Kind kind){
+        return EBDiagnostics.isEnabled() && EBDiagnostics.getSamplingRate(kind) > 0.0;
     }
 }
@@ -0,0 +1,470 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBRawRequest;
+import com.enigmabridge.comm.EBRawResponse;
+import com.enigmabridge.create.EBCreateUORequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampled, rate limited capture of failed requests for troubleshooting.
+ *
+ * Failure paths call {@link #shouldCapture(Kind)} first, which costs a counter increment for non-sampled events.
+ * Sampled events are captured by {@link #capture(Kind, String, Object...)} to a bounded ring buffer.
+ * Arguments are not kept, the record holds a bounded, redacted snapshot of them: request path and body length,
+ * response status code and body length, data length and a hex prefix of at most MAX_HEX_BYTES bytes.
+ * Arguments of other types are recorded by their class name. The message is formatted only when
+ * the record is dumped or logged. Captured records are logged on debug level.
+ *
+ * Sampling rate and rate limit are configurable per kind at runtime.
+ */
+public class EBDiagnostics {
+    private static final Logger LOG = LoggerFactory.getLogger(EBDiagnostics.class);
+
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final double DEFAULT_SAMPLING_RATE = 0.1;
+    public static final int DEFAULT_MAX_PER_SECOND = 5;
+    public static final int MAX_HEX_BYTES = 32;
+    public static final int MAX_TEXT_LENGTH = 128;
+
+    /**
+     * Kinds of captured events.
+     */
+    public enum Kind {
+        /**
+         * ProcessData returned 0x6f00, request and response.
+         */
+        PROCESS_DATA_6F00,
+
+        /**
+         * CreateUO call failed, the request.
+         */
+        CREATE_UO_FAILED,
+
+        /**
+         * Request attempt failed, request path.
+         */
+        REQUEST_FAILED
+    }
+
+    private static final Sampler[] samplers = new Sampler[Kind.values().length];
+    static {
+        for(Kind kind : Kind.values()){
+            samplers[kind.ordinal()] = new Sampler(DEFAULT_SAMPLING_RATE, DEFAULT_MAX_PER_SECOND);
+        }
+    }
+
+    private static volatile boolean enabled = true;
+    private static Record[] ring = new Record[DEFAULT_CAPACITY];
+    private static long written;
+
+    private EBDiagnostics() {
+    }
+
+    /**
+     * Decides whether the event should be captured. Cheap for events not sampled.
+     *
+     * @param kind event kind
+     * @return true if the caller should call capture()
+     */
+    public static boolean shouldCapture(Kind kind){
+        return enabled && samplers[kind.ordinal()].sample();
+    }
+
+    /**
+     * Captures the event to the ring buffer. Message is formatted lazily by String.format.
+     *
+     * @param kind event kind
+     * @param format message format
+     * @param args message arguments, snapshot is stored
+     */
+    public static void capture(Kind kind, String format, Object... args){
+        final Record record = new Record(kind, format, snapshot(args));
+        synchronized (EBDiagnostics.class){
+            ring[(int) (written % ring.length)] = record;
+            written += 1;
+        }
+
+        LOG.debug("Diagnostics: {}", record);
+    }
+
+    /**
+     * Snapshot of the captured records, oldest first.
+     * @return records
+     */
+    public static synchronized List<Record> getRecords(){
+        final int count = (int) Math.min(written, ring.length);
+        final List<Record> res = new ArrayList<Record>(count);
+        for(long i = written - count; i < written; i++){
+            res.add(ring[(int) (i % ring.length)]);
+        }
+        return res;
+    }
+
+    /**
+     * Formats all captured records to the output, oldest first.
+     * @param out output
+     * @throws IOException output failure
+     */
+    public static void dump(Appendable out) throws IOException {
+        for(Record record : getRecords()){
+            out.append(record.toString()).append('\n');
+        }
+    }
+
+    public static String dump(){
+        final StringBuilder sb = new StringBuilder();
+        try {
+            dump(sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    public static synchronized void clear(){
+        ring = new Record[ring.length];
+        written = 0;
+    }
+
+    /**
+     * Bounded copies of the arguments, without references to the caller objects.
+     * @param args arguments
+     * @return snapshots
+     */
+    protected static Object[] snapshot(Object[] args){
+        if (args == null){
+            return null;
+        }
+
+        final Object[] res = new Object[args.length];
+        for(int i = 0; i < args.length; i++){
+            res[i] = snapshot(args[i]);
+        }
+        return res;
+    }
+
+    protected static Object snapshot(Object arg){
+        if (arg == null || arg instanceof Number || arg instanceof Boolean
+                || arg instanceof Character || arg instanceof Enum){
+            return arg;
+
+        } else if (arg instanceof String){
+            return new TextSnapshot((String) arg);
+
+        } else if (arg instanceof byte[]){
+            return new BytesSnapshot((byte[]) arg);
+
+        } else if (arg instanceof EBRawRequest){
+            final EBRawRequest req = (EBRawRequest) arg;
+            return new RequestSnapshot(req.getMethod(), req.getPath(), req.getBody());
+
+        } else if (arg instanceof EBRawResponse){
+            final EBRawResponse resp = (EBRawResponse) arg;
+            return new ResponseSnapshot(resp.getHttpCode(), resp.isSuccessful(), resp.getBodyBytes(), resp.getBody());
+
+        } else if (arg instanceof EBCreateUORequest){
+            final EBCreateUORequest req = (EBCreateUORequest) arg;
+            return new CreateUOSnapshot(req.getObjectId(), req.getObjectType(), req.getObject());
+
+        } else if (arg instanceof EBEndpointInfo){
+            return new TextSnapshot(((EBEndpointInfo) arg).getConnectionString());
+        }
+
+        return new TextSnapshot("<" + arg.getClass().getName() + ">");
+    }
+
+    // Configuration
+
+    public static void setEnabled(boolean enabled) {
+        EBDiagnostics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the sampling rate of the kind.
+     * @param kind event kind
+     * @param rate fraction of events captured, 0 disables, 1 captures all
+     */
+    public static void setSamplingRate(Kind kind, double rate){
+        samplers[kind.ordinal()].setRate(rate);
+    }
+
+    public static double getSamplingRate(Kind kind){
+        return samplers[kind.ordinal()].getRate();
+    }
+
+    /**
+     * Sets maximal number of captured events of the kind per second.
+     * @param kind event kind
+     * @param maxPerSecond rate limit
+     */
+    public static void setMaxPerSecond(Kind kind, int maxPerSecond){
+        samplers[kind.ordinal()].setMaxPerSecond(maxPerSecond);
+    }
+
+    public static int getMaxPerSecond(Kind kind){
+        return samplers[kind.ordinal()].getMaxPerSecond();
+    }
+
+    /**
+     * Changes the ring buffer capacity, drops captured records.
+     * @param capacity number of records kept
+     */
+    public static synchronized void setCapacity(int capacity){
+        if (capacity <= 0){
+            throw new IllegalArgumentException("Capacity has to be positive");
+        }
+
+        ring = new Record[capacity];
+        written = 0;
+    }
+
+    public static synchronized int getCapacity(){
+        return ring.length;
+    }
+
+    /**
+     * Number of events seen by the sampler of the kind, captured or not.
+     * @param kind event kind
+     * @return count
+     */
+    public static long getEventCount(Kind kind){
+        return samplers[kind.ordinal()].events.get();
+    }
+
+    public static long getCapturedCount(Kind kind){
+        return samplers[kind.ordinal()].captured.get();
+    }
+
+    /**
+     * Deterministic sampler, every period-th event passes, limited per second.
+     */
+    private static class Sampler {
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong captured = new AtomicLong();
+        private volatile long period;
+        private volatile double rate;
+        private volatile int maxPerSecond;
+
+        private long windowStart;
+        private int windowCount;
+
+        Sampler(double rate, int maxPerSecond) {
+            setRate(rate);
+            setMaxPerSecond(maxPerSecond);
+        }
+
+        boolean sample(){
+            final long curPeriod = period;
+            if (curPeriod <= 0){
+                return false;
+            }
+
+            if (events.getAndIncrement() % curPeriod != 0){
+                return false;
+            }
+
+            synchronized (this){
+                final long now = System.currentTimeMillis();
+                if (now - windowStart >= 1000){
+                    windowStart = now;
+                    windowCount = 0;
+                }
+
+                if (windowCount >= maxPerSecond){
+                    return false;
+                }
+
+                windowCount += 1;
+            }
+
+            captured.incrementAndGet();
+            return true;
+        }
+
+        void setRate(double rate){
+            if (rate < 0.0 || rate > 1.0){
+                throw new IllegalArgumentException("Rate has to be in [0, 1]");
+            }
+
+            this.rate = rate;
+            this.period = rate == 0.0 ? 0 : Math.max(1L, Math.round(1.0 / rate));
+        }
+
+        double getRate(){
+            return rate;
+        }
+
+        void setMaxPerSecond(int maxPerSecond){
+            if (maxPerSecond < 0){
+                throw new IllegalArgumentException("Rate limit cannot be negative");
+            }
+
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        int getMaxPerSecond(){
+            return maxPerSecond;
+        }
+    }
+
+    /**
+     * Captured event, formatted on toString().
+     */
+    public static class Record {
+        private final long timeMilli = System.currentTimeMillis();
+        private final String threadName = Thread.currentThread().getName();
+        private final Kind kind;
+        private final String format;
+        private final Object[] args;
+        private String formatted;
+
+        Record(Kind kind, String format, Object[] args) {
+            this.kind = kind;
+            this.format = format;
+            this.args = args;
+        }
+
+        public long getTimeMilli() {
+            return timeMilli;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return true if the message has been formatted already
+         */
+        public synchronized boolean isFormatted() {
+            return formatted != null;
+        }
+
+        public String getMessage() {
+            synchronized (this){
+                if (formatted == null){
+                    formatted = args == null || args.length == 0 ? format : String.format(format, args);
+                }
+                return formatted;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%tFT%<tT.%<tL [%s] %s: %s", new Date(timeMilli), threadName, kind, getMessage());
+        }
+    }
+
+    /**
+     * Text truncated to MAX_TEXT_LENGTH characters.
+     */
+    private static class TextSnapshot {
+        private final String prefix;
+        private final int length;
+
+        TextSnapshot(String text) {
+            this.length = text.length();
+            this.prefix = text.length() <= MAX_TEXT_LENGTH ? text : text.substring(0, MAX_TEXT_LENGTH);
+        }
+
+        @Override
+        public String toString() {
+            return prefix.length() == length ? prefix : prefix + "...(" + length + " chars)";
+        }
+    }
+
+    /**
+     * Length and the first MAX_HEX_BYTES bytes of the data.
+     */
+    private static class BytesSnapshot {
+        private final byte[] prefix;
+        private final int length;
+
+        BytesSnapshot(byte[] data) {
+            this(data, data.length);
+        }
+
+        BytesSnapshot(byte[] data, int length) {
+            this.length = length;
+            this.prefix = Arrays.copyOf(data, Math.min(data.length, MAX_HEX_BYTES));
+        }
+
+        @Override
+        public String toString() {
+            return "len=" + length + ", hex=" + EBUtils.byte2hex(prefix) + (prefix.length < length ? "..." : "");
+        }
+    }
+
+    private static class RequestSnapshot {
+        private final String method;
+        private final TextSnapshot path;
+        private final int bodyLength;
+
+        RequestSnapshot(String method, String path, String body) {
+            this.method = method;
+            this.path = path == null ? null : new TextSnapshot(path);
+            this.bodyLength = body == null ? -1 : body.length();
+        }
+
+        @Override
+        public String toString() {
+            return "method=" + method + ", path=" + path + ", bodyLength=" + bodyLength;
+        }
+    }
+
+    private static class ResponseSnapshot {
+        private final int httpCode;
+        private final boolean successful;
+        private final BytesSnapshot body;
+
+        ResponseSnapshot(int httpCode, boolean successful, byte[] bodyBytes, String body) {
+            this.httpCode = httpCode;
+            this.successful = successful;
+            if (bodyBytes != null){
+                this.body = new BytesSnapshot(bodyBytes);
+            } else if (body != null){
+                final String bodyPrefix = body.substring(0, Math.min(body.length(), MAX_HEX_BYTES));
+                this.body = new BytesSnapshot(bodyPrefix.getBytes(EBCompactEncoding.UTF8), body.length());
+            } else {
+                this.body = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "httpCode=" + httpCode + ", successful=" + successful + ", body: " + body;
+        }
+    }
+
+    private static class CreateUOSnapshot {
+        private final long objectId;
+        private final long objectType;
+        private final BytesSnapshot object;
+
+        CreateUOSnapshot(long objectId, long objectType, byte[] object) {
+            this.objectId = objectId;
+            this.objectType = objectType;
+            this.object = object == null ? null : new BytesSnapshot(object);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("objectId=%x, objectType=%x, object: %s", objectId, objectType, object);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.json.JSONObject;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.security.SecureRandom;
+import java.util.concurrent.Future;
 
 /**
  * Global object for performing EB requests.
@@ -49,6 +50,11 @@ public class EBEngine {
      */
     protected EBCreateUOTpl tpl;
 
+    /**
+     * Cache of unwrapped envelope data keys. Null if disabled (default).
+     */
+    protected EBDataKeyCache dataKeyCache;
+
     /**
      * Creates an empty engine
      */
@@ -77,6 +83,29 @@ public class EBEngine {
         return e;
     }
 
+    /**
+     * Starts asynchronous warm-up of the default endpoint, see {@link EBEngineWarmUp}.
+     * @return future completed when the warm-up finishes
+     */
+    public Future<EBEngineWarmUp> warmUp() {
+        return warmUp(EBEngineWarmUp.DEFAULT_CONNECTIONS_PER_ENDPOINT, null);
+    }
+
+    /**
+     * Starts asynchronous warm-up of the default endpoint and the given user objects, see {@link EBEngineWarmUp}.
+     * @param connectionsPerEndpoint number of TLS handshakes per endpoint
+     * @param uos user objects to initialize comm keys for and to connect to their endpoints, may be null
+     * @return future completed when the warm-up finishes
+     */
+    public Future<EBEngineWarmUp> warmUp(int connectionsPerEndpoint, Iterable<? extends UserObjectInfo> uos) {
+        return new EBEngineWarmUp.Builder()
+                .setEngine(this)
+                .setConnectionsPerEndpoint(connectionsPerEndpoint)
+                .addUserObjects(uos)
+                .build()
+                .start();
+    }
+
     public EBConnectorManager getConMgr() {
         if (conMgr == null){
             conMgr = new EBConnectorManager();
@@ -130,6 +159,19 @@ public class EBEngine {
         this.tpl = tpl;
     }
 
+    public EBDataKeyCache getDataKeyCache() {
+        return dataKeyCache;
+    }
+
+    /**
+     * Enables caching of unwrapped data keys for envelope decryption.
+     * Cached keys skip the EB unwrap call within the configured window.
+     * @param dataKeyCache cache, null to disable
+     */
+    public void setDataKeyCache(EBDataKeyCache dataKeyCache) {
+        this.dataKeyCache = dataKeyCache;
+    }
+
     public JSONObject configureToJSON(){
         return configureToJSON(null, true);
     }
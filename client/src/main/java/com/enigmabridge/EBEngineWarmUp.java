@@ -0,0 +1,287 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBAdditionalTrust;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.comm.EBConnector;
+import com.enigmabridge.comm.EBProcessDataCipher;
+import okhttp3.OkHttpClient;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.net.ssl.SSLSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.Provider;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Warms up the engine so the first ProcessData does not pay the startup costs.
+ *
+ * Preloads JCE / BouncyCastle / OkHttp classes and algorithm lookups, seeds the secure random,
+ * initializes trust (certificate parsing, SSL context), resolves endpoint hosts and performs
+ * TLS handshakes to each endpoint. SSL contexts are shared per trust configuration, so later
+ * connections resume the cached TLS sessions. Comm-key ciphers of the given user objects
+ * are initialized, which also fails early on missing unlimited strength JCE policy.
+ *
+ * Runs asynchronously in a daemon thread, the returned future completes when the warm-up is finished.
+ * Warm-up is best effort, failed steps are recorded in getErrors(), future does not fail on them.
+ */
+public class EBEngineWarmUp {
+    private static final Logger LOG = LoggerFactory.getLogger(EBEngineWarmUp.class);
+
+    public static final int DEFAULT_CONNECTIONS_PER_ENDPOINT = 2;
+
+    /**
+     * Algorithms looked up in the provider, if set.
+     */
+    public static final String[] PROVIDER_CIPHERS = {
+            "AES/ECB/NoPadding", "AES/CBC/PKCS5Padding", "RSA/ECB/PKCS1Padding", "RSA/ECB/NoPadding"
+    };
+
+    protected EBEngine engine;
+    protected Provider provider;
+    protected int connectionsPerEndpoint = DEFAULT_CONNECTIONS_PER_ENDPOINT;
+    protected final Map<EBEndpointInfo, EBConnectionSettings> endpoints = new LinkedHashMap<EBEndpointInfo, EBConnectionSettings>();
+    protected final List<UserObjectInfo> userObjects = new LinkedList<UserObjectInfo>();
+
+    // Results
+    protected final List<Exception> errors = Collections.synchronizedList(new LinkedList<Exception>());
+    protected volatile int handshakes;
+    protected volatile long durationMilli;
+
+    public static abstract class AbstractBuilder<T extends EBEngineWarmUp, B extends AbstractBuilder<T, B>> {
+        public B setEngine(EBEngine engine) {
+            getObj().engine = engine;
+            return getThisBuilder();
+        }
+
+        public B setProvider(Provider provider) {
+            getObj().provider = provider;
+            return getThisBuilder();
+        }
+
+        public B setConnectionsPerEndpoint(int connectionsPerEndpoint) {
+            getObj().connectionsPerEndpoint = connectionsPerEndpoint;
+            return getThisBuilder();
+        }
+
+        public B addEndpoint(EBEndpointInfo endpoint, EBConnectionSettings settings) {
+            getObj().addEndpoint(endpoint, settings);
+            return getThisBuilder();
+        }
+
+        public B addUserObject(UserObjectInfo uo) {
+            getObj().userObjects.add(uo);
+            getObj().addEndpoint(uo.getEndpointInfo(), uo.getConnectionSettings());
+            return getThisBuilder();
+        }
+
+        public B addUserObjects(Iterable<? extends UserObjectInfo> uos) {
+            if (uos != null) {
+                for (UserObjectInfo uo : uos) {
+                    addUserObject(uo);
+                }
+            }
+            return getThisBuilder();
+        }
+
+        public abstract T build();
+        public abstract B getThisBuilder();
+        public abstract T getObj();
+    }
+
+    public static class Builder extends AbstractBuilder<EBEngineWarmUp, EBEngineWarmUp.Builder> {
+        private final EBEngineWarmUp child = new EBEngineWarmUp();
+
+        @Override
+        public EBEngineWarmUp getObj() {
+            return child;
+        }
+
+        @Override
+        public EBEngineWarmUp build() {
+            final EBEngine engine = child.engine;
+            if (engine != null && engine.getDefaultSettings() != null){
+                final EBSettings settings = engine.getDefaultSettings();
+                child.addEndpoint(settings.getEndpointInfo(), settings.getConnectionSettings());
+            }
+            return child;
+        }
+
+        @Override
+        public Builder getThisBuilder() {
+            return this;
+        }
+    }
+
+    /**
+     * Starts the warm-up in a new daemon thread.
+     * @return future completed when the warm-up finishes
+     */
+    public Future<EBEngineWarmUp> start(){
+        final FutureTask<EBEngineWarmUp> task = new FutureTask<EBEngineWarmUp>(new Callable<EBEngineWarmUp>() {
+            @Override
+            public EBEngineWarmUp call() throws Exception {
+                return run();
+            }
+        });
+
+        final Thread thread = new Thread(task, "eb-warmup");
+        thread.setDaemon(true);
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Performs the warm-up synchronously.
+     * @return this
+     */
+    public EBEngineWarmUp run(){
+        final long timeStart = System.currentTimeMillis();
+
+        preloadCrypto();
+        preloadProvider();
+        for(Map.Entry<EBEndpointInfo, EBConnectionSettings> entry : endpoints.entrySet()){
+            warmUpEndpoint(entry.getKey(), entry.getValue());
+        }
+        for(UserObjectInfo uo : userObjects){
+            warmUpUserObject(uo);
+        }
+
+        durationMilli = System.currentTimeMillis() - timeStart;
+        LOG.debug("Warm-up finished in " + durationMilli + " ms, handshakes: " + handshakes + ", errors: " + errors.size());
+        return this;
+    }
+
+    protected void preloadCrypto(){
+        try {
+            if (engine != null){
+                engine.getRnd().nextBytes(new byte[16]);
+            }
+
+            Cipher.getInstance("AES/CBC/PKCS5Padding");
+            new JSONObject("{\"warmup\":1}");
+            new OkHttpClient.Builder().build();
+
+        } catch(Exception e){
+            onError("Crypto preload failed", e);
+        }
+    }
+
+    protected void preloadProvider(){
+        if (provider == null){
+            return;
+        }
+
+        for(String alg : PROVIDER_CIPHERS){
+            try {
+                Cipher.getInstance(alg, provider);
+            } catch(Exception e){
+                onError("Provider preload failed for " + alg, e);
+            }
+        }
+    }
+
+    /**
+     * Resolves the host and performs TLS handshakes.
+     * @param endpoint endpoint to connect to
+     * @param settings connection settings, trust and timeouts
+     */
+    protected void warmUpEndpoint(EBEndpointInfo endpoint, EBConnectionSettings settings){
+        final EBAdditionalTrust trust = settings != null && settings.getTrust() != null ?
+                settings.getTrust() : EBConnector.DEFAULT_TRUST;
+        final int connectTimeout = settings != null ? settings.getConnectTimeoutMilli() : 0;
+        final int readTimeout = settings != null ? settings.getReadTimeoutMilli() : 0;
+        final boolean tls = "https".equalsIgnoreCase(endpoint.getScheme());
+
+        for(int i = 0; i < connectionsPerEndpoint; i++){
+            Socket socket = null;
+            try {
+                socket = tls ? trust.getSslSocketFactory().createSocket() : new Socket();
+                socket.setSoTimeout(readTimeout);
+                socket.connect(new InetSocketAddress(endpoint.getHostname(), endpoint.getPort()), connectTimeout);
+                if (tls){
+                    ((SSLSocket) socket).startHandshake();
+                }
+
+                handshakes += 1;
+
+            } catch(Exception e){
+                onError("Connection warm-up failed for " + endpoint.getConnectionString(), e);
+                return;
+
+            } finally {
+                if (socket != null){
+                    try {
+                        socket.close();
+                    } catch(Exception ignored){
+                    }
+                }
+            }
+        }
+    }
+
+    protected void warmUpUserObject(UserObjectInfo uo){
+        if (uo.getCommKeys() == null){
+            return;
+        }
+
+        try {
+            EBProcessDataCipher.initCipher(true, uo.getCommKeys());
+            EBProcessDataCipher.initCipher(false, uo.getCommKeys());
+        } catch(Exception e){
+            onError("Comm keys initialization failed for " + uo.getUoid(), e);
+        }
+    }
+
+    protected void onError(String msg, Exception e){
+        LOG.warn(msg, e);
+        errors.add(e);
+    }
+
+    protected void addEndpoint(EBEndpointInfo endpoint, EBConnectionSettings settings){
+        if (endpoint == null || endpoints.containsKey(endpoint)){
+            return;
+        }
+
+        endpoints.put(endpoint, settings);
+    }
+
+    // Getters
+
+    /**
+     * @return true if all warm-up steps succeeded
+     */
+    public boolean isSuccessful() {
+        return errors.isEmpty();
+    }
+
+    public List<Exception> getErrors() {
+        return errors;
+    }
+
+    public int getHandshakes() {
+        return handshakes;
+    }
+
+    public long getDurationMilli() {
+        return durationMilli;
+    }
+
+    public int getConnectionsPerEndpoint() {
+        return connectionsPerEndpoint;
+    }
+
+    public EBEngine getEngine() {
+        return engine;
+    }
+}
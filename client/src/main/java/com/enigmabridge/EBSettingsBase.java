@@ -110,7 +110,19 @@ public class EBSettingsBase implements EBSettings, Serializable {
      * @throws MalformedURLException
      */
     protected void fromJSON(JSONObject json) throws MalformedURLException {
-        if (json == null || !json.has(FIELD_APIKEY))
+        fromJSON(json, true);
+    }
+
+    /**
+     * Initializes object form the JSON.
+     * @param json
+     * @param apiKeyRequired if false, settings with an endpoint only are accepted, e.g., replica on a different endpoint.
+     * @throws MalformedURLException
+     */
+    protected void fromJSON(JSONObject json, boolean apiKeyRequired) throws MalformedURLException {
+        if (json == null
+                || (apiKeyRequired && !json.has(FIELD_APIKEY))
+                || (!json.has(FIELD_APIKEY) && !json.has(FIELD_ENDPOINT)))
         {
             throw new IllegalArgumentException("Invalid JSON format");
         }
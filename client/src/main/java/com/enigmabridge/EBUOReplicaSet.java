@@ -0,0 +1,211 @@
+package com.enigmabridge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Set of user objects holding the same key material, used as one logical key.
+ * Replicas are created e.g. by importing the same application key several times,
+ * see {@link UserObjectKeyCreator#createReplicated(int)}.
+ *
+ * ProcessData calls are spread over replicas by least outstanding requests,
+ * a replica failing on the transport level is skipped for the back-off period.
+ *
+ * Replica 0 is the primary user object the set belongs to.
+ * Replicas without API key / endpoint / connection settings use those of the primary.
+ */
+public class EBUOReplicaSet {
+    public static final long DEFAULT_FAILURE_BACKOFF_MILLI = 10000;
+
+    /**
+     * Balancing statistics of one member.
+     * Shared by all states, a request acquired before a replica was added is released on the same counter.
+     */
+    protected static class MemberStats {
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile long failedUntil;
+    }
+
+    /**
+     * Members and their statistics, replaced as a whole when a replica is added.
+     */
+    protected static class State {
+        final UserObjectKeyBase[] members;
+        final MemberStats[] stats;
+
+        State(UserObjectKeyBase[] members) {
+            this(null, members);
+        }
+
+        /**
+         * New state with more members, statistics objects of the existing members are taken over.
+         */
+        State(State old, UserObjectKeyBase[] members) {
+            this.members = members;
+            this.stats = new MemberStats[members.length];
+
+            final int kept = old == null ? 0 : old.stats.length;
+            for(int i = 0; i < members.length; i++){
+                stats[i] = i < kept ? old.stats[i] : new MemberStats();
+            }
+        }
+    }
+
+    protected volatile State state;
+    protected final AtomicInteger roundRobin = new AtomicInteger();
+    protected volatile long failureBackoffMilli = DEFAULT_FAILURE_BACKOFF_MILLI;
+
+    public EBUOReplicaSet(UserObjectKeyBase primary) {
+        this.state = new State(new UserObjectKeyBase[]{primary});
+    }
+
+    /**
+     * Adds a replica to the set. Balancing statistics of the existing members are kept.
+     * @param replica replica user object
+     */
+    public void addReplica(UserObjectKeyBase replica){
+        addReplicas(Collections.singletonList(replica));
+    }
+
+    /**
+     * Adds replicas to the set at once. Balancing statistics of the existing members are kept.
+     * @param replicas replica user objects
+     */
+    public synchronized void addReplicas(Collection<UserObjectKeyBase> replicas){
+        if (replicas.isEmpty()){
+            return;
+        }
+
+        final State old = state;
+        final UserObjectKeyBase[] members = Arrays.copyOf(old.members, old.members.length + replicas.size());
+        int idx = old.members.length;
+        for (UserObjectKeyBase replica : replicas) {
+            if (replica == null){
+                throw new NullPointerException("Replica is null");
+            }
+            members[idx++] = replica;
+        }
+
+        state = new State(old, members);
+    }
+
+    /**
+     * Number of members, primary included.
+     * @return number of members
+     */
+    public int size(){
+        return state.members.length;
+    }
+
+    public UserObjectKeyBase get(int idx){
+        return state.members[idx];
+    }
+
+    public UserObjectKeyBase getPrimary(){
+        return state.members[0];
+    }
+
+    /**
+     * Returns replicas without the primary.
+     * @return list of replicas
+     */
+    public List<UserObjectKeyBase> getReplicas(){
+        final UserObjectKeyBase[] members = state.members;
+        final List<UserObjectKeyBase> res = new ArrayList<UserObjectKeyBase>(members.length - 1);
+        res.addAll(Arrays.asList(members).subList(1, members.length));
+        return Collections.unmodifiableList(res);
+    }
+
+    /**
+     * Picks the healthy member with the least outstanding requests, not yet tried.
+     * If all untried members are failing, the least loaded of them is returned.
+     * Outstanding counter of the returned member is incremented, call {@link #release(int, boolean)} after the request.
+     *
+     * @param tried members already tried for the current request, may be null
+     * @return member index or -1 if all members were tried
+     */
+    public int acquire(boolean[] tried){
+        final State st = state;
+        final int n = st.members.length;
+        final long now = System.currentTimeMillis();
+        final int start = (roundRobin.getAndIncrement() & 0x7fffffff) % n;
+
+        int best = -1;
+        int bestLoad = Integer.MAX_VALUE;
+        int fallback = -1;
+        int fallbackLoad = Integer.MAX_VALUE;
+
+        for(int i = 0; i < n; i++){
+            final int idx = (start + i) % n;
+            if (tried != null && idx < tried.length && tried[idx]){
+                continue;
+            }
+
+            final int load = st.stats[idx].outstanding.get();
+            if (st.stats[idx].failedUntil > now){
+                if (load < fallbackLoad){
+                    fallback = idx;
+                    fallbackLoad = load;
+                }
+                continue;
+            }
+
+            if (load < bestLoad){
+                best = idx;
+                bestLoad = load;
+            }
+        }
+
+        final int res = best >= 0 ? best : fallback;
+        if (res >= 0){
+            st.stats[res].outstanding.incrementAndGet();
+        }
+
+        return res;
+    }
+
+    /**
+     * Marks request on the member as finished.
+     * @param idx member index returned by acquire
+     * @param healthy false if the member failed on the transport level, it is skipped for the back-off period
+     */
+    public void release(int idx, boolean healthy){
+        final State st = state;
+        if (idx < 0 || idx >= st.members.length){
+            return;
+        }
+
+        st.stats[idx].outstanding.decrementAndGet();
+        st.stats[idx].failedUntil = healthy ? 0 : System.currentTimeMillis() + failureBackoffMilli;
+    }
+
+    /**
+     * Number of requests in progress on the member.
+     * @param idx member index
+     * @return outstanding requests
+     */
+    public int getOutstanding(int idx){
+        return state.stats[idx].outstanding.get();
+    }
+
+    public long getFailureBackoffMilli() {
+        return failureBackoffMilli;
+    }
+
+    public EBUOReplicaSet setFailureBackoffMilli(long failureBackoffMilli) {
+        this.failureBackoffMilli = failureBackoffMilli;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "EBUOReplicaSet{" +
+                "size=" + size() +
+                ", failureBackoffMilli=" + failureBackoffMilli +
+                '}';
+    }
+}
@@ -52,7 +52,7 @@ public class EBUtils {
     }
 
     public static String byte2hex(byte[] bytes, int offset, int length){
-        StringBuilder r = new StringBuilder((length-offset) * 2);
+        StringBuilder r = new StringBuilder(length * 2);
         for (int i = offset; i < offset+length; i++){
             byte b = bytes[i];
             r.append(hexCode[(b >> 4) & 0xF]);
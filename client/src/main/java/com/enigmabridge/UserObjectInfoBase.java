@@ -98,6 +98,16 @@ public class UserObjectInfoBase implements UserObjectInfo, EBJSONSerializable {
             return getThisBuilder();
         }
 
+        public B setCompact(EBCompactDecoder decoder) throws IOException {
+            getObj().fromCompact(decoder);
+            return getThisBuilder();
+        }
+
+        public B setCompact(byte[] encoded) throws IOException {
+            getObj().fromCompact(new EBCompactDecoder(encoded));
+            return getThisBuilder();
+        }
+
         public B setUserObjectInfo(UserObjectInfo i) throws MalformedURLException {
             getObj().setUoid(i.getUoid());
             getObj().setUserObjectType(i.getUserObjectType());
@@ -247,6 +257,59 @@ public class UserObjectInfoBase implements UserObjectInfo, EBJSONSerializable {
         }
     }
 
+    /**
+     * Serializes object to the compact binary form, see {@link EBCompactEncoding}.
+     * @return compact encoded object
+     * @throws IOException
+     */
+    public byte[] getEncodedCompact() throws IOException {
+        return EBCompactEncoding.encode(getCompactRecordType(), this, null);
+    }
+
+    /**
+     * Builds UserObjectInfoBase from the compact binary form.
+     * @param encoded compact encoded object
+     * @return new object loaded from the compact form
+     * @throws IOException
+     */
+    public static UserObjectInfoBase buildCompact(byte[] encoded) throws IOException {
+        final UserObjectInfoBase b = new UserObjectInfoBase();
+        b.fromCompact(new EBCompactDecoder(encoded));
+        return b;
+    }
+
+    /**
+     * Record type used in the compact form.
+     * @return record type
+     */
+    protected int getCompactRecordType(){
+        return EBCompactEncoding.RECORD_UO_INFO;
+    }
+
+    /**
+     * Initializes object from the compact record.
+     * @param decoder decoder pointing to the record
+     * @throws IOException
+     */
+    protected void fromCompact(EBCompactDecoder decoder) throws IOException {
+        setUoid(decoder.getUoid());
+        setUserObjectType(decoder.getUserObjectType());
+
+        final EBCommKeys keys = decoder.getCommKeys();
+        if (keys != null){
+            setCommKeys(keys);
+        }
+
+        final int flags = decoder.getFlags();
+        if ((flags & (EBCompactEncoding.FLAG_API_KEY | EBCompactEncoding.FLAG_ENDPOINT | EBCompactEncoding.FLAG_CONN_SETTINGS)) != 0){
+            final EBSettingsBase newSettings = new EBSettingsBase();
+            newSettings.setApiKey(decoder.getApiKey());
+            newSettings.setEndpointInfo(decoder.getEndpointInfo());
+            newSettings.setConnectionSettings(decoder.getConnectionSettings());
+            setSettings(newSettings);
+        }
+    }
+
     /**
      * Builds user object from string representation.
      * @param json to build from
@@ -266,6 +329,16 @@ public class UserObjectInfoBase implements UserObjectInfo, EBJSONSerializable {
      * @throws MalformedURLException
      */
     protected void fromJSON(JSONObject json) throws MalformedURLException {
+        fromJSON(json, false);
+    }
+
+    /**
+     * Initializes object form the JSON.
+     * @param json
+     * @param replica if true, settings may omit the API key, replicas inherit it from the primary.
+     * @throws MalformedURLException
+     */
+    protected void fromJSON(JSONObject json, boolean replica) throws MalformedURLException {
         if (json == null
                 || !json.has(FIELD_UOID)
                 || !json.has(FIELD_COMMKEYS))
@@ -284,7 +357,9 @@ public class UserObjectInfoBase implements UserObjectInfo, EBJSONSerializable {
 
         // EB Settings
         if (json.has(FIELD_SETTINGS)){
-            setSettings(new EBSettingsBase(json.getJSONObject(FIELD_SETTINGS)));
+            final EBSettingsBase newSettings = new EBSettingsBase();
+            newSettings.fromJSON(json.getJSONObject(FIELD_SETTINGS), !replica);
+            setSettings(newSettings);
         }
     }
 
@@ -1,8 +1,13 @@
 package com.enigmabridge;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Basic implementation of the UserObjectKey.
@@ -13,11 +18,17 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
     public static final String FIELD_ALGORITHM = "algorithm";
     public static final String FIELD_KEY_LENGTH = "keyLen";
     public static final String FIELD_KEY_TYPE = "keyType";
+    public static final String FIELD_REPLICAS = "replicas";
 
     protected String algorithm;
     protected int keyLength;
     protected UserObjectKeyType keyType;
 
+    /**
+     * Other user objects with the same key, null if not replicated.
+     */
+    protected EBUOReplicaSet replicaSet;
+
     public static abstract class AbstractBuilder<T extends UserObjectKeyBase, B extends AbstractBuilder>
     extends UserObjectInfoBase.AbstractBuilder<T,B>
     {
@@ -41,6 +52,7 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
             getObj().setKeyLength(k.length());
             getObj().setKeyType(k.getKeyType());
             this.setUserObjectInfo(k);
+            getObj().copyReplicas(k);
 
             return getThisBuilder();
         }
@@ -59,6 +71,16 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
             return getThisBuilder();
         }
 
+        public B addReplica(UserObjectKeyBase replica){
+            getObj().addReplica(replica);
+            return getThisBuilder();
+        }
+
+        public B addReplicas(List<UserObjectKeyBase> replicas){
+            getObj().addReplicas(replicas);
+            return getThisBuilder();
+        }
+
         public abstract T build();
         public abstract B getThisBuilder();
         public abstract T getObj();
@@ -108,14 +130,51 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
         return this;
     }
 
+    /**
+     * Replica set this user object is primary of, null if not replicated.
+     * @return replica set or null
+     */
+    public EBUOReplicaSet getReplicaSet() {
+        return replicaSet;
+    }
+
+    public boolean isReplicated(){
+        return replicaSet != null && replicaSet.size() > 1;
+    }
+
+    @Override
+    protected int getCompactRecordType() {
+        return EBCompactEncoding.RECORD_UO_KEY;
+    }
+
+    @Override
+    protected void fromCompact(EBCompactDecoder decoder) throws IOException {
+        super.fromCompact(decoder);
+        if (!decoder.isKey()){
+            throw new IOException("Record does not contain key information");
+        }
+
+        setAlgorithm(decoder.getAlgorithm());
+        setKeyLength(decoder.getKeyLength());
+        setKeyType(decoder.getKeyType());
+
+        final EBCompactDecoder[] replicaRecords = decoder.getReplicas();
+        final List<UserObjectKeyBase> replicas = new ArrayList<UserObjectKeyBase>(replicaRecords.length);
+        for (EBCompactDecoder replica : replicaRecords) {
+            replicas.add(new UserObjectKeyBase.Builder().setCompact(replica).build());
+        }
+        addReplicas(replicas);
+    }
+
     /**
      * Initializes object form the JSON.
      * @param json
+     * @param replica if true, settings may omit the API key, replicas inherit it from the primary.
      * @throws MalformedURLException
      */
     @Override
-    protected void fromJSON(JSONObject json) throws MalformedURLException {
-        super.fromJSON(json);
+    protected void fromJSON(JSONObject json, boolean replica) throws MalformedURLException {
+        super.fromJSON(json, replica);
         if (json == null
                 || !json.has(FIELD_ALGORITHM)
                 || !json.has(FIELD_KEY_LENGTH)
@@ -127,6 +186,17 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
         setAlgorithm(EBUtils.getAsStringOrNull(json, FIELD_ALGORITHM));
         setKeyLength(EBUtils.getAsInteger(json, FIELD_KEY_LENGTH, 10));
         setKeyType(UserObjectKeyType.valueOf(EBUtils.getAsStringOrNull(json, FIELD_KEY_TYPE)));
+
+        if (json.has(FIELD_REPLICAS)){
+            final JSONArray replicasJson = json.getJSONArray(FIELD_REPLICAS);
+            final List<UserObjectKeyBase> replicas = new ArrayList<UserObjectKeyBase>(replicasJson.length());
+            for(int i = 0, ln = replicasJson.length(); i < ln; i++){
+                final UserObjectKeyBase replicaKey = new UserObjectKeyBase();
+                replicaKey.fromJSON(replicasJson.getJSONObject(i), true);
+                replicas.add(replicaKey);
+            }
+            addReplicas(replicas);
+        }
     }
 
     /**
@@ -144,6 +214,15 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
         json.put(FIELD_ALGORITHM, this.getAlgorithm());
         json.put(FIELD_KEY_LENGTH, this.length());
         json.put(FIELD_KEY_TYPE, this.getKeyType().toString());
+
+        if (isReplicated()){
+            final JSONArray replicas = new JSONArray();
+            for (UserObjectKeyBase replica : replicaSet.getReplicas()) {
+                replicas.put(replica.toJSON(null));
+            }
+            json.put(FIELD_REPLICAS, replicas);
+        }
+
         return json;
     }
 
@@ -160,6 +239,30 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
         this.keyType = keyType;
     }
 
+    protected void addReplica(UserObjectKeyBase replica) {
+        addReplicas(Collections.singletonList(replica));
+    }
+
+    protected void addReplicas(List<UserObjectKeyBase> replicas) {
+        if (replicaSet == null){
+            replicaSet = new EBUOReplicaSet(this);
+        }
+        replicaSet.addReplicas(replicas);
+    }
+
+    /**
+     * Takes over replicas of the given key, if any.
+     * @param k source key
+     */
+    protected void copyReplicas(UserObjectKey k) {
+        final UserObjectKey src = k.getUserObjectKey();
+        if (src == this || !(src instanceof UserObjectKeyBase) || !((UserObjectKeyBase) src).isReplicated()){
+            return;
+        }
+
+        addReplicas(((UserObjectKeyBase) src).getReplicaSet().getReplicas());
+    }
+
     @Override
     protected void setUserObjectType(UserObjectType userObjectType) {
         super.setUserObjectType(userObjectType);
@@ -182,6 +285,7 @@ public class UserObjectKeyBase extends UserObjectInfoBase implements UserObjectK
                 "algorithm='" + algorithm + '\'' +
                 ", keyLength=" + keyLength +
                 ", keyType=" + keyType +
+                (replicaSet == null ? "" : ", replicas=" + replicaSet.size()) +
                 "} " + super.toString();
     }
 }
@@ -4,6 +4,9 @@ import com.enigmabridge.comm.EBCorruptedException;
 import com.enigmabridge.create.*;
 import com.enigmabridge.create.misc.EBRSAPrivateCrtKey;
 import com.enigmabridge.create.misc.EBRSAPrivateCrtKeyWrapper;
+import com.enigmabridge.events.EBEvent;
+import com.enigmabridge.events.EBEventType;
+import com.enigmabridge.events.EBEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -259,6 +262,27 @@ public class UserObjectKeyCreator {
      * @return builder for new user object key
      */
     public UserObjectKeyBase.Builder create() throws IOException {
+        final EBEvent event = EBEvents.begin(EBEventType.CREATE_UO);
+        UserObjectKeyBase.Builder res = null;
+        try {
+            res = createInternal();
+            return res;
+
+        } finally {
+            if (event != null){
+                final EBCreateUOResponse response = res == null ? null : lastResponse;
+                if (response != null){
+                    event.set("uoId", response.getHandle().getUoId())
+                            .set("uoType", response.getHandle().getUoType().getValue())
+                            .set("statusCode", response.getStatusCode() & 0xffff);
+                }
+
+                event.set("failed", response == null).commit();
+            }
+        }
+    }
+
+    protected UserObjectKeyBase.Builder createInternal() throws IOException {
         final EBEndpointInfo endpoint = engine.getEndpointEnrollment();
         final EBUOGetTemplateRequest req = this.getTemplateRequest;
 
@@ -286,8 +310,9 @@ public class UserObjectKeyCreator {
         try {
             final EBCreateUOResponse response = createCall.create();
             if (!response.isCodeOk()){
-                if (EBDevSettings.shouldLogFailedCreateUO()){
-                    LOG.debug("Failed createUO: " + createCall.getCreateRequest());
+                if (EBDiagnostics.shouldCapture(EBDiagnostics.Kind.CREATE_UO_FAILED)){
+                    EBDiagnostics.capture(EBDiagnostics.Kind.CREATE_UO_FAILED, "Failed createUO: %s, status: %04x",
+                            createCall.getCreateRequest(), response.getStatusCode());
                 }
                 throw new EBEngineException("Could not create UO - response: " + response.toString());
             }
@@ -309,6 +334,49 @@ public class UserObjectKeyCreator {
         }
     }
 
+    /**
+     * Creates several user objects with the same application key, e.g., the same imported RSA key.
+     * Replicas are used as one logical key, ProcessData calls are balanced over them, see {@link EBUOReplicaSet}.
+     * Each replica gets its own comm keys unless comm keys were set explicitly.
+     *
+     * @param count number of user objects to create, at least 1
+     * @return builder of the primary user object with replicas attached
+     * @throws IOException
+     */
+    public UserObjectKeyBase.Builder createReplicated(int count) throws IOException {
+        if (count < 1){
+            throw new IllegalArgumentException("At least one user object has to be created");
+        }
+
+        final boolean fixedCommKeys = commKeys != null;
+        final UserObjectKeyBase.Builder primary = create();
+        for(int i = 1; i < count; i++){
+            if (!fixedCommKeys){
+                commKeys = null;
+            }
+
+            primary.addReplica(create().build());
+        }
+
+        return primary;
+    }
+
+    /**
+     * Returns a creator with the same engine, template request and application key.
+     * Comm keys are not copied. Creators are not thread safe, copies can create user objects concurrently.
+     *
+     * @return creator copy
+     */
+    public UserObjectKeyCreator copy(){
+        final UserObjectKeyCreator res = new UserObjectKeyCreator();
+        res.random = random;
+        res.engine = engine;
+        res.uoType = uoType;
+        res.getTemplateRequest = getTemplateRequest == null ? null : getTemplateRequest.copy();
+        res.appKey = appKey;
+        return res;
+    }
+
     // Setters
 
     protected void setRandom(SecureRandom random) {
@@ -0,0 +1,252 @@
+package com.enigmabridge.client;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool sizing itself from the observed task latency and queue depth.
+ *
+ * Uses gradient concurrency limit, updated once per window of about limit completed tasks:
+ * while the latency stays within RTT_TOLERANCE of the minimal observed latency the EB side is not
+ * saturated and the limit may grow, by square root of the limit if tasks are queued.
+ * When the latency grows, limit is decreased proportionally to the latency gradient.
+ * Pool size follows the limit, within [minPoolSize, maxPoolSize].
+ *
+ * Minimal latency is re-measured every MIN_RTT_WINDOW_NANOS so the limit follows changes
+ * in the network and EB capacity.
+ */
+public class EBAdaptiveExecutorService extends ThreadPoolExecutor {
+    public static final long KEEP_ALIVE_SECONDS = 60L;
+    public static final long MIN_RTT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+    public static final double SMOOTHING = 0.5;
+    public static final double RTT_EWMA = 0.2;
+    public static final double RTT_TOLERANCE = 1.2;
+    public static final double MIN_GRADIENT = 0.5;
+
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final ThreadLocal<Long> taskStart = new ThreadLocal<Long>();
+    private final Object limitLock = new Object();
+
+    private double limit;
+    private long minRttNanos;
+    private long windowMinRttNanos = Long.MAX_VALUE;
+    private long windowStartNanos;
+    private boolean windowStarted;
+    private double smoothedRttNanos;
+    private long sampleRttSum;
+    private int sampleCount;
+    private boolean sampleDemand;
+
+    // Metrics
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong limitIncreases = new AtomicLong();
+    private final AtomicLong limitDecreases = new AtomicLong();
+
+    /**
+     * @param minPoolSize lower bound of the pool size
+     * @param maxPoolSize upper bound of the pool size
+     */
+    public EBAdaptiveExecutorService(int minPoolSize, int maxPoolSize) {
+        super(minPoolSize, minPoolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), createThreadFactory());
+
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize){
+            throw new IllegalArgumentException("Invalid pool bounds");
+        }
+
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.limit = minPoolSize;
+        allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        inFlight.incrementAndGet();
+        taskStart.set(nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        final long rtt = nanoTime() - taskStart.get();
+        final int inFlightNow = inFlight.getAndDecrement();
+
+        completed.incrementAndGet();
+        onSample(rtt, inFlightNow, getQueue().size());
+    }
+
+    /**
+     * Records a latency sample, updates the limit once per window of roughly limit samples,
+     * i.e., about once per round trip.
+     *
+     * @param rttNanos task latency
+     * @param inFlightNow number of running tasks, including the sampled one
+     * @param queueDepth number of waiting tasks
+     */
+    protected void onSample(long rttNanos, int inFlightNow, int queueDepth){
+        final int newPoolSize;
+        synchronized (limitLock){
+            updateMinRtt(rttNanos);
+            sampleRttSum += rttNanos;
+            sampleCount += 1;
+            sampleDemand |= queueDepth > 0 || inFlightNow >= (int) limit;
+            if (sampleCount < (int) limit){
+                return;
+            }
+
+            final double rtt = Math.max(1.0, (double) sampleRttSum / sampleCount);
+            smoothedRttNanos = smoothedRttNanos == 0 ? rtt : smoothedRttNanos * (1.0 - RTT_EWMA) + rtt * RTT_EWMA;
+
+            final double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, RTT_TOLERANCE * minRttNanos / rtt));
+            double newLimit = limit * gradient;
+
+            // Grow only if there is a demand for more workers.
+            if (sampleDemand){
+                newLimit += Math.sqrt(limit);
+            }
+
+            newLimit = limit * (1.0 - SMOOTHING) + newLimit * SMOOTHING;
+            newLimit = Math.max(minPoolSize, Math.min(maxPoolSize, newLimit));
+
+            sampleRttSum = 0;
+            sampleCount = 0;
+            sampleDemand = false;
+
+            final int oldPoolSize = (int) limit;
+            limit = newLimit;
+            newPoolSize = (int) limit;
+
+            if (newPoolSize > oldPoolSize){
+                limitIncreases.incrementAndGet();
+            } else if (newPoolSize < oldPoolSize){
+                limitDecreases.incrementAndGet();
+            } else {
+                return;
+            }
+        }
+
+        resize(newPoolSize);
+    }
+
+    private void updateMinRtt(long rttNanos){
+        if (rttNanos <= 0){
+            rttNanos = 1;
+        }
+
+        if (minRttNanos == 0 || rttNanos < minRttNanos){
+            minRttNanos = rttNanos;
+        }
+
+        windowMinRttNanos = Math.min(windowMinRttNanos, rttNanos);
+        final long now = nanoTime();
+        if (!windowStarted){
+            windowStarted = true;
+            windowStartNanos = now;
+
+        } else if (now - windowStartNanos >= MIN_RTT_WINDOW_NANOS){
+            minRttNanos = windowMinRttNanos;
+            windowMinRttNanos = Long.MAX_VALUE;
+            windowStartNanos = now;
+        }
+    }
+
+    /**
+     * Time source of the latency samples and of the minimal latency window.
+     * @return current time in nanoseconds
+     */
+    protected long nanoTime(){
+        return System.nanoTime();
+    }
+
+    private synchronized void resize(int poolSize){
+        if (poolSize > getMaximumPoolSize()){
+            setMaximumPoolSize(poolSize);
+            setCorePoolSize(poolSize);
+        } else {
+            setCorePoolSize(poolSize);
+            setMaximumPoolSize(poolSize);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory(){
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "eb-client-adaptive-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    // Metrics
+
+    /**
+     * Current concurrency limit, pool size is its integer part.
+     * @return limit
+     */
+    public double getLimit() {
+        synchronized (limitLock){
+            return limit;
+        }
+    }
+
+    public long getMinRttNanos() {
+        synchronized (limitLock){
+            return minRttNanos;
+        }
+    }
+
+    public long getSmoothedRttNanos() {
+        synchronized (limitLock){
+            return (long) smoothedRttNanos;
+        }
+    }
+
+    /**
+     * Throughput estimate from Little's law, limit / latency.
+     * @return tasks per second
+     */
+    public double getEstimatedThroughput() {
+        synchronized (limitLock){
+            return smoothedRttNanos == 0 ? 0.0 : (limit * 1e9) / smoothedRttNanos;
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getLimitIncreases() {
+        return limitIncreases.get();
+    }
+
+    public long getLimitDecreases() {
+        return limitDecreases.get();
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+}
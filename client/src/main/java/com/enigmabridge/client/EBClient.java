@@ -3,6 +3,8 @@ package com.enigmabridge.client;
 import com.enigmabridge.*;
 import com.enigmabridge.client.async.EBClientObjectAsync;
 import com.enigmabridge.client.async.EBClientObjectAsyncSimple;
+import com.enigmabridge.client.envelope.EBEnvelopeCipher;
+import com.enigmabridge.client.envelope.EBEnvelopeKeyWrapper;
 import com.enigmabridge.client.wrappers.EBWrappedCombined;
 import com.enigmabridge.comm.EBConnectionSettings;
 import com.enigmabridge.provider.EBKeyBase;
@@ -15,7 +17,6 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 
 /**
@@ -29,6 +30,26 @@ public class EBClient {
      */
     protected int workerCount = 1;
 
+    /**
+     * Execution mode of the executor created by the client.
+     */
+    protected EBClientExecutorMode executorMode = EBClientExecutorMode.FIXED;
+
+    /**
+     * Maximal number of concurrently running operations, 0 for the mode default.
+     */
+    protected int concurrency;
+
+    /**
+     * Minimal number of workers of the ADAPTIVE executor mode.
+     */
+    protected int minConcurrency = 1;
+
+    /**
+     * Concurrency reserved for the INTERACTIVE priority lane, negative for the default.
+     */
+    protected int reservedConcurrency = -1;
+
     /**
      * Engine with default settings.
      */
@@ -39,6 +60,11 @@ public class EBClient {
      */
     protected ExecutorService executorService;
 
+    /**
+     * Priority lanes of async operations, dispatching to the executor service.
+     */
+    protected EBPriorityScheduler scheduler;
+
     /**
      * Builder
      * @param <T>
@@ -60,6 +86,31 @@ public class EBClient {
             return getThisBuilder();
         }
 
+        public B setExecutorMode(EBClientExecutorMode a) {
+            getObj().setExecutorMode(a);
+            return getThisBuilder();
+        }
+
+        public B setConcurrency(int a) {
+            getObj().setConcurrency(a);
+            return getThisBuilder();
+        }
+
+        public B setMinConcurrency(int a) {
+            getObj().setMinConcurrency(a);
+            return getThisBuilder();
+        }
+
+        public B setReservedConcurrency(int a) {
+            getObj().setReservedConcurrency(a);
+            return getThisBuilder();
+        }
+
+        public B setScheduler(EBPriorityScheduler a) {
+            getObj().setScheduler(a);
+            return getThisBuilder();
+        }
+
         public B setDefaultSettings(EBConnectionSettings settings) throws MalformedURLException {
             getObj().setDefaultSettings(settings);
             return getThisBuilder();
@@ -68,6 +119,11 @@ public class EBClient {
         public B setClient(EBClient client){
             getObj().setExecutorService(client.getExecutorService());
             getObj().setWorkerCount(client.getWorkerCount());
+            getObj().setExecutorMode(client.getExecutorMode());
+            getObj().setConcurrency(client.getConcurrency());
+            getObj().setMinConcurrency(client.getMinConcurrency());
+            getObj().setReservedConcurrency(client.getReservedConcurrency());
+            getObj().setScheduler(client.getScheduler());
             getObj().setEngine(client.getEngine());
             return getThisBuilder();
         }
@@ -115,9 +171,25 @@ public class EBClient {
      */
     protected void build() {
         if (this.executorService == null){
-            this.executorService = Executors.newFixedThreadPool(this.workerCount);
+            if (this.concurrency <= 0){
+                this.concurrency = EBClientExecutors.getDefaultConcurrency(this.executorMode, this.workerCount);
+            }
+
+            this.executorService = EBClientExecutors.create(this.executorMode, this.minConcurrency, this.concurrency);
+            if (this.executorMode == EBClientExecutorMode.FIXED){
+                this.workerCount = this.concurrency;
+            }
+
         } else if (this.executorService instanceof ThreadPoolExecutor){
-            this.workerCount = ((ThreadPoolExecutor) this.executorService).getPoolSize();
+            this.workerCount = getExecutorConcurrency(this.executorService);
+        }
+
+        if (this.scheduler == null){
+            final int limit = this.concurrency > 0 ? this.concurrency : getExecutorConcurrency(this.executorService);
+            final int reserved = this.reservedConcurrency >= 0 ?
+                    this.reservedConcurrency : EBPriorityScheduler.getDefaultReserved(limit);
+
+            this.scheduler = new EBPriorityScheduler(this.executorService, limit, reserved);
         }
 
         if (this.engine == null){
@@ -125,6 +197,34 @@ public class EBClient {
         }
     }
 
+    /**
+     * Number of tasks the executor runs in parallel, Integer.MAX_VALUE if not known.
+     * Current pool size is not used, pool threads are started lazily.
+     *
+     * @param executor executor
+     * @return concurrency of the executor
+     */
+    protected static int getExecutorConcurrency(ExecutorService executor){
+        if (executor instanceof EBAdaptiveExecutorService){
+            return ((EBAdaptiveExecutorService) executor).getMaxPoolSize();
+
+        } else if (executor instanceof ThreadPoolExecutor){
+            // Pool grows over the core size only if the queue is full.
+            final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            final int size = pool.getQueue().remainingCapacity() == Integer.MAX_VALUE ?
+                    pool.getCorePoolSize() : pool.getMaximumPoolSize();
+            return Math.max(1, size);
+
+        } else if (executor instanceof EBClientExecutors.BoundedExecutorService){
+            return ((EBClientExecutors.BoundedExecutorService) executor).getConcurrency();
+
+        } else if (executor instanceof EBClientExecutors.CallerRunsExecutorService){
+            return ((EBClientExecutors.CallerRunsExecutorService) executor).getConcurrency();
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
     // Simple sync API
 
     public EBClientObject initFromJSON(String json) throws IOException {
@@ -155,6 +255,31 @@ public class EBClient {
                 .setCryptoWrapper(wrapper);
     }
 
+    // Envelope encryption
+
+    /**
+     * Client object encrypting data locally, data keys wrapped by the given EB key.
+     * @param keyWrapper EB key wrapper
+     * @return client object
+     * @throws IOException
+     */
+    public EBClientObject initEnvelopeEncrypt(EBEnvelopeKeyWrapper keyWrapper) throws IOException {
+        return init(new EBWrappedCombined(new EBEnvelopeCipher(keyWrapper, true, getEngine().getRnd())));
+    }
+
+    /**
+     * Client object decrypting envelopes produced by {@link #initEnvelopeEncrypt(EBEnvelopeKeyWrapper)}.
+     * Uses data key cache of the engine, if configured.
+     * @param keyWrapper EB key wrapper
+     * @return client object
+     * @throws IOException
+     */
+    public EBClientObject initEnvelopeDecrypt(EBEnvelopeKeyWrapper keyWrapper) throws IOException {
+        final EBEnvelopeCipher cipher = new EBEnvelopeCipher(keyWrapper, false, getEngine().getRnd())
+                .setDataKeyCache(getEngine().getDataKeyCache());
+        return init(new EBWrappedCombined(cipher));
+    }
+
     // Simple async API
 
     public EBClientObjectAsyncSimple initAsyncSimpleFromJSON(String json) throws IOException {
@@ -302,6 +427,35 @@ public class EBClient {
         return executorService;
     }
 
+    public EBClientExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    public int getReservedConcurrency() {
+        return reservedConcurrency;
+    }
+
+    public EBPriorityScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the adaptive executor with sizing metrics, if ADAPTIVE mode is used.
+     * @return adaptive executor or null
+     */
+    public EBAdaptiveExecutorService getAdaptiveExecutor() {
+        return executorService instanceof EBAdaptiveExecutorService ?
+                (EBAdaptiveExecutorService) executorService : null;
+    }
+
     // Setters
 
     protected EBClient setWorkerCount(int workerCount) {
@@ -319,6 +473,35 @@ public class EBClient {
         return this;
     }
 
+    protected EBClient setExecutorMode(EBClientExecutorMode executorMode) {
+        if (executorMode == null){
+            throw new NullPointerException("Executor mode cannot be null");
+        }
+
+        this.executorMode = executorMode;
+        return this;
+    }
+
+    protected EBClient setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    protected EBClient setMinConcurrency(int minConcurrency) {
+        this.minConcurrency = minConcurrency;
+        return this;
+    }
+
+    protected EBClient setReservedConcurrency(int reservedConcurrency) {
+        this.reservedConcurrency = reservedConcurrency;
+        return this;
+    }
+
+    protected EBClient setScheduler(EBPriorityScheduler scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
     protected EBClient setDefaultSettings(EBConnectionSettings settings) throws MalformedURLException {
         if (this.engine == null){
             this.engine = EBEngine.defaultEngine();
@@ -0,0 +1,35 @@
+package com.enigmabridge.client;
+
+/**
+ * Execution modes of the {@link EBClient} executor, see {@link EBClientExecutors}.
+ * ProcessData calls block a thread for the whole network round trip, mode determines
+ * how many of them can run concurrently and at what cost.
+ */
+public enum EBClientExecutorMode {
+    /**
+     * Fixed thread pool with worker count threads.
+     */
+    FIXED,
+
+    /**
+     * Thread pool growing up to the concurrency limit, idle threads time out.
+     */
+    ELASTIC,
+
+    /**
+     * New virtual thread per task, concurrency is limited by a semaphore.
+     * Requires JDK with virtual threads, ELASTIC is used otherwise.
+     */
+    VIRTUAL,
+
+    /**
+     * Thread pool sized continuously from the observed latency and queue depth,
+     * within the minimal concurrency and concurrency limit, see {@link EBAdaptiveExecutorService}.
+     */
+    ADAPTIVE,
+
+    /**
+     * Tasks run in the submitting thread, concurrency is limited by a semaphore.
+     */
+    CALLER_RUNS
+}
@@ -0,0 +1,301 @@
+package com.enigmabridge.client;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors for {@link EBClient} execution modes.
+ *
+ * Virtual threads are detected at runtime, the library is compiled for older JDKs.
+ */
+public class EBClientExecutors {
+    public static final long ELASTIC_KEEP_ALIVE_SECONDS = 60L;
+    public static final int DEFAULT_ELASTIC_CONCURRENCY = 64;
+    public static final int DEFAULT_VIRTUAL_CONCURRENCY = 4096;
+    public static final int DEFAULT_CALLER_RUNS_CONCURRENCY = 1024;
+    public static final int DEFAULT_ADAPTIVE_CONCURRENCY = 256;
+
+    private static volatile Method virtualFactory;
+    private static volatile boolean virtualChecked;
+
+    private EBClientExecutors() {
+    }
+
+    /**
+     * Creates executor for the given mode.
+     *
+     * @param mode execution mode
+     * @param concurrency maximal number of concurrently running tasks
+     * @return executor
+     */
+    public static ExecutorService create(EBClientExecutorMode mode, int concurrency){
+        return create(mode, 1, concurrency);
+    }
+
+    /**
+     * Creates executor for the given mode.
+     *
+     * @param mode execution mode
+     * @param minConcurrency minimal pool size, used by ADAPTIVE mode
+     * @param concurrency maximal number of concurrently running tasks
+     * @return executor
+     */
+    public static ExecutorService create(EBClientExecutorMode mode, int minConcurrency, int concurrency){
+        if (concurrency <= 0){
+            throw new IllegalArgumentException("Concurrency has to be positive");
+        }
+
+        switch (mode){
+            case FIXED:
+                return Executors.newFixedThreadPool(concurrency);
+
+            case ELASTIC:
+                return createElastic(concurrency);
+
+            case VIRTUAL:
+                final ExecutorService virtual = createVirtual();
+                return virtual == null ?
+                        createElastic(concurrency) :
+                        new BoundedExecutorService(virtual, concurrency);
+
+            case ADAPTIVE:
+                return new EBAdaptiveExecutorService(Math.max(1, Math.min(minConcurrency, concurrency)), concurrency);
+
+            case CALLER_RUNS:
+                return new CallerRunsExecutorService(concurrency);
+
+            default:
+                throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    /**
+     * Default concurrency limit for the mode.
+     *
+     * @param mode execution mode
+     * @param workerCount worker count, used by FIXED mode
+     * @return concurrency limit
+     */
+    public static int getDefaultConcurrency(EBClientExecutorMode mode, int workerCount){
+        switch (mode){
+            case ELASTIC:
+                return DEFAULT_ELASTIC_CONCURRENCY;
+            case VIRTUAL:
+                return isVirtualThreadSupported() ? DEFAULT_VIRTUAL_CONCURRENCY : DEFAULT_ELASTIC_CONCURRENCY;
+            case CALLER_RUNS:
+                return DEFAULT_CALLER_RUNS_CONCURRENCY;
+            case ADAPTIVE:
+                return DEFAULT_ADAPTIVE_CONCURRENCY;
+            default:
+                return workerCount;
+        }
+    }
+
+    /**
+     * Returns true if running JDK supports virtual threads.
+     * @return true if virtual threads are available
+     */
+    public static boolean isVirtualThreadSupported(){
+        return getVirtualFactory() != null;
+    }
+
+    protected static ExecutorService createElastic(int concurrency){
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor res = new ThreadPoolExecutor(concurrency, concurrency,
+                ELASTIC_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r, "eb-client-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        res.allowCoreThreadTimeOut(true);
+        return res;
+    }
+
+    protected static ExecutorService createVirtual(){
+        final Method factory = getVirtualFactory();
+        if (factory == null){
+            return null;
+        }
+
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Method getVirtualFactory(){
+        if (virtualChecked){
+            return virtualFactory;
+        }
+
+        try {
+            virtualFactory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            virtualFactory = null;
+        }
+
+        virtualChecked = true;
+        return virtualFactory;
+    }
+
+    /**
+     * Limits number of concurrently running tasks of the delegate executor.
+     * Tasks wait for a permit in the executing thread, thus suitable for executors with cheap threads.
+     */
+    public static class BoundedExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        private final int concurrency;
+
+        public BoundedExecutorService(ExecutorService delegate, int concurrency) {
+            this.delegate = delegate;
+            this.concurrency = concurrency;
+            this.permits = new Semaphore(concurrency);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            delegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    permits.acquireUninterruptibly();
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+    }
+
+    /**
+     * Runs tasks in the submitting thread, at most concurrency tasks at a time.
+     * Futures returned by submit() are already completed.
+     */
+    public static class CallerRunsExecutorService extends AbstractExecutorService {
+        private final Semaphore permits;
+        private final int concurrency;
+        private final Object lock = new Object();
+        private int running;
+        private volatile boolean shutdown;
+
+        public CallerRunsExecutorService(int concurrency) {
+            this.concurrency = concurrency;
+            this.permits = new Semaphore(concurrency);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            synchronized (lock){
+                if (shutdown){
+                    throw new RejectedExecutionException("Executor is shut down");
+                }
+                running += 1;
+            }
+
+            permits.acquireUninterruptibly();
+            try {
+                command.run();
+
+            } finally {
+                permits.release();
+                synchronized (lock){
+                    running -= 1;
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (lock){
+                shutdown = true;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown();
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (lock){
+                return shutdown && running == 0;
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (lock){
+                while(!(shutdown && running == 0)){
+                    final long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0){
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return true;
+            }
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+    }
+}
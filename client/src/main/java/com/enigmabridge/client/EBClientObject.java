@@ -3,6 +3,7 @@ package com.enigmabridge.client;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.SignatureException;
 
 /**
@@ -86,6 +87,16 @@ public class EBClientObject implements EBCommonCrypto {
         return cryptoWrapper.verify(buffer, offset, length);
     }
 
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException {
+        return cryptoWrapper.update(input, output);
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        return cryptoWrapper.doFinal(input, output);
+    }
+
     protected void checkInit(){
 
     }
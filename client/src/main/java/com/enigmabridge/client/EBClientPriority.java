@@ -0,0 +1,36 @@
+package com.enigmabridge.client;
+
+/**
+ * Priority classes of asynchronous operations, see {@link EBPriorityScheduler}.
+ * Each class has its own queue, queues share the client concurrency by weight.
+ */
+public enum EBClientPriority {
+    /**
+     * Latency critical, user facing operations. Has reserved concurrency.
+     */
+    INTERACTIVE(8),
+
+    /**
+     * Default class.
+     */
+    NORMAL(4),
+
+    /**
+     * Background bulk jobs, e.g., re-encryption.
+     */
+    BULK(1);
+
+    private final int defaultWeight;
+
+    EBClientPriority(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * Share of dispatches of the class when all queues are backlogged.
+     * @return weight
+     */
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+}
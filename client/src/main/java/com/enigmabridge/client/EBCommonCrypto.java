@@ -3,6 +3,7 @@ package com.enigmabridge.client;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.SignatureException;
 
 /**
@@ -20,6 +21,17 @@ public interface EBCommonCrypto {
 
     byte[] update(byte[] buffer, int offset, int length) throws SignatureException;
 
+    /**
+     * Processes all remaining bytes of the input buffer, writes the result to the output buffer.
+     * Positions of both buffers are advanced by the number of bytes consumed / produced.
+     * Direct buffers are supported.
+     *
+     * @param input input buffer
+     * @param output output buffer
+     * @return number of bytes written to the output
+     */
+    int    update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException;
+
     byte[] doFinal(byte[] buffer) throws BadPaddingException, IllegalBlockSizeException, SignatureException;
 
     byte[] doFinal(byte[] buffer, int offset, int length) throws BadPaddingException, IllegalBlockSizeException, SignatureException;
@@ -28,6 +40,17 @@ public interface EBCommonCrypto {
 
     int    doFinal(byte[] buffer, int offset, int length, byte[] bufferOut, int offsetOut) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException;
 
+    /**
+     * Finishes the operation on all remaining bytes of the input buffer, writes the result to the output buffer.
+     * Positions of both buffers are advanced by the number of bytes consumed / produced.
+     * Direct buffers are supported.
+     *
+     * @param input input buffer, may be null
+     * @param output output buffer
+     * @return number of bytes written to the output
+     */
+    int    doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException;
+
     byte[] processData(byte[] buffer) throws BadPaddingException, IllegalBlockSizeException, SignatureException;
 
     byte[] processData(byte[] buffer, int offset, int length) throws BadPaddingException, IllegalBlockSizeException, SignatureException;
@@ -3,6 +3,7 @@ package com.enigmabridge.client;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.SignatureException;
 
 /**
@@ -54,4 +55,80 @@ public abstract class EBCommonCryptoBase implements EBCommonCrypto {
     public boolean verify(byte[] buffer) throws SignatureException {
         return verify(buffer, 0, buffer == null ? 0 : buffer.length);
     }
+
+    /**
+     * Generic ByteBuffer update.
+     * Heap buffers are processed in place via their backing arrays, direct buffers through a temporary array.
+     * Subclasses wrapping primitives with native ByteBuffer support should override this.
+     */
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException {
+        final int inLen = input.remaining();
+        if (input.hasArray() && output.hasArray()){
+            final int written = update(input.array(), input.arrayOffset() + input.position(), inLen,
+                    output.array(), output.arrayOffset() + output.position());
+            input.position(input.position() + inLen);
+            output.position(output.position() + written);
+            return written;
+        }
+
+        final byte[] result = update(toArray(input), 0, inLen);
+        return putResult(result, output);
+    }
+
+    /**
+     * Generic ByteBuffer doFinal.
+     * Heap buffers are processed in place via their backing arrays, direct buffers through a temporary array.
+     * Subclasses wrapping primitives with native ByteBuffer support should override this.
+     */
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        final int inLen = input == null ? 0 : input.remaining();
+        if ((input == null || input.hasArray()) && output.hasArray()){
+            final int written = doFinal(
+                    input == null ? null : input.array(),
+                    input == null ? 0 : input.arrayOffset() + input.position(),
+                    inLen,
+                    output.array(), output.arrayOffset() + output.position());
+            if (input != null) {
+                input.position(input.position() + inLen);
+            }
+            output.position(output.position() + written);
+            return written;
+        }
+
+        final byte[] result = doFinal(input == null ? null : toArray(input), 0, inLen);
+        return putResult(result, output);
+    }
+
+    /**
+     * Reads all remaining bytes from the buffer, advances its position.
+     * @param input buffer to read
+     * @return byte array with the remaining content
+     */
+    protected static byte[] toArray(ByteBuffer input){
+        final byte[] buff = new byte[input.remaining()];
+        input.get(buff);
+        return buff;
+    }
+
+    /**
+     * Writes result to the output buffer.
+     * @param result result to write, may be null
+     * @param output destination buffer
+     * @return number of bytes written
+     * @throws ShortBufferException if the output buffer cannot hold the result
+     */
+    protected static int putResult(byte[] result, ByteBuffer output) throws ShortBufferException {
+        if (result == null){
+            return 0;
+        }
+
+        if (output.remaining() < result.length){
+            throw new ShortBufferException("Output buffer too short, needed: " + result.length);
+        }
+
+        output.put(result);
+        return result.length;
+    }
 }
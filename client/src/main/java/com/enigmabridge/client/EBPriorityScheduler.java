@@ -0,0 +1,304 @@
+package com.enigmabridge.client;
+
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Schedules client tasks from priority lanes to the client executor.
+ *
+ * Each {@link EBClientPriority} has its own FIFO queue. At most limit tasks are passed to the executor at a time,
+ * so tasks wait in the lanes instead of the executor FIFO. Free slots are assigned by smooth weighted round robin
+ * over the backlogged lanes, thus lanes share the concurrency by weight and a bulk backlog cannot starve other lanes.
+ * Reserved concurrency is available to the INTERACTIVE lane only: other lanes are dispatched
+ * only while fewer than limit - reserved tasks are running.
+ *
+ * Limit of the adaptive executor follows the current adaptive limit.
+ *
+ * Queue-wait time (submission to dispatch) is measured per lane.
+ */
+public class EBPriorityScheduler {
+    private final Executor executor;
+    private final int limit;
+    private final int reserved;
+    private final Map<EBClientPriority, Lane> lanes = new EnumMap<EBClientPriority, Lane>(EBClientPriority.class);
+    private final ThreadLocal<Boolean> dispatching = new ThreadLocal<Boolean>();
+
+    private int running;
+
+    /**
+     * @param executor executor running the tasks
+     * @param limit maximal number of tasks passed to the executor at once
+     * @param reserved number of slots reserved for the INTERACTIVE lane, less than limit
+     */
+    public EBPriorityScheduler(Executor executor, int limit, int reserved) {
+        if (executor == null){
+            throw new NullPointerException("Executor cannot be null");
+        }
+        if (limit <= 0){
+            throw new IllegalArgumentException("Limit has to be positive");
+        }
+
+        this.executor = executor;
+        this.limit = limit;
+        this.reserved = Math.max(0, Math.min(reserved, limit - 1));
+        for(EBClientPriority priority : EBClientPriority.values()){
+            lanes.put(priority, new Lane(priority, priority.getDefaultWeight()));
+        }
+    }
+
+    /**
+     * Default reserved concurrency for the INTERACTIVE lane, a quarter of the limit.
+     * @param limit concurrency limit
+     * @return reserved slots
+     */
+    public static int getDefaultReserved(int limit){
+        return limit / 4;
+    }
+
+    /**
+     * Sets the weight of the lane.
+     * @param priority lane
+     * @param weight positive weight
+     * @return this
+     */
+    public synchronized EBPriorityScheduler setWeight(EBClientPriority priority, int weight){
+        if (weight <= 0){
+            throw new IllegalArgumentException("Weight has to be positive");
+        }
+
+        lanes.get(priority).weight = weight;
+        return this;
+    }
+
+    /**
+     * Enqueues the task to the lane.
+     * Cancelling the future of a waiting task removes it from the lane.
+     *
+     * @param priority lane
+     * @param task task to run
+     * @param <T> result type
+     * @return future of the task
+     */
+    public <T> Future<T> submit(EBClientPriority priority, Callable<T> task){
+        final PrioritizedTask<T> pTask = new PrioritizedTask<T>(lanes.get(priority == null ? EBClientPriority.NORMAL : priority), task);
+        synchronized (this){
+            pTask.lane.queue.add(pTask);
+            pTask.lane.submitted += 1;
+        }
+
+        dispatch();
+        return pTask;
+    }
+
+    /**
+     * Passes tasks to the executor while there are free slots.
+     * Executor may run the task in the calling thread, nested calls are handled by the outermost loop.
+     */
+    protected void dispatch(){
+        if (dispatching.get() != null){
+            return;
+        }
+
+        dispatching.set(Boolean.TRUE);
+        try {
+            PrioritizedTask<?> task;
+            while((task = next()) != null){
+                try {
+                    executor.execute(task);
+                } catch(RejectedExecutionException e){
+                    synchronized (this){
+                        running -= 1;
+                    }
+                    task.reject(e);
+                }
+            }
+        } finally {
+            dispatching.remove();
+        }
+    }
+
+    /**
+     * Picks the next task to run, by smooth weighted round robin among eligible lanes.
+     * @return task or null if no slot is free or no task is waiting
+     */
+    protected synchronized PrioritizedTask<?> next(){
+        final int curLimit = getCurrentLimit();
+        if (running >= curLimit){
+            return null;
+        }
+
+        final boolean reservedOnly = running >= curLimit - Math.min(reserved, curLimit - 1);
+        Lane best = null;
+        int totalWeight = 0;
+        for(Lane lane : lanes.values()){
+            if (lane.queue.isEmpty() || (reservedOnly && lane.priority != EBClientPriority.INTERACTIVE)){
+                continue;
+            }
+
+            lane.current += lane.weight;
+            totalWeight += lane.weight;
+            if (best == null || lane.current > best.current){
+                best = lane;
+            }
+        }
+
+        if (best == null){
+            return null;
+        }
+
+        best.current -= totalWeight;
+        final PrioritizedTask<?> task = best.queue.poll();
+        best.recordWait(nanoTime() - task.submittedNanos);
+        running += 1;
+        return task;
+    }
+
+    protected void onTaskFinished(){
+        synchronized (this){
+            running -= 1;
+        }
+
+        dispatch();
+    }
+
+    /**
+     * Time source of the queue-wait measurement.
+     * @return current time in nanoseconds
+     */
+    protected long nanoTime(){
+        return System.nanoTime();
+    }
+
+    /**
+     * Concurrency limit, for adaptive executor its current limit.
+     * @return limit
+     */
+    public int getCurrentLimit(){
+        if (executor instanceof EBAdaptiveExecutorService){
+            return Math.max(1, Math.min(limit, (int) ((EBAdaptiveExecutorService) executor).getLimit()));
+        }
+
+        return limit;
+    }
+
+    /**
+     * Task waiting in the lane, runs the callable in the executor.
+     */
+    protected class PrioritizedTask<T> extends FutureTask<T> {
+        private final Lane lane;
+        private final long submittedNanos = nanoTime();
+
+        PrioritizedTask(Lane lane, Callable<T> callable) {
+            super(callable);
+            this.lane = lane;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean res = super.cancel(mayInterruptIfRunning);
+            if (res){
+                synchronized (EBPriorityScheduler.this){
+                    if (lane.queue.remove(this)){
+                        lane.cancelled += 1;
+                    }
+                }
+            }
+
+            return res;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                onTaskFinished();
+            }
+        }
+
+        void reject(RejectedExecutionException e){
+            setException(e);
+        }
+    }
+
+    /**
+     * Queue of one priority class with queue-wait statistics.
+     */
+    private static class Lane {
+        private final EBClientPriority priority;
+        private final LinkedList<PrioritizedTask<?>> queue = new LinkedList<PrioritizedTask<?>>();
+        private int weight;
+        private int current;
+
+        private long submitted;
+        private long dispatched;
+        private long cancelled;
+        private long waitNanosSum;
+        private long waitNanosMax;
+
+        Lane(EBClientPriority priority, int weight) {
+            this.priority = priority;
+            this.weight = weight;
+        }
+
+        private void recordWait(long waitNanos){
+            dispatched += 1;
+            waitNanosSum += waitNanos;
+            waitNanosMax = Math.max(waitNanosMax, waitNanos);
+        }
+    }
+
+    // Metrics
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getReserved() {
+        return reserved;
+    }
+
+    public synchronized int getWeight(EBClientPriority priority) {
+        return lanes.get(priority).weight;
+    }
+
+    public synchronized int getQueueDepth(EBClientPriority priority) {
+        return lanes.get(priority).queue.size();
+    }
+
+    public synchronized long getSubmitted(EBClientPriority priority) {
+        return lanes.get(priority).submitted;
+    }
+
+    public synchronized long getDispatched(EBClientPriority priority) {
+        return lanes.get(priority).dispatched;
+    }
+
+    public synchronized long getCancelled(EBClientPriority priority) {
+        return lanes.get(priority).cancelled;
+    }
+
+    /**
+     * Mean time tasks of the lane spent waiting for dispatch.
+     * @param priority lane
+     * @return nanoseconds
+     */
+    public synchronized long getMeanQueueWaitNanos(EBClientPriority priority) {
+        final Lane lane = lanes.get(priority);
+        return lane.dispatched == 0 ? 0 : lane.waitNanosSum / lane.dispatched;
+    }
+
+    public synchronized long getMaxQueueWaitNanos(EBClientPriority priority) {
+        return lanes.get(priority).waitNanosMax;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.LinkedList;
 
 /**
  * Listener accumulating onUpdate() calls to the accumulator buffer.
+ * Whole output is held in memory, for long streams use EBClientObjectAsync with EBAsyncResultSink.
  *
  * Created by dusanklinec on 27.07.16.
  */
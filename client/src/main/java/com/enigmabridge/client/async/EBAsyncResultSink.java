@@ -0,0 +1,28 @@
+package com.enigmabridge.client.async;
+
+import java.io.IOException;
+
+/**
+ * Destination of async crypto results, written as each task completes.
+ * Results are not accumulated in memory, slow sink blocks the processing of the next task (backpressure).
+ *
+ * Writes of one async object are serial and in order of submitted operations.
+ */
+public interface EBAsyncResultSink {
+    /**
+     * Writes result of update() or doFinal(). May block until the sink accepts the data.
+     *
+     * @param buffer result buffer
+     * @param offset offset of the data
+     * @param length length of the data
+     * @throws IOException sink failure, aborts remaining operations of the stream
+     */
+    void write(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Called after the doFinal() result was written, the stream is complete.
+     *
+     * @throws IOException sink failure
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,75 @@
+package com.enigmabridge.client.async;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Result sinks writing to streams and channels.
+ * Stream / channel is flushed on stream completion, not closed, caller owns it.
+ */
+public class EBAsyncResultSinks {
+    private EBAsyncResultSinks() {
+    }
+
+    /**
+     * Sink writing to the output stream, blocking stream provides backpressure.
+     *
+     * @param os output stream
+     * @return sink
+     */
+    public static EBAsyncResultSink forStream(final OutputStream os){
+        if (os == null){
+            throw new NullPointerException("Output stream is null");
+        }
+
+        return new EBAsyncResultSink() {
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                os.write(buffer, offset, length);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                os.flush();
+            }
+        };
+    }
+
+    /**
+     * Sink writing to the channel.
+     * Non-blocking channel is retried until the whole result is written.
+     *
+     * @param channel writable channel
+     * @return sink
+     */
+    public static EBAsyncResultSink forChannel(final WritableByteChannel channel){
+        if (channel == null){
+            throw new NullPointerException("Channel is null");
+        }
+
+        return new EBAsyncResultSink() {
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                final ByteBuffer src = ByteBuffer.wrap(buffer, offset, length);
+                while(src.hasRemaining()){
+                    if (channel.write(src) > 0){
+                        continue;
+                    }
+
+                    if (Thread.currentThread().isInterrupted()){
+                        throw new InterruptedIOException("Interrupted while writing to the channel");
+                    }
+                    Thread.yield();
+                }
+            }
+
+            @Override
+            public void finish() throws IOException {
+                // Nothing to flush.
+            }
+        };
+    }
+}
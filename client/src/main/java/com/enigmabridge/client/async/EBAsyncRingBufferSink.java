@@ -0,0 +1,147 @@
+package com.enigmabridge.client.async;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Bounded ring buffer sink, results are consumed by the caller with read().
+ * Writer blocks while the buffer is full, so memory stays bounded by the capacity regardless of the stream length.
+ *
+ * Reader gets -1 after the stream was finished and all data read, reset() prepares the buffer for the next stream.
+ * Closing the buffer fails the pending and further writes, remaining async operations are aborted.
+ */
+public class EBAsyncRingBufferSink implements EBAsyncResultSink {
+    private final byte[] ring;
+    private int readPos;
+    private int size;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * @param capacity buffer capacity in bytes
+     */
+    public EBAsyncRingBufferSink(int capacity) {
+        this(new byte[capacity]);
+    }
+
+    /**
+     * @param buffer caller provided buffer used as the ring storage
+     */
+    public EBAsyncRingBufferSink(byte[] buffer) {
+        if (buffer == null || buffer.length == 0){
+            throw new IllegalArgumentException("Ring buffer has to be non-empty");
+        }
+        this.ring = buffer;
+    }
+
+    @Override
+    public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+        while(length > 0){
+            while(size == ring.length && !closed){
+                await();
+            }
+
+            if (closed){
+                throw new IOException("Ring buffer sink closed");
+            }
+
+            final int writePos = (readPos + size) % ring.length;
+            final int chunk = Math.min(length, Math.min(ring.length - size, ring.length - writePos));
+            System.arraycopy(buffer, offset, ring, writePos, chunk);
+            size += chunk;
+            offset += chunk;
+            length -= chunk;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void finish() throws IOException {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Reads available data, blocks until some data is available or the stream is finished.
+     *
+     * @param buffer destination
+     * @param offset offset in destination
+     * @param length maximum number of bytes to read
+     * @return number of bytes read, -1 if the stream is finished and drained
+     * @throws IOException if interrupted or closed
+     */
+    public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0){
+            return 0;
+        }
+
+        while(size == 0 && !finished && !closed){
+            await();
+        }
+
+        if (closed){
+            throw new IOException("Ring buffer sink closed");
+        }
+
+        if (size == 0){
+            return -1;
+        }
+
+        int read = 0;
+        while(read < length && size > 0){
+            final int chunk = Math.min(length - read, Math.min(size, ring.length - readPos));
+            System.arraycopy(ring, readPos, buffer, offset + read, chunk);
+            readPos = (readPos + chunk) % ring.length;
+            size -= chunk;
+            read += chunk;
+        }
+
+        notifyAll();
+        return read;
+    }
+
+    /**
+     * @return number of bytes readable without blocking
+     */
+    public synchronized int available(){
+        return size;
+    }
+
+    /**
+     * @return true if the stream was finished and all data were read
+     */
+    public synchronized boolean isDrained(){
+        return finished && size == 0;
+    }
+
+    /**
+     * Prepares the buffer for the next stream, unread data are discarded.
+     */
+    public synchronized void reset(){
+        readPos = 0;
+        size = 0;
+        finished = false;
+        notifyAll();
+    }
+
+    /**
+     * Closes the buffer, blocked writer and reader fail.
+     */
+    public synchronized void close(){
+        closed = true;
+        notifyAll();
+    }
+
+    public int getCapacity(){
+        return ring.length;
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the ring buffer");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.enigmabridge.client.async;
 
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.concurrent.*;
 
@@ -7,6 +8,10 @@ import java.util.concurrent.*;
  * Async client object supports incremental update() call and preserves the order of commands.
  * Only one submitted task is running at the time.
  *
+ * With a result sink set, update() and doFinal() results are written to the sink as each task completes
+ * instead of being accumulated by a listener. The next task is started after the sink accepted the result,
+ * together with the limit on pending tasks the memory stays bounded regardless of the stream length.
+ *
  * Created by dusanklinec on 26.07.16.
  */
 public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Future<EBAsyncCryptoEvent> {
@@ -26,8 +31,28 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
      */
     protected volatile boolean cancelled = false;
 
+    /**
+     * Sink the results are written to, null if results are passed only to listeners.
+     */
+    protected volatile EBAsyncResultSink sink;
+
+    /**
+     * Maximum number of enqueued tasks, submitting more blocks the caller. 0 for unbounded.
+     */
+    protected int maxPendingTasks = 0;
+
     public static abstract class AbstractBuilder<T extends EBClientObjectAsync, B extends EBClientObjectAsync.AbstractBuilder>
             extends EBClientObjectAsyncSimple.AbstractBuilder<T, B> {
+        public B setSink(EBAsyncResultSink sink){
+            getObj().setSink(sink);
+            return getThisBuilder();
+        }
+
+        public B setMaxPendingTasks(int maxPendingTasks){
+            getObj().setMaxPendingTasks(maxPendingTasks);
+            return getThisBuilder();
+        }
+
         public abstract T build();
 
         public abstract B getThisBuilder();
@@ -84,6 +109,9 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
             }
         }
 
+        // Wake up callers blocked on the full queue.
+        notifyAll();
+
         return cancelReturn;
     }
 
@@ -166,6 +194,7 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
      * @return future
      */
     public synchronized Future<EBAsyncCryptoEvent> update(byte[] buffer, int offset, int length){
+        awaitQueueSpace();
         if (cancelled){
             throw new RuntimeException("Async cancelled");
         }
@@ -178,6 +207,7 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
     }
 
     public synchronized Future<EBAsyncCryptoEvent> doFinal(byte[] buffer, int offset, int length){
+        awaitQueueSpace();
         if (cancelled){
             throw new RuntimeException("Async cancelled");
         }
@@ -191,6 +221,7 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
     }
 
     public synchronized Future<EBAsyncCryptoEvent> verify(byte[] buffer, int offset, int length) {
+        awaitQueueSpace();
         if (cancelled){
             throw new RuntimeException("Async cancelled");
         }
@@ -205,6 +236,20 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
 
     // Task management.
 
+    /**
+     * Blocks the submitting caller while the job queue is full, monitor is released while waiting.
+     */
+    protected void awaitQueueSpace(){
+        while(maxPendingTasks > 0 && !cancelled && jobQueue.size() >= maxPendingTasks){
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the job queue", e);
+            }
+        }
+    }
+
     protected synchronized void checkQueue(){
         // Something is running, do nothing.
         if (currentlyRunningTask != null){
@@ -217,21 +262,71 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
         // Just peek the task. Will be removed when finished.
         final ObjectTask newTask = jobQueue.peek();
         currentlyRunningTask = newTask;
-        future = client.getExecutorService().submit(newTask);
+        future = submit(newTask);
     }
 
     /**
      * Called by task when computation finishes.
+     * Result is written to the sink outside the lock, slow sink does not block cancel().
      *
      * @param task task triggering the call
      * @param event result of the computation
      */
-    protected synchronized void onTaskFinished(ObjectTask task, EBAsyncCryptoEvent event){
+    @Override
+    protected void onTaskFinished(ObjectTask task, EBAsyncCryptoEvent event){
+        onTaskFinishedLocked(task, writeSink(task, event));
+    }
+
+    /**
+     * Writes update / doFinal result to the sink.
+     * Only the task at the head of the queue runs, so writes are serial and ordered.
+     *
+     * @param task finished task
+     * @param event result of the computation
+     * @return event to process, fail event if the sink failed
+     */
+    protected EBAsyncCryptoEvent writeSink(ObjectTask task, EBAsyncCryptoEvent event){
+        final EBAsyncResultSink curSink = sink;
+        final boolean wasFinal = event instanceof EBAsyncCryptoEventDoFinal;
+        final boolean wasUpdate = event instanceof EBAsyncCryptoEventUpdate;
+        if (curSink == null || cancelled || (!wasFinal && !wasUpdate) || jobQueue.peek() != task){
+            return event;
+        }
+
+        try {
+            final byte[] result = event.getResultBuffer();
+            if (result != null && result.length > 0){
+                curSink.write(result, 0, result.length);
+            }
+
+            if (wasFinal){
+                curSink.finish();
+            }
+
+            return event;
+
+        } catch(IOException e){
+            return new EBAsyncCryptoEventFail(this, task.getDiscriminator(), e);
+        }
+    }
+
+    /**
+     * Processes the finished task under the lock, notifies listeners.
+     *
+     * @param task task triggering the call
+     * @param event result of the computation
+     */
+    protected synchronized void onTaskFinishedLocked(ObjectTask task, EBAsyncCryptoEvent event){
         final boolean wasFail = event instanceof EBAsyncCryptoEventFail;
         final boolean wasFinal = event instanceof EBAsyncCryptoEventDoFinal;
         final boolean wasUpdate = event instanceof EBAsyncCryptoEventUpdate;
         final boolean wasVerify = event instanceof EBAsyncCryptoEventVerify;
 
+        // Task is not running anymore, next one can be started by checkQueue().
+        if (currentlyRunningTask == task){
+            currentlyRunningTask = null;
+        }
+
         // Remove the task from the queue. There is max 1 task running from the queue all the time.
         final ObjectTask polledTask = jobQueue.peek();
         if (polledTask == null || !polledTask.equals(task)){
@@ -274,8 +369,9 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
             }
         }
 
-        // Check the queue again.
+        // Check the queue again, wake up callers blocked on the full queue.
         checkQueue();
+        notifyAll();
     }
 
     // Getters
@@ -283,4 +379,46 @@ public class EBClientObjectAsync extends EBClientObjectAsyncSimple implements Fu
     protected ConcurrentLinkedQueue<ObjectTask> getJobQueue() {
         return jobQueue;
     }
+
+    public EBAsyncResultSink getSink() {
+        return sink;
+    }
+
+    public int getMaxPendingTasks() {
+        return maxPendingTasks;
+    }
+
+    // Setters
+
+    /**
+     * Sets the result sink. Can be changed only when no stream is in progress.
+     *
+     * @param sink result sink, null to pass results only to listeners
+     * @return this
+     */
+    public synchronized EBClientObjectAsync setSink(EBAsyncResultSink sink) {
+        if (!clearForSettingsChange){
+            throw new IllegalStateException("Sink cannot be changed during the stream processing");
+        }
+
+        this.sink = sink;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of enqueued tasks, submitting more blocks the caller.
+     * Do not submit from listener callbacks with the limit set, the callback would wait for itself.
+     *
+     * @param maxPendingTasks maximum number of enqueued tasks, 0 for unbounded
+     * @return this
+     */
+    public synchronized EBClientObjectAsync setMaxPendingTasks(int maxPendingTasks) {
+        if (maxPendingTasks < 0){
+            throw new IllegalArgumentException("Maximum number of pending tasks cannot be negative");
+        }
+
+        this.maxPendingTasks = maxPendingTasks;
+        notifyAll();
+        return this;
+    }
 }
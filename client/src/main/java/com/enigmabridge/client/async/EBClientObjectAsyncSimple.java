@@ -1,6 +1,7 @@
 package com.enigmabridge.client.async;
 
 import com.enigmabridge.client.EBClient;
+import com.enigmabridge.client.EBClientPriority;
 import com.enigmabridge.client.EBCommonCrypto;
 
 import javax.crypto.BadPaddingException;
@@ -45,6 +46,11 @@ public class EBClientObjectAsyncSimple {
      */
     protected Object discriminator;
 
+    /**
+     * Priority lane of the submitted operations.
+     */
+    protected EBClientPriority priority = EBClientPriority.NORMAL;
+
     /**
      * The last final event produced.
      */
@@ -62,6 +68,11 @@ public class EBClientObjectAsyncSimple {
             return getThisBuilder();
         }
 
+        public B setPriority(EBClientPriority priority){
+            getObj().setPriority(priority);
+            return getThisBuilder();
+        }
+
         public abstract T build();
         public abstract B getThisBuilder();
         public abstract T getObj();
@@ -137,7 +148,7 @@ public class EBClientObjectAsyncSimple {
 
     public synchronized Future<EBAsyncCryptoEvent> doFinal(byte[] buffer, int offset, int length){
         currentlyRunningTask = new EBClientObjectAsync.ObjectTaskDoFinal(this, discriminator, buffer, offset, length);
-        future = client.getExecutorService().submit(currentlyRunningTask);
+        future = submit(currentlyRunningTask);
         return future;
     }
 
@@ -155,10 +166,20 @@ public class EBClientObjectAsyncSimple {
 
     public synchronized Future<EBAsyncCryptoEvent> verify(byte[] buffer, int offset, int length) {
         currentlyRunningTask = new EBClientObjectAsync.ObjectTaskVerify(this, discriminator, buffer, offset, length);
-        future = client.getExecutorService().submit(currentlyRunningTask);
+        future = submit(currentlyRunningTask);
         return future;
     }
 
+    /**
+     * Submits the task to the client scheduler, to the lane of the current priority.
+     *
+     * @param task task to run
+     * @return future
+     */
+    protected Future<EBAsyncCryptoEvent> submit(ObjectTask task){
+        return client.getScheduler().submit(priority, task);
+    }
+
     /**
      * Called by task when computation finishes.
      *
@@ -348,6 +369,27 @@ public class EBClientObjectAsyncSimple {
         return discriminator;
     }
 
+    public EBClientPriority getPriority() {
+        return priority;
+    }
+
+    // Setters
+
+    /**
+     * Sets priority lane for the operations submitted from now on.
+     *
+     * @param priority priority class
+     * @return this
+     */
+    public synchronized EBClientObjectAsyncSimple setPriority(EBClientPriority priority) {
+        if (priority == null){
+            throw new NullPointerException("Priority cannot be null");
+        }
+
+        this.priority = priority;
+        return this;
+    }
+
     public EBAsyncCryptoEventDoFinal getLastFinalEvent() {
         return lastFinalEvent;
     }
@@ -0,0 +1,692 @@
+package com.enigmabridge.client.envelope;
+
+import com.enigmabridge.EBCryptoException;
+import com.enigmabridge.EBDataKeyCache;
+import com.enigmabridge.client.wrappers.EBWrappedCipher;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.SignatureException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+/**
+ * Envelope encryption: payload is encrypted locally with AES-256-GCM under a fresh data key,
+ * only the data key is wrapped / unwrapped by EB (one ProcessData call per message).
+ *
+ * Encryption output is {@link EBEnvelopeHeader} followed by the ciphertext segments.
+ * Each segment of {@link EBEnvelopeHeader#getSegmentSize()} plaintext bytes is encrypted separately,
+ * nonce is the random prefix from the header, segment counter and the last segment flag.
+ * Reordered, dropped or truncated segments thus fail authentication.
+ * Decryption input is the same, header may be split over several update() calls.
+ * After doFinal() the cipher is ready for the next message, with a new data key.
+ *
+ * Only one segment is buffered in both directions, decrypted data are released only after
+ * the segment tag is verified.
+ *
+ * Local cipher is the JCA AES/GCM (hardware accelerated where available) if the platform
+ * supports GCM parameters, BouncyCastle lightweight GCM otherwise.
+ */
+public class EBEnvelopeCipher extends EBWrappedCipher {
+    public static final int DATA_KEY_LENGTH = 32;
+    public static final int NONCE_LENGTH = 12;
+    public static final int NONCE_PREFIX_LENGTH = 7;
+    public static final int TAG_LENGTH = 16;
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    public static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long MAX_SEGMENTS = 0xffffffffL;
+    public static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private static final Constructor<?> gcmSpecConstructor = lookupGcmSpecConstructor();
+
+    protected final EBEnvelopeKeyWrapper keyWrapper;
+    protected final boolean forEncryption;
+    protected final SecureRandom random;
+
+    /**
+     * Plaintext segment size of the encrypted messages.
+     */
+    protected int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    /**
+     * JCA GCM is used if available, BouncyCastle otherwise.
+     */
+    protected boolean jcaEnabled = true;
+
+    /**
+     * Optional cache of unwrapped data keys, used on decryption.
+     */
+    protected EBDataKeyCache dataKeyCache;
+
+    /**
+     * Local data cipher of the current message, null before the message starts.
+     */
+    protected DataCipher dataCipher;
+
+    /**
+     * Encryption: header not yet written to the output.
+     */
+    protected byte[] pendingHeader;
+
+    /**
+     * Decryption: header bytes collected so far.
+     */
+    protected byte[] headerBuffer;
+    protected int headerBuffered;
+    protected EBEnvelopeHeader header;
+
+    /**
+     * Input of the current segment: plaintext on encryption, ciphertext with the tag on decryption.
+     */
+    protected byte[] segmentBuffer;
+    protected int segmentBuffered;
+    protected byte[] segmentOutput;
+    protected long segmentIndex;
+
+    public EBEnvelopeCipher(EBEnvelopeKeyWrapper keyWrapper, boolean forEncryption) {
+        this(keyWrapper, forEncryption, null);
+    }
+
+    public EBEnvelopeCipher(EBEnvelopeKeyWrapper keyWrapper, boolean forEncryption, SecureRandom random) {
+        this.keyWrapper = keyWrapper;
+        this.forEncryption = forEncryption;
+        this.random = random == null ? new SecureRandom() : random;
+    }
+
+    // Common crypto
+
+    @Override
+    public byte[] update(byte[] buffer, int offset, int length) throws SignatureException {
+        try {
+            final byte[] out = new byte[getOutputSize(length)];
+            final int written = update(buffer, offset, length, out, 0);
+            return written == out.length ? out : Arrays.copyOf(out, written);
+
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Output size computed incorrectly", e);
+        }
+    }
+
+    @Override
+    public int update(byte[] buffer, int offset, int length, byte[] bufferOut, int offsetOut) throws SignatureException, ShortBufferException {
+        int written = 0;
+        if (forEncryption){
+            startEncryption();
+            if (bufferOut.length - offsetOut < pendingHeaderLength() + getUpdateOutputSize(length)){
+                throw new ShortBufferException("Output buffer too short");
+            }
+
+            written += writePendingHeader(bufferOut, offsetOut);
+
+        } else {
+            final int used = consumeHeader(buffer, offset, length);
+            if (dataCipher == null){
+                return 0;
+            }
+
+            offset += used;
+            length -= used;
+            if (bufferOut.length - offsetOut < getUpdateOutputSize(length)){
+                throw new ShortBufferException("Output buffer too short");
+            }
+        }
+
+        try {
+            return written + processSegments(buffer, offset, length, bufferOut, offsetOut + written);
+
+        } catch (GeneralSecurityException e) {
+            reset();
+            throw new SignatureException("Envelope authentication failed", e);
+        }
+    }
+
+    @Override
+    public byte[] doFinal(byte[] buffer, int offset, int length) throws BadPaddingException, IllegalBlockSizeException, SignatureException {
+        try {
+            final byte[] out = new byte[getOutputSize(length)];
+            final int written = doFinal(buffer, offset, length, out, 0);
+            return written == out.length ? out : Arrays.copyOf(out, written);
+
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("Output size computed incorrectly", e);
+        }
+    }
+
+    @Override
+    public int doFinal(byte[] buffer, int offset, int length, byte[] bufferOut, int offsetOut) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        if (bufferOut.length - offsetOut < getOutputSize(length)){
+            throw new ShortBufferException("Output buffer too short");
+        }
+
+        try {
+            int written = update(buffer, offset, length, bufferOut, offsetOut);
+            if (dataCipher == null){
+                throw new BadPaddingException("Envelope is truncated, header incomplete");
+            }
+
+            if (!forEncryption && segmentBuffered < TAG_LENGTH){
+                throw new BadPaddingException("Envelope is truncated");
+            }
+
+            try {
+                written += processSegment(true, bufferOut, offsetOut + written);
+            } catch (BadPaddingException e) {
+                throw e;
+            } catch (GeneralSecurityException e) {
+                throw new BadPaddingException("Envelope authentication failed: " + e.getMessage());
+            }
+
+            reset();
+            return written;
+
+        } catch (BadPaddingException e) {
+            reset();
+            throw e;
+        }
+    }
+
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException {
+        final byte[] in = toArray(input);
+        return putResult(update(in, 0, in.length), output);
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        final byte[] in = input == null ? new byte[0] : toArray(input);
+        return putResult(doFinal(in, 0, in.length), output);
+    }
+
+    /**
+     * Maximal output size of the next update / doFinal with the given input length.
+     * Encryption starts the message if not started yet, i.e., data key is generated and wrapped.
+     *
+     * @param length input length
+     * @return maximal output length
+     */
+    public int getOutputSize(int length){
+        if (forEncryption){
+            startEncryption();
+            final int total = segmentBuffered + length;
+            final int segments = length == 0 ? 0 : (total - 1) / segmentSize;
+            return pendingHeaderLength() + segments * (segmentSize + TAG_LENGTH) + (total - segments * segmentSize) + TAG_LENGTH;
+        }
+
+        // Plaintext is shorter than the ciphertext.
+        return dataCipher == null ? Math.max(0, length - EBEnvelopeHeader.FIXED_LENGTH) : segmentBuffered + length;
+    }
+
+    /**
+     * Output size of the segments completed by the update with the given input length, header excluded.
+     * Last buffered segment is processed only in doFinal().
+     */
+    protected int getUpdateOutputSize(int length){
+        if (length <= 0){
+            return 0;
+        }
+
+        final int capacity = segmentBuffer.length;
+        final int segments = (segmentBuffered + length - 1) / capacity;
+        return segments * (forEncryption ? capacity + TAG_LENGTH : capacity - TAG_LENGTH);
+    }
+
+    /**
+     * Processes whole stream, input is encrypted / decrypted to the output.
+     * Cipher is ready for the next message afterwards.
+     *
+     * @param in input stream
+     * @param out output stream
+     * @return number of bytes written to the output
+     * @throws IOException
+     * @throws GeneralSecurityException if decryption fails, e.g., data were modified.
+     */
+    public long process(InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        final byte[] inBuff = new byte[STREAM_BUFFER_SIZE];
+        byte[] outBuff = new byte[STREAM_BUFFER_SIZE + 1024];
+        long total = 0;
+
+        try {
+            int read;
+            while((read = in.read(inBuff)) >= 0){
+                if (read == 0){
+                    continue;
+                }
+
+                final int needed = getOutputSize(read);
+                if (outBuff.length < needed){
+                    outBuff = new byte[needed];
+                }
+
+                final int written = update(inBuff, 0, read, outBuff, 0);
+                out.write(outBuff, 0, written);
+                total += written;
+            }
+
+            final int needed = getOutputSize(0);
+            if (outBuff.length < needed){
+                outBuff = new byte[needed];
+            }
+
+            final int written = doFinal(inBuff, 0, 0, outBuff, 0);
+            out.write(outBuff, 0, written);
+            total += written;
+            return total;
+
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Discards the current message state.
+     */
+    public void reset(){
+        if (dataCipher != null){
+            dataCipher.destroy();
+        }
+
+        if (segmentBuffer != null){
+            Arrays.fill(segmentBuffer, (byte) 0);
+            Arrays.fill(segmentOutput, (byte) 0);
+        }
+
+        dataCipher = null;
+        pendingHeader = null;
+        headerBuffer = null;
+        headerBuffered = 0;
+        header = null;
+        segmentBuffer = null;
+        segmentOutput = null;
+        segmentBuffered = 0;
+        segmentIndex = 0;
+    }
+
+    // Segments
+
+    /**
+     * Buffers the input, processes each full segment once more input follows it.
+     * @return number of bytes written to the output
+     */
+    protected int processSegments(byte[] buffer, int offset, int length, byte[] bufferOut, int offsetOut) throws GeneralSecurityException {
+        final int capacity = segmentBuffer.length;
+        int written = 0;
+        while(length > 0){
+            if (segmentBuffered == capacity){
+                written += processSegment(false, bufferOut, offsetOut + written);
+            }
+
+            final int toCopy = Math.min(length, capacity - segmentBuffered);
+            System.arraycopy(buffer, offset, segmentBuffer, segmentBuffered, toCopy);
+            segmentBuffered += toCopy;
+            offset += toCopy;
+            length -= toCopy;
+        }
+
+        return written;
+    }
+
+    /**
+     * Encrypts / decrypts the buffered segment. Output is written only if the segment is authentic.
+     * @param last true for the last segment of the message
+     * @return number of bytes written to the output
+     */
+    protected int processSegment(boolean last, byte[] bufferOut, int offsetOut) throws GeneralSecurityException {
+        if (segmentIndex > MAX_SEGMENTS){
+            throw new GeneralSecurityException("Envelope has too many segments");
+        }
+
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        System.arraycopy(header.getNoncePrefix(), 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        nonce[NONCE_PREFIX_LENGTH] = (byte) (segmentIndex >>> 24);
+        nonce[NONCE_PREFIX_LENGTH + 1] = (byte) (segmentIndex >>> 16);
+        nonce[NONCE_PREFIX_LENGTH + 2] = (byte) (segmentIndex >>> 8);
+        nonce[NONCE_PREFIX_LENGTH + 3] = (byte) segmentIndex;
+        nonce[NONCE_LENGTH - 1] = (byte) (last ? 1 : 0);
+
+        final int processed = dataCipher.process(nonce, segmentBuffer, 0, segmentBuffered, segmentOutput, 0);
+        System.arraycopy(segmentOutput, 0, bufferOut, offsetOut, processed);
+
+        segmentBuffered = 0;
+        segmentIndex += 1;
+        return processed;
+    }
+
+    // Message start
+
+    protected void startEncryption(){
+        if (dataCipher != null){
+            return;
+        }
+
+        final byte[] dataKey = new byte[DATA_KEY_LENGTH];
+        final byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        random.nextBytes(dataKey);
+        random.nextBytes(noncePrefix);
+
+        try {
+            final byte[] wrapped = keyWrapper.wrap(dataKey);
+            final EBEnvelopeHeader newHeader = new EBEnvelopeHeader(
+                    keyWrapper.getWrapAlgorithm(),
+                    EBEnvelopeHeader.DATA_AES_256_GCM,
+                    keyWrapper.getKeyId(),
+                    segmentSize,
+                    wrapped,
+                    noncePrefix);
+
+            pendingHeader = newHeader.getEncoded();
+            dataCipher = createDataCipher(true, dataKey, pendingHeader);
+            header = newHeader;
+            initSegments(segmentSize);
+
+        } catch (IOException e) {
+            throw new EBCryptoException("Data key could not be wrapped", e);
+        } catch (GeneralSecurityException e) {
+            throw new EBCryptoException("Data cipher could not be initialized", e);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    protected void initSegments(int plainSegmentSize){
+        segmentBuffer = new byte[forEncryption ? plainSegmentSize : plainSegmentSize + TAG_LENGTH];
+        segmentOutput = new byte[plainSegmentSize + TAG_LENGTH];
+        segmentBuffered = 0;
+        segmentIndex = 0;
+    }
+
+    protected int pendingHeaderLength(){
+        return pendingHeader == null ? 0 : pendingHeader.length;
+    }
+
+    protected int writePendingHeader(byte[] bufferOut, int offsetOut) throws ShortBufferException {
+        if (pendingHeader == null){
+            return 0;
+        }
+
+        if (bufferOut.length - offsetOut < pendingHeader.length){
+            throw new ShortBufferException("Output buffer too short for the envelope header");
+        }
+
+        System.arraycopy(pendingHeader, 0, bufferOut, offsetOut, pendingHeader.length);
+        final int written = pendingHeader.length;
+        pendingHeader = null;
+        return written;
+    }
+
+    /**
+     * Collects header bytes from the input, initializes data cipher when complete.
+     * @return number of input bytes consumed
+     */
+    protected int consumeHeader(byte[] buffer, int offset, int length) throws SignatureException {
+        if (dataCipher != null){
+            return 0;
+        }
+
+        if (headerBuffer == null){
+            headerBuffer = new byte[EBEnvelopeHeader.FIXED_LENGTH];
+            headerBuffered = 0;
+        }
+
+        try {
+            int used = 0;
+            while(used < length){
+                final int required = EBEnvelopeHeader.getRequiredLength(headerBuffer, 0, headerBuffered);
+                if (headerBuffer.length < required){
+                    headerBuffer = Arrays.copyOf(headerBuffer, required);
+                }
+
+                final int toCopy = Math.min(length - used, required - headerBuffered);
+                System.arraycopy(buffer, offset + used, headerBuffer, headerBuffered, toCopy);
+                headerBuffered += toCopy;
+                used += toCopy;
+
+                if (EBEnvelopeHeader.getHeaderLength(headerBuffer, 0, headerBuffered) == headerBuffered){
+                    startDecryption(EBEnvelopeHeader.parse(headerBuffer, 0, headerBuffered));
+                    break;
+                }
+            }
+
+            return used;
+
+        } catch (IOException e) {
+            reset();
+            throw new SignatureException("Invalid envelope header", e);
+        }
+    }
+
+    protected void startDecryption(EBEnvelopeHeader newHeader) throws IOException {
+        if (newHeader.getWrapAlgorithm() != keyWrapper.getWrapAlgorithm()){
+            throw new IOException("Envelope wrap algorithm does not match the key: " + newHeader.getWrapAlgorithm());
+        }
+
+        if (newHeader.getDataAlgorithm() != EBEnvelopeHeader.DATA_AES_256_GCM){
+            throw new IOException("Unsupported envelope data algorithm: " + newHeader.getDataAlgorithm());
+        }
+
+        if (newHeader.getSegmentSize() <= 0 || newHeader.getSegmentSize() > MAX_SEGMENT_SIZE){
+            throw new IOException("Invalid envelope segment size: " + newHeader.getSegmentSize());
+        }
+
+        if (newHeader.getNoncePrefix().length != NONCE_PREFIX_LENGTH){
+            throw new IOException("Invalid envelope nonce prefix length");
+        }
+
+        final byte[] dataKey = unwrapDataKey(newHeader);
+        try {
+            if (dataKey.length != DATA_KEY_LENGTH){
+                throw new IOException("Invalid data key length");
+            }
+
+            dataCipher = createDataCipher(false, dataKey, newHeader.getEncoded());
+            header = newHeader;
+            headerBuffer = null;
+            initSegments(newHeader.getSegmentSize());
+
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Data cipher could not be initialized", e);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Unwraps data key from the header. Override point.
+     * @param header envelope header
+     * @return data key, zeroized by the caller after use
+     * @throws IOException
+     */
+    protected byte[] unwrapDataKey(EBEnvelopeHeader header) throws IOException {
+        final EBDataKeyCache cache = dataKeyCache;
+        if (cache == null){
+            return keyWrapper.unwrap(header.getWrappedKey());
+        }
+
+        final EBDataKeyCache.Fingerprint fingerprint = getFingerprint(header);
+        final byte[] cached = cache.get(fingerprint);
+        if (cached != null){
+            return cached;
+        }
+
+        final byte[] dataKey = keyWrapper.unwrap(header.getWrappedKey());
+        cache.put(fingerprint, dataKey);
+        return dataKey;
+    }
+
+    /**
+     * Data key cache fingerprint: wrapped key together with the wrapping key identification.
+     */
+    protected static EBDataKeyCache.Fingerprint getFingerprint(EBEnvelopeHeader header){
+        final long keyId = header.getKeyId();
+        final byte[] context = new byte[12];
+        for(int i = 0; i < 8; i++){
+            context[i] = (byte) (keyId >>> (56 - 8 * i));
+        }
+        context[8] = (byte) (header.getWrapAlgorithm() >>> 24);
+        context[9] = (byte) (header.getWrapAlgorithm() >>> 16);
+        context[10] = (byte) (header.getWrapAlgorithm() >>> 8);
+        context[11] = (byte) header.getWrapAlgorithm();
+
+        return EBDataKeyCache.fingerprint(context, header.getWrappedKey());
+    }
+
+    // Local data cipher
+
+    /**
+     * Segment AEAD, JCA and BC lightweight GCM can be used interchangeably.
+     * Each segment is processed at once, output is written only if the tag is valid.
+     */
+    protected interface DataCipher {
+        int process(byte[] nonce, byte[] in, int offset, int length, byte[] out, int outOffset) throws GeneralSecurityException;
+        void destroy();
+    }
+
+    protected static class JcaDataCipher implements DataCipher {
+        private final Cipher cipher;
+        private final int mode;
+        private final SecretKeySpec key;
+        private final byte[] aad;
+
+        JcaDataCipher(Cipher cipher, int mode, SecretKeySpec key, byte[] aad) {
+            this.cipher = cipher;
+            this.mode = mode;
+            this.key = key;
+            this.aad = aad;
+        }
+
+        @Override
+        public int process(byte[] nonce, byte[] in, int offset, int length, byte[] out, int outOffset) throws GeneralSecurityException {
+            final AlgorithmParameterSpec spec;
+            try {
+                spec = (AlgorithmParameterSpec) gcmSpecConstructor.newInstance(TAG_LENGTH * 8, nonce);
+            } catch (Exception e) {
+                throw new GeneralSecurityException("GCM parameters could not be created", e);
+            }
+
+            cipher.init(mode, key, spec);
+            cipher.updateAAD(aad);
+            return cipher.doFinal(in, offset, length, out, outOffset);
+        }
+
+        @Override
+        public void destroy() {
+            // SecretKeySpec cannot be destroyed.
+        }
+    }
+
+    protected static class BcDataCipher implements DataCipher {
+        private final GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        private final boolean encrypt;
+        private final byte[] key;
+        private final byte[] aad;
+
+        BcDataCipher(boolean encrypt, byte[] key, byte[] aad) {
+            this.encrypt = encrypt;
+            this.key = key.clone();
+            this.aad = aad;
+        }
+
+        @Override
+        public int process(byte[] nonce, byte[] in, int offset, int length, byte[] out, int outOffset) throws GeneralSecurityException {
+            if (out.length - outOffset < (encrypt ? length + TAG_LENGTH : length - TAG_LENGTH)){
+                throw new ShortBufferException("Output buffer too short");
+            }
+
+            cipher.init(encrypt, new AEADParameters(new KeyParameter(key), TAG_LENGTH * 8, nonce, aad));
+            final int written = cipher.processBytes(in, offset, length, out, outOffset);
+            try {
+                return written + cipher.doFinal(out, outOffset + written);
+
+            } catch (InvalidCipherTextException e) {
+                // Unauthenticated plaintext is not released.
+                Arrays.fill(out, outOffset, outOffset + written, (byte) 0);
+                throw new BadPaddingException("Envelope authentication failed: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void destroy() {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    protected DataCipher createDataCipher(boolean encrypt, byte[] key, byte[] aad) throws GeneralSecurityException {
+        final Provider jce = Security.getProvider("SunJCE");
+        if (jcaEnabled && gcmSpecConstructor != null && jce != null){
+            final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", jce);
+            return new JcaDataCipher(cipher, encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), aad);
+        }
+
+        return new BcDataCipher(encrypt, key, aad);
+    }
+
+    private static Constructor<?> lookupGcmSpecConstructor(){
+        try {
+            return Class.forName("javax.crypto.spec.GCMParameterSpec").getConstructor(Integer.TYPE, byte[].class);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Getters
+
+    public EBEnvelopeKeyWrapper getKeyWrapper() {
+        return keyWrapper;
+    }
+
+    public EBDataKeyCache getDataKeyCache() {
+        return dataKeyCache;
+    }
+
+    public EBEnvelopeCipher setDataKeyCache(EBDataKeyCache dataKeyCache) {
+        this.dataKeyCache = dataKeyCache;
+        return this;
+    }
+
+    public boolean isForEncryption() {
+        return forEncryption;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets plaintext segment size of the messages encrypted from now on.
+     * Decryption uses the segment size from the envelope header.
+     * @param segmentSize segment size
+     * @return this
+     */
+    public EBEnvelopeCipher setSegmentSize(int segmentSize) {
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE){
+            throw new IllegalArgumentException("Invalid segment size");
+        }
+
+        this.segmentSize = segmentSize;
+        return this;
+    }
+
+    /**
+     * Header of the message being processed, null if not known yet.
+     * @return envelope header
+     */
+    public EBEnvelopeHeader getHeader() {
+        return header;
+    }
+}
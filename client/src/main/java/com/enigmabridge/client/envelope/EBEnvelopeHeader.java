@@ -0,0 +1,231 @@
+package com.enigmabridge.client.envelope;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Self-describing header of the envelope encrypted data.
+ *
+ * <pre>
+ *  i32 magic "EBEV"
+ *  u8  version
+ *  u8  wrap algorithm
+ *  u8  data algorithm
+ *  u8  reserved
+ *  i64 wrapping key id (UO ID)
+ *  i32 plaintext segment size
+ *  u16 wrapped data key length, wrapped data key
+ *  u8  nonce prefix length, nonce prefix
+ * </pre>
+ *
+ * The header is followed by the ciphertext segments, each encrypted separately with its own
+ * authentication tag. All segments but the last one hold exactly segment size bytes of plaintext.
+ * Whole header is authenticated as AAD of each segment.
+ */
+public class EBEnvelopeHeader {
+    public static final int MAGIC = 0x45424556;    // "EBEV"
+    public static final int VERSION_1 = 1;
+
+    public static final int FIXED_LENGTH = 4 + 4 + 8 + 4 + 2;
+    public static final int MAX_LENGTH = FIXED_LENGTH + 0xffff + 1 + 0xff;
+
+    // Wrap algorithms
+    public static final int WRAP_EB_AES = 1;
+    public static final int WRAP_EB_RSA_OAEP = 2;
+
+    // Data algorithms, AES-256-GCM per segment
+    public static final int DATA_AES_256_GCM = 1;
+
+    protected int version = VERSION_1;
+    protected int wrapAlgorithm;
+    protected int dataAlgorithm = DATA_AES_256_GCM;
+    protected long keyId;
+    protected int segmentSize;
+    protected byte[] wrappedKey;
+    protected byte[] noncePrefix;
+
+    protected byte[] encoded;
+
+    public EBEnvelopeHeader() {
+    }
+
+    public EBEnvelopeHeader(int wrapAlgorithm, int dataAlgorithm, long keyId, int segmentSize, byte[] wrappedKey, byte[] noncePrefix) {
+        this.wrapAlgorithm = wrapAlgorithm;
+        this.dataAlgorithm = dataAlgorithm;
+        this.keyId = keyId;
+        this.segmentSize = segmentSize;
+        this.wrappedKey = wrappedKey;
+        this.noncePrefix = noncePrefix;
+    }
+
+    /**
+     * Serializes the header.
+     * @return encoded header
+     * @throws IOException
+     */
+    public byte[] getEncoded() throws IOException {
+        if (encoded != null){
+            return encoded;
+        }
+
+        if (wrappedKey.length > 0xffff || noncePrefix.length > 0xff){
+            throw new IOException("Header field too long");
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(FIXED_LENGTH + wrappedKey.length + 1 + noncePrefix.length);
+        final DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeByte(version);
+        out.writeByte(wrapAlgorithm);
+        out.writeByte(dataAlgorithm);
+        out.writeByte(0);
+        out.writeLong(keyId);
+        out.writeInt(segmentSize);
+        out.writeShort(wrappedKey.length);
+        out.write(wrappedKey);
+        out.writeByte(noncePrefix.length);
+        out.write(noncePrefix);
+        out.flush();
+
+        encoded = bos.toByteArray();
+        return encoded;
+    }
+
+    /**
+     * Returns length of the header at the beginning of the buffer.
+     *
+     * @param buffer buffer
+     * @param offset header offset
+     * @param length number of bytes available
+     * @return header length, -1 if more bytes are needed to determine it
+     * @throws IOException if data do not start with the envelope header
+     */
+    public static int getHeaderLength(byte[] buffer, int offset, int length) throws IOException {
+        if (length >= 4 && getInt(buffer, offset) != MAGIC){
+            throw new IOException("Invalid envelope magic");
+        }
+
+        if (length < FIXED_LENGTH){
+            return -1;
+        }
+
+        final int wrappedLen = getShort(buffer, offset + FIXED_LENGTH - 2);
+        final int ivLenOffset = FIXED_LENGTH + wrappedLen;
+        if (length < ivLenOffset + 1){
+            return -1;
+        }
+
+        return ivLenOffset + 1 + (buffer[offset + ivLenOffset] & 0xff);
+    }
+
+    /**
+     * Returns number of bytes known to be required for the header, given the available bytes.
+     * Equals the header length once enough bytes are available to determine it.
+     *
+     * @param buffer buffer
+     * @param offset header offset
+     * @param length number of bytes available
+     * @return minimal number of header bytes
+     * @throws IOException if data do not start with the envelope header
+     */
+    public static int getRequiredLength(byte[] buffer, int offset, int length) throws IOException {
+        final int headerLength = getHeaderLength(buffer, offset, length);
+        if (headerLength >= 0){
+            return headerLength;
+        }
+
+        return length < FIXED_LENGTH ? FIXED_LENGTH : FIXED_LENGTH + getShort(buffer, offset + FIXED_LENGTH - 2) + 1;
+    }
+
+    /**
+     * Parses complete header.
+     *
+     * @param buffer buffer
+     * @param offset header offset
+     * @param length number of bytes available
+     * @return parsed header
+     * @throws IOException if header is invalid or incomplete
+     */
+    public static EBEnvelopeHeader parse(byte[] buffer, int offset, int length) throws IOException {
+        final int headerLength = getHeaderLength(buffer, offset, length);
+        if (headerLength < 0 || headerLength > length){
+            throw new IOException("Envelope header is incomplete");
+        }
+
+        final EBEnvelopeHeader header = new EBEnvelopeHeader();
+        header.version = buffer[offset + 4] & 0xff;
+        if (header.version != VERSION_1){
+            throw new IOException("Unsupported envelope version: " + header.version);
+        }
+
+        header.wrapAlgorithm = buffer[offset + 5] & 0xff;
+        header.dataAlgorithm = buffer[offset + 6] & 0xff;
+        header.keyId = ((long) getInt(buffer, offset + 8) << 32) | (getInt(buffer, offset + 12) & 0xffffffffL);
+        header.segmentSize = getInt(buffer, offset + 16);
+
+        final int wrappedLen = getShort(buffer, offset + FIXED_LENGTH - 2);
+        header.wrappedKey = new byte[wrappedLen];
+        System.arraycopy(buffer, offset + FIXED_LENGTH, header.wrappedKey, 0, wrappedLen);
+
+        final int prefixLen = buffer[offset + FIXED_LENGTH + wrappedLen] & 0xff;
+        header.noncePrefix = new byte[prefixLen];
+        System.arraycopy(buffer, offset + FIXED_LENGTH + wrappedLen + 1, header.noncePrefix, 0, prefixLen);
+
+        header.encoded = new byte[headerLength];
+        System.arraycopy(buffer, offset, header.encoded, 0, headerLength);
+        return header;
+    }
+
+    private static int getInt(byte[] b, int off){
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+    private static int getShort(byte[] b, int off){
+        return ((b[off] & 0xff) << 8) | (b[off + 1] & 0xff);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getWrapAlgorithm() {
+        return wrapAlgorithm;
+    }
+
+    public int getDataAlgorithm() {
+        return dataAlgorithm;
+    }
+
+    public long getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Plaintext length of all segments but the last one.
+     * @return segment size
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public byte[] getWrappedKey() {
+        return wrappedKey;
+    }
+
+    public byte[] getNoncePrefix() {
+        return noncePrefix;
+    }
+
+    @Override
+    public String toString() {
+        return "EBEnvelopeHeader{" +
+                "version=" + version +
+                ", wrapAlgorithm=" + wrapAlgorithm +
+                ", dataAlgorithm=" + dataAlgorithm +
+                ", keyId=" + keyId +
+                ", segmentSize=" + segmentSize +
+                ", wrappedKeyLength=" + (wrappedKey == null ? 0 : wrappedKey.length) +
+                '}';
+    }
+}
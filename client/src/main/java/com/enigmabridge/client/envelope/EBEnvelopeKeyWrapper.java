@@ -0,0 +1,37 @@
+package com.enigmabridge.client.envelope;
+
+import java.io.IOException;
+
+/**
+ * Wraps / unwraps envelope data keys with the key held in EB.
+ * Implementations should need at most one ProcessData call per operation.
+ */
+public interface EBEnvelopeKeyWrapper {
+    /**
+     * Wrap algorithm identifier stored in the envelope header, see {@link EBEnvelopeHeader}.
+     * @return wrap algorithm
+     */
+    int getWrapAlgorithm();
+
+    /**
+     * Identifier of the wrapping key stored in the envelope header, e.g., UO ID.
+     * @return wrapping key identifier
+     */
+    long getKeyId();
+
+    /**
+     * Wraps the data key.
+     * @param dataKey data key to wrap
+     * @return wrapped data key
+     * @throws IOException
+     */
+    byte[] wrap(byte[] dataKey) throws IOException;
+
+    /**
+     * Unwraps the data key.
+     * @param wrappedKey wrapped data key
+     * @return data key
+     * @throws IOException
+     */
+    byte[] unwrap(byte[] wrappedKey) throws IOException;
+}
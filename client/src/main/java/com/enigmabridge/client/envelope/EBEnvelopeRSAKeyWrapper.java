@@ -0,0 +1,119 @@
+package com.enigmabridge.client.envelope;
+
+import com.enigmabridge.EBEngine;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.rsa.EBRSAKey;
+import org.bouncycastle.crypto.AsymmetricBlockCipher;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.encodings.OAEPEncoding;
+import org.bouncycastle.crypto.engines.RSAEngine;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.params.RSAKeyParameters;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Provider;
+import java.security.SecureRandom;
+import java.security.Security;
+
+/**
+ * Wraps data keys with the RSA key held in EB, OAEP padding (SHA-1, MGF1).
+ * Wrapping uses the public part locally, unwrapping is one ProcessData call.
+ */
+public class EBEnvelopeRSAKeyWrapper implements EBEnvelopeKeyWrapper {
+    protected final EBRSAKey privateKey;
+    protected final BigInteger modulus;
+    protected final BigInteger publicExponent;
+    protected final SecureRandom random;
+
+    /**
+     * Provider bound to the engine of the private key, created on the first unwrap.
+     */
+    protected volatile EnigmaProvider provider;
+
+    public EBEnvelopeRSAKeyWrapper(EBRSAKey privateKey) {
+        this(privateKey, privateKey.getModulus(), privateKey.getPublicExponent(), new SecureRandom());
+    }
+
+    /**
+     * @param privateKey EB RSA private key, used for unwrapping. May be null if only wrapping is needed.
+     * @param modulus RSA modulus
+     * @param publicExponent public exponent
+     * @param random random for OAEP
+     */
+    public EBEnvelopeRSAKeyWrapper(EBRSAKey privateKey, BigInteger modulus, BigInteger publicExponent, SecureRandom random) {
+        this.privateKey = privateKey;
+        this.modulus = modulus;
+        this.publicExponent = publicExponent;
+        this.random = random;
+    }
+
+    @Override
+    public int getWrapAlgorithm() {
+        return EBEnvelopeHeader.WRAP_EB_RSA_OAEP;
+    }
+
+    @Override
+    public long getKeyId() {
+        return privateKey == null ? -1 : privateKey.getUserObjectInfo().getUoid();
+    }
+
+    @Override
+    public byte[] wrap(byte[] dataKey) throws IOException {
+        if (modulus == null || publicExponent == null){
+            throw new IllegalStateException("Public key is not available");
+        }
+
+        final AsymmetricBlockCipher cipher = new OAEPEncoding(new RSAEngine());
+        cipher.init(true, new ParametersWithRandom(new RSAKeyParameters(false, modulus, publicExponent), random));
+        try {
+            return cipher.processBlock(dataKey, 0, dataKey.length);
+        } catch (InvalidCipherTextException e) {
+            throw new IOException("Data key could not be wrapped", e);
+        }
+    }
+
+    @Override
+    public byte[] unwrap(byte[] wrappedKey) throws IOException {
+        if (privateKey == null){
+            throw new IllegalStateException("Private key is not available");
+        }
+
+        try {
+            final Cipher cipher = Cipher.getInstance("RSA/NONE/OAEPPadding", getProvider());
+            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            return cipher.doFinal(wrappedKey);
+
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Data key could not be unwrapped", e);
+        }
+    }
+
+    /**
+     * Returns EB provider using the engine of the private key.
+     * Registered EB provider is used only if it shares the engine.
+     */
+    protected EnigmaProvider getProvider(){
+        if (provider != null){
+            return provider;
+        }
+
+        final EBEngine engine = privateKey.getEBEngine();
+        final Provider registered = Security.getProvider(EnigmaProvider.PROVIDER_NAME);
+        if (engine == null){
+            provider = EnigmaProvider.getEnigmaProvider();
+        } else if (registered instanceof EnigmaProvider && ((EnigmaProvider) registered).getEngine() == engine){
+            provider = (EnigmaProvider) registered;
+        } else {
+            provider = new EnigmaProvider(engine);
+        }
+
+        return provider;
+    }
+
+    public EBRSAKey getPrivateKey() {
+        return privateKey;
+    }
+}
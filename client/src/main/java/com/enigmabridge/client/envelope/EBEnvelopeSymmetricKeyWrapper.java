@@ -0,0 +1,90 @@
+package com.enigmabridge.client.envelope;
+
+import com.enigmabridge.EBCryptoException;
+import com.enigmabridge.comm.EBCorruptedException;
+import com.enigmabridge.comm.EBProcessDataCall;
+import com.enigmabridge.comm.EBProcessDataResponse;
+import com.enigmabridge.provider.EBSymmetricKey;
+
+import java.io.IOException;
+
+/**
+ * Wraps data keys with the EB AES key, i.e., PLAINAES / PLAINAESDECRYPT user objects.
+ * Whole data key is processed in one ProcessData call.
+ */
+public class EBEnvelopeSymmetricKeyWrapper implements EBEnvelopeKeyWrapper {
+    protected final EBSymmetricKey encryptionKey;
+    protected final EBSymmetricKey decryptionKey;
+
+    /**
+     * @param key EB AES key, its inversion key is used for the other direction.
+     */
+    public EBEnvelopeSymmetricKeyWrapper(EBSymmetricKey key) {
+        if (key.isEncryptionKey()){
+            this.encryptionKey = key;
+            this.decryptionKey = key.getInversionKey();
+        } else {
+            this.decryptionKey = key;
+            this.encryptionKey = key.getInversionKey();
+        }
+    }
+
+    @Override
+    public int getWrapAlgorithm() {
+        return EBEnvelopeHeader.WRAP_EB_AES;
+    }
+
+    @Override
+    public long getKeyId() {
+        final EBSymmetricKey key = encryptionKey != null ? encryptionKey : decryptionKey;
+        return key.getUserObjectInfo().getUoid();
+    }
+
+    @Override
+    public byte[] wrap(byte[] dataKey) throws IOException {
+        if (encryptionKey == null){
+            throw new IllegalStateException("Encryption key is not available");
+        }
+
+        return process(encryptionKey, dataKey);
+    }
+
+    @Override
+    public byte[] unwrap(byte[] wrappedKey) throws IOException {
+        if (decryptionKey == null){
+            throw new IllegalStateException("Decryption key is not available");
+        }
+
+        return process(decryptionKey, wrappedKey);
+    }
+
+    protected byte[] process(EBSymmetricKey key, byte[] data) throws IOException {
+        if (data.length % 16 != 0){
+            throw new IllegalArgumentException("Data key length has to be a multiple of the AES block size");
+        }
+
+        final EBProcessDataCall call = new EBProcessDataCall.Builder()
+                .setKey(key)
+                .build();
+
+        try {
+            final EBProcessDataResponse response = call.doRequest(data);
+            if (!response.isCodeOk()){
+                throw new EBCryptoException("Server returned invalid response: " + response.getStatusCode());
+            }
+
+            return response.getProtectedData();
+
+        } catch (EBCorruptedException e) {
+            throw new IOException("Data key could not be processed", e);
+        }
+    }
+
+    public EBSymmetricKey getEncryptionKey() {
+        return encryptionKey;
+    }
+
+    public EBSymmetricKey getDecryptionKey() {
+        return decryptionKey;
+    }
+}
@@ -0,0 +1,518 @@
+package com.enigmabridge.client.tokenize;
+
+import com.enigmabridge.EBEngine;
+import com.enigmabridge.UserObjectKey;
+import com.enigmabridge.comm.EBCorruptedException;
+import com.enigmabridge.comm.EBProcessDataCall;
+import com.enigmabridge.comm.EBProcessDataResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk tokenization / detokenization with TOKENIZE / DETOKENIZE user objects.
+ *
+ * Values are processed concurrently, each value in one ProcessData call, at most concurrency calls at a time.
+ * Identical inputs being processed at the same time share one call (single-flight).
+ * As tokenization is deterministic, value-token pairs may be kept in a bounded LRU cache,
+ * repeated inputs then do not reach EB at all.
+ *
+ * Inputs are copied on submission. Cache keeps its own copies and returns a copy on each hit.
+ * Result of a call is shared among the callers coalesced to it, do not modify it.
+ */
+public class EBTokenizer {
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    protected UserObjectKey tokenizeKey;
+    protected UserObjectKey detokenizeKey;
+    protected EBEngine engine;
+
+    /**
+     * Executor running the calls. If not provided, a fixed pool with concurrency threads is created.
+     */
+    protected ExecutorService executorService;
+    protected boolean ownExecutor;
+
+    /**
+     * Maximal number of concurrent EB calls.
+     */
+    protected int concurrency = DEFAULT_CONCURRENCY;
+
+    /**
+     * Maximal number of cached value-token pairs, 0 disables the cache.
+     */
+    protected int cacheSize = 0;
+
+    protected Semaphore callPermits;
+    protected Map<BytesKey, byte[]> valueToToken;
+    protected Map<BytesKey, byte[]> tokenToValue;
+
+    protected final ConcurrentHashMap<BytesKey, Future<byte[]>> inFlightTokenize = new ConcurrentHashMap<BytesKey, Future<byte[]>>();
+    protected final ConcurrentHashMap<BytesKey, Future<byte[]>> inFlightDetokenize = new ConcurrentHashMap<BytesKey, Future<byte[]>>();
+
+    protected final AtomicLong calls = new AtomicLong();
+    protected final AtomicLong cacheHits = new AtomicLong();
+    protected final AtomicLong coalesced = new AtomicLong();
+
+    public static abstract class AbstractBuilder<T extends EBTokenizer, B extends AbstractBuilder<T, B>> {
+        public B setTokenizeKey(UserObjectKey a) {
+            getObj().setTokenizeKey(a);
+            return getThisBuilder();
+        }
+
+        public B setDetokenizeKey(UserObjectKey a) {
+            getObj().setDetokenizeKey(a);
+            return getThisBuilder();
+        }
+
+        public B setEngine(EBEngine a) {
+            getObj().setEngine(a);
+            return getThisBuilder();
+        }
+
+        public B setExecutorService(ExecutorService a) {
+            getObj().setExecutorService(a);
+            return getThisBuilder();
+        }
+
+        public B setConcurrency(int a) {
+            getObj().setConcurrency(a);
+            return getThisBuilder();
+        }
+
+        public B setCacheSize(int a) {
+            getObj().setCacheSize(a);
+            return getThisBuilder();
+        }
+
+        public abstract T build();
+        public abstract B getThisBuilder();
+        public abstract T getObj();
+    }
+
+    public static class Builder extends AbstractBuilder<EBTokenizer, Builder> {
+        private final EBTokenizer parent = new EBTokenizer();
+
+        @Override
+        public Builder getThisBuilder() {
+            return this;
+        }
+
+        @Override
+        public EBTokenizer getObj() {
+            return parent;
+        }
+
+        @Override
+        public EBTokenizer build() {
+            if (parent.getTokenizeKey() == null && parent.getDetokenizeKey() == null){
+                throw new NullPointerException("No tokenization key");
+            }
+
+            if (parent.getConcurrency() <= 0){
+                throw new IllegalArgumentException("Concurrency has to be positive");
+            }
+
+            parent.init();
+            return parent;
+        }
+    }
+
+    /**
+     * Byte array as a map key.
+     */
+    protected static final class BytesKey {
+        private final byte[] data;
+        private final int hash;
+
+        BytesKey(byte[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Arrays.equals(data, ((BytesKey) o).data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    protected static class LruMap extends LinkedHashMap<BytesKey, byte[]> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BytesKey, byte[]> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    protected void init(){
+        callPermits = new Semaphore(concurrency);
+        if (executorService == null){
+            executorService = Executors.newFixedThreadPool(concurrency);
+            ownExecutor = true;
+        }
+
+        if (cacheSize > 0){
+            valueToToken = new LruMap(cacheSize);
+            tokenToValue = new LruMap(cacheSize);
+        }
+    }
+
+    /**
+     * Shuts down the executor if created by the tokenizer.
+     */
+    public void shutdown(){
+        if (ownExecutor){
+            executorService.shutdown();
+        }
+    }
+
+    // Single values
+
+    public byte[] tokenize(byte[] value) throws IOException {
+        return getResult(tokenizeAsync(value));
+    }
+
+    public byte[] detokenize(byte[] token) throws IOException {
+        return getResult(detokenizeAsync(token));
+    }
+
+    public Future<byte[]> tokenizeAsync(byte[] value){
+        return submit(true, value);
+    }
+
+    public Future<byte[]> detokenizeAsync(byte[] token){
+        return submit(false, token);
+    }
+
+    // Batches
+
+    /**
+     * Tokenizes all values concurrently.
+     * @param values values to tokenize
+     * @return tokens in the order of values
+     * @throws IOException
+     */
+    public List<byte[]> tokenize(List<byte[]> values) throws IOException {
+        return processBatch(true, values);
+    }
+
+    /**
+     * Detokenizes all tokens concurrently.
+     * @param tokens tokens to detokenize
+     * @return values in the order of tokens
+     * @throws IOException
+     */
+    public List<byte[]> detokenize(List<byte[]> tokens) throws IOException {
+        return processBatch(false, tokens);
+    }
+
+    // Streams
+
+    /**
+     * Tokenizes values from the iterator, results are passed to the listener in the input order.
+     * At most 2 * concurrency values are pending at a time so the stream may be arbitrarily long.
+     *
+     * @param values values to tokenize
+     * @param listener result listener
+     * @return number of processed values
+     * @throws IOException first failure, processing stops
+     */
+    public long tokenize(Iterator<byte[]> values, EBTokenizerListener listener) throws IOException {
+        return processStream(true, values, listener);
+    }
+
+    /**
+     * Detokenizes tokens from the iterator, results are passed to the listener in the input order.
+     *
+     * @param tokens tokens to detokenize
+     * @param listener result listener
+     * @return number of processed tokens
+     * @throws IOException first failure, processing stops
+     */
+    public long detokenize(Iterator<byte[]> tokens, EBTokenizerListener listener) throws IOException {
+        return processStream(false, tokens, listener);
+    }
+
+    // Processing
+
+    protected List<byte[]> processBatch(boolean tokenize, List<byte[]> inputs) throws IOException {
+        final List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(inputs.size());
+        for(byte[] input : inputs){
+            futures.add(submit(tokenize, input));
+        }
+
+        final List<byte[]> results = new ArrayList<byte[]>(inputs.size());
+        for(Future<byte[]> future : futures){
+            results.add(getResult(future));
+        }
+
+        return results;
+    }
+
+    protected long processStream(boolean tokenize, Iterator<byte[]> inputs, EBTokenizerListener listener) throws IOException {
+        final int window = 2 * concurrency;
+        final ArrayDeque<byte[]> pendingInputs = new ArrayDeque<byte[]>(window);
+        final ArrayDeque<Future<byte[]>> pendingResults = new ArrayDeque<Future<byte[]>>(window);
+        long index = 0;
+
+        while(inputs.hasNext()){
+            final byte[] input = inputs.next();
+            pendingInputs.add(input);
+            pendingResults.add(submit(tokenize, input));
+
+            if (pendingResults.size() >= window){
+                listener.onResult(index++, pendingInputs.poll(), getResult(pendingResults.poll()));
+            }
+        }
+
+        while(!pendingResults.isEmpty()){
+            listener.onResult(index++, pendingInputs.poll(), getResult(pendingResults.poll()));
+        }
+
+        return index;
+    }
+
+    protected Future<byte[]> submit(final boolean tokenize, byte[] inputData){
+        // Caller may reuse its buffer, input is used as the cache and in-flight key.
+        final byte[] input = inputData.clone();
+        final BytesKey key = new BytesKey(input);
+        final byte[] cached = cacheGet(tokenize ? valueToToken : tokenToValue, key);
+        if (cached != null){
+            cacheHits.incrementAndGet();
+            final FutureTask<byte[]> done = new FutureTask<byte[]>(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return cached;
+                }
+            });
+            done.run();
+            return done;
+        }
+
+        final ConcurrentHashMap<BytesKey, Future<byte[]>> inFlight = tokenize ? inFlightTokenize : inFlightDetokenize;
+        final FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final byte[] result = process(tokenize, input);
+                if (tokenize){
+                    cachePut(valueToToken, key, result);
+                    cachePut(tokenToValue, new BytesKey(result.clone()), input);
+                } else {
+                    cachePut(tokenToValue, key, result);
+                    cachePut(valueToToken, new BytesKey(result.clone()), input);
+                }
+                return result;
+            }
+        }){
+            @Override
+            protected void done() {
+                inFlight.remove(key, this);
+            }
+        };
+
+        final Future<byte[]> existing = inFlight.putIfAbsent(key, task);
+        if (existing != null){
+            coalesced.incrementAndGet();
+            return existing;
+        }
+
+        executorService.execute(task);
+        return task;
+    }
+
+    /**
+     * Performs one ProcessData call.
+     * @param tokenize true for tokenization, false for detokenization
+     * @param input value or token
+     * @return token or value
+     * @throws IOException
+     */
+    protected byte[] process(boolean tokenize, byte[] input) throws IOException {
+        final UserObjectKey key = tokenize ? tokenizeKey : detokenizeKey;
+        if (key == null){
+            throw new IllegalStateException(tokenize ? "Tokenize key is not set" : "Detokenize key is not set");
+        }
+
+        final EBProcessDataCall.Builder builder = new EBProcessDataCall.Builder().setKey(key);
+        if (engine != null){
+            builder.setEngine(engine);
+        }
+
+        callPermits.acquireUninterruptibly();
+        try {
+            calls.incrementAndGet();
+            final EBProcessDataResponse response = builder.build().doRequest(input);
+            if (!response.isCodeOk()){
+                throw new IOException("Server returned invalid response: " + response.getStatusCode());
+            }
+
+            return response.getProtectedData();
+
+        } catch (EBCorruptedException e) {
+            throw new IOException("Tokenization response corrupted", e);
+        } finally {
+            callPermits.release();
+        }
+    }
+
+    protected byte[] getResult(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
+
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException){
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException("Tokenization failed", cause);
+        }
+    }
+
+    protected static byte[] cacheGet(Map<BytesKey, byte[]> cache, BytesKey key){
+        if (cache == null){
+            return null;
+        }
+
+        synchronized (cache){
+            final byte[] value = cache.get(key);
+            return value == null ? null : value.clone();
+        }
+    }
+
+    /**
+     * Stores a copy of the value, the key has to be private to the cache.
+     */
+    protected static void cachePut(Map<BytesKey, byte[]> cache, BytesKey key, byte[] value){
+        if (cache == null){
+            return;
+        }
+
+        final byte[] copy = value.clone();
+        synchronized (cache){
+            cache.put(key, copy);
+        }
+    }
+
+    // Metrics
+
+    /**
+     * Number of ProcessData calls performed.
+     * @return calls
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Number of inputs answered from the cache.
+     * @return cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Number of inputs joined to a call already in progress.
+     * @return coalesced inputs
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int getInFlight(){
+        return inFlightTokenize.size() + inFlightDetokenize.size();
+    }
+
+    // Getters & setters
+
+    public UserObjectKey getTokenizeKey() {
+        return tokenizeKey;
+    }
+
+    public UserObjectKey getDetokenizeKey() {
+        return detokenizeKey;
+    }
+
+    public EBEngine getEngine() {
+        return engine;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    protected EBTokenizer setTokenizeKey(UserObjectKey tokenizeKey) {
+        this.tokenizeKey = tokenizeKey;
+        return this;
+    }
+
+    protected EBTokenizer setDetokenizeKey(UserObjectKey detokenizeKey) {
+        this.detokenizeKey = detokenizeKey;
+        return this;
+    }
+
+    protected EBTokenizer setEngine(EBEngine engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    protected EBTokenizer setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    protected EBTokenizer setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    protected EBTokenizer setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        return this;
+    }
+}
@@ -0,0 +1,15 @@
+package com.enigmabridge.client.tokenize;
+
+/**
+ * Receives results of the stream tokenization, in the input order.
+ */
+public interface EBTokenizerListener {
+    /**
+     * Called for each processed input.
+     *
+     * @param index index of the input in the stream
+     * @param input input value (value or token)
+     * @param output result (token or value)
+     */
+    void onResult(long index, byte[] input, byte[] output);
+}
@@ -6,6 +6,7 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.SignatureException;
 
 /**
@@ -41,6 +42,20 @@ public class EBWrappedCipher extends EBCommonCryptoBase {
         return cipher.doFinal(buffer, offset, length, bufferOut, offsetOut);
     }
 
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException {
+        return cipher.update(input, output);
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        if (input == null){
+            input = ByteBuffer.allocate(0);
+        }
+
+        return cipher.doFinal(input, output);
+    }
+
     @Override
     public boolean verify(byte[] buffer, int offset, int length) throws SignatureException {
         throw new UnsupportedOperationException("Not a signature object");
@@ -5,6 +5,7 @@ import com.enigmabridge.client.EBCommonCryptoBase;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.SignatureException;
 
 /**
@@ -100,6 +101,34 @@ public class EBWrappedCombined extends EBCommonCryptoBase {
         }
     }
 
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException {
+        checkInit();
+        if (cipher != null){
+            return cipher.update(input, output);
+        } else if (mac != null){
+            return mac.update(input, output);
+        } else if (signature != null){
+            return signature.update(input, output);
+        } else {
+            throw new IllegalStateException("No usable crypto object");
+        }
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        checkInit();
+        if (cipher != null){
+            return cipher.doFinal(input, output);
+        } else if (mac != null){
+            return mac.doFinal(input, output);
+        } else if (signature != null){
+            return signature.doFinal(input, output);
+        } else {
+            throw new IllegalStateException("No usable crypto object");
+        }
+    }
+
     @Override
     public boolean verify(byte[] buffer, int offset, int length) throws SignatureException {
         checkInit();
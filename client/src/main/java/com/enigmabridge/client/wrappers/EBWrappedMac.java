@@ -6,6 +6,7 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.Mac;
 import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.SignatureException;
 
 /**
@@ -52,6 +53,25 @@ public class EBWrappedMac extends EBCommonCryptoBase {
         return mac.getMacLength();
     }
 
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException {
+        mac.update(input);
+        return 0;
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        if (output.remaining() < mac.getMacLength()){
+            throw new ShortBufferException("Output buffer too short");
+        }
+
+        if (input != null){
+            mac.update(input);
+        }
+
+        return putResult(mac.doFinal(), output);
+    }
+
     @Override
     public boolean verify(byte[] buffer, int offset, int length) throws SignatureException {
         throw new UnsupportedOperationException("Not a signature object");
@@ -5,6 +5,7 @@ import com.enigmabridge.client.EBCommonCryptoBase;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.Signature;
 import java.security.SignatureException;
 
@@ -14,6 +15,16 @@ import java.security.SignatureException;
 public class EBWrappedSignature extends EBCommonCryptoBase {
     protected Signature signature;
 
+    /**
+     * Expected signature length, output buffer capacity is checked before signing. 0 if unknown.
+     */
+    protected int signatureLength;
+
+    /**
+     * Signature computed by doFinal not fitting the output buffer, returned by the next doFinal.
+     */
+    protected byte[] pendingSignature;
+
     public EBWrappedSignature() {
     }
 
@@ -21,6 +32,11 @@ public class EBWrappedSignature extends EBCommonCryptoBase {
         this.signature = signature;
     }
 
+    public EBWrappedSignature(Signature signature, int signatureLength) {
+        this.signature = signature;
+        this.signatureLength = signatureLength;
+    }
+
     @Override
     public int update(byte[] buffer, int offset, int length, byte[] bufferOut, int offsetOut) throws SignatureException, ShortBufferException {
         signature.update(buffer, offset, length);
@@ -51,6 +67,33 @@ public class EBWrappedSignature extends EBCommonCryptoBase {
         return signature.sign(bufferOut, offsetOut, Integer.MAX_VALUE);
     }
 
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output) throws SignatureException, ShortBufferException {
+        signature.update(input);
+        return 0;
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+        // Signing is a remote call resetting the signature, check capacity before.
+        if (pendingSignature == null && output.remaining() < signatureLength){
+            throw new ShortBufferException("Output buffer too short, needed: " + signatureLength);
+        }
+
+        if (pendingSignature == null){
+            if (input != null){
+                signature.update(input);
+            }
+
+            pendingSignature = signature.sign();
+        }
+
+        // Signature is kept on ShortBufferException, retry with a larger buffer returns it.
+        final int written = putResult(pendingSignature, output);
+        pendingSignature = null;
+        return written;
+    }
+
     @Override
     public boolean verify(byte[] buffer, int offset, int length) throws SignatureException {
         return signature.verify(buffer, offset, length);
@@ -59,4 +102,13 @@ public class EBWrappedSignature extends EBCommonCryptoBase {
     public Signature getSignature() {
         return signature;
     }
+
+    public int getSignatureLength() {
+        return signatureLength;
+    }
+
+    public EBWrappedSignature setSignatureLength(int signatureLength) {
+        this.signatureLength = signatureLength;
+        return this;
+    }
 }
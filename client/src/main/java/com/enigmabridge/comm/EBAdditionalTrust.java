@@ -10,6 +10,7 @@ import java.io.*;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
@@ -144,37 +145,90 @@ public class EBAdditionalTrust implements EBJSONSerializable, Serializable {
         }
     }
 
-    protected void init(boolean letsEncrypt, boolean system, Collection<? extends Certificate> additionalRoots) {
+    protected void init(final boolean letsEncrypt, final boolean system, final Collection<? extends Certificate> additionalRoots) {
         try {
-            LinkedList<TrustManager> managers = new LinkedList<TrustManager>();
-            if (letsEncrypt) {
-                managers.add(trustManagerForCertificates(readCertificates(letsEncryptCertificatesInputStream())));
-            }
-
-            if (system){
-                final TrustManager[] systemTrustManagers = getSystemTrustManagers();
-                if (systemTrustManagers != null){
-                    for(TrustManager mgr : systemTrustManagers){
-                        managers.add(mgr);
-                    }
-                }
-            }
-
             if (additionalRoots != null && !additionalRoots.isEmpty()){
                 customRoots = new LinkedList<Certificate>(additionalRoots);
-                managers.add(trustManagerForCertificates(additionalRoots));
             }
 
-            trustManagers = managers.toArray(new TrustManager[managers.size()]);
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, trustManagers, null);
-            sslSocketFactory = sslContext.getSocketFactory();
+            // Same trust configuration shares the SSL context and thus TLS sessions.
+            final EBSSLContextCache.Entry entry = EBSSLContextCache.get(
+                    getTrustKey(letsEncrypt, system, customRoots),
+                    new EBSSLContextCache.TrustManagersFactory() {
+                        @Override
+                        public TrustManager[] create() throws GeneralSecurityException {
+                            return buildTrustManagers(letsEncrypt, system, customRoots);
+                        }
+                    });
+
+            trustManagers = entry.getTrustManagers();
+            sslSocketFactory = entry.getSslSocketFactory();
 
         } catch (GeneralSecurityException e) {
             throw new RuntimeException(e);
         }
     }
 
+    protected static TrustManager[] buildTrustManagers(boolean letsEncrypt, boolean system,
+                                                       Collection<? extends Certificate> additionalRoots)
+            throws GeneralSecurityException
+    {
+        LinkedList<TrustManager> managers = new LinkedList<TrustManager>();
+        if (letsEncrypt) {
+            managers.add(trustManagerForCertificates(readCertificates(letsEncryptCertificatesInputStream())));
+        }
+
+        if (system){
+            final TrustManager[] systemTrustManagers = getSystemTrustManagers();
+            if (systemTrustManagers != null){
+                for(TrustManager mgr : systemTrustManagers){
+                    managers.add(mgr);
+                }
+            }
+        }
+
+        if (additionalRoots != null && !additionalRoots.isEmpty()){
+            managers.add(trustManagerForCertificates(additionalRoots));
+        }
+
+        return managers.toArray(new TrustManager[managers.size()]);
+    }
+
+    /**
+     * Key of the trust configuration for {@link EBSSLContextCache}.
+     * Custom roots are represented by a hash of their encodings.
+     *
+     * @param letsEncrypt letsencrypt roots flag
+     * @param system system roots flag
+     * @param additionalRoots custom roots, may be null
+     * @return cache key
+     * @throws GeneralSecurityException
+     */
+    protected static String getTrustKey(boolean letsEncrypt, boolean system,
+                                        Collection<? extends Certificate> additionalRoots)
+            throws GeneralSecurityException
+    {
+        final StringBuilder sb = new StringBuilder()
+                .append(FIELD_LETSENCRYPT).append('=').append(letsEncrypt).append(';')
+                .append(FIELD_SYSTEM).append('=').append(system).append(';')
+                .append(FIELD_CUSTOM).append('=');
+
+        if (additionalRoots != null && !additionalRoots.isEmpty()){
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for(Certificate certificate : additionalRoots){
+                md.update(certificate.getEncoded());
+            }
+            sb.append(EBUtils.byte2hex(md.digest()));
+        }
+
+        return sb.toString();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        init(letsEncryptFlag, systemFlag, customRoots);
+    }
+
     /**
      * Installs this trust to the client builder.
      * @param builder
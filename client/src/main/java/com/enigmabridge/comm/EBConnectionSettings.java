@@ -24,6 +24,7 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
     public static final String FIELD_RETRY = "retry";
     public static final String FIELD_RETRY_STRATEGY_NETWORK = "retryNet";
     public static final String FIELD_RETRY_STRATEGY_APPLICATION = "retryApp";
+    public static final String FIELD_DATA_ENCODING = "dataEncoding";
 
     public static final int DEFAULT_CONNECT_TIMEOUT_MILLI = 60000;
     public static final int DEFAULT_READ_TIMEOUT_MILLI = 60000;
@@ -64,6 +65,13 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
      */
     protected EBRetryStrategy retryStrategyApplication;
 
+    /**
+     * Preferred ProcessData wire encoding, see {@link EBDataEncoding}.
+     * Compact encoding is negotiated per endpoint, hex is used until the endpoint confirms it.
+     * Null means hex only, without negotiation.
+     */
+    protected String dataEncoding;
+
     public EBConnectionSettings() {
     }
 
@@ -123,6 +131,10 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
             setRetryStrategyApplication(EBRetryStrategyFactory.fromJSON(json.getJSONObject(FIELD_RETRY_STRATEGY_APPLICATION)));
         }
 
+        if (json.has(FIELD_DATA_ENCODING)){
+            setDataEncoding(EBUtils.getAsStringOrNull(json, FIELD_DATA_ENCODING));
+        }
+
         // Compatible mode - one timeout for all
         if (json.has(FIELD_TIMEOUT)){
             final int timeout = EBUtils.getAsInteger(json, FIELD_TIMEOUT, 10);
@@ -195,6 +207,10 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
             json.put(FIELD_RETRY_STRATEGY_APPLICATION, EBRetryStrategyFactory.toJSON(getRetryStrategyApplication(), null));
         }
 
+        if (getDataEncoding() != null){
+            json.put(FIELD_DATA_ENCODING, getDataEncoding());
+        }
+
         return json;
     }
 
@@ -208,6 +224,7 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
                 ", trust=" + trust +
                 ", retryStrategyNetwork=" + retryStrategyNetwork +
                 ", retryStrategyApplication=" + retryStrategyApplication +
+                ", dataEncoding='" + dataEncoding + '\'' +
                 '}';
     }
 
@@ -225,7 +242,9 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
         if (trust != null ? !trust.equals(that.trust) : that.trust != null) return false;
         if (retryStrategyNetwork != null ? !retryStrategyNetwork.equals(that.retryStrategyNetwork) : that.retryStrategyNetwork != null)
             return false;
-        return retryStrategyApplication != null ? retryStrategyApplication.equals(that.retryStrategyApplication) : that.retryStrategyApplication == null;
+        if (retryStrategyApplication != null ? !retryStrategyApplication.equals(that.retryStrategyApplication) : that.retryStrategyApplication != null)
+            return false;
+        return dataEncoding != null ? dataEncoding.equals(that.dataEncoding) : that.dataEncoding == null;
 
     }
 
@@ -238,6 +257,7 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
         result = 31 * result + (trust != null ? trust.hashCode() : 0);
         result = 31 * result + (retryStrategyNetwork != null ? retryStrategyNetwork.hashCode() : 0);
         result = 31 * result + (retryStrategyApplication != null ? retryStrategyApplication.hashCode() : 0);
+        result = 31 * result + (dataEncoding != null ? dataEncoding.hashCode() : 0);
         return result;
     }
 
@@ -248,6 +268,7 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
         n.readTimeoutMilli = this.readTimeoutMilli;
         n.connectTimeoutMilli = this.connectTimeoutMilli;
         n.trust = this.trust == null ? null : this.trust.copy();
+        n.dataEncoding = this.dataEncoding;
 
         return n;
     }
@@ -313,4 +334,17 @@ public class EBConnectionSettings implements Serializable, EBJSONSerializable {
         this.retryStrategyApplication = retryStrategy;
         return this;
     }
+
+    public String getDataEncoding() {
+        return dataEncoding;
+    }
+
+    public EBConnectionSettings setDataEncoding(String dataEncoding) {
+        if (dataEncoding != null && !EBDataEncoding.isSupported(dataEncoding)){
+            throw new IllegalArgumentException("Unsupported data encoding: " + dataEncoding);
+        }
+
+        this.dataEncoding = dataEncoding;
+        return this;
+    }
 }
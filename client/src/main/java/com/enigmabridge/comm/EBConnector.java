@@ -1,6 +1,9 @@
 package com.enigmabridge.comm;
 
 import com.enigmabridge.EBEndpointInfo;
+import com.enigmabridge.events.EBEvent;
+import com.enigmabridge.events.EBEventType;
+import com.enigmabridge.events.EBEvents;
 import com.enigmabridge.retry.*;
 import okhttp3.*;
 import org.slf4j.Logger;
@@ -50,6 +53,11 @@ public class EBConnector {
      */
     private Call call;
 
+    /**
+     * Attempt number of the current request, for events.
+     */
+    private int attempt;
+
     /**
      * Do the request, performs real service call.
      *
@@ -86,17 +94,22 @@ public class EBConnector {
 
         // New retry mechanism instance, for each request.
         final EBRetry<EBRawResponse, Throwable> ebRetry = new EBRetry<EBRawResponse, Throwable>(retryStrategy.copy());
+        attempt = 0;
 
         // Define retry job
         ebRetry.setJob(new EBRetryJobSimpleSafeThrErr<EBRawResponse>() {
             @Override
             public void runAsyncNoException(EBCallback<EBRawResponse, Throwable> callback) throws Throwable {
+                attempt += 1;
+                final EBEvent event = EBEvents.begin(EBEventType.REQUEST);
                 try {
                     final EBRawResponse ebRawResponse = requestInternal(client);
+                    commitEvent(event, ebRawResponse);
                     callback.onSuccess(ebRawResponse);
 
                 } catch(IOException exception) {
-                    LOG.debug("EB failed: " + rawRequest.getPath());
+                    commitEvent(event, null);
+                    LOG.debug("EB failed: {}", rawRequest.getPath());
                     callback.onFail(new EBRetryJobErrorThr(exception), false);
                 }
             }
@@ -167,6 +180,7 @@ public class EBConnector {
                 .setBodyBytes(respBytes)
                 .setBody(respString)
                 .setResponseTime(System.currentTimeMillis() - timeStart)
+                .setDataEncoding(response.header(EBDataEncoding.HEADER_DATA_ENCODING))
                 .setSuccessful(response.isSuccessful());
 
         body.close();
@@ -174,6 +188,26 @@ public class EBConnector {
         return ebResponse;
     }
 
+    private void commitEvent(EBEvent event, EBRawResponse response){
+        if (event == null){
+            return;
+        }
+
+        final String body = rawRequest.getBody();
+        event.set("endpoint", endpoint.getConnectionString())
+                .set("path", rawRequest.getPath())
+                .set("requestBytes", body == null ? 0 : body.length())
+                .set("attempt", attempt)
+                .set("failed", response == null || !response.isSuccessful());
+
+        if (response != null){
+            event.set("httpCode", response.getHttpCode())
+                    .set("responseBytes", response.getBodyBytes() == null ? 0 : response.getBodyBytes().length);
+        }
+
+        event.commit();
+    }
+
     public void cancel(){
         if (call!=null){
             call.cancel();
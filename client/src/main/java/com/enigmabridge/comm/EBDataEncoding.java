@@ -0,0 +1,221 @@
+package com.enigmabridge.comm;
+
+import com.enigmabridge.EBEndpointInfo;
+import com.enigmabridge.EBUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wire encoding of the ProcessData request and response data.
+ *
+ * Hex is understood by every endpoint and is the fallback. Compact base64url (RFC 4648, no padding)
+ * is negotiated per endpoint: request is sent hex coded with the accept header, endpoint supporting
+ * the encoding answers in it with the data encoding header. Further requests to the endpoint are then
+ * sent in the negotiated encoding. Negotiated encodings are cached process-wide by the endpoint connection string.
+ */
+public class EBDataEncoding {
+    public static final String HEX = "hex";
+    public static final String BASE64URL = "base64url";
+    public static final String DEFAULT = HEX;
+
+    /**
+     * Encoding of the data in the request / response.
+     */
+    public static final String HEADER_DATA_ENCODING = "X-EB-Data-Encoding";
+
+    /**
+     * Encoding the client accepts in the response.
+     */
+    public static final String HEADER_ACCEPT_DATA_ENCODING = "X-EB-Accept-Data-Encoding";
+
+    private static final char[] B64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final byte[] B64_DECODE = new byte[128];
+    static {
+        Arrays.fill(B64_DECODE, (byte) -1);
+        for(int i = 0; i < B64_ALPHABET.length; i++){
+            B64_DECODE[B64_ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private static final ConcurrentMap<String, String> NEGOTIATED = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Returns true if the encoding is known.
+     * @param encoding encoding name
+     * @return true if supported
+     */
+    public static boolean isSupported(String encoding){
+        return HEX.equalsIgnoreCase(encoding) || BASE64URL.equalsIgnoreCase(encoding);
+    }
+
+    /**
+     * Returns true if the encoding is the compact one, needing negotiation.
+     * @param encoding encoding name, null for default
+     * @return true if not hex
+     */
+    public static boolean isCompact(String encoding){
+        return encoding != null && !HEX.equalsIgnoreCase(encoding);
+    }
+
+    /**
+     * Encodes data to the wire format.
+     *
+     * @param data data to encode
+     * @param offset offset in data
+     * @param length number of bytes to encode
+     * @param encoding encoding, null for hex
+     * @return encoded data
+     */
+    public static String encode(byte[] data, int offset, int length, String encoding){
+        if (!isCompact(encoding)){
+            return EBUtils.byte2hex(data, offset, length);
+        } else if (BASE64URL.equalsIgnoreCase(encoding)){
+            return base64UrlEncode(data, offset, length);
+        }
+
+        throw new IllegalArgumentException("Unsupported data encoding: " + encoding);
+    }
+
+    /**
+     * Decodes data from the wire format.
+     *
+     * @param data encoded data
+     * @param encoding encoding, null for hex
+     * @return decoded data
+     */
+    public static byte[] decode(String data, String encoding){
+        if (!isCompact(encoding)){
+            return EBUtils.hex2byte(data);
+        } else if (BASE64URL.equalsIgnoreCase(encoding)){
+            return base64UrlDecode(data);
+        }
+
+        throw new IllegalArgumentException("Unsupported data encoding: " + encoding);
+    }
+
+    /**
+     * Base64url encoding without padding, RFC 4648 section 5.
+     *
+     * @param data data to encode
+     * @param offset offset in data
+     * @param length number of bytes to encode
+     * @return encoded data
+     */
+    public static String base64UrlEncode(byte[] data, int offset, int length){
+        final char[] out = new char[(length * 4 + 2) / 3];
+        final int end = offset + length;
+        int i = offset;
+        int o = 0;
+        for(; i + 2 < end; i += 3){
+            final int v = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = B64_ALPHABET[v >>> 18];
+            out[o++] = B64_ALPHABET[(v >>> 12) & 0x3f];
+            out[o++] = B64_ALPHABET[(v >>> 6) & 0x3f];
+            out[o++] = B64_ALPHABET[v & 0x3f];
+        }
+
+        final int rem = end - i;
+        if (rem > 0){
+            final int v = (data[i] & 0xff) << 16 | (rem == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out[o++] = B64_ALPHABET[v >>> 18];
+            out[o++] = B64_ALPHABET[(v >>> 12) & 0x3f];
+            if (rem == 2){
+                out[o] = B64_ALPHABET[(v >>> 6) & 0x3f];
+            }
+        }
+
+        return new String(out);
+    }
+
+    /**
+     * Base64url decoding, padding is optional.
+     *
+     * @param data encoded data
+     * @return decoded data
+     * @throws IllegalArgumentException on invalid input
+     */
+    public static byte[] base64UrlDecode(String data){
+        int len = data.length();
+        while(len > 0 && data.charAt(len - 1) == '='){
+            len -= 1;
+        }
+
+        if (len % 4 == 1){
+            throw new IllegalArgumentException("Invalid base64url length");
+        }
+
+        final byte[] out = new byte[len * 3 / 4];
+        int acc = 0;
+        int bits = 0;
+        int o = 0;
+        for(int i = 0; i < len; i++){
+            final char c = data.charAt(i);
+            final int v = c < 128 ? B64_DECODE[c] : -1;
+            if (v < 0){
+                throw new IllegalArgumentException("Invalid base64url character at " + i);
+            }
+
+            acc = acc << 6 | v;
+            bits += 6;
+            if (bits >= 8){
+                bits -= 8;
+                out[o++] = (byte) (acc >>> bits);
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Returns encoding to send the request data in to the endpoint.
+     * Compact encoding is used only after the endpoint confirmed it, hex otherwise.
+     *
+     * @param endpoint endpoint
+     * @param preferred encoding from connection settings, null for hex
+     * @return request data encoding
+     */
+    public static String getRequestEncoding(EBEndpointInfo endpoint, String preferred){
+        if (!isCompact(preferred) || endpoint == null){
+            return HEX;
+        }
+
+        final String negotiated = NEGOTIATED.get(endpoint.getConnectionString());
+        return preferred.equalsIgnoreCase(negotiated) ? negotiated : HEX;
+    }
+
+    /**
+     * Records the response data encoding of the endpoint.
+     * Endpoint answering in other than the accepted encoding falls back to hex.
+     *
+     * @param endpoint endpoint
+     * @param preferred accepted encoding
+     * @param responseEncoding data encoding of the response, null if not indicated
+     */
+    public static void onResponse(EBEndpointInfo endpoint, String preferred, String responseEncoding){
+        if (!isCompact(preferred) || endpoint == null){
+            return;
+        }
+
+        NEGOTIATED.put(endpoint.getConnectionString(),
+                preferred.equalsIgnoreCase(responseEncoding) ? preferred : HEX);
+    }
+
+    /**
+     * Forgets negotiated encoding of the endpoint, next request is hex coded and renegotiates.
+     * @param endpoint endpoint
+     */
+    public static void reset(EBEndpointInfo endpoint){
+        if (endpoint != null){
+            NEGOTIATED.remove(endpoint.getConnectionString());
+        }
+    }
+
+    /**
+     * Forgets all negotiated encodings.
+     */
+    public static void clear(){
+        NEGOTIATED.clear();
+    }
+}
@@ -2,12 +2,16 @@ package com.enigmabridge.comm;
 
 import com.enigmabridge.*;
 import com.enigmabridge.EBUtils;
+import com.enigmabridge.events.EBEvent;
+import com.enigmabridge.events.EBEventType;
+import com.enigmabridge.events.EBEvents;
 import com.enigmabridge.retry.*;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * ProcessData() caller.
@@ -27,6 +31,44 @@ public class EBProcessDataCall extends EBAPICall {
     protected EBProcessDataResponse pdResponse;
     protected EBProcessDataResponseParser pdResponseParser;
 
+    /**
+     * Caller provided buffer the response protected data are written to.
+     * Null if the response should be stored to the response object.
+     */
+    protected ByteBuffer pdResponseOutput;
+
+    /**
+     * Length of the request data of the built request.
+     */
+    protected int requestDataLength;
+
+    /**
+     * Wire encoding of the built request data, see {@link EBDataEncoding}.
+     */
+    protected String requestDataEncoding;
+
+    /**
+     * Replicas of the user object, null if not replicated.
+     * Each request is sent to the least loaded healthy replica.
+     */
+    protected EBUOReplicaSet replicaSet;
+
+    /**
+     * Connection parameters of the call before a replica was applied.
+     * Used for replicas not specifying their own.
+     */
+    protected String replicaBaseApiKey;
+    protected EBEndpointInfo replicaBaseEndpoint;
+    protected EBConnectionSettings replicaBaseSettings;
+    protected boolean replicaBaseSet;
+
+    /**
+     * Request data of the replicated call, the request is rebuilt for each replica tried.
+     */
+    protected byte[] replicaRequestData;
+    protected int replicaRequestOffset;
+    protected int replicaRequestLength;
+
     /**
      * Separate abstract builder, chain from EBApiCall broken on purpose, restrict setters of this builder, e.g. callFunction.
      * @param <T>
@@ -175,6 +217,35 @@ public class EBProcessDataCall extends EBAPICall {
      * @param length - number of bytes to read from request data
      */
     public void build(byte[] requestData, int offset, int length) throws IOException {
+        if (replicaSet != null){
+            replicaRequestData = requestData;
+            replicaRequestOffset = offset;
+            replicaRequestLength = length;
+        }
+
+        prepareBuild();
+        pdRequest = pdRequestBuilder.build(requestData, offset, length);
+        requestDataLength = requestData == null ? 0 : length;
+        buildRawRequest();
+    }
+
+    /**
+     * Builds request data from the remaining bytes of the buffer.
+     * Buffer position is advanced, data are read directly to the request packet.
+     *
+     * @param requestData raw data to ProcessData(), heap or direct buffer.
+     */
+    public void build(ByteBuffer requestData) throws IOException {
+        prepareBuild();
+        requestDataLength = requestData == null ? 0 : requestData.remaining();
+        pdRequest = pdRequestBuilder.build(null, requestData);
+        buildRawRequest();
+    }
+
+    /**
+     * Prepares API block, raw request and request builder.
+     */
+    protected void prepareBuild(){
         this.buildApiBlock(null, null, null);
 
         // Build raw request.
@@ -183,14 +254,28 @@ public class EBProcessDataCall extends EBAPICall {
             rawRequest.setMethod(settings.getMethod());
         }
 
+        // Compact data encoding, offered until the endpoint confirms it.
+        final String preferredEncoding = getPreferredDataEncoding();
+        requestDataEncoding = EBDataEncoding.getRequestEncoding(getEndpoint(), preferredEncoding);
+        if (EBDataEncoding.isCompact(preferredEncoding)){
+            rawRequest.addHeader(EBDataEncoding.HEADER_ACCEPT_DATA_ENCODING, preferredEncoding);
+        }
+        if (EBDataEncoding.isCompact(requestDataEncoding)){
+            rawRequest.addHeader(EBDataEncoding.HEADER_DATA_ENCODING, requestDataEncoding);
+        }
+
         // Build request - body.
         pdRequestBuilder = new EBProcessDataRequestBuilder()
+                .setDataEncoding(requestDataEncoding)
                 .setNonce(getNonce())
                 .setRequestType(getProcessFunction())
                 .setUoInfo(getUo());
+    }
 
-        pdRequest = pdRequestBuilder.build(requestData, offset, length);
-
+    /**
+     * Fills raw request with built ProcessData request.
+     */
+    protected void buildRawRequest(){
         // Build request - headers.
         if (isMethodPost()){
             // POST
@@ -274,11 +359,11 @@ public class EBProcessDataCall extends EBAPICall {
                     final short statusCode = ebResponse.getStatusCode();
                     final boolean isRecoverable = statusCode == EBCommStatus.SW_TIMEOUT;
 
-                    LOG.debug("UO fail: " + rawRequest.getPath());
+                    onRequestFailed();
                     callback.onFail(new EBRetryJobErrorThr(new EBCryptoException("Invalid response: " + ebResponse)), !isRecoverable);
 
                 } catch(IOException exception) {
-                    LOG.debug("UO fail: " + rawRequest.getPath());
+                    onRequestFailed();
                     callback.onFail(new EBRetryJobErrorThr(exception), false);
                 }
             }
@@ -305,7 +390,169 @@ public class EBProcessDataCall extends EBAPICall {
         }
     }
 
+    /**
+     * Failed request attempt, logged and sampled to diagnostics.
+     */
+    protected void onRequestFailed(){
+        LOG.debug("UO fail: {}", rawRequest.getPath());
+        if (EBDiagnostics.shouldCapture(EBDiagnostics.Kind.REQUEST_FAILED)){
+            EBDiagnostics.capture(EBDiagnostics.Kind.REQUEST_FAILED, "UO fail: %s, endpoint: %s, response: %s",
+                    rawRequest.getPath(), endpoint, rawResponse);
+        }
+    }
+
+    /**
+     * Performs request to the remote endpoint, request is built from the remaining bytes of the input buffer,
+     * protected response data are written directly to the output buffer.
+     * Input buffer is consumed once, retries reuse the built request.
+     *
+     * @param input data to build request with, heap or direct buffer. If null, previously built request is used.
+     * @param output buffer to write response protected data to, heap or direct buffer.
+     *               Has to have at least the request data length remaining, checked before the request is sent.
+     * @return process data response, protected data length is set to number of bytes written to output.
+     * @throws IOException
+     * @throws EBCorruptedException
+     * @throws IllegalArgumentException if the output buffer is too short
+     */
+    public EBProcessDataResponse doRequest(ByteBuffer input, ByteBuffer output) throws IOException, EBCorruptedException {
+        final int needed = input != null ? input.remaining() : requestDataLength;
+        if (output != null && output.remaining() < needed){
+            throw new IllegalArgumentException("Output buffer too short, needed: " + needed);
+        }
+
+        if (input != null && isReplicated()){
+            // Request may be rebuilt for another replica, input is needed more than once.
+            final byte[] data = new byte[input.remaining()];
+            input.get(data);
+            build(data);
+
+        } else if (input != null){
+            build(input);
+        }
+
+        pdResponseOutput = output;
+        try {
+            return doRequest(null, 0, 0);
+        } finally {
+            pdResponseOutput = null;
+        }
+    }
+
     protected EBProcessDataResponse doRequestInternal(byte[] requestData, int offset, int length) throws IOException, EBCorruptedException {
+        if (!isReplicated()){
+            return doRequestSingle(requestData, offset, length);
+        }
+
+        if (requestData == null){
+            if (replicaRequestData == null){
+                throw new IllegalArgumentException("Call was not built with request data, cannot build now - no data");
+            }
+
+            requestData = replicaRequestData;
+            offset = replicaRequestOffset;
+            length = replicaRequestLength;
+        }
+
+        final boolean[] tried = new boolean[replicaSet.size()];
+        EBProcessDataResponse lastResponse = null;
+        Exception lastError = null;
+
+        for(int attempt = 0; attempt < tried.length; attempt++){
+            final int idx = replicaSet.acquire(tried);
+            if (idx < 0){
+                break;
+            }
+
+            tried[idx] = true;
+            boolean healthy = false;
+            try {
+                applyReplica(replicaSet.get(idx));
+                final EBProcessDataResponse response = doRequestSingle(requestData, offset, length);
+
+                // Transport level failure, try another replica.
+                healthy = response.getRawResponse() == null || response.getRawResponse().isSuccessful();
+                if (response.isCodeOk() || (healthy && response.getStatusCode() != EBCommStatus.SW_TIMEOUT)){
+                    return response;
+                }
+
+                lastResponse = response;
+                LOG.debug("Replica {} failed, status: {}", idx, response.getStatusCode());
+
+            } catch (IOException e) {
+                lastError = e;
+                LOG.debug("Replica {} failed", idx, e);
+
+            } catch (EBCorruptedException e) {
+                // Response could not be verified, replica itself is reachable.
+                healthy = true;
+                lastError = e;
+
+            } finally {
+                replicaSet.release(idx, healthy);
+            }
+        }
+
+        if (lastResponse != null){
+            return lastResponse;
+        }
+
+        if (lastError instanceof EBCorruptedException){
+            throw (EBCorruptedException) lastError;
+        } else if (lastError instanceof IOException){
+            throw (IOException) lastError;
+        }
+
+        throw new IOException("No replica available");
+    }
+
+    /**
+     * Switches the call to the replica user object.
+     * Replica connection parameters are used if specified, otherwise the original ones.
+     *
+     * @param replica replica to use for the next request
+     */
+    protected void applyReplica(UserObjectKeyBase replica){
+        if (!replicaBaseSet){
+            replicaBaseApiKey = getApiKey();
+            replicaBaseEndpoint = getEndpoint();
+            replicaBaseSettings = getSettings();
+            replicaBaseSet = true;
+        }
+
+        this.uo = replica;
+        setApiKey(replica.getApiKey() != null ? replica.getApiKey() : replicaBaseApiKey);
+        setEndpoint(replica.getEndpointInfo() != null ? replica.getEndpointInfo() : replicaBaseEndpoint);
+        setSettings(replica.getConnectionSettings() != null ? replica.getConnectionSettings() : replicaBaseSettings);
+
+        final UserObjectType uot = replica.getUserObjectType();
+        final String fction = uot == null ? null : uot.getUoTypeFunctionString();
+        if (fction != null){
+            setProcessFunction(fction);
+        }
+    }
+
+    protected EBProcessDataResponse doRequestSingle(byte[] requestData, int offset, int length) throws IOException, EBCorruptedException {
+        final EBEvent event = EBEvents.begin(EBEventType.PROCESS_DATA);
+        EBProcessDataResponse response = null;
+        try {
+            response = doRequestSingleInternal(requestData, offset, length);
+            return response;
+
+        } finally {
+            if (event != null){
+                final UserObjectInfo uo = getUo();
+                event.set("uoId", uo == null ? 0L : uo.getUoid())
+                        .set("uoType", uo == null || uo.getUserObjectType() == null ? 0L : uo.getUserObjectType().getValue())
+                        .set("function", getProcessFunction())
+                        .set("inputLength", length)
+                        .set("statusCode", response == null ? 0 : response.getStatusCode() & 0xffff)
+                        .set("failed", response == null || !response.isCodeOk())
+                        .commit();
+            }
+        }
+    }
+
+    protected EBProcessDataResponse doRequestSingleInternal(byte[] requestData, int offset, int length) throws IOException, EBCorruptedException {
         if (apiBlock == null && requestData == null){
             throw new IllegalArgumentException("Call was not built with request data, cannot build now - no data");
         } else if (requestData != null){
@@ -326,14 +573,24 @@ public class EBProcessDataCall extends EBAPICall {
 
         if (!rawResponse.isSuccessful()){
             LOG.info("Response was not successful: " + rawResponse.toString());
+            onDataEncodingFailure();
             pdResponse = builder.build();
             return pdResponse;
         }
 
+        EBDataEncoding.onResponse(getEndpoint(), getPreferredDataEncoding(), rawResponse.getDataEncoding());
+
         // Parse process data response.
         pdResponseParser = new EBProcessDataResponseParser();
         pdResponseParser.setUo(getUo());
-        pdResponseParser.parseResponse(new JSONObject(rawResponse.getBody()), builder, null);
+        pdResponseParser.setOutput(pdResponseOutput);
+        pdResponseParser.setDataEncoding(rawResponse.getDataEncoding());
+        try {
+            pdResponseParser.parseResponse(new JSONObject(rawResponse.getBody()), builder, null);
+        } catch(EBCorruptedException e){
+            onDataEncodingFailure();
+            throw e;
+        }
 
         // Return connector.
         engine.getConMgr().doneWithConnector(connector);
@@ -343,6 +600,22 @@ public class EBProcessDataCall extends EBAPICall {
         return pdResponse;
     }
 
+    /**
+     * @return compact data encoding preferred by the connection settings, null for hex
+     */
+    protected String getPreferredDataEncoding(){
+        return settings == null ? null : settings.getDataEncoding();
+    }
+
+    /**
+     * Failed request sent in compact encoding renegotiates the encoding with the next request.
+     */
+    protected void onDataEncodingFailure(){
+        if (EBDataEncoding.isCompact(requestDataEncoding)){
+            EBDataEncoding.reset(getEndpoint());
+        }
+    }
+
     /**
      * Returns process data output in one call.
      * @return result of process data call
@@ -369,6 +642,26 @@ public class EBProcessDataCall extends EBAPICall {
         return pdResponse.getProtectedData();
     }
 
+    /**
+     * Process data operation on the remaining bytes of the input buffer, result is written to the output buffer.
+     * Avoids intermediate heap arrays for the caller data, direct buffers are supported.
+     *
+     * @param input buffer to process
+     * @param output buffer to write result to, at least the input length remaining
+     * @return number of bytes written to output
+     * @throws IOException
+     * @throws EBCorruptedException
+     * @throws IllegalArgumentException if the output buffer is too short
+     */
+    public int processData(ByteBuffer input, ByteBuffer output) throws IOException, EBCorruptedException {
+        doRequest(input, output);
+        if (!pdResponse.isCodeOk()){
+            throw new EBCryptoException("Invalid response: " + pdResponse);
+        }
+
+        return pdResponse.getProtectedDataLength();
+    }
+
     // Getters and Setters.
     public String getProcessFunction() {
         return processFunction;
@@ -382,6 +675,31 @@ public class EBProcessDataCall extends EBAPICall {
         return pdResponse;
     }
 
+    @Override
+    protected void setUo(UserObjectInfo uo) {
+        super.setUo(uo);
+
+        replicaSet = null;
+        if (uo instanceof UserObjectKey){
+            final UserObjectKey key = ((UserObjectKey) uo).getUserObjectKey();
+            if (key instanceof UserObjectKeyBase && ((UserObjectKeyBase) key).isReplicated()){
+                replicaSet = ((UserObjectKeyBase) key).getReplicaSet();
+            }
+        }
+    }
+
+    /**
+     * Returns true if the user object of the call has replicas to balance the requests over.
+     * @return true if replicated
+     */
+    public boolean isReplicated(){
+        return replicaSet != null && replicaSet.size() > 1;
+    }
+
+    public EBUOReplicaSet getReplicaSet() {
+        return replicaSet;
+    }
+
     protected void rethrowProcessDataError(Object t) throws IOException, EBCorruptedException {
         if (t instanceof EBCorruptedException){
             throw (EBCorruptedException)t;
@@ -2,12 +2,12 @@ package com.enigmabridge.comm;
 
 import com.enigmabridge.EBEngineException;
 import com.enigmabridge.EBLogger;
-import com.enigmabridge.EBUtils;
 import com.enigmabridge.UserObjectInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Builder of the ProcessData body.
@@ -22,6 +22,11 @@ public class EBProcessDataRequestBuilder {
     protected String requestType;
     protected byte[] nonce;
 
+    /**
+     * Request data encoding, see {@link EBDataEncoding}. Null for hex.
+     */
+    protected String dataEncoding;
+
     protected EBLogger logger;
 
     /**
@@ -77,6 +82,49 @@ public class EBProcessDataRequestBuilder {
     public EBProcessDataRequest build(byte[] plainData, byte[] requestData, int requestDataOffset, int requestDataLength)
             throws IOException, EBEngineException
     {
+        final byte[] inDataWithUOID = newRequestBuffer(plainData, requestDataLength);
+        final int offset = writeRequestHeader(inDataWithUOID, plainData);
+
+        // Request data
+        System.arraycopy(requestData, requestDataOffset, inDataWithUOID, offset, requestDataLength);
+        return finishRequest(inDataWithUOID, plainData, offset + requestDataLength);
+    }
+
+    /**
+     * Builds EB request from the remaining bytes of the request buffer.
+     * Request data are read directly to the request packet, buffer position is advanced.
+     * Works with direct buffers without intermediate copies.
+     *
+     * @param plainData - bitArray of the plaintext data.
+     * @param requestData - buffer with userdata to perform operation on (will be encrypted, MAC protected)
+     * @return request
+     * @throws IOException io
+     * @throws EBEngineException ex
+     */
+    public EBProcessDataRequest build(byte[] plainData, ByteBuffer requestData)
+            throws IOException, EBEngineException
+    {
+        final int requestDataLength = requestData == null ? 0 : requestData.remaining();
+        final byte[] inDataWithUOID = newRequestBuffer(plainData, requestDataLength);
+        final int offset = writeRequestHeader(inDataWithUOID, plainData);
+
+        // Request data
+        if (requestData != null) {
+            requestData.get(inDataWithUOID, offset, requestDataLength);
+        }
+
+        return finishRequest(inDataWithUOID, plainData, offset + requestDataLength);
+    }
+
+    /**
+     * Allocates request packet buffer large enough to hold the whole request, including padding and MAC.
+     * Encryption is performed in place.
+     *
+     * @param plainData plain data, may be null
+     * @param requestDataLength length of the request data
+     * @return request packet buffer
+     */
+    protected byte[] newRequestBuffer(byte[] plainData, int requestDataLength){
         if (nonce == null){
             nonce = EBCommUtils.genProcessDataNonce();
         }
@@ -91,7 +139,18 @@ public class EBProcessDataRequestBuilder {
                 + requestDataLength
                 + EBCommUtils.AES_BLOCK_LEN
                 + EBCommUtils.APDU_MAC_AES_LENGTH;
-        byte[] inDataWithUOID = new byte[bufferSize];
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Writes request header to the packet: plain data length, plain data, flag, UOID, nonce.
+     *
+     * @param inDataWithUOID request packet
+     * @param plainData plain data, may be null
+     * @return offset where request data start
+     */
+    protected int writeRequestHeader(byte[] inDataWithUOID, byte[] plainData){
+        final int plainDataLength = plainData == null ? 0 : plainData.length;
         short offset = 0;
 
         offset = EBCommUtils.setShort(inDataWithUOID, offset, (short)plainDataLength); // Offset of data protected by comm keys
@@ -101,7 +160,6 @@ public class EBProcessDataRequestBuilder {
         }
 
         // Input data flag
-        short commOffset = offset;
         inDataWithUOID[offset++] = EBCommUtils.IN_DATA_FLAG;
 
         // User Object ID
@@ -110,25 +168,35 @@ public class EBProcessDataRequestBuilder {
         // Freshness nonce
         System.arraycopy(nonce, 0, inDataWithUOID, offset, nonce.length);
         offset += nonce.length;
+        return offset;
+    }
 
-        // Request data
-        System.arraycopy(requestData, requestDataOffset, inDataWithUOID, offset, requestDataLength);
-        offset += requestDataLength;
+    /**
+     * Encrypts the request packet in place and encodes it to the request.
+     *
+     * @param inDataWithUOID request packet
+     * @param plainData plain data, may be null
+     * @param offset end of the request data in the packet
+     * @return request
+     * @throws EBEngineException ex
+     */
+    protected EBProcessDataRequest finishRequest(byte[] inDataWithUOID, byte[] plainData, int offset) throws EBEngineException {
+        final int commOffset = EBCommUtils.UO_SECTION_SIZE_LENGTH + (plainData == null ? 0 : plainData.length);
 
         //this.log('ProcessData function input PDIN (0x1f | <UOID-4B> | <nonce-8B> | data | pkcs#7padding) : ' + h.fromBits(baBuff) + "; len: " + ba.bitLength(baBuff));
 
         final EBProcessDataCipher cipher = EBProcessDataCipher.initCipher(true, uoInfo.getCommKeys());
         final int processed = cipher.processBuffer(
-                inDataWithUOID, (int)commOffset, (int)offset - commOffset,
-                inDataWithUOID, (int)commOffset);
+                inDataWithUOID, commOffset, offset - commOffset,
+                inDataWithUOID, commOffset);
 
-        final String requestBase = getRequestBase(EBUtils.byte2hex(inDataWithUOID, 0, commOffset+processed));
+        final String requestBase = getRequestBase(EBDataEncoding.encode(inDataWithUOID, 0, commOffset+processed, dataEncoding));
         return new EBProcessDataRequest(requestBase, null, uoInfo, nonce);
     }
 
-    protected String getRequestBase(String hexCodedRequest){
+    protected String getRequestBase(String encodedRequest){
         //return "Packet0_" + requestType + "_" + hexCodedRequest;
-        return hexCodedRequest;
+        return encodedRequest;
     }
 
     public UserObjectInfo getUoInfo() {
@@ -158,6 +226,15 @@ public class EBProcessDataRequestBuilder {
         return this;
     }
 
+    public String getDataEncoding() {
+        return dataEncoding;
+    }
+
+    public EBProcessDataRequestBuilder setDataEncoding(String dataEncoding) {
+        this.dataEncoding = dataEncoding;
+        return this;
+    }
+
     public EBLogger getLogger() {
         return logger;
     }
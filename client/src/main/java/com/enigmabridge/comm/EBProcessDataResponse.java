@@ -22,6 +22,13 @@ public class EBProcessDataResponse extends EBResponse {
      */
     protected byte[] protectedData;
 
+    /**
+     * Number of protected data bytes written to the caller provided output buffer.
+     * Used when the response was parsed directly to the output buffer, protectedData is null then.
+     * -1 if not used.
+     */
+    protected int protectedDataLength = -1;
+
     /**
      * USerObjectID parsed from the response.
      * Integer, 4B.
@@ -46,6 +53,11 @@ public class EBProcessDataResponse extends EBResponse {
             return getThisBuilder();
         }
 
+        protected B setProtectedDataLength(int protectedDataLength) {
+            getObj().setProtectedDataLength(protectedDataLength);
+            return getThisBuilder();
+        }
+
         protected B setUserObjectId(long userObjectId) {
             getObj().setUserObjectId(userObjectId);
             return getThisBuilder();
@@ -101,6 +113,19 @@ public class EBProcessDataResponse extends EBResponse {
         return protectedData;
     }
 
+    /**
+     * Returns length of the protected data.
+     * If the response was parsed to the caller provided buffer, returns number of bytes written there.
+     * @return protected data length
+     */
+    public int getProtectedDataLength() {
+        if (protectedDataLength >= 0){
+            return protectedDataLength;
+        }
+
+        return protectedData == null ? 0 : protectedData.length;
+    }
+
     public long getUserObjectId() {
         return userObjectId;
     }
@@ -119,6 +144,11 @@ public class EBProcessDataResponse extends EBResponse {
         return this;
     }
 
+    protected EBProcessDataResponse setProtectedDataLength(int protectedDataLength) {
+        this.protectedDataLength = protectedDataLength;
+        return this;
+    }
+
     protected EBProcessDataResponse setUserObjectId(long userObjectId) {
         this.userObjectId = userObjectId;
         return this;
@@ -6,6 +6,7 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -18,6 +19,16 @@ public class EBProcessDataResponseParser extends EBResponseParserBase{
 
     protected UserObjectInfo uo;
 
+    /**
+     * If set, protected data are written directly to this buffer instead of a newly allocated array.
+     */
+    protected ByteBuffer output;
+
+    /**
+     * Encoding of the result data, see {@link EBDataEncoding}. Null for hex.
+     */
+    protected String dataEncoding;
+
     /**
      * Parse EB response
      *
@@ -40,7 +51,7 @@ public class EBProcessDataResponseParser extends EBResponseParserBase{
 
         final EBProcessDataResponse.ABuilder pdResp = (EBProcessDataResponse.ABuilder) resp;
         final String resultBuffer = (String)resp.getObj().getResult();
-        final byte[] baResult = EBUtils.hex2byte(removeUnderscores(resultBuffer));
+        final byte[] baResult = decodeResult(resultBuffer);
         if (baResult == null || baResult.length < 2){
             throw new EBCorruptedException("Returned response is too short. Response: " + resp.getObj());
         }
@@ -70,7 +81,17 @@ public class EBProcessDataResponseParser extends EBResponseParserBase{
         decOffset+=EBCommUtils.PROCESSDATA_FRESHNESS_NONCE_LENGTH;
 
         // Response = plainData + decryptedData.
-        pdResp.setProtectedData(Arrays.copyOfRange(decryptedData, decOffset, decryptedData.length));
+        if (output != null){
+            final int protectedLength = decryptedData.length - decOffset;
+            if (output.remaining() < protectedLength){
+                throw new EBCorruptedException("Output buffer too short, needed: " + protectedLength);
+            }
+
+            output.put(decryptedData, decOffset, protectedLength);
+            pdResp.setProtectedDataLength(protectedLength);
+        } else {
+            pdResp.setProtectedData(Arrays.copyOfRange(decryptedData, decOffset, decryptedData.length));
+        }
         pdResp.setPlainData(plainBytes);
 
         // If parsing function is already set, use it.
@@ -81,6 +102,26 @@ public class EBProcessDataResponseParser extends EBResponseParserBase{
         return pdResp;
     }
 
+    /**
+     * Decodes result data from the wire encoding.
+     *
+     * @param resultBuffer encoded result
+     * @return result bytes
+     * @throws EBCorruptedException if result cannot be decoded
+     */
+    protected byte[] decodeResult(String resultBuffer) throws EBCorruptedException {
+        if (!EBDataEncoding.isCompact(dataEncoding)){
+            return EBUtils.hex2byte(removeUnderscores(resultBuffer));
+        }
+
+        // Underscore is a base64url character, no rubbish removal.
+        try {
+            return EBDataEncoding.decode(resultBuffer, dataEncoding);
+        } catch(IllegalArgumentException e){
+            throw new EBCorruptedException("Result could not be decoded, encoding: " + dataEncoding, e);
+        }
+    }
+
     /**
      * Removes potential underscore rubbish from the response.
      *
@@ -104,4 +145,20 @@ public class EBProcessDataResponseParser extends EBResponseParserBase{
     public void setUo(UserObjectInfo uo) {
         this.uo = uo;
     }
+
+    public ByteBuffer getOutput() {
+        return output;
+    }
+
+    public void setOutput(ByteBuffer output) {
+        this.output = output;
+    }
+
+    public String getDataEncoding() {
+        return dataEncoding;
+    }
+
+    public void setDataEncoding(String dataEncoding) {
+        this.dataEncoding = dataEncoding;
+    }
 }
@@ -16,6 +16,7 @@ public class EBRawResponse implements Serializable {
     protected byte[] bodyBytes;
     protected String body;
     protected long responseTime;
+    protected String dataEncoding;
 
     public EBRawResponse() {
     }
@@ -56,6 +57,18 @@ public class EBRawResponse implements Serializable {
         return this;
     }
 
+    /**
+     * @return data encoding indicated by the endpoint in the response header, null if not present
+     */
+    public String getDataEncoding() {
+        return dataEncoding;
+    }
+
+    public EBRawResponse setDataEncoding(String dataEncoding) {
+        this.dataEncoding = dataEncoding;
+        return this;
+    }
+
     public boolean isSuccessful() {
         return successful;
     }
@@ -73,6 +86,7 @@ public class EBRawResponse implements Serializable {
                 ", bodyBytes=" + EBUtils.byte2hexNullable(bodyBytes) +
                 ", body='" + body + '\'' +
                 ", responseTime=" + responseTime +
+                ", dataEncoding='" + dataEncoding + '\'' +
                 '}';
     }
 }
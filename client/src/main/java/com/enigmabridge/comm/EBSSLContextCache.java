@@ -0,0 +1,126 @@
+package com.enigmabridge.comm;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of SSL contexts, keyed by the trust configuration, see {@link EBAdditionalTrust}.
+ *
+ * Trust objects with the same configuration share one SSLContext and thus one client session cache,
+ * so TLS sessions to EB endpoints are resumed instead of doing full handshakes,
+ * even across connection settings copies and deserialized settings.
+ */
+public class EBSSLContextCache {
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 1024;
+    public static final int DEFAULT_SESSION_TIMEOUT_SECONDS = 60 * 60 * 8;
+
+    private static final Map<String, Entry> CACHE = new HashMap<String, Entry>();
+    private static int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+    private static int sessionTimeoutSeconds = DEFAULT_SESSION_TIMEOUT_SECONDS;
+
+    /**
+     * Cached trust managers and SSL context.
+     */
+    public static class Entry {
+        protected final TrustManager[] trustManagers;
+        protected final SSLContext sslContext;
+        protected final SSLSocketFactory sslSocketFactory;
+
+        public Entry(TrustManager[] trustManagers, SSLContext sslContext) {
+            this.trustManagers = trustManagers;
+            this.sslContext = sslContext;
+            this.sslSocketFactory = sslContext.getSocketFactory();
+        }
+
+        public TrustManager[] getTrustManagers() {
+            return trustManagers;
+        }
+
+        public SSLContext getSslContext() {
+            return sslContext;
+        }
+
+        public SSLSocketFactory getSslSocketFactory() {
+            return sslSocketFactory;
+        }
+    }
+
+    /**
+     * Builds trust managers for a trust configuration not in the cache.
+     */
+    public interface TrustManagersFactory {
+        TrustManager[] create() throws GeneralSecurityException;
+    }
+
+    private EBSSLContextCache() {
+    }
+
+    /**
+     * Returns cached entry for the trust configuration, creates a new SSL context if not cached.
+     *
+     * @param key trust configuration key
+     * @param factory builds trust managers if the key is not cached
+     * @return cache entry
+     * @throws GeneralSecurityException
+     */
+    public static synchronized Entry get(String key, TrustManagersFactory factory) throws GeneralSecurityException {
+        Entry entry = CACHE.get(key);
+        if (entry != null){
+            return entry;
+        }
+
+        final TrustManager[] trustManagers = factory.create();
+        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, trustManagers, null);
+
+        final SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null){
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeoutSeconds);
+        }
+
+        entry = new Entry(trustManagers, sslContext);
+        CACHE.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Drops all cached contexts. Trust objects already initialized keep their contexts.
+     */
+    public static synchronized void clear(){
+        CACHE.clear();
+    }
+
+    public static synchronized int size(){
+        return CACHE.size();
+    }
+
+    /**
+     * Client session cache size for newly created contexts, 0 for unlimited.
+     * @param size session cache size
+     */
+    public static synchronized void setSessionCacheSize(int size){
+        sessionCacheSize = size;
+    }
+
+    /**
+     * Client session timeout for newly created contexts, 0 for no limit.
+     * @param seconds session timeout in seconds
+     */
+    public static synchronized void setSessionTimeoutSeconds(int seconds){
+        sessionTimeoutSeconds = seconds;
+    }
+
+    public static synchronized int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public static synchronized int getSessionTimeoutSeconds() {
+        return sessionTimeoutSeconds;
+    }
+}
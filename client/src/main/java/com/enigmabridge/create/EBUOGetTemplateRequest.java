@@ -57,6 +57,40 @@ public class EBUOGetTemplateRequest extends EBRawRequest {
         generationAppKey = tpl.getGenerationAppKey();
     }
 
+    /**
+     * Returns a copy of the request, e.g., for creating several user objects concurrently.
+     * @return request copy
+     */
+    public EBUOGetTemplateRequest copy(){
+        final EBUOGetTemplateRequest res = new EBUOGetTemplateRequest();
+        res.setMethod(getMethod());
+        res.setPath(getPath());
+        res.setBody(getBody());
+        for(Header header : getHeaders()){
+            res.addHeader(header.getName(), header.getValue());
+        }
+
+        res.format = format;
+        res.protocol = protocol;
+        res.type = type;
+        res.environment = environment;
+        res.maxtps = maxtps;
+        res.core = core;
+        res.persistence = persistence;
+        res.priority = priority;
+        res.separation = separation;
+        res.bcr = bcr;
+        res.unlimited = unlimited;
+        res.clientiv = clientiv;
+        res.clientdiv = clientdiv;
+        res.resource = resource;
+        res.credit = credit;
+        res.generationCommKey = generationCommKey;
+        res.generationBillingKey = generationBillingKey;
+        res.generationAppKey = generationAppKey;
+        return res;
+    }
+
     public int getFormat() {
         return format;
     }
@@ -0,0 +1,77 @@
+package com.enigmabridge.events;
+
+/**
+ * Event being recorded, obtained from {@link EBEvents#begin(EBEventType)}.
+ * Fields are set by name, the event is emitted by commit().
+ */
+public class EBEvent {
+    private final EBEventType type;
+    private final EBEventSink sink;
+    private final Object[] values;
+    private final long startNanos = System.nanoTime();
+    private long durationNanos;
+
+    /**
+     * Sink specific state, e.g., the JFR event.
+     */
+    private Object handle;
+
+    EBEvent(EBEventType type, EBEventSink sink) {
+        this.type = type;
+        this.sink = sink;
+        this.values = new Object[type.getFieldCount()];
+    }
+
+    /**
+     * Sets the field value.
+     * @param field field name of the event type
+     * @param value value of the field type
+     * @return this
+     */
+    public EBEvent set(String field, Object value){
+        final int idx = type.indexOf(field);
+        if (idx < 0){
+            throw new IllegalArgumentException("Unknown field " + field + " of " + type);
+        }
+
+        values[idx] = value;
+        return this;
+    }
+
+    /**
+     * Ends the event and passes it to the sink.
+     */
+    public void commit(){
+        durationNanos = System.nanoTime() - startNanos;
+        sink.commit(this);
+    }
+
+    public EBEventType getType() {
+        return type;
+    }
+
+    public Object get(String field) {
+        final int idx = type.indexOf(field);
+        return idx < 0 ? null : values[idx];
+    }
+
+    public Object get(int idx) {
+        return values[idx];
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public Object getHandle() {
+        return handle;
+    }
+
+    public void setHandle(Object handle) {
+        this.handle = handle;
+    }
+}
@@ -0,0 +1,25 @@
+package com.enigmabridge.events;
+
+/**
+ * Receives events emitted by the client, see {@link EBEvents#setSink(EBEventSink)}.
+ */
+public interface EBEventSink {
+    /**
+     * Called before the event is created, should be cheap.
+     * @param type event type
+     * @return false if events of the type are not recorded, begin() then returns null
+     */
+    boolean isEnabled(EBEventType type);
+
+    /**
+     * Called when the event starts.
+     * @param event new event
+     */
+    void begin(EBEvent event);
+
+    /**
+     * Called when the event is committed, fields are set.
+     * @param event finished event
+     */
+    void commit(EBEvent event);
+}
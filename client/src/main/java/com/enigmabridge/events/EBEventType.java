@@ -0,0 +1,89 @@
+package com.enigmabridge.events;
+
+/**
+ * Types of events emitted by the client, with their fields.
+ * Names are used as JFR event names, see eb.jfc.
+ */
+public enum EBEventType {
+    /**
+     * One HTTP attempt of {@link com.enigmabridge.comm.EBConnector}.
+     */
+    REQUEST("com.enigmabridge.Request", "EB Request",
+            new String[]{"endpoint", "path", "httpCode", "requestBytes", "responseBytes", "attempt", "failed"},
+            new Class<?>[]{String.class, String.class, int.class, long.class, long.class, int.class, boolean.class}),
+
+    /**
+     * ProcessData call on one replica.
+     */
+    PROCESS_DATA("com.enigmabridge.ProcessData", "EB ProcessData",
+            new String[]{"uoId", "uoType", "function", "statusCode", "inputLength", "failed"},
+            new Class<?>[]{long.class, long.class, String.class, int.class, int.class, boolean.class}),
+
+    /**
+     * User object creation.
+     */
+    CREATE_UO("com.enigmabridge.CreateUO", "EB CreateUO",
+            new String[]{"uoId", "uoType", "statusCode", "failed"},
+            new Class<?>[]{long.class, long.class, int.class, boolean.class}),
+
+    /**
+     * Provider Cipher doFinal().
+     */
+    CIPHER("com.enigmabridge.Cipher", "EB Cipher",
+            new String[]{"algorithm", "inputLength", "failed"},
+            new Class<?>[]{String.class, int.class, boolean.class}),
+
+    /**
+     * Provider Signature sign() / verify().
+     */
+    SIGNATURE("com.enigmabridge.Signature", "EB Signature",
+            new String[]{"algorithm", "operation", "failed"},
+            new Class<?>[]{String.class, String.class, boolean.class});
+
+    public static final String CATEGORY = "EnigmaBridge";
+
+    private final String eventName;
+    private final String label;
+    private final String[] fields;
+    private final Class<?>[] fieldTypes;
+
+    EBEventType(String eventName, String label, String[] fields, Class<?>[] fieldTypes) {
+        this.eventName = eventName;
+        this.label = label;
+        this.fields = fields;
+        this.fieldTypes = fieldTypes;
+    }
+
+    /**
+     * @param field field name
+     * @return index of the field, -1 if not found
+     */
+    public int indexOf(String field){
+        for(int i = 0; i < fields.length; i++){
+            if (fields[i].equals(field)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getFieldCount() {
+        return fields.length;
+    }
+
+    public String getField(int idx) {
+        return fields[idx];
+    }
+
+    public Class<?> getFieldType(int idx) {
+        return fieldTypes[idx];
+    }
+}
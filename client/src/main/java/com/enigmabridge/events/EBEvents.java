@@ -0,0 +1,98 @@
+package com.enigmabridge.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Emission of client events, e.g., to Java Flight Recorder.
+ *
+ * Events are disabled by default, begin() then costs one volatile read and returns null,
+ * callers check the event for null before setting fields and committing.
+ * begin() returns null also if the sink does not record events of the type, e.g., no JFR recording is running.
+ * JFR events are enabled by {@link #enableJfr()} or by the system property
+ * {@value #PROPERTY_JFR}=true.
+ *
+ * Usage:
+ * <pre>
+ *   final EBEvent event = EBEvents.begin(EBEventType.REQUEST);
+ *   ...
+ *   if (event != null){
+ *       event.set("httpCode", code).commit();
+ *   }
+ * </pre>
+ */
+public class EBEvents {
+    private static final Logger LOG = LoggerFactory.getLogger(EBEvents.class);
+
+    public static final String PROPERTY_JFR = "com.enigmabridge.jfr";
+
+    private static volatile EBEventSink sink;
+
+    static {
+        try {
+            if (Boolean.parseBoolean(System.getProperty(PROPERTY_JFR))){
+                enableJfr();
+            }
+        } catch(SecurityException e){
+            LOG.debug("Could not read " + PROPERTY_JFR, e);
+        }
+    }
+
+    private EBEvents() {
+    }
+
+    /**
+     * Starts a new event.
+     * @param type event type
+     * @return event or null if events are disabled
+     */
+    public static EBEvent begin(EBEventType type){
+        final EBEventSink curSink = sink;
+        if (curSink == null || !curSink.isEnabled(type)){
+            return null;
+        }
+
+        final EBEvent event = new EBEvent(type, curSink);
+        curSink.begin(event);
+        return event;
+    }
+
+    public static boolean isEnabled(){
+        return sink != null;
+    }
+
+    /**
+     * Sets the event sink.
+     * @param newSink sink, null disables events
+     */
+    public static void setSink(EBEventSink newSink){
+        sink = newSink;
+    }
+
+    public static EBEventSink getSink(){
+        return sink;
+    }
+
+    /**
+     * Emits events as JFR events, if JFR is available (JDK 11+).
+     * @return true if JFR events were enabled
+     */
+    public static synchronized boolean enableJfr(){
+        if (sink instanceof EBJfrEventSink){
+            return true;
+        }
+
+        if (!EBJfrEventSink.isAvailable()){
+            LOG.debug("JFR is not available");
+            return false;
+        }
+
+        try {
+            sink = new EBJfrEventSink();
+            return true;
+        } catch(Exception e){
+            LOG.warn("Could not register JFR events", e);
+            return false;
+        }
+    }
+}
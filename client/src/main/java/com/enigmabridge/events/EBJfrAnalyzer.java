@@ -0,0 +1,169 @@
+package com.enigmabridge.events;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Summarizes EB events of a JFR recording per user object and per endpoint.
+ *
+ * Input is the JSON form of the recording:
+ * <pre>
+ *   jfr print --json --categories EnigmaBridge recording.jfr &gt; recording.json
+ *   java com.enigmabridge.events.EBJfrAnalyzer recording.json
+ * </pre>
+ */
+public class EBJfrAnalyzer {
+    private static final Pattern DURATION = Pattern.compile("^PT(?:(\\d+)H)?(?:(\\d+)M)?(?:([\\d.]+)S)?$");
+
+    private final Map<String, Summary> perUo = new TreeMap<String, Summary>();
+    private final Map<String, Summary> perEndpoint = new TreeMap<String, Summary>();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1){
+            System.err.println("Usage: EBJfrAnalyzer recording.json");
+            System.exit(1);
+        }
+
+        final EBJfrAnalyzer analyzer = new EBJfrAnalyzer();
+        final InputStream is = new FileInputStream(args[0]);
+        try {
+            analyzer.add(new JSONObject(readAll(is)));
+        } finally {
+            is.close();
+        }
+
+        analyzer.print(System.out);
+    }
+
+    /**
+     * Adds events of the recording in jfr print --json format.
+     * @param recording parsed JSON
+     */
+    public void add(JSONObject recording){
+        final JSONArray events = recording.getJSONObject("recording").getJSONArray("events");
+        for(int i = 0; i < events.length(); i++){
+            final JSONObject event = events.getJSONObject(i);
+            final String type = event.optString("type");
+            final JSONObject values = event.getJSONObject("values");
+            final double millis = parseDurationMillis(values.optString("duration", null));
+            final boolean failed = values.optBoolean("failed", false);
+
+            if (EBEventType.PROCESS_DATA.getEventName().equals(type) || EBEventType.CREATE_UO.getEventName().equals(type)){
+                final String key = String.format("%08x", values.optLong("uoId"))
+                        + (EBEventType.CREATE_UO.getEventName().equals(type) ? " create" : " " + values.optString("function", ""));
+                summary(perUo, key).add(millis, failed, false);
+
+            } else if (EBEventType.REQUEST.getEventName().equals(type)){
+                summary(perEndpoint, values.optString("endpoint", "?")).add(millis, failed, values.optInt("attempt", 1) > 1);
+            }
+        }
+    }
+
+    public void print(PrintStream out){
+        out.println("Per user object:");
+        print(out, perUo);
+        out.println();
+        out.println("Per endpoint (HTTP attempts):");
+        print(out, perEndpoint);
+    }
+
+    private static void print(PrintStream out, Map<String, Summary> summaries){
+        out.println(String.format("%-24s %8s %8s %8s %10s %10s %10s", "key", "count", "failed", "retries", "mean ms", "p99 ms", "max ms"));
+        for(Map.Entry<String, Summary> entry : summaries.entrySet()){
+            final Summary s = entry.getValue();
+            out.println(String.format("%-24s %8d %8d %8d %10.2f %10.2f %10.2f",
+                    entry.getKey(), s.durations.size(), s.failed, s.retries, s.mean(), s.percentile(0.99), s.percentile(1.0)));
+        }
+    }
+
+    private static Summary summary(Map<String, Summary> map, String key){
+        Summary s = map.get(key);
+        if (s == null){
+            s = new Summary();
+            map.put(key, s);
+        }
+        return s;
+    }
+
+    /**
+     * Parses ISO-8601 duration as printed by jfr, e.g., PT0.012345S.
+     * @param duration duration string
+     * @return milliseconds, 0 if not recognized
+     */
+    static double parseDurationMillis(String duration){
+        if (duration == null){
+            return 0.0;
+        }
+
+        final Matcher m = DURATION.matcher(duration);
+        if (!m.matches()){
+            return 0.0;
+        }
+
+        double res = 0.0;
+        if (m.group(1) != null){
+            res += Long.parseLong(m.group(1)) * 3600000.0;
+        }
+        if (m.group(2) != null){
+            res += Long.parseLong(m.group(2)) * 60000.0;
+        }
+        if (m.group(3) != null){
+            res += Double.parseDouble(m.group(3)) * 1000.0;
+        }
+        return res;
+    }
+
+    private static String readAll(InputStream is) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buff = new byte[8192];
+        int read;
+        while((read = is.read(buff)) >= 0){
+            bos.write(buff, 0, read);
+        }
+        return bos.toString("UTF-8");
+    }
+
+    private static class Summary {
+        private final List<Double> durations = new ArrayList<Double>();
+        private long failed;
+        private long retries;
+
+        void add(double millis, boolean isFailed, boolean isRetry){
+            durations.add(millis);
+            failed += isFailed ? 1 : 0;
+            retries += isRetry ? 1 : 0;
+        }
+
+        double mean(){
+            double sum = 0.0;
+            for(Double d : durations){
+                sum += d;
+            }
+            return durations.isEmpty() ? 0.0 : sum / durations.size();
+        }
+
+        double percentile(double p){
+            if (durations.isEmpty()){
+                return 0.0;
+            }
+
+            final List<Double> sorted = new ArrayList<Double>(durations);
+            Collections.sort(sorted);
+            final int idx = (int) Math.ceil(p * sorted.size()) - 1;
+            return sorted.get(Math.max(0, Math.min(sorted.size() - 1, idx)));
+        }
+    }
+}
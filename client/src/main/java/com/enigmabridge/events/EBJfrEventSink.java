@@ -0,0 +1,222 @@
+package com.enigmabridge.events;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Emits client events as Java Flight Recorder events.
+ *
+ * Uses the dynamic jdk.jfr.EventFactory API through reflection so the client stays compatible
+ * with JDKs without JFR. Event types are registered on construction, named by
+ * {@link EBEventType#getEventName()} in the {@value EBEventType#CATEGORY} category.
+ * Enabled events, thresholds and stack traces are controlled by the recording settings, see eb.jfc.
+ *
+ * Enabled state of the event types is cached and refreshed when a recording changes its state,
+ * so no event is created while no recording is running. Settings changed on a running recording
+ * are not noticed until the next recording state change.
+ */
+public class EBJfrEventSink implements EBEventSink {
+    public static final String JFC_RESOURCE = "/com/enigmabridge/events/eb.jfc";
+
+    private final Object[] factories = new Object[EBEventType.values().length];
+    private final Object[] eventTypes = new Object[EBEventType.values().length];
+    private final Method isTypeEnabled;
+    private final boolean stateListener;
+    private final AtomicInteger recordingState = new AtomicInteger();
+    private volatile EnabledState enabledState;
+    private final Method newEvent;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method commit;
+    private final Method set;
+
+    public EBJfrEventSink() throws Exception {
+        final Class<?> factoryCls = Class.forName("jdk.jfr.EventFactory");
+        final Class<?> eventCls = Class.forName("jdk.jfr.Event");
+        final Class<?> annotationElementCls = Class.forName("jdk.jfr.AnnotationElement");
+        final Class<?> valueDescriptorCls = Class.forName("jdk.jfr.ValueDescriptor");
+
+        final Constructor<?> annotationCtor = annotationElementCls.getConstructor(Class.class, Object.class);
+        final Constructor<?> valueCtor = valueDescriptorCls.getConstructor(Class.class, String.class);
+        final Method create = factoryCls.getMethod("create", List.class, List.class);
+
+        final Object[] categories = (Object[]) Array.newInstance(String.class, 1);
+        categories[0] = EBEventType.CATEGORY;
+
+        for(EBEventType type : EBEventType.values()){
+            final List<Object> annotations = new ArrayList<Object>();
+            annotations.add(annotationCtor.newInstance(Class.forName("jdk.jfr.Name"), type.getEventName()));
+            annotations.add(annotationCtor.newInstance(Class.forName("jdk.jfr.Label"), type.getLabel()));
+            annotations.add(annotationCtor.newInstance(Class.forName("jdk.jfr.Category"), categories));
+
+            final List<Object> fields = new ArrayList<Object>();
+            for(int i = 0; i < type.getFieldCount(); i++){
+                fields.add(valueCtor.newInstance(type.getFieldType(i), type.getField(i)));
+            }
+
+            factories[type.ordinal()] = create.invoke(null, annotations, fields);
+            eventTypes[type.ordinal()] = factoryCls.getMethod("getEventType").invoke(factories[type.ordinal()]);
+        }
+
+        isTypeEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+
+        newEvent = factoryCls.getMethod("newEvent");
+        begin = eventCls.getMethod("begin");
+        end = eventCls.getMethod("end");
+        shouldCommit = eventCls.getMethod("shouldCommit");
+        commit = eventCls.getMethod("commit");
+        set = eventCls.getMethod("set", int.class, Object.class);
+        stateListener = addRecordingListener();
+    }
+
+    /**
+     * @return true if the running JDK provides the dynamic JFR event API
+     */
+    public static boolean isAvailable(){
+        try {
+            Class.forName("jdk.jfr.EventFactory");
+            return true;
+        } catch(Throwable t){
+            return false;
+        }
+    }
+
+    /**
+     * Cached enabled state of the type, without the listener the state is read each time.
+     * @param type event type
+     * @return true if a running recording has the event type enabled
+     */
+    @Override
+    public boolean isEnabled(EBEventType type) {
+        EnabledState cur = enabledState;
+        if (cur == null || !stateListener || cur.recordingState != recordingState.get()){
+            cur = refreshEnabled();
+        }
+
+        return cur.enabled[type.ordinal()];
+    }
+
+    @Override
+    public void begin(EBEvent event) {
+        try {
+            final Object jfrEvent = newEvent.invoke(factories[event.getType().ordinal()]);
+            begin.invoke(jfrEvent);
+            event.setHandle(jfrEvent);
+        } catch(Exception e){
+            // Event is dropped.
+        }
+    }
+
+    @Override
+    public void commit(EBEvent event) {
+        final Object jfrEvent = event.getHandle();
+        if (jfrEvent == null){
+            return;
+        }
+
+        try {
+            end.invoke(jfrEvent);
+            if (!((Boolean) shouldCommit.invoke(jfrEvent))){
+                return;
+            }
+
+            final EBEventType type = event.getType();
+            for(int i = 0; i < type.getFieldCount(); i++){
+                final Object value = event.get(i);
+                if (value != null){
+                    set.invoke(jfrEvent, i, coerce(type.getFieldType(i), value));
+                }
+            }
+
+            commit.invoke(jfrEvent);
+        } catch(Exception e){
+            // Event is dropped.
+        }
+    }
+
+    private EnabledState refreshEnabled(){
+        final int state = recordingState.get();
+        final boolean[] enabled = new boolean[eventTypes.length];
+        for(int i = 0; i < eventTypes.length; i++){
+            try {
+                enabled[i] = (Boolean) isTypeEnabled.invoke(eventTypes[i]);
+            } catch(Exception e){
+                enabled[i] = false;
+            }
+        }
+
+        final EnabledState res = new EnabledState(state, enabled);
+        enabledState = res;
+        return res;
+    }
+
+    /**
+     * Registers FlightRecorderListener invalidating the cached enabled state on recording state changes.
+     * @return true if registered
+     */
+    private boolean addRecordingListener(){
+        try {
+            final Class<?> listenerCls = Class.forName("jdk.jfr.FlightRecorderListener");
+            final Object listener = Proxy.newProxyInstance(EBJfrEventSink.class.getClassLoader(),
+                    new Class<?>[]{listenerCls}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    if ("equals".equals(method.getName())){
+                        return proxy == args[0];
+                    } else if ("hashCode".equals(method.getName())){
+                        return System.identityHashCode(proxy);
+                    } else if ("toString".equals(method.getName())){
+                        return "EBJfrEventSink recording listener";
+                    }
+
+                    // recorderInitialized, recordingStateChanged
+                    recordingState.incrementAndGet();
+                    return null;
+                }
+            });
+
+            Class.forName("jdk.jfr.FlightRecorder").getMethod("addListener", listenerCls).invoke(null, listener);
+            return true;
+
+        } catch(Exception e){
+            return false;
+        }
+    }
+
+    /**
+     * Enabled event types, valid while the recording state has not changed.
+     */
+    private static class EnabledState {
+        private final int recordingState;
+        private final boolean[] enabled;
+
+        EnabledState(int recordingState, boolean[] enabled) {
+            this.recordingState = recordingState;
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * JFR requires values of the exact field type.
+     */
+    private static Object coerce(Class<?> fieldType, Object value){
+        if (value instanceof Number){
+            if (fieldType == long.class){
+                return ((Number) value).longValue();
+            } else if (fieldType == int.class){
+                return ((Number) value).intValue();
+            }
+        } else if (fieldType == String.class && !(value instanceof String)){
+            return value.toString();
+        }
+
+        return value;
+    }
+}
@@ -1,5 +1,13 @@
 package com.enigmabridge.provider;
 
+import com.enigmabridge.events.EBEvent;
+import com.enigmabridge.events.EBEventType;
+import com.enigmabridge.events.EBEvents;
+import com.enigmabridge.provider.aes.AESEngine;
+import com.enigmabridge.provider.aes.EBBulkBufferedBlockCipher;
+import com.enigmabridge.provider.aes.EBCBCBlockCipher;
+import com.enigmabridge.provider.aes.EBMultiBlockCipher;
+import com.enigmabridge.provider.aes.EBPrefetchSICBlockCipher;
 import com.enigmabridge.provider.parameters.EBKeyParameter;
 import org.bouncycastle.asn1.cms.GCMParameters;
 import org.bouncycastle.crypto.*;
@@ -239,8 +247,7 @@ public class BaseBlockCipher extends org.bouncycastle.jcajce.provider.symmetric.
         else if (modeName.equals("CBC"))
         {
             ivLength = baseEngine.getBlockSize();
-            cipher = new BaseBlockCipher.BufferedGenericBlockCipher(
-                    new CBCBlockCipher(baseEngine));
+            cipher = new BaseBlockCipher.BufferedGenericBlockCipher(createCBCCipher());
         }
         else if (modeName.startsWith("OFB"))
         {
@@ -297,14 +304,14 @@ public class BaseBlockCipher extends org.bouncycastle.jcajce.provider.symmetric.
             }
             fixedIv = false;
             cipher = new BaseBlockCipher.BufferedGenericBlockCipher(new BufferedBlockCipher(
-                    new SICBlockCipher(baseEngine)));
+                    createSICCipher(modeName.substring(3))));
         }
         else if (modeName.startsWith("CTR"))
         {
             ivLength = baseEngine.getBlockSize();
             fixedIv = false;
             cipher = new BaseBlockCipher.BufferedGenericBlockCipher(new BufferedBlockCipher(
-                    new SICBlockCipher(baseEngine)));
+                    createSICCipher(modeName.substring(3))));
         }
         else if (modeName.startsWith("GOFB"))
         {
@@ -359,6 +366,49 @@ public class BaseBlockCipher extends org.bouncycastle.jcajce.provider.symmetric.
         }
     }
 
+    /**
+     * SIC / CTR mode. EB AES engine gets keystream prefetch, optional mode suffix is the maximal lookahead in blocks,
+     * up to {@link EBPrefetchSICBlockCipher#MAX_LOOKAHEAD}.
+     * @param suffix mode name suffix, e.g., "64" for CTR64
+     * @return SIC block cipher
+     * @throws NoSuchAlgorithmException
+     */
+    private StreamBlockCipher createSICCipher(String suffix) throws NoSuchAlgorithmException
+    {
+        if (!(baseEngine instanceof AESEngine))
+        {
+            return new SICBlockCipher(baseEngine);
+        }
+
+        if (suffix.length() == 0)
+        {
+            return new EBPrefetchSICBlockCipher(baseEngine);
+        }
+
+        try
+        {
+            return new EBPrefetchSICBlockCipher(baseEngine, Integer.parseInt(suffix));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new NoSuchAlgorithmException("can't support mode " + modeName);
+        }
+    }
+
+    /**
+     * CBC mode. EB AES engine gets CBC offloaded to the user object, whole message in one call.
+     * @return CBC block cipher
+     */
+    private BlockCipher createCBCCipher()
+    {
+        if (baseEngine instanceof AESEngine)
+        {
+            return new EBCBCBlockCipher((AESEngine) baseEngine);
+        }
+
+        return new CBCBlockCipher(baseEngine);
+    }
+
     protected void engineSetPadding(
             String  padding)
             throws NoSuchPaddingException
@@ -369,12 +419,19 @@ public class BaseBlockCipher extends org.bouncycastle.jcajce.provider.symmetric.
         {
             if (cipher.wrapOnNoPadding())
             {
-                cipher = new BaseBlockCipher.BufferedGenericBlockCipher(new BufferedBlockCipher(cipher.getUnderlyingCipher()));
+                cipher = new BaseBlockCipher.BufferedGenericBlockCipher(cipher.getUnderlyingCipher(), null);
             }
         }
         else if (paddingName.equals("WITHCTS"))
         {
-            cipher = new BaseBlockCipher.BufferedGenericBlockCipher(new CTSBlockCipher(cipher.getUnderlyingCipher()));
+            BlockCipher underlying = cipher.getUnderlyingCipher();
+            if (underlying instanceof EBCBCBlockCipher)
+            {
+                // CTS handles the last two blocks of CBC itself.
+                underlying = new CBCBlockCipher(((EBCBCBlockCipher) underlying).getUnderlyingCipher());
+            }
+
+            cipher = new BaseBlockCipher.BufferedGenericBlockCipher(new CTSBlockCipher(underlying));
         }
         else
         {
@@ -704,6 +761,59 @@ public class BaseBlockCipher extends org.bouncycastle.jcajce.provider.symmetric.
             int     inputOffset,
             int     inputLen)
             throws IllegalBlockSizeException, BadPaddingException
+    {
+        final EBEvent event = EBEvents.begin(EBEventType.CIPHER);
+        boolean failed = true;
+        try
+        {
+            final byte[] res = doFinalInternal(input, inputOffset, inputLen);
+            failed = false;
+            return res;
+        }
+        finally
+        {
+            commitEvent(event, inputLen, failed);
+        }
+    }
+
+    protected int engineDoFinal(
+            byte[]  input,
+            int     inputOffset,
+            int     inputLen,
+            byte[]  output,
+            int     outputOffset)
+            throws IllegalBlockSizeException, BadPaddingException, ShortBufferException
+    {
+        final EBEvent event = EBEvents.begin(EBEventType.CIPHER);
+        boolean failed = true;
+        try
+        {
+            final int res = doFinalInternal(input, inputOffset, inputLen, output, outputOffset);
+            failed = false;
+            return res;
+        }
+        finally
+        {
+            commitEvent(event, inputLen, failed);
+        }
+    }
+
+    private void commitEvent(EBEvent event, int inputLen, boolean failed)
+    {
+        if (event != null)
+        {
+            event.set("algorithm", cipher.getAlgorithmName())
+                    .set("inputLength", inputLen)
+                    .set("failed", failed)
+                    .commit();
+        }
+    }
+
+    protected byte[] doFinalInternal(
+            byte[]  input,
+            int     inputOffset,
+            int     inputLen)
+            throws IllegalBlockSizeException, BadPaddingException
     {
         int     len = 0;
         byte[]  tmp = new byte[engineGetOutputSize(inputLen)];
@@ -734,7 +844,7 @@ public class BaseBlockCipher extends org.bouncycastle.jcajce.provider.symmetric.
         return out;
     }
 
-    protected int engineDoFinal(
+    protected int doFinalInternal(
             byte[]  input,
             int     inputOffset,
             int     inputLen,
@@ -818,12 +928,27 @@ public class BaseBlockCipher extends org.bouncycastle.jcajce.provider.symmetric.
 
         BufferedGenericBlockCipher(org.bouncycastle.crypto.BlockCipher cipher)
         {
-            this.cipher = new PaddedBufferedBlockCipher(cipher);
+            this(cipher, new PKCS7Padding());
         }
 
+        /**
+         * @param cipher block cipher
+         * @param padding padding, null for no padding
+         */
         BufferedGenericBlockCipher(org.bouncycastle.crypto.BlockCipher cipher, BlockCipherPadding padding)
         {
-            this.cipher = new PaddedBufferedBlockCipher(cipher, padding);
+            if (cipher instanceof EBMultiBlockCipher)
+            {
+                this.cipher = new EBBulkBufferedBlockCipher((EBMultiBlockCipher) cipher, padding);
+            }
+            else if (padding == null)
+            {
+                this.cipher = new BufferedBlockCipher(cipher);
+            }
+            else
+            {
+                this.cipher = new PaddedBufferedBlockCipher(cipher, padding);
+            }
         }
 
         public void init(boolean forEncryption, CipherParameters params)
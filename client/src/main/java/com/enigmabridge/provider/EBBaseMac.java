@@ -0,0 +1,72 @@
+package com.enigmabridge.provider;
+
+import com.enigmabridge.provider.parameters.EBKeyParameter;
+import org.bouncycastle.crypto.Mac;
+
+import javax.crypto.MacSpi;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * Mac SPI for EB keys, wraps lightweight Mac over EB engines.
+ * Key is passed to the Mac as {@link EBKeyParameter}.
+ */
+public class EBBaseMac extends MacSpi {
+    private final Mac macEngine;
+
+    protected EBBaseMac(Mac macEngine) {
+        this.macEngine = macEngine;
+    }
+
+    @Override
+    protected void engineInit(Key key, AlgorithmParameterSpec params)
+            throws InvalidKeyException, InvalidAlgorithmParameterException
+    {
+        if (key == null){
+            throw new InvalidKeyException("key is null");
+        }
+
+        if (!(key instanceof EBUOKey)){
+            throw new InvalidKeyException("Only EB keys are supported");
+        }
+
+        if (params != null){
+            throw new InvalidAlgorithmParameterException("Unsupported parameter spec");
+        }
+
+        try {
+            macEngine.init(new EBKeyParameter<EBUOKey>((EBUOKey) key));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected int engineGetMacLength() {
+        return macEngine.getMacSize();
+    }
+
+    @Override
+    protected void engineReset() {
+        macEngine.reset();
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        macEngine.update(input);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len) {
+        macEngine.update(input, offset, len);
+    }
+
+    @Override
+    protected byte[] engineDoFinal() {
+        final byte[] out = new byte[engineGetMacLength()];
+        macEngine.doFinal(out, 0);
+        return out;
+    }
+}
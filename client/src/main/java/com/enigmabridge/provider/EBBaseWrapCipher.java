@@ -0,0 +1,58 @@
+package com.enigmabridge.provider;
+
+import com.enigmabridge.provider.parameters.EBKeyParameter;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.Wrapper;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.jcajce.provider.symmetric.util.BaseWrapCipher;
+
+import javax.crypto.Cipher;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * Wrap cipher SPI for EB keys.
+ * Key is passed to the wrap engine as {@link EBKeyParameter}, other keys are handled by {@link BaseWrapCipher}.
+ */
+public class EBBaseWrapCipher extends BaseWrapCipher {
+    protected EBBaseWrapCipher(Wrapper wrapEngine) {
+        super(wrapEngine);
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random)
+            throws InvalidKeyException, InvalidAlgorithmParameterException
+    {
+        if (!(key instanceof EBUOKey)){
+            super.engineInit(opmode, key, params, random);
+            return;
+        }
+
+        if (params != null){
+            throw new InvalidAlgorithmParameterException("Unsupported parameter spec");
+        }
+
+        CipherParameters param = new EBKeyParameter<EBUOKey>((EBUOKey) key);
+        if (random != null){
+            param = new ParametersWithRandom(param, random);
+        }
+
+        try {
+            switch (opmode){
+                case Cipher.WRAP_MODE:
+                    wrapEngine.init(true, param);
+                    break;
+                case Cipher.UNWRAP_MODE:
+                    wrapEngine.init(false, param);
+                    break;
+                default:
+                    throw new InvalidKeyException("Engine only valid for wrapping");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+    }
+}
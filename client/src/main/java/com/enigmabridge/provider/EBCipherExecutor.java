@@ -0,0 +1,67 @@
+package com.enigmabridge.provider;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared executor for background ProcessData calls issued by provider ciphers,
+ * e.g., keystream prefetch, pipelined chunks or paired key generation.
+ *
+ * Default executor uses daemon threads so it does not block JVM exit.
+ * Can be replaced by an application managed executor.
+ */
+public class EBCipherExecutor {
+    public static final int DEFAULT_THREADS = 16;
+
+    private static volatile ExecutorService executor;
+
+    private EBCipherExecutor() {
+    }
+
+    /**
+     * Returns the shared executor, creates the default one if not set.
+     * @return executor
+     */
+    public static ExecutorService getExecutor(){
+        ExecutorService res = executor;
+        if (res != null){
+            return res;
+        }
+
+        synchronized (EBCipherExecutor.class){
+            if (executor == null){
+                executor = createDefault();
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * Sets the shared executor. Previous executor is not shut down.
+     * @param newExecutor executor, null to use the default one
+     */
+    public static synchronized void setExecutor(ExecutorService newExecutor){
+        executor = newExecutor;
+    }
+
+    private static ExecutorService createDefault(){
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor res = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        final Thread t = new Thread(r, "eb-cipher-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        res.allowCoreThreadTimeOut(true);
+        return res;
+    }
+}
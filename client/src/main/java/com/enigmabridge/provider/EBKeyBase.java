@@ -9,6 +9,8 @@ import org.bouncycastle.asn1.DERNull;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 
@@ -21,6 +23,7 @@ public abstract class EBKeyBase implements EBUOKey, EBJSONSerializable {
     public static final String FORMAT_X509 = "X.509";
     public static final String FORMAT_PKCS8 = "PKCS#8";
     public static final String FORMAT_JSON = "JSON";
+    public static final String FORMAT_EB_COMPACT = "EB-COMPACT";
 
     protected UserObjectKeyBase uo;
     protected EBEngine ebEngine;
@@ -58,6 +61,16 @@ public abstract class EBKeyBase implements EBUOKey, EBJSONSerializable {
             return getThisBuilder();
         }
 
+        public B setCompact(EBCompactDecoder decoder) throws IOException {
+            getObj().fromCompact(decoder);
+            return getThisBuilder();
+        }
+
+        public B setCompact(byte[] encoded) throws IOException {
+            getObj().fromCompact(new EBCompactDecoder(encoded));
+            return getThisBuilder();
+        }
+
         public abstract T build();
         public abstract B getThisBuilder();
         public abstract T getObj();
@@ -106,6 +119,63 @@ public abstract class EBKeyBase implements EBUOKey, EBJSONSerializable {
         return json;
     }
 
+    /**
+     * Serializes key to the compact binary form, see {@link EBCompactEncoding}.
+     * @return compact encoded key
+     * @throws IOException
+     */
+    public byte[] getEncodedCompact() throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bos);
+        writeCompactExtension(out);
+        out.flush();
+
+        return EBCompactEncoding.encode(getCompactRecordType(), uo, bos.toByteArray());
+    }
+
+    /**
+     * Record type used in the compact form.
+     * @return record type
+     */
+    protected int getCompactRecordType(){
+        return EBCompactEncoding.RECORD_KEY;
+    }
+
+    /**
+     * Writes key specific data to the compact record extension.
+     * @param out extension output
+     * @throws IOException
+     */
+    protected void writeCompactExtension(DataOutputStream out) throws IOException {
+        // No extension for base key.
+    }
+
+    /**
+     * Initializes object from the compact record.
+     * @param decoder decoder pointing to the record
+     * @throws IOException
+     */
+    protected void fromCompact(EBCompactDecoder decoder) throws IOException {
+        if (decoder.getRecordType() < EBCompactEncoding.RECORD_KEY){
+            throw new IOException("Record is not a key");
+        }
+
+        uo = new UserObjectKeyBase.Builder()
+                .setCompact(decoder)
+                .build();
+
+        readCompactExtension(decoder);
+    }
+
+    /**
+     * Reads key specific data from the compact record extension.
+     * @param decoder decoder pointing to the record
+     * @throws IOException
+     */
+    protected void readCompactExtension(EBCompactDecoder decoder) throws IOException {
+        // No extension for base key.
+    }
+
     @Override
     public UserObjectInfo getUserObjectInfo() {
         return uo;
@@ -8,6 +8,7 @@ import com.enigmabridge.create.Constants;
 import com.enigmabridge.provider.asn1.EBASNUtils;
 import com.enigmabridge.provider.asn1.EBEncodableUOKey;
 import com.enigmabridge.provider.asn1.EBJSONEncodedUOKey;
+import com.enigmabridge.provider.specs.EBCompactEncodedUOKeySpec;
 import com.enigmabridge.provider.specs.EBConfigurationUOKeySpec;
 import com.enigmabridge.provider.specs.EBJSONEncodedUOKeySpec;
 import com.enigmabridge.provider.specs.EBSecretKeySpec;
@@ -76,6 +77,8 @@ public class EBSecretKeyFactory extends SecretKeyFactorySpi {
             return fromPkcs8Encoded(p8);
 
         } else if (keySpec instanceof EBJSONEncodedUOKeySpec){
+            initFromSpecs(null);
+
             final JSONObject json = ((EBJSONEncodedUOKeySpec) keySpec).getJson();
             try {
                 final EBSymmetricKey tmpKey = new EBSymmetricKey.Builder()
@@ -93,7 +96,29 @@ public class EBSecretKeyFactory extends SecretKeyFactorySpi {
                 throw new InvalidKeySpecException("Key could not be parsed", e);
             }
 
+        } else if (keySpec instanceof EBCompactEncodedUOKeySpec){
+            initFromSpecs(null);
+
+            final byte[] encoded = ((EBCompactEncodedUOKeySpec) keySpec).getEncoded();
+            try {
+                final EBSymmetricKey tmpKey = new EBSymmetricKey.Builder()
+                        .setEngine(engine)
+                        .setCompact(encoded)
+                        .build();
+
+                if (tmpKey.getKeyType() != UserObjectKeyType.SECRET){
+                    throw new InvalidKeySpecException("Key type is invalid: " + tmpKey.getKeyType());
+                }
+
+                return tmpKey;
+
+            } catch (IOException e) {
+                throw new InvalidKeySpecException("Key could not be parsed", e);
+            }
+
         } else if (keySpec instanceof EBConfigurationUOKeySpec){
+            initFromSpecs(null);
+
             final String configLine = ((EBConfigurationUOKeySpec) keySpec).getConfigLine();
             try {
                 final EBURLConfig config = new EBURLConfig.Builder().setURLConfig(configLine).build();
@@ -191,6 +216,14 @@ public class EBSecretKeyFactory extends SecretKeyFactorySpi {
             if(EBJSONEncodedUOKeySpec.class.isAssignableFrom(aClass)){
                 return new EBJSONEncodedUOKeySpec(ebKey.toJSON(null, true));
 
+            } else if(EBCompactEncodedUOKeySpec.class.isAssignableFrom(aClass)){
+                try {
+                    return new EBCompactEncodedUOKeySpec(ebKey.getEncodedCompact());
+
+                } catch (IOException e) {
+                    throw new InvalidKeySpecException("Exception in generating specs", e);
+                }
+
             } else if(EBConfigurationUOKeySpec.class.isAssignableFrom(aClass)){
                 try {
                     return new EBConfigurationUOKeySpec(new EBURLConfig.Builder()
@@ -1,13 +1,18 @@
 package com.enigmabridge.provider;
 
+import com.enigmabridge.EBCompactDecoder;
+import com.enigmabridge.EBCompactEncoding;
 import com.enigmabridge.EBEngine;
 import com.enigmabridge.EBJSONSerializable;
+import com.enigmabridge.UserObjectKeyBase;
 import com.enigmabridge.provider.asn1.EBASNUtils;
 import com.enigmabridge.provider.asn1.EBJSONEncodedUOKey;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.json.JSONObject;
 
 import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.security.spec.KeySpec;
@@ -156,6 +161,50 @@ public class EBSymmetricKey extends EBKeyBase implements EBJSONSerializable, Sec
         return super.getEncoded(EBASNUtils.eb_aes);
     }
 
+    @Override
+    public byte[] getEncodedCompact() throws IOException {
+        return getEncodedCompact(true);
+    }
+
+    /**
+     * Serializes key to the compact binary form.
+     * @param includeInversion true if inversion key should be serialized too
+     * @return compact encoded key
+     * @throws IOException
+     */
+    public byte[] getEncodedCompact(boolean includeInversion) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bos);
+        if (includeInversion && inversionKey != null){
+            out.writeByte(1);
+            out.write(inversionKey.getEncodedCompact(false));
+        } else {
+            out.writeByte(0);
+        }
+        out.flush();
+
+        return EBCompactEncoding.encode(getCompactRecordType(), uo, bos.toByteArray());
+    }
+
+    @Override
+    protected int getCompactRecordType() {
+        return EBCompactEncoding.RECORD_KEY_SYMMETRIC;
+    }
+
+    @Override
+    protected void readCompactExtension(EBCompactDecoder decoder) throws IOException {
+        if (!decoder.hasExtension() || decoder.readByte() == 0){
+            return;
+        }
+
+        inversionKey = new EBSymmetricKey();
+        inversionKey.uo = new UserObjectKeyBase.Builder()
+                .setCompact(decoder.readNested())
+                .build();
+        inversionKey.setInversionKey(this);
+        inversionKey.setEbEngine(getEBEngine(), false);
+    }
+
     public boolean isEncryptionKey(){
         return getUserObjectType().isEncryptionObject();
     }
@@ -7,10 +7,15 @@ import com.enigmabridge.provider.specs.EBSymmetricKeyGenTypes;
 import javax.crypto.SecretKey;
 import java.security.ProviderException;
 import java.security.SecureRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * EBSymmetricKey factory.
  * Symmetric key usually needs two UOs to perform both encryption and decryption (one for one operation).
+ * Both UOs are created concurrently, on {@link EBCipherExecutor} unless executor is set.
  *
  * Created by dusanklinec on 13.07.16.
  */
@@ -20,6 +25,8 @@ public class EBSymmetricKeyCreator {
     protected EBSymmetricKeyGenTypes keyType = EBSymmetricKeyGenTypes.BOTH;
     protected UserObjectKeyCreator uoKeyCreator;
 
+    protected ExecutorService executor;
+
     private EBCommKeys commKeysEnc;
     private EBCommKeys commKeysDec;
 
@@ -50,6 +57,11 @@ public class EBSymmetricKeyCreator {
             return getThisBuilder();
         }
 
+        public B setExecutor(ExecutorService executor){
+            getObj().executor = executor;
+            return getThisBuilder();
+        }
+
         public abstract T build();
         public abstract B getThisBuilder();
         public abstract T getObj();
@@ -120,18 +132,29 @@ public class EBSymmetricKeyCreator {
      * @return EBSymmetricKey.Builder
      */
     protected EBSymmetricKey.Builder generateKey(boolean forEncryption){
-        uoKeyCreator.setCommKeys(getCommKeys(forEncryption));
-        final UserObjectType uoType = uoKeyCreator.getUoType();
+        return generateKey(uoKeyCreator, forEncryption);
+    }
+
+    /**
+     * Generates UO key in the EB with randomly generated comm keys, using given creator.
+     *
+     * @param creator UO key creator
+     * @param forEncryption true if this should be encryption key
+     * @return EBSymmetricKey.Builder
+     */
+    protected EBSymmetricKey.Builder generateKey(UserObjectKeyCreator creator, boolean forEncryption){
+        creator.setCommKeys(getCommKeys(forEncryption));
+        final UserObjectType uoType = creator.getUoType();
         final int functionType = uoType.isCipherObject(forEncryption) ?
                 uoType.getUoTypeFunction() :
                 uoType.getInversionUoTypeFunction();
 
-        uoKeyCreator.setUoTypeFunction(functionType);
+        creator.setUoTypeFunction(functionType);
         try {
-            final UserObjectKeyBase.Builder keyBld = uoKeyCreator.create();
+            final UserObjectKeyBase.Builder keyBld = creator.create();
             final EBSymmetricKey.Builder bld = new EBSymmetricKey.Builder()
                     .setUo(keyBld.build())
-                    .setEngine(uoKeyCreator.getEngine());
+                    .setEngine(creator.getEngine());
 
             return bld;
 
@@ -140,17 +163,89 @@ public class EBSymmetricKeyCreator {
         }
     }
 
+    /**
+     * Generates decryption and encryption UO keys concurrently.
+     * Each UO needs its own template (template carries the object id and authorization),
+     * so decryption key is created by a copy of the creator on the executor while
+     * encryption key is created on the calling thread.
+     * If the encryption key fails, the decryption key creation is awaited so it is not left running unobserved,
+     * failure then reports both results.
+     *
+     * @return decryption key builder, encryption key builder
+     */
+    protected EBSymmetricKey.Builder[] generateKeyPair(){
+        final UserObjectKeyCreator decCreator = uoKeyCreator.copy();
+        final Future<EBSymmetricKey.Builder> decFuture = getExecutor().submit(new Callable<EBSymmetricKey.Builder>() {
+            @Override
+            public EBSymmetricKey.Builder call() throws Exception {
+                return generateKey(decCreator, false);
+            }
+        });
+
+        final EBSymmetricKey.Builder encKey;
+        try {
+            encKey = generateKey(true);
+
+        } catch (RuntimeException e) {
+            throw new ProviderException("Create Symmetric key failed, encryption key failed: " + describe(e)
+                    + ", decryption key: " + awaitDiscarded(decFuture), e);
+        }
+
+        try {
+            return new EBSymmetricKey.Builder[]{decFuture.get(), encKey};
+
+        } catch (InterruptedException e) {
+            decFuture.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ProviderException("Interrupted while creating Symmetric key", e);
+
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ProviderException){
+                throw (ProviderException) cause;
+            }
+            throw new ProviderException("Create Symmetric key failed", cause);
+        }
+    }
+
+    /**
+     * Waits for the key creation whose result is not used, cancels it if interrupted.
+     * @param future key creation
+     * @return creation outcome, for the error message
+     */
+    private static String awaitDiscarded(Future<EBSymmetricKey.Builder> future){
+        try {
+            future.get();
+            return "created, discarded";
+
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return "cancelled";
+
+        } catch (ExecutionException e) {
+            return "failed: " + describe(e.getCause());
+        }
+    }
+
+    private static String describe(Throwable t){
+        return String.valueOf(t instanceof ProviderException && t.getCause() != null ? t.getCause() : t);
+    }
+
     public SecretKey engineGenerateKey() {
         EBSymmetricKey.Builder decKey = null;
         EBSymmetricKey.Builder encKey = null;
 
-        // Create decrypt.
-        if (keyType == EBSymmetricKeyGenTypes.BOTH || keyType == EBSymmetricKeyGenTypes.DECRYPT){
+        if (keyType == EBSymmetricKeyGenTypes.BOTH){
+            // Create both concurrently.
+            final EBSymmetricKey.Builder[] pair = generateKeyPair();
+            decKey = pair[0];
+            encKey = pair[1];
+
+        } else if (keyType == EBSymmetricKeyGenTypes.DECRYPT){
             decKey = generateKey(false);
-        }
 
-        // Create encrypt.
-        if (keyType == EBSymmetricKeyGenTypes.BOTH || keyType == EBSymmetricKeyGenTypes.ENCRYPT){
+        } else {
             encKey = generateKey(true);
         }
 
@@ -172,6 +267,10 @@ public class EBSymmetricKeyCreator {
 
     // Getters
 
+    protected ExecutorService getExecutor(){
+        return executor != null ? executor : EBCipherExecutor.getExecutor();
+    }
+
     protected EBCommKeys getCommKeys(boolean forEncryption){
         return forEncryption ? commKeysEnc : commKeysDec;
     }
@@ -1,8 +1,11 @@
 package com.enigmabridge.provider;
 
 import com.enigmabridge.EBEngine;
+import com.enigmabridge.EBEngineWarmUp;
+import com.enigmabridge.UserObjectInfo;
 import com.enigmabridge.provider.aes.AES;
 import com.enigmabridge.provider.keystore.BC;
+import com.enigmabridge.provider.keystore.EBKS;
 import com.enigmabridge.provider.keystore.PKCS12;
 import com.enigmabridge.provider.rsa.RSA;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
@@ -20,8 +23,8 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
 import java.security.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.Future;
 
 /**
  * Testing implementation.
@@ -48,6 +51,9 @@ public class EnigmaProvider extends Provider implements ConfigurableProvider {
     private EBEngine engine;
     private EBProviderConfiguration config;
 
+    private final List<AlgorithmGroup> groups = new ArrayList<AlgorithmGroup>();
+    private volatile boolean allRegistered;
+
     public EnigmaProvider(EBEngine engine) {
         super(PROVIDER_NAME, VERSION, PROVIDER_DESC);
         config = EBProviderConfiguration.getInstance(engine);
@@ -91,24 +97,167 @@ public class EnigmaProvider extends Provider implements ConfigurableProvider {
     private void setup()
     {
         // Register BC provider if not already registered.
-        Security.addProvider(new BouncyCastleProvider());
-
-        // Register our RSA engine.
-        new RSA.Mappings().configure(this);
+        // Done eagerly, EB code looks BC up by name before any EB service is requested.
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
 
-        // RSA keygen
-        addAlgorithm("KeyPairGenerator.RSA", "com.enigmabridge.provider.EBKeyPairGenerator", true);
-        addAlgorithm("Alg.Alias.KeyPairGenerator." + PKCSObjectIdentifiers.rsaEncryption, "RSA", true);
-        addAlgorithm("Alg.Alias.KeyPairGenerator." + X509ObjectIdentifiers.id_ea_rsa, "RSA", true);
-        addAlgorithm("Alg.Alias.KeyPairGenerator." + PKCSObjectIdentifiers.id_RSAES_OAEP, "RSA", true);
-        addAlgorithm("Alg.Alias.KeyPairGenerator." + PKCSObjectIdentifiers.id_RSASSA_PSS, "RSA", true);
+        // Algorithm groups are registered lazily, on the first lookup of a service type they provide.
+        // Short-lived applications pay only for the groups they use.
+        groups.add(new AlgorithmGroup(new String[]{"Cipher", "Signature", "KeyFactory", "KeyPairGenerator", "AlgorithmParameters"}) {
+            @Override
+            void register(EnigmaProvider provider) {
+                // Register our RSA engine.
+                new RSA.Mappings().configure(provider);
+
+                // RSA keygen
+                addAlgorithm("KeyPairGenerator.RSA", "com.enigmabridge.provider.EBKeyPairGenerator", true);
+                addAlgorithm("Alg.Alias.KeyPairGenerator." + PKCSObjectIdentifiers.rsaEncryption, "RSA", true);
+                addAlgorithm("Alg.Alias.KeyPairGenerator." + X509ObjectIdentifiers.id_ea_rsa, "RSA", true);
+                addAlgorithm("Alg.Alias.KeyPairGenerator." + PKCSObjectIdentifiers.id_RSAES_OAEP, "RSA", true);
+                addAlgorithm("Alg.Alias.KeyPairGenerator." + PKCSObjectIdentifiers.id_RSASSA_PSS, "RSA", true);
+            }
+        });
 
         // AES
-        new AES.Mappings().configure(this);
+        groups.add(new AlgorithmGroup(new String[]{"Cipher", "KeyGenerator", "SecretKeyFactory", "Mac", "AlgorithmParameters", "AlgorithmParameterGenerator"}) {
+            @Override
+            void register(EnigmaProvider provider) {
+                new AES.Mappings().configure(provider);
+            }
+        });
 
         // KeyStore
-        new BC.Mappings().configure(this);
-        new PKCS12.Mappings().configure(this);
+        groups.add(new AlgorithmGroup(new String[]{"KeyStore"}) {
+            @Override
+            void register(EnigmaProvider provider) {
+                new BC.Mappings().configure(provider);
+                new PKCS12.Mappings().configure(provider);
+                new EBKS.Mappings().configure(provider);
+            }
+        });
+    }
+
+    /**
+     * Set of algorithms registered together on the first lookup of one of its types.
+     */
+    private static abstract class AlgorithmGroup {
+        private final String[] types;
+        private volatile boolean registered;
+
+        AlgorithmGroup(String[] types) {
+            this.types = types;
+        }
+
+        boolean provides(String type){
+            for (String t : types){
+                if (t.equalsIgnoreCase(type)){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        abstract void register(EnigmaProvider provider);
+    }
+
+    /**
+     * Registers all algorithm groups providing the given type, all groups if type is null.
+     * @param type service type or null
+     */
+    protected void ensureRegistered(final String type){
+        if (allRegistered){
+            return;
+        }
+
+        boolean missing = false;
+        for (AlgorithmGroup group : groups){
+            if (!group.registered && (type == null || group.provides(type))){
+                missing = true;
+                break;
+            }
+        }
+
+        if (!missing){
+            return;
+        }
+
+        AccessController.doPrivileged(new PrivilegedAction<Object>()
+        {
+            public Object run()
+            {
+                registerGroups(type);
+                return null;
+            }
+        });
+    }
+
+    private synchronized void registerGroups(String type){
+        boolean all = true;
+        for (AlgorithmGroup group : groups){
+            if (!group.registered && (type == null || group.provides(type))){
+                group.register(this);
+                group.registered = true;
+            }
+
+            all &= group.registered;
+        }
+
+        allRegistered = all;
+    }
+
+    @Override
+    public Service getService(String type, String algorithm) {
+        ensureRegistered(type);
+        return super.getService(type, algorithm);
+    }
+
+    @Override
+    public Set<Service> getServices() {
+        ensureRegistered(null);
+        return super.getServices();
+    }
+
+    @Override
+    public String getProperty(String key) {
+        ensureRegistered(null);
+        return super.getProperty(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        ensureRegistered(null);
+        return super.get(key);
+    }
+
+    @Override
+    public Set<Object> keySet() {
+        ensureRegistered(null);
+        return super.keySet();
+    }
+
+    @Override
+    public Set<Map.Entry<Object, Object>> entrySet() {
+        ensureRegistered(null);
+        return super.entrySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        ensureRegistered(null);
+        return super.values();
+    }
+
+    @Override
+    public Enumeration<Object> keys() {
+        ensureRegistered(null);
+        return super.keys();
+    }
+
+    @Override
+    public Enumeration<Object> elements() {
+        ensureRegistered(null);
+        return super.elements();
     }
 
     /**
@@ -129,38 +278,56 @@ public class EnigmaProvider extends Provider implements ConfigurableProvider {
             this.withAlg = withAlg;
         }
 
+        /**
+         * SPI constructor, resolved on the first instantiation.
+         */
+        private volatile Constructor<?> constructor;
+
         public Object newInstance(Object param) throws NoSuchAlgorithmException {
             try {
-                // get the Class object for the implementation class
-                Class clazz;
-
-                Provider provider = getProvider();
-                ClassLoader loader = provider.getClass().getClassLoader();
-                final String reqType = this.getType();
-                if (loader == null) {
-                    clazz = Class.forName(getClassName());
-                } else {
-                    clazz = loader.loadClass(getClassName());
-                }
+                final Constructor<?> cons = getSpiConstructor();
+                final Provider provider = getProvider();
+                if (cons.getParameterTypes().length == 0){
+                    // SPI not bound to the provider, e.g., signatures taking the engine from the key
+                    return cons.newInstance();
 
-                if (withAlg){
-                    // fetch the (Provider, String) constructor
-                    Constructor cons = clazz.getConstructor(paramTypesAlg);
-                    // invoke constructor and return the SPI object
-                    Object obj = cons.newInstance(new Object[]{provider, getAlgorithm()});
-                    return obj;
+                } else if (withAlg){
+                    // invoke (Provider, String) constructor and return the SPI object
+                    return cons.newInstance(new Object[]{provider, getAlgorithm()});
 
                 } else {
-                    // fetch the (Provider, String) constructor
-                    Constructor cons = clazz.getConstructor(paramTypes);
-                    // invoke constructor and return the SPI object
-                    Object obj = cons.newInstance(new Object[]{provider});
-                    return obj;
+                    // invoke (Provider) constructor and return the SPI object
+                    return cons.newInstance(new Object[]{provider});
                 }
             } catch (Exception e) {
                 throw new NoSuchAlgorithmException("Could not instantiate service", e);
             }
         }
+
+        private Constructor<?> getSpiConstructor() throws ClassNotFoundException, NoSuchMethodException {
+            Constructor<?> cons = constructor;
+            if (cons != null){
+                return cons;
+            }
+
+            // get the Class object for the implementation class
+            final Class<?> clazz;
+            final ClassLoader loader = getProvider().getClass().getClassLoader();
+            if (loader == null) {
+                clazz = Class.forName(getClassName());
+            } else {
+                clazz = loader.loadClass(getClassName());
+            }
+
+            try {
+                cons = clazz.getConstructor(withAlg ? paramTypesAlg : paramTypes);
+            } catch(NoSuchMethodException e){
+                cons = clazz.getConstructor();
+            }
+
+            constructor = cons;
+            return cons;
+        }
     }
 
     /**
@@ -208,6 +375,7 @@ public class EnigmaProvider extends Provider implements ConfigurableProvider {
 
     public boolean hasAlgorithm(String type, String name)
     {
+        ensureRegistered(type);
         return containsKey(type + "." + name) || containsKey("Alg.Alias." + type + "." + name);
     }
 
@@ -229,7 +397,22 @@ public class EnigmaProvider extends Provider implements ConfigurableProvider {
         if (dotIdx != -1){
             final String type = keyShort.substring(0, dotIdx);
             final String name = keyShort.substring(dotIdx+1);
-            putService(new MyCipherService(this, type, name, value, withAlg));
+
+            // Alias value is the target algorithm name, the service needs its implementation class.
+            // Service lookup is case insensitive, aliases differing only in case would replace the target.
+            String className = value;
+            if (key.startsWith("Alg.Alias.")){
+                if (name.equalsIgnoreCase(value)){
+                    return;
+                }
+
+                final Service target = super.getService(type, value);
+                if (target != null){
+                    className = target.getClassName();
+                }
+            }
+
+            putService(new MyCipherService(this, type, name, className, withAlg));
         }
     }
 
@@ -248,6 +431,22 @@ public class EnigmaProvider extends Provider implements ConfigurableProvider {
         return engine;
     }
 
+    /**
+     * Starts asynchronous warm-up of the engine and the provider algorithm lookups, see {@link EBEngineWarmUp}.
+     * @param connectionsPerEndpoint number of TLS handshakes per endpoint
+     * @param uos user objects to initialize comm keys for and to connect to their endpoints, may be null
+     * @return future completed when the warm-up finishes
+     */
+    public Future<EBEngineWarmUp> warmUp(int connectionsPerEndpoint, Iterable<? extends UserObjectInfo> uos) {
+        return new EBEngineWarmUp.Builder()
+                .setEngine(engine)
+                .setProvider(this)
+                .setConnectionsPerEndpoint(connectionsPerEndpoint)
+                .addUserObjects(uos)
+                .build()
+                .start();
+    }
+
     /**
      * Returns enigma provider from the JCA/JCE.
      * New one is created if not found in JCA/JCE.
@@ -12,7 +12,6 @@ import org.bouncycastle.crypto.BufferedBlockCipher;
 import org.bouncycastle.crypto.engines.RFC3211WrapEngine;
 import org.bouncycastle.crypto.engines.RFC5649WrapEngine;
 import org.bouncycastle.crypto.generators.Poly1305KeyGenerator;
-import org.bouncycastle.crypto.macs.CMac;
 import org.bouncycastle.crypto.macs.GMac;
 import org.bouncycastle.crypto.modes.*;
 import org.bouncycastle.jcajce.provider.config.ConfigurableProvider;
@@ -55,7 +54,7 @@ public class AES {
     {
         public CBC(EnigmaProvider provider)
         {
-            super(new CBCBlockCipher(new AESEngine(provider)), 128);
+            super(new EBCBCBlockCipher(new AESEngine(provider)), 128);
         }
     }
 
@@ -86,6 +85,15 @@ public class AES {
         }
     }
 
+    static public class Pipelined
+            extends EBPipelinedAESCipher
+    {
+        public Pipelined(EnigmaProvider provider)
+        {
+            super(provider);
+        }
+    }
+
     static public class CCM
             extends BaseBlockCipher
     {
@@ -96,11 +104,11 @@ public class AES {
     }
 
     public static class AESCMAC
-            extends BaseMac
+            extends EBBaseMac
     {
         public AESCMAC(EnigmaProvider provider)
         {
-            super(new CMac(new AESEngine(provider)));
+            super(new EBCMac(new AESEngine(provider)));
         }
     }
 
@@ -132,7 +140,7 @@ public class AES {
     }
 
     static public class Wrap
-            extends BaseWrapCipher
+            extends EBBaseWrapCipher
     {
         public Wrap(EnigmaProvider provider)
         {
@@ -150,7 +158,7 @@ public class AES {
     }
 
     public static class RFC5649Wrap
-            extends BaseWrapCipher
+            extends EBBaseWrapCipher
     {
         public RFC5649Wrap(EnigmaProvider provider)
         {
@@ -158,6 +166,15 @@ public class AES {
         }
     }
 
+    public static class EBWrap
+            extends EBBaseWrapCipher
+    {
+        public EBWrap(EnigmaProvider provider)
+        {
+            super(new EBAESWrapEngine(provider));
+        }
+    }
+
     // KeyGenerator
     public static class KeyGen
             extends EBKeyGenerator
@@ -560,6 +577,8 @@ public class AES {
 
             provider.addAlgorithm("Cipher.AESRFC3211WRAP", PREFIX + "$RFC3211Wrap");
             provider.addAlgorithm("Cipher.AESRFC5649WRAP", PREFIX + "$RFC5649Wrap");
+            provider.addAlgorithm("Cipher.AESEBWRAP", PREFIX + "$EBWrap");
+            provider.addAlgorithm("Alg.Alias.Cipher.AESKWEB", "AESEBWRAP");
 
             provider.addAlgorithm("AlgorithmParameterGenerator.CCM", PREFIX + "$AlgParamGenCCM");
             provider.addAlgorithm("Alg.Alias.AlgorithmParameterGenerator." + NISTObjectIdentifiers.id_aes128_CCM, "CCM");
@@ -576,6 +595,8 @@ public class AES {
             provider.addAlgorithm("Alg.Alias.AlgorithmParameterGenerator." + NISTObjectIdentifiers.id_aes192_GCM, "GCM");
             provider.addAlgorithm("Alg.Alias.AlgorithmParameterGenerator." + NISTObjectIdentifiers.id_aes256_GCM, "GCM");
 
+            provider.addAlgorithm("Cipher.AESPIPELINED", PREFIX + "$Pipelined");
+
             provider.addAlgorithm("Cipher.GCM", PREFIX + "$GCM");
             provider.addAlgorithm("Alg.Alias.Cipher", NISTObjectIdentifiers.id_aes128_GCM, "GCM");
             provider.addAlgorithm("Alg.Alias.Cipher", NISTObjectIdentifiers.id_aes192_GCM, "GCM");
@@ -126,18 +126,65 @@ public class AESEngine implements BlockCipher
             throw new OutputLengthException("output buffer too short");
         }
 
+        return processBlocks(in, inOff, BLOCK_SIZE, out, outOff);
+    }
+
+    /**
+     * Processes several blocks in one ProcessData call.
+     * EB user object works in CBC mode with zero IV, so the result is CBC encryption / decryption
+     * of the whole input, not ECB. Caller has to compensate the chaining if needed.
+     * Thread safe, may be called concurrently after init.
+     *
+     * @param in input buffer
+     * @param inOff input offset
+     * @param len input length, multiple of the block size
+     * @param out output buffer
+     * @param outOff output offset
+     * @return number of bytes written
+     */
+    public int processBlocks(
+            byte[] in,
+            int inOff,
+            int len,
+            byte[] out,
+            int outOff)
+    {
+        if (this.aesKey == null)
+        {
+            throw new IllegalStateException("AES engine not initialised");
+        }
+
+        if (len % BLOCK_SIZE != 0)
+        {
+            throw new DataLengthException("input length has to be a multiple of the block size");
+        }
+
+        if ((inOff + len) > in.length)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if ((outOff + len) > out.length)
+        {
+            throw new OutputLengthException("output buffer too short");
+        }
+
         final EBProcessDataCall call = new EBProcessDataCall.Builder()
                 .setKey(aesKey)
                 .build();
 
         try {
-            final EBProcessDataResponse response = call.doRequest(in, inOff, BLOCK_SIZE);
+            final EBProcessDataResponse response = call.doRequest(in, inOff, len);
             if (!response.isCodeOk()){
                 throw new EBCryptoException("Server returned invalid response");
             }
 
             final byte[] respData = response.getProtectedData();
-            System.arraycopy(respData, 0, out, outOff, BLOCK_SIZE);
+            if (respData == null || respData.length < len){
+                throw new EBCryptoException("Server returned invalid response length");
+            }
+
+            System.arraycopy(respData, 0, out, outOff, len);
 
         } catch (IOException e) {
             throw new EBCryptoException("ProcessData failed for: " + new EBUOHandle(aesKey.getUserObjectInfo()), e);
@@ -145,7 +192,7 @@ public class AESEngine implements BlockCipher
             throw new EBCryptoException("ProcessData failed for: " + new EBUOHandle(aesKey.getUserObjectInfo()), e);
         }
 
-        return BLOCK_SIZE;
+        return len;
     }
 
     public void reset()
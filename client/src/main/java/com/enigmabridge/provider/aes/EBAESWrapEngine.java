@@ -0,0 +1,127 @@
+package com.enigmabridge.provider.aes;
+
+import com.enigmabridge.provider.EnigmaProvider;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.Wrapper;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.util.Arrays;
+import org.bouncycastle.util.Pack;
+
+/**
+ * EB-native AES key wrap, wraps a key in a single ProcessData call.
+ *
+ * RFC 3394 / RFC 5649 need 6 * n strictly sequential block encryptions as the integrity register
+ * is chained through every step, thus each step is one round trip to the EB.
+ * This wrap uses the CBC mode of the EB AES user object instead, so the whole blob is processed at once.
+ *
+ * Format (all in bytes):
+ * <pre>
+ *   P       = len(key) as 4 B big endian || key || zero padding to the block size
+ *   D       = first 16 B of SHA-256("EBWRAP1" || P)
+ *   wrapped = AES-CBC(K, IV = 0, D || P)
+ * </pre>
+ *
+ * D acts as a synthetic IV, changes of any ciphertext block are detected on unwrap by recomputing D.
+ * Wrap is deterministic as RFC 3394 is. Output is not compatible with RFC 3394.
+ */
+public class EBAESWrapEngine implements Wrapper {
+    public static final String ALGORITHM_NAME = "AES-EBWRAP";
+    private static final byte[] DOMAIN = new byte[]{'E', 'B', 'W', 'R', 'A', 'P', '1'};
+    private static final int LEN_SIZE = 4;
+
+    private final AESEngine engine;
+    private final int blockSize;
+    private boolean forWrapping;
+
+    public EBAESWrapEngine() {
+        this(new AESEngine());
+    }
+
+    public EBAESWrapEngine(EnigmaProvider provider) {
+        this(new AESEngine(provider));
+    }
+
+    public EBAESWrapEngine(AESEngine engine) {
+        this.engine = engine;
+        this.blockSize = engine.getBlockSize();
+    }
+
+    @Override
+    public void init(boolean forWrapping, CipherParameters param) {
+        this.forWrapping = forWrapping;
+        if (param instanceof ParametersWithRandom){
+            param = ((ParametersWithRandom) param).getParameters();
+        }
+
+        engine.init(forWrapping, param);
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return ALGORITHM_NAME;
+    }
+
+    @Override
+    public byte[] wrap(byte[] in, int inOff, int inLen) {
+        if (!forWrapping){
+            throw new IllegalStateException("not set for wrapping");
+        }
+
+        final int pLen = padded(LEN_SIZE + inLen);
+        final byte[] buff = new byte[blockSize + pLen];
+        Pack.intToBigEndian(inLen, buff, blockSize);
+        System.arraycopy(in, inOff, buff, blockSize + LEN_SIZE, inLen);
+
+        System.arraycopy(digest(buff, blockSize, pLen), 0, buff, 0, blockSize);
+
+        final byte[] out = new byte[buff.length];
+        engine.processBlocks(buff, 0, buff.length, out, 0);
+        return out;
+    }
+
+    @Override
+    public byte[] unwrap(byte[] in, int inOff, int inLen) throws InvalidCipherTextException {
+        if (forWrapping){
+            throw new IllegalStateException("not set for unwrapping");
+        }
+
+        if (inLen < 2 * blockSize || inLen % blockSize != 0){
+            throw new InvalidCipherTextException("unwrap data has invalid length");
+        }
+
+        final byte[] buff = new byte[inLen];
+        engine.processBlocks(in, inOff, inLen, buff, 0);
+
+        final int pLen = inLen - blockSize;
+        final int keyLen = Pack.bigEndianToInt(buff, blockSize);
+        final boolean lenOk = keyLen >= 0 && keyLen <= pLen - LEN_SIZE && padded(LEN_SIZE + keyLen) == pLen;
+
+        // Digest covers the length and the padding, checked in constant time.
+        final byte[] digest = digest(buff, blockSize, pLen);
+        final boolean digestOk = Arrays.constantTimeAreEqual(
+                Arrays.copyOf(digest, blockSize), Arrays.copyOf(buff, blockSize));
+
+        if (!lenOk || !digestOk){
+            throw new InvalidCipherTextException("checksum failed");
+        }
+
+        final byte[] key = new byte[keyLen];
+        System.arraycopy(buff, blockSize + LEN_SIZE, key, 0, keyLen);
+        return key;
+    }
+
+    private int padded(int len){
+        return (len + blockSize - 1) / blockSize * blockSize;
+    }
+
+    private static byte[] digest(byte[] buff, int off, int len){
+        final SHA256Digest digest = new SHA256Digest();
+        final byte[] out = new byte[digest.getDigestSize()];
+        digest.update(DOMAIN, 0, DOMAIN.length);
+        digest.update(buff, off, len);
+        digest.doFinal(out, 0);
+        return out;
+    }
+}
@@ -0,0 +1,209 @@
+package com.enigmabridge.provider.aes;
+
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.OutputLengthException;
+import org.bouncycastle.crypto.paddings.BlockCipherPadding;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * Buffered cipher processing data in bulk with {@link EBMultiBlockCipher}.
+ *
+ * Input is buffered up to maxBuffered bytes, then all complete blocks are processed at once.
+ * doFinal() processes the rest of the buffer together with the padding block, so a message
+ * up to maxBuffered bytes passed to Cipher.doFinal() is processed in a single call.
+ *
+ * Padding is optional, semantics match {@link org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher}
+ * and {@link BufferedBlockCipher} respectively.
+ */
+public class EBBulkBufferedBlockCipher extends BufferedBlockCipher {
+    public static final int DEFAULT_MAX_BUFFERED = 64 * 1024;
+
+    private final EBMultiBlockCipher bulkCipher;
+    private final BlockCipherPadding padding;
+    private final int blockSize;
+    private final int maxBuffered;
+
+    private byte[] buffer;
+    private int buffered;
+
+    /**
+     * @param cipher multi-block cipher
+     * @param padding padding, null for no padding
+     */
+    public EBBulkBufferedBlockCipher(EBMultiBlockCipher cipher, BlockCipherPadding padding) {
+        this(cipher, padding, DEFAULT_MAX_BUFFERED);
+    }
+
+    /**
+     * @param cipher multi-block cipher
+     * @param padding padding, null for no padding
+     * @param maxBuffered maximal number of buffered bytes before complete blocks are processed
+     */
+    public EBBulkBufferedBlockCipher(EBMultiBlockCipher cipher, BlockCipherPadding padding, int maxBuffered) {
+        super(cipher);
+        this.bulkCipher = cipher;
+        this.padding = padding;
+        this.blockSize = cipher.getBlockSize();
+        this.maxBuffered = Math.max(maxBuffered, 2 * blockSize);
+        this.buffer = new byte[2 * blockSize];
+    }
+
+    @Override
+    public void init(boolean forEncryption, CipherParameters params) throws IllegalArgumentException {
+        this.forEncryption = forEncryption;
+        reset();
+
+        if (params instanceof ParametersWithRandom){
+            final ParametersWithRandom p = (ParametersWithRandom) params;
+            if (padding != null){
+                padding.init(p.getRandom());
+            }
+            cipher.init(forEncryption, p.getParameters());
+
+        } else {
+            if (padding != null){
+                padding.init(null);
+            }
+            cipher.init(forEncryption, params);
+        }
+    }
+
+    @Override
+    public BlockCipher getUnderlyingCipher() {
+        return cipher;
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public int getUpdateOutputSize(int len) {
+        final int total = buffered + len;
+        return total - total % blockSize;
+    }
+
+    @Override
+    public int getOutputSize(int len) {
+        final int total = buffered + len;
+        if (padding != null && forEncryption){
+            return total - total % blockSize + blockSize;
+        }
+
+        return total;
+    }
+
+    @Override
+    public int processByte(byte in, byte[] out, int outOff) throws DataLengthException, IllegalStateException {
+        return processBytes(new byte[]{in}, 0, 1, out, outOff);
+    }
+
+    @Override
+    public int processBytes(byte[] in, int inOff, int len, byte[] out, int outOff) throws DataLengthException, IllegalStateException {
+        if (len < 0){
+            throw new IllegalArgumentException("Can't have a negative input length!");
+        }
+
+        append(in, inOff, len);
+        if (buffered <= maxBuffered){
+            return 0;
+        }
+
+        // Keep the last (partial) block, it may be the one padded / unpadded in doFinal.
+        int toProcess = buffered - buffered % blockSize;
+        if (toProcess == buffered){
+            toProcess -= blockSize;
+        }
+
+        return flush(toProcess, out, outOff);
+    }
+
+    @Override
+    public int doFinal(byte[] out, int outOff) throws DataLengthException, IllegalStateException, InvalidCipherTextException {
+        try {
+            if (forEncryption){
+                if (padding != null){
+                    // Padding fills up to the end of the array, pad a separate block.
+                    final int partial = buffered % blockSize;
+                    final int lastOff = buffered - partial;
+                    final byte[] last = new byte[blockSize];
+                    System.arraycopy(buffer, lastOff, last, 0, partial);
+                    padding.addPadding(last, partial);
+
+                    ensureCapacity(lastOff + blockSize);
+                    System.arraycopy(last, 0, buffer, lastOff, blockSize);
+                    buffered = lastOff + blockSize;
+
+                } else if (buffered % blockSize != 0){
+                    throw new DataLengthException("data not block size aligned");
+                }
+
+                return flush(buffered, out, outOff);
+            }
+
+            if (buffered % blockSize != 0 || (padding != null && buffered == 0)){
+                throw new DataLengthException("last block incomplete in decryption");
+            }
+
+            if (padding == null){
+                return flush(buffered, out, outOff);
+            }
+
+            final byte[] plain = new byte[buffered];
+            flush(buffered, plain, 0);
+
+            final int padCount = padding.padCount(Arrays.copyOfRange(plain, plain.length - blockSize, plain.length));
+            final int len = plain.length - padCount;
+            if (outOff + len > out.length){
+                throw new OutputLengthException("output buffer too short");
+            }
+
+            System.arraycopy(plain, 0, out, outOff, len);
+            return len;
+
+        } finally {
+            reset();
+        }
+    }
+
+    @Override
+    public void reset() {
+        buffered = 0;
+        cipher.reset();
+    }
+
+    private int flush(int len, byte[] out, int outOff){
+        if (len == 0){
+            return 0;
+        }
+
+        if (outOff + len > out.length){
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        bulkCipher.processBlocks(buffer, 0, len, out, outOff);
+        System.arraycopy(buffer, len, buffer, 0, buffered - len);
+        buffered -= len;
+        return len;
+    }
+
+    private void append(byte[] in, int inOff, int len){
+        ensureCapacity(buffered + len);
+        System.arraycopy(in, inOff, buffer, buffered, len);
+        buffered += len;
+    }
+
+    private void ensureCapacity(int capacity){
+        if (buffer.length >= capacity){
+            return;
+        }
+
+        buffer = Arrays.copyOf(buffer, Math.max(capacity, 2 * buffer.length));
+    }
+}
@@ -0,0 +1,132 @@
+package com.enigmabridge.provider.aes;
+
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.OutputLengthException;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * CBC mode over the EB AES engine, offloading the chaining to the user object.
+ *
+ * EB AES user object works in CBC mode with zero IV, so a multi-block request is CBC already.
+ * Only the first block of each request is fixed locally:
+ * encryption XORs the IV (or the last ciphertext block) into the first plaintext block,
+ * decryption XORs it into the first output block.
+ * Thus the whole message can be processed in one ProcessData call instead of one call per block.
+ *
+ * Compatible with {@link org.bouncycastle.crypto.modes.CBCBlockCipher}.
+ */
+public class EBCBCBlockCipher implements EBMultiBlockCipher {
+    private final AESEngine cipher;
+    private final int blockSize;
+
+    private byte[] IV;
+    private byte[] cbcV;
+    private boolean encrypting;
+
+    public EBCBCBlockCipher(AESEngine cipher) {
+        this.cipher = cipher;
+        this.blockSize = cipher.getBlockSize();
+        this.IV = new byte[blockSize];
+        this.cbcV = new byte[blockSize];
+    }
+
+    @Override
+    public void init(boolean forEncryption, CipherParameters params) throws IllegalArgumentException {
+        this.encrypting = forEncryption;
+
+        if (params instanceof ParametersWithIV){
+            final ParametersWithIV ivParam = (ParametersWithIV) params;
+            final byte[] iv = ivParam.getIV();
+            if (iv.length != blockSize){
+                throw new IllegalArgumentException("initialisation vector must be the same length as block size");
+            }
+
+            this.IV = Arrays.clone(iv);
+            if (ivParam.getParameters() != null){
+                cipher.init(forEncryption, ivParam.getParameters());
+            }
+
+        } else {
+            this.IV = new byte[blockSize];
+            if (params != null){
+                cipher.init(forEncryption, params);
+            }
+        }
+
+        reset();
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return cipher.getAlgorithmName() + "/CBC";
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public int processBlock(byte[] in, int inOff, byte[] out, int outOff) throws DataLengthException, IllegalStateException {
+        return processBlocks(in, inOff, blockSize, out, outOff);
+    }
+
+    @Override
+    public int processBlocks(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (len == 0){
+            return 0;
+        }
+
+        if (len % blockSize != 0){
+            throw new DataLengthException("input length has to be a multiple of the block size");
+        }
+
+        if (inOff + len > in.length){
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if (outOff + len > out.length){
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        return encrypting ? encryptBlocks(in, inOff, len, out, outOff) : decryptBlocks(in, inOff, len, out, outOff);
+    }
+
+    private int encryptBlocks(byte[] in, int inOff, int len, byte[] out, int outOff){
+        final byte[] data = new byte[len];
+        System.arraycopy(in, inOff, data, 0, len);
+        for(int i = 0; i < blockSize; i++){
+            data[i] ^= cbcV[i];
+        }
+
+        cipher.processBlocks(data, 0, len, out, outOff);
+        System.arraycopy(out, outOff + len - blockSize, cbcV, 0, blockSize);
+        return len;
+    }
+
+    private int decryptBlocks(byte[] in, int inOff, int len, byte[] out, int outOff){
+        // Input may be overwritten by the output.
+        final byte[] nextV = new byte[blockSize];
+        System.arraycopy(in, inOff + len - blockSize, nextV, 0, blockSize);
+
+        cipher.processBlocks(in, inOff, len, out, outOff);
+        for(int i = 0; i < blockSize; i++){
+            out[outOff + i] ^= cbcV[i];
+        }
+
+        cbcV = nextV;
+        return len;
+    }
+
+    @Override
+    public void reset() {
+        System.arraycopy(IV, 0, cbcV, 0, blockSize);
+        cipher.reset();
+    }
+
+    public AESEngine getUnderlyingCipher() {
+        return cipher;
+    }
+}
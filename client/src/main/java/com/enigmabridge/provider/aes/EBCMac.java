@@ -0,0 +1,183 @@
+package com.enigmabridge.provider.aes;
+
+import com.enigmabridge.provider.parameters.EBKeyParameter;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.OutputLengthException;
+import org.bouncycastle.util.Arrays;
+
+/**
+ * CMAC (OMAC1) over the EB AES engine, offloading CBC-MAC to the user object.
+ *
+ * CBC-MAC is CBC encryption with zero IV keeping only the last block, which is what the EB AES
+ * user object does natively. Subkeys are derived once per EB key (one call), the message is buffered
+ * up to maxBuffered bytes and sent in one ProcessData call with the last block masked by the subkey.
+ * Longer messages are sent in chunks of maxBuffered bytes, chained by {@link EBCBCBlockCipher}.
+ *
+ * Compatible with {@link org.bouncycastle.crypto.macs.CMac} with full-length tag.
+ */
+public class EBCMac implements Mac {
+    public static final int DEFAULT_MAX_BUFFERED = 64 * 1024;
+
+    private final EBCBCBlockCipher cipher;
+    private final int blockSize;
+    private final int maxBuffered;
+
+    private CipherParameters subkeyParams;
+    private byte[] lu;
+    private byte[] lu2;
+
+    private byte[] buffer;
+    private int buffered;
+
+    public EBCMac(AESEngine engine) {
+        this(engine, DEFAULT_MAX_BUFFERED);
+    }
+
+    /**
+     * @param engine EB AES engine
+     * @param maxBuffered maximal number of buffered bytes before complete blocks are processed
+     */
+    public EBCMac(AESEngine engine, int maxBuffered) {
+        this.cipher = new EBCBCBlockCipher(engine);
+        this.blockSize = cipher.getBlockSize();
+        this.maxBuffered = Math.max(maxBuffered, 2 * blockSize);
+        this.buffer = new byte[2 * blockSize];
+    }
+
+    @Override
+    public void init(CipherParameters params) throws IllegalArgumentException {
+        // Null params keep the engine key.
+        cipher.init(true, params);
+
+        // Subkeys depend only on the key, derive once.
+        if (lu == null || (params != null && !isSameKey(params, subkeyParams))){
+            final byte[] l = new byte[blockSize];
+            cipher.processBlock(new byte[blockSize], 0, l, 0);
+
+            lu = doubleLu(l);
+            lu2 = doubleLu(lu);
+            subkeyParams = params;
+        }
+
+        reset();
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return cipher.getUnderlyingCipher().getAlgorithmName() + "-CMAC";
+    }
+
+    @Override
+    public int getMacSize() {
+        return blockSize;
+    }
+
+    @Override
+    public void update(byte in) throws IllegalStateException {
+        update(new byte[]{in}, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] in, int inOff, int len) throws DataLengthException, IllegalStateException {
+        if (len < 0){
+            throw new IllegalArgumentException("Can't have a negative input length!");
+        }
+
+        ensureCapacity(buffered + len);
+        System.arraycopy(in, inOff, buffer, buffered, len);
+        buffered += len;
+
+        if (buffered <= maxBuffered){
+            return;
+        }
+
+        // Last block is masked in doFinal, keep it.
+        int toProcess = buffered - buffered % blockSize;
+        if (toProcess == buffered){
+            toProcess -= blockSize;
+        }
+
+        final byte[] scratch = new byte[toProcess];
+        cipher.processBlocks(buffer, 0, toProcess, scratch, 0);
+        System.arraycopy(buffer, toProcess, buffer, 0, buffered - toProcess);
+        buffered -= toProcess;
+    }
+
+    @Override
+    public int doFinal(byte[] out, int outOff) throws DataLengthException, IllegalStateException {
+        if (outOff + blockSize > out.length){
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        final byte[] subkey;
+        if (buffered > 0 && buffered % blockSize == 0){
+            subkey = lu;
+
+        } else {
+            // ISO7816-4 padding of the last block.
+            final int partial = buffered % blockSize;
+            final int padded = buffered - partial + blockSize;
+            ensureCapacity(padded);
+            buffer[buffered] = (byte) 0x80;
+            for(int i = buffered + 1; i < padded; i++){
+                buffer[i] = 0;
+            }
+
+            buffered = padded;
+            subkey = lu2;
+        }
+
+        final int lastOff = buffered - blockSize;
+        for(int i = 0; i < blockSize; i++){
+            buffer[lastOff + i] ^= subkey[i];
+        }
+
+        final byte[] res = new byte[buffered];
+        cipher.processBlocks(buffer, 0, buffered, res, 0);
+        System.arraycopy(res, lastOff, out, outOff, blockSize);
+
+        reset();
+        return blockSize;
+    }
+
+    @Override
+    public void reset() {
+        buffered = 0;
+        cipher.reset();
+    }
+
+    private static boolean isSameKey(CipherParameters a, CipherParameters b){
+        if (a == b){
+            return true;
+        }
+
+        return a instanceof EBKeyParameter && b instanceof EBKeyParameter
+                && ((EBKeyParameter) a).getUoKey() == ((EBKeyParameter) b).getUoKey();
+    }
+
+    private void ensureCapacity(int capacity){
+        if (buffer.length >= capacity){
+            return;
+        }
+
+        buffer = Arrays.copyOf(buffer, Math.max(capacity, 2 * buffer.length));
+    }
+
+    /**
+     * Multiplication by x in GF(2^128), subkey derivation from {@link org.bouncycastle.crypto.macs.CMac}.
+     */
+    private static byte[] doubleLu(byte[] in){
+        final byte[] ret = new byte[in.length];
+        int carry = 0;
+        for(int i = in.length - 1; i >= 0; i--){
+            final int b = in[i] & 0xff;
+            ret[i] = (byte) ((b << 1) | carry);
+            carry = (b >>> 7) & 1;
+        }
+
+        ret[in.length - 1] ^= (byte) (0x87 & -carry);
+        return ret;
+    }
+}
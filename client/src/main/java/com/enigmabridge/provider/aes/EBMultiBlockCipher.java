@@ -0,0 +1,20 @@
+package com.enigmabridge.provider.aes;
+
+import org.bouncycastle.crypto.BlockCipher;
+
+/**
+ * Block cipher able to process several blocks at once, e.g., in one ProcessData call.
+ */
+public interface EBMultiBlockCipher extends BlockCipher {
+    /**
+     * Processes several blocks, result is the same as calling processBlock() block by block.
+     *
+     * @param in input buffer
+     * @param inOff input offset
+     * @param len input length, multiple of the block size
+     * @param out output buffer
+     * @param outOff output offset
+     * @return number of bytes written
+     */
+    int processBlocks(byte[] in, int inOff, int len, byte[] out, int outOff);
+}
@@ -0,0 +1,583 @@
+package com.enigmabridge.provider.aes;
+
+import com.enigmabridge.EBCryptoException;
+import com.enigmabridge.provider.EBCipherExecutor;
+import com.enigmabridge.provider.EBUOKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.parameters.EBKeyParameter;
+import org.bouncycastle.util.Strings;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherSpi;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.AlgorithmParameters;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * AES cipher with EB key processing the stream in chunks, several chunks in flight at once.
+ * Output is reassembled in order. update() returns output of the chunks finished so far,
+ * blocks only if the maximal number of chunks is in flight.
+ * Works with CipherInputStream / CipherOutputStream, e.g., Cipher.getInstance("AESPIPELINED/CBC/NoPadding", "EB").
+ *
+ * EB user object works in CBC mode with zero IV, chunking depends on the mode:
+ * <ul>
+ *     <li>ECB, CBC decryption: chunk is processed in one call, chaining is compensated locally.</li>
+ *     <li>CBC encryption: chunk is processed in one call, chunks are chained thus sequential.</li>
+ *     <li>ECB encryption, CTR: each block is a separate call, blocks run concurrently.</li>
+ * </ul>
+ *
+ * Optional mode suffix sets the number of chunks in flight, e.g., "CBC16".
+ * Supported paddings: NoPadding, PKCS5Padding / PKCS7Padding (ECB, CBC).
+ */
+public class EBPipelinedAESCipher extends CipherSpi {
+    public static final int BLOCK_SIZE = 16;
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    protected static final int MODE_ECB = 0;
+    protected static final int MODE_CBC = 1;
+    protected static final int MODE_CTR = 2;
+
+    private final EnigmaProvider provider;
+    private AESEngine engine;
+    private ExecutorService executor;
+
+    private int mode = MODE_ECB;
+    private boolean padded = false;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private boolean forEncryption;
+    private byte[] iv;
+
+    /**
+     * CBC decryption: last ciphertext block submitted. CTR: next counter.
+     */
+    private byte[] chainBlock;
+
+    /**
+     * CBC encryption: last submitted chunk, next chunk is chained on it.
+     */
+    private Future<byte[]> lastChunk;
+
+    private byte[] buffer;
+    private int bufferLen;
+
+    private final ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>();
+    private int inFlightBytes;
+
+    public EBPipelinedAESCipher(EnigmaProvider provider) {
+        this.provider = provider;
+    }
+
+    // Configuration
+
+    @Override
+    protected void engineSetMode(String modeStr) throws NoSuchAlgorithmException {
+        final String modeName = Strings.toUpperCase(modeStr);
+        final String suffix;
+        if (modeName.startsWith("ECB")){
+            mode = MODE_ECB;
+            suffix = modeName.substring(3);
+        } else if (modeName.startsWith("CBC")){
+            mode = MODE_CBC;
+            suffix = modeName.substring(3);
+        } else if (modeName.startsWith("CTR") || modeName.startsWith("SIC")){
+            mode = MODE_CTR;
+            suffix = modeName.substring(3);
+        } else {
+            throw new NoSuchAlgorithmException("can't support mode " + modeStr);
+        }
+
+        if (suffix.length() > 0){
+            try {
+                concurrency = Integer.parseInt(suffix);
+            } catch (NumberFormatException e) {
+                throw new NoSuchAlgorithmException("can't support mode " + modeStr);
+            }
+
+            if (concurrency <= 0){
+                throw new NoSuchAlgorithmException("can't support mode " + modeStr);
+            }
+        }
+    }
+
+    @Override
+    protected void engineSetPadding(String padding) throws NoSuchPaddingException {
+        final String paddingName = Strings.toUpperCase(padding);
+        if (paddingName.equals("NOPADDING")){
+            padded = false;
+        } else if ((paddingName.equals("PKCS5PADDING") || paddingName.equals("PKCS7PADDING")) && mode != MODE_CTR){
+            padded = true;
+        } else {
+            throw new NoSuchPaddingException("Padding " + padding + " not supported.");
+        }
+    }
+
+    @Override
+    protected int engineGetBlockSize() {
+        return BLOCK_SIZE;
+    }
+
+    @Override
+    protected int engineGetOutputSize(int inputLen) {
+        final int total = inFlightBytes + bufferLen + inputLen;
+        return padded && forEncryption ? total + BLOCK_SIZE - (total % BLOCK_SIZE) : total;
+    }
+
+    @Override
+    protected byte[] engineGetIV() {
+        return iv == null ? null : iv.clone();
+    }
+
+    @Override
+    protected AlgorithmParameters engineGetParameters() {
+        if (iv == null){
+            return null;
+        }
+
+        try {
+            final AlgorithmParameters params = AlgorithmParameters.getInstance("AES");
+            params.init(new IvParameterSpec(iv));
+            return params;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // Init
+
+    @Override
+    protected void engineInit(int opmode, Key key, SecureRandom random) throws InvalidKeyException {
+        try {
+            engineInit(opmode, key, (AlgorithmParameterSpec) null, random);
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new InvalidKeyException(e.getMessage());
+        }
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameters params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        AlgorithmParameterSpec spec = null;
+        if (params != null){
+            try {
+                spec = params.getParameterSpec(IvParameterSpec.class);
+            } catch (Exception e) {
+                throw new InvalidAlgorithmParameterException("can't handle parameter " + params.toString());
+            }
+        }
+
+        engineInit(opmode, key, spec, random);
+    }
+
+    @Override
+    protected void engineInit(int opmode, Key key, AlgorithmParameterSpec params, SecureRandom random) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (!(key instanceof EBUOKey) || !(key instanceof SecretKey)){
+            throw new InvalidKeyException("Key for algorithm " + key.getAlgorithm() + " not suitable for EB symmetric encryption.");
+        }
+
+        switch (opmode){
+            case Cipher.ENCRYPT_MODE:
+            case Cipher.WRAP_MODE:
+                forEncryption = true;
+                break;
+            case Cipher.DECRYPT_MODE:
+            case Cipher.UNWRAP_MODE:
+                forEncryption = false;
+                break;
+            default:
+                throw new InvalidParameterException("unknown opmode " + opmode + " passed");
+        }
+
+        byte[] newIv = null;
+        if (params instanceof IvParameterSpec){
+            newIv = ((IvParameterSpec) params).getIV();
+        } else if (params != null){
+            throw new InvalidAlgorithmParameterException("unknown parameter type.");
+        }
+
+        if (mode == MODE_ECB && newIv != null){
+            throw new InvalidAlgorithmParameterException("ECB mode does not use an IV");
+        }
+
+        if (mode != MODE_ECB && newIv == null){
+            if (!forEncryption){
+                throw new InvalidAlgorithmParameterException("no IV set when one expected");
+            }
+
+            newIv = new byte[BLOCK_SIZE];
+            (random == null ? new SecureRandom() : random).nextBytes(newIv);
+        }
+
+        if (newIv != null && newIv.length != BLOCK_SIZE){
+            throw new InvalidAlgorithmParameterException("IV must be " + BLOCK_SIZE + " bytes long.");
+        }
+
+        // CTR keystream is always produced by encryption.
+        final AESEngine newEngine = createEngine(forEncryption || mode == MODE_CTR, key);
+
+        cancelAll();
+        this.engine = newEngine;
+        this.iv = newIv;
+        this.executor = EBCipherExecutor.getExecutor();
+        this.buffer = new byte[chunkSize + BLOCK_SIZE];
+        resetState();
+    }
+
+    /**
+     * Creates EB AES engine for the chunk calls.
+     * @param encryption engine direction
+     * @param key EB key
+     * @return initialized engine
+     * @throws InvalidKeyException
+     */
+    protected AESEngine createEngine(boolean encryption, Key key) throws InvalidKeyException {
+        final AESEngine newEngine = new AESEngine(provider);
+        try {
+            newEngine.init(encryption, new EBKeyParameter<EBUOKey>((EBUOKey) key));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidKeyException(e.getMessage(), e);
+        }
+
+        return newEngine;
+    }
+
+    // Processing
+
+    @Override
+    protected byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
+        final byte[] out = new byte[engineGetOutputSize(inputLen)];
+        final int written = process(input, inputOffset, inputLen, out, 0);
+        return trim(out, written);
+    }
+
+    @Override
+    protected int engineUpdate(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException {
+        checkOutput(output, outputOffset, inputLen);
+        return process(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    @Override
+    protected byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen) throws IllegalBlockSizeException, BadPaddingException {
+        final byte[] out = new byte[engineGetOutputSize(inputLen)];
+        final int written = doFinal(input, inputOffset, inputLen, out, 0);
+        return trim(out, written);
+    }
+
+    @Override
+    protected int engineDoFinal(byte[] input, int inputOffset, int inputLen, byte[] output, int outputOffset) throws ShortBufferException, IllegalBlockSizeException, BadPaddingException {
+        checkOutput(output, outputOffset, inputLen);
+        return doFinal(input, inputOffset, inputLen, output, outputOffset);
+    }
+
+    private int process(byte[] in, int off, int len, byte[] out, int outOff){
+        if (engine == null){
+            throw new IllegalStateException("Cipher not initialised");
+        }
+
+        final int unit = getUnitSize();
+        final boolean holdBack = padded && !forEncryption;
+        int written = 0;
+
+        while(len > 0){
+            if (bufferLen == unit){
+                written += drain(out, outOff + written, concurrency - 1);
+                submitBuffer();
+            }
+
+            final int toCopy = Math.min(len, unit - bufferLen);
+            System.arraycopy(in, off, buffer, bufferLen, toCopy);
+            bufferLen += toCopy;
+            off += toCopy;
+            len -= toCopy;
+        }
+
+        // Padded decryption keeps the last block for doFinal().
+        if (bufferLen == unit && !holdBack){
+            written += drain(out, outOff + written, concurrency - 1);
+            submitBuffer();
+        }
+
+        written += drain(out, outOff + written, concurrency);
+        return written;
+    }
+
+    private int doFinal(byte[] in, int off, int len, byte[] out, int outOff) throws IllegalBlockSizeException, BadPaddingException {
+        try {
+            int written = process(in, off, len, out, outOff);
+
+            if (padded && forEncryption){
+                final int padLen = BLOCK_SIZE - (bufferLen % BLOCK_SIZE);
+                for(int i = 0; i < padLen; i++){
+                    buffer[bufferLen++] = (byte) padLen;
+                }
+            } else if (mode != MODE_CTR && bufferLen % BLOCK_SIZE != 0){
+                throw new IllegalBlockSizeException("data not block size aligned");
+            } else if (padded && bufferLen == 0){
+                throw new IllegalBlockSizeException("last block incomplete in decryption");
+            }
+
+            if (bufferLen > 0){
+                written += drain(out, outOff + written, concurrency - 1);
+                submitBuffer();
+            }
+
+            written += drain(out, outOff + written, 0);
+
+            if (padded && !forEncryption){
+                written -= checkPadding(out, outOff + written);
+            }
+
+            return written;
+
+        } finally {
+            cancelAll();
+            resetState();
+        }
+    }
+
+    /**
+     * Submits buffered data as a chunk.
+     */
+    private void submitBuffer(){
+        final byte[] chunk = new byte[bufferLen];
+        System.arraycopy(buffer, 0, chunk, 0, bufferLen);
+        bufferLen = 0;
+
+        final Callable<byte[]> task;
+        switch (mode){
+            case MODE_CTR:
+                task = counterTask(chunk, chainBlock.clone());
+                incrementCounter(chainBlock);
+                break;
+
+            case MODE_CBC:
+                if (forEncryption){
+                    task = cbcEncryptTask(chunk, lastChunk, iv);
+                } else {
+                    task = cbcDecryptTask(chunk, chainBlock);
+                    chainBlock = new byte[BLOCK_SIZE];
+                    System.arraycopy(chunk, chunk.length - BLOCK_SIZE, chainBlock, 0, BLOCK_SIZE);
+                }
+                break;
+
+            default:
+                task = forEncryption ? rawTask(chunk) : ecbDecryptTask(chunk);
+                break;
+        }
+
+        final Future<byte[]> future = executor.submit(task);
+        if (mode == MODE_CBC && forEncryption){
+            lastChunk = future;
+        }
+
+        inFlight.add(future);
+        inFlightBytes += chunk.length;
+    }
+
+    private Callable<byte[]> rawTask(final byte[] chunk){
+        final AESEngine eng = engine;
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final byte[] out = new byte[chunk.length];
+                eng.processBlocks(chunk, 0, chunk.length, out, 0);
+                return out;
+            }
+        };
+    }
+
+    private Callable<byte[]> ecbDecryptTask(final byte[] chunk){
+        final AESEngine eng = engine;
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final byte[] out = new byte[chunk.length];
+                eng.processBlocks(chunk, 0, chunk.length, out, 0);
+
+                // Undo CBC chaining of the user object.
+                for(int i = BLOCK_SIZE; i < chunk.length; i++){
+                    out[i] ^= chunk[i - BLOCK_SIZE];
+                }
+                return out;
+            }
+        };
+    }
+
+    private Callable<byte[]> cbcDecryptTask(final byte[] chunk, final byte[] prevBlock){
+        final AESEngine eng = engine;
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final byte[] out = new byte[chunk.length];
+                eng.processBlocks(chunk, 0, chunk.length, out, 0);
+
+                // User object uses zero IV, chain the first block on the previous one.
+                for(int i = 0; i < BLOCK_SIZE; i++){
+                    out[i] ^= prevBlock[i];
+                }
+                return out;
+            }
+        };
+    }
+
+    private Callable<byte[]> cbcEncryptTask(final byte[] chunk, final Future<byte[]> prevChunk, final byte[] firstIv){
+        final AESEngine eng = engine;
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                byte[] prev = firstIv;
+                int prevOff = 0;
+                if (prevChunk != null){
+                    prev = prevChunk.get();
+                    prevOff = prev.length - BLOCK_SIZE;
+                }
+
+                for(int i = 0; i < BLOCK_SIZE; i++){
+                    chunk[i] ^= prev[prevOff + i];
+                }
+
+                final byte[] out = new byte[chunk.length];
+                eng.processBlocks(chunk, 0, chunk.length, out, 0);
+                return out;
+            }
+        };
+    }
+
+    private Callable<byte[]> counterTask(final byte[] chunk, final byte[] counter){
+        final AESEngine eng = engine;
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final byte[] keystream = new byte[BLOCK_SIZE];
+                eng.processBlocks(counter, 0, BLOCK_SIZE, keystream, 0);
+                for(int i = 0; i < chunk.length; i++){
+                    chunk[i] ^= keystream[i];
+                }
+                return chunk;
+            }
+        };
+    }
+
+    /**
+     * Writes finished chunks to the output in order.
+     * Waits for the oldest chunks while more than maxInFlight chunks are in flight.
+     */
+    private int drain(byte[] out, int outOff, int maxInFlight){
+        int written = 0;
+        while(!inFlight.isEmpty()){
+            final Future<byte[]> head = inFlight.peek();
+            if (!head.isDone() && inFlight.size() <= maxInFlight){
+                break;
+            }
+
+            final byte[] result = getResult(head);
+            inFlight.poll();
+            inFlightBytes -= result.length;
+
+            System.arraycopy(result, 0, out, outOff + written, result.length);
+            written += result.length;
+        }
+
+        return written;
+    }
+
+    private byte[] getResult(Future<byte[]> future){
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll();
+            throw new EBCryptoException("Interrupted while waiting for the chunk", e);
+
+        } catch (ExecutionException e) {
+            cancelAll();
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new EBCryptoException("Chunk processing failed", cause);
+        }
+    }
+
+    private int checkPadding(byte[] out, int end) throws BadPaddingException {
+        final int padLen = out[end - 1] & 0xff;
+        if (padLen == 0 || padLen > BLOCK_SIZE){
+            throw new BadPaddingException("pad block corrupted");
+        }
+
+        int diff = 0;
+        for(int i = 1; i <= padLen; i++){
+            diff |= (out[end - i] & 0xff) ^ padLen;
+        }
+
+        if (diff != 0){
+            throw new BadPaddingException("pad block corrupted");
+        }
+
+        return padLen;
+    }
+
+    private int getUnitSize(){
+        if (mode == MODE_CTR || (mode == MODE_ECB && forEncryption)){
+            return BLOCK_SIZE;
+        }
+
+        return chunkSize;
+    }
+
+    private void checkOutput(byte[] output, int outputOffset, int inputLen) throws ShortBufferException {
+        if (output.length - outputOffset < engineGetOutputSize(inputLen)){
+            throw new ShortBufferException("output buffer too short for input.");
+        }
+    }
+
+    private void cancelAll(){
+        Future<byte[]> future;
+        while((future = inFlight.poll()) != null){
+            future.cancel(false);
+        }
+        inFlightBytes = 0;
+    }
+
+    private void resetState(){
+        bufferLen = 0;
+        lastChunk = null;
+        chainBlock = iv == null ? null : iv.clone();
+    }
+
+    private static byte[] trim(byte[] out, int len){
+        if (out.length == len){
+            return out;
+        }
+
+        final byte[] res = new byte[len];
+        System.arraycopy(out, 0, res, 0, len);
+        return res;
+    }
+
+    private static void incrementCounter(byte[] counter){
+        for(int i = counter.length - 1; i >= 0; i--){
+            if (++counter[i] != 0){
+                break;
+            }
+        }
+    }
+}
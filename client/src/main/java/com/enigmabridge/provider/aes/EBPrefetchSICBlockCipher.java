@@ -0,0 +1,265 @@
+package com.enigmabridge.provider.aes;
+
+import com.enigmabridge.EBCryptoException;
+import com.enigmabridge.provider.EBCipherExecutor;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.DataLengthException;
+import org.bouncycastle.crypto.OutputLengthException;
+import org.bouncycastle.crypto.StreamBlockCipher;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * SIC / CTR mode over the EB AES engine with keystream prefetch.
+ *
+ * Keystream does not depend on the data, so encrypted counter blocks are requested
+ * in the background ahead of time. Processing data is then a local XOR, network latency is hidden.
+ *
+ * EB AES user object works in CBC mode with zero IV, thus each counter block is requested
+ * in a separate ProcessData call. Calls run concurrently on {@link EBCipherExecutor}.
+ *
+ * Nothing is requested on init(). The first block is requested when data is processed,
+ * the prefetch window then grows with the keystream used since init() / reset(), up to lookahead blocks.
+ * Short messages thus cost about one call per block, while the calls wasted by a message ending early
+ * are bounded by the blocks it used. Prefetched blocks not used by the message are discarded,
+ * calls already running are not interrupted.
+ *
+ * Counter handling is compatible with {@link org.bouncycastle.crypto.modes.SICBlockCipher},
+ * including the range check of the counter when the IV is shorter than the block.
+ */
+public class EBPrefetchSICBlockCipher extends StreamBlockCipher {
+    public static final int DEFAULT_LOOKAHEAD = 32;
+    public static final int MAX_LOOKAHEAD = 256;
+
+    private final BlockCipher cipher;
+    private final int blockSize;
+    private final int lookahead;
+
+    private byte[] IV;
+    private int ivLength;
+    private byte[] nextCounter;
+    private boolean counterExhausted;
+    private long used;
+    private byte[] keystream;
+    private int keystreamOff;
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private ExecutorService executor;
+
+    public EBPrefetchSICBlockCipher(BlockCipher cipher) {
+        this(cipher, DEFAULT_LOOKAHEAD);
+    }
+
+    /**
+     * @param cipher EB AES engine, processBlock() has to be thread safe
+     * @param lookahead maximal number of keystream blocks requested ahead, at most {@link #MAX_LOOKAHEAD}
+     */
+    public EBPrefetchSICBlockCipher(BlockCipher cipher, int lookahead) {
+        super(cipher);
+        if (lookahead <= 0 || lookahead > MAX_LOOKAHEAD){
+            throw new IllegalArgumentException("Lookahead has to be in range 1.." + MAX_LOOKAHEAD);
+        }
+
+        this.cipher = cipher;
+        this.blockSize = cipher.getBlockSize();
+        this.lookahead = lookahead;
+        this.keystream = new byte[blockSize];
+        this.keystreamOff = blockSize;
+    }
+
+    @Override
+    public void init(boolean forEncryption, CipherParameters params) throws IllegalArgumentException {
+        if (!(params instanceof ParametersWithIV)){
+            throw new IllegalArgumentException("SIC mode requires ParametersWithIV");
+        }
+
+        final ParametersWithIV ivParam = (ParametersWithIV) params;
+        final byte[] iv = ivParam.getIV();
+        if (blockSize < iv.length){
+            throw new IllegalArgumentException("CTR/SIC mode requires IV no greater than: " + blockSize + " bytes.");
+        }
+
+        final int maxCounterSize = (8 > blockSize / 2) ? blockSize / 2 : 8;
+        if (blockSize - iv.length > maxCounterSize){
+            throw new IllegalArgumentException("CTR/SIC mode requires IV of at least: " + (blockSize - maxCounterSize) + " bytes.");
+        }
+
+        this.IV = new byte[blockSize];
+        this.ivLength = iv.length;
+        System.arraycopy(iv, 0, IV, 0, iv.length);
+
+        // Keystream is always produced by encryption.
+        if (ivParam.getParameters() != null){
+            cipher.init(true, ivParam.getParameters());
+        }
+
+        if (executor == null){
+            executor = EBCipherExecutor.getExecutor();
+        }
+
+        reset();
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return cipher.getAlgorithmName() + "/SIC";
+    }
+
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public int processBlock(byte[] in, int inOff, byte[] out, int outOff) throws DataLengthException, IllegalStateException {
+        if (inOff + blockSize > in.length){
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if (outOff + blockSize > out.length){
+            throw new OutputLengthException("output buffer too short");
+        }
+
+        if (keystreamOff == blockSize){
+            keystream = nextKeystreamBlock();
+            for(int i = 0; i < blockSize; i++){
+                out[outOff + i] = (byte) (in[inOff + i] ^ keystream[i]);
+            }
+            return blockSize;
+        }
+
+        for(int i = 0; i < blockSize; i++){
+            out[outOff + i] = calculateByte(in[inOff + i]);
+        }
+
+        return blockSize;
+    }
+
+    @Override
+    protected byte calculateByte(byte in) throws DataLengthException, IllegalStateException {
+        if (keystreamOff == blockSize){
+            keystream = nextKeystreamBlock();
+            keystreamOff = 0;
+        }
+
+        return (byte) (in ^ keystream[keystreamOff++]);
+    }
+
+    @Override
+    public void reset() {
+        cancelPending();
+        if (IV != null){
+            nextCounter = IV.clone();
+        }
+
+        counterExhausted = false;
+        used = 0;
+        keystreamOff = blockSize;
+    }
+
+    /**
+     * Maximal number of keystream blocks requested ahead.
+     * @return lookahead
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Executor for the keystream requests, {@link EBCipherExecutor} by default.
+     * @param executor executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Requests keystream blocks up to the given number of pending blocks.
+     * Counters out of range are not requested.
+     * @param window number of pending blocks
+     */
+    private void prefetch(int window){
+        while(pending.size() < window && !counterExhausted){
+            final byte[] counter = nextCounter.clone();
+            incrementCounter(nextCounter);
+            counterExhausted = !isCounterInRange(nextCounter);
+
+            pending.add(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    final byte[] out = new byte[blockSize];
+                    cipher.processBlock(counter, 0, out, 0);
+                    return out;
+                }
+            }));
+        }
+    }
+
+    private byte[] nextKeystreamBlock(){
+        if (nextCounter == null){
+            throw new IllegalStateException("SIC mode not initialised");
+        }
+
+        // Block needed now plus the window grown with the keystream used so far.
+        prefetch(1 + (int) Math.min(used, lookahead));
+        final Future<byte[]> future = pending.poll();
+        if (future == null){
+            throw new IllegalStateException("Counter in CTR/SIC mode out of range.");
+        }
+
+        used += 1;
+
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EBCryptoException("Interrupted while waiting for the keystream", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            throw new EBCryptoException("Keystream computation failed", cause);
+        }
+    }
+
+    private void cancelPending(){
+        Future<byte[]> future;
+        while((future = pending.poll()) != null){
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * IV shorter than the block is a nonce, counter must not overflow into it.
+     * @param counter counter block
+     * @return true if the counter keeps the nonce part
+     */
+    private boolean isCounterInRange(byte[] counter){
+        if (ivLength == blockSize){
+            return true;
+        }
+
+        for(int i = 0; i < ivLength; i++){
+            if (counter[i] != IV[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void incrementCounter(byte[] counter){
+        for(int i = counter.length - 1; i >= 0; i--){
+            if (++counter[i] != 0){
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.enigmabridge.provider.keystore;
+
+import org.bouncycastle.jcajce.provider.config.ConfigurableProvider;
+import org.bouncycastle.jcajce.provider.util.AsymmetricAlgorithmProvider;
+
+/**
+ * Indexed key store for large amounts of EB keys.
+ */
+public class EBKS
+{
+    private static final String PREFIX = "com.enigmabridge.provider.keystore" + ".eb.";
+
+    public static class Mappings
+        extends AsymmetricAlgorithmProvider
+    {
+        public Mappings()
+        {
+        }
+
+        public void configure(ConfigurableProvider provider)
+        {
+            provider.addAlgorithm("KeyStore.EBKS", PREFIX + "EBKeyStoreSpi");
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.enigmabridge.provider.keystore.bc;
 
 import com.enigmabridge.provider.EBJcaJceHelper;
+import com.enigmabridge.provider.EBKeyBase;
+import com.enigmabridge.provider.specs.EBCompactEncodedUOKeySpec;
 import com.enigmabridge.provider.EnigmaProvider;
 import org.bouncycastle.crypto.CipherParameters;
 import org.bouncycastle.crypto.Digest;
@@ -372,7 +374,20 @@ public class BcKeyStoreSpi
         DataOutputStream    dOut)
         throws IOException
     {
-        byte[]      enc = key.getEncoded();
+        byte[]      enc;
+        String      format;
+
+        // EB keys are stored in the compact form, faster to load than JSON in PKCS#8.
+        if (key instanceof EBKeyBase)
+        {
+            enc = ((EBKeyBase) key).getEncodedCompact();
+            format = EBKeyBase.FORMAT_EB_COMPACT;
+        }
+        else
+        {
+            enc = key.getEncoded();
+            format = key.getFormat();
+        }
 
         if (key instanceof PrivateKey)
         {
@@ -387,7 +402,7 @@ public class BcKeyStoreSpi
             dOut.write(KEY_SECRET);
         }
     
-        dOut.writeUTF(key.getFormat());
+        dOut.writeUTF(format);
         dOut.writeUTF(key.getAlgorithm());
         dOut.writeInt(enc.length);
         dOut.write(enc);
@@ -417,6 +432,10 @@ public class BcKeyStoreSpi
         {
             return new SecretKeySpec(enc, algorithm);
         }
+        else if (format.equals(EBKeyBase.FORMAT_EB_COMPACT))
+        {
+            spec = new EBCompactEncodedUOKeySpec(enc);
+        }
         else
         {
             throw new IOException("Key format " + format + " not recognised!");
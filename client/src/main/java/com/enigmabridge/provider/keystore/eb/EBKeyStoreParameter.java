@@ -0,0 +1,51 @@
+package com.enigmabridge.provider.keystore.eb;
+
+import java.io.File;
+import java.security.KeyStore;
+
+/**
+ * Load / store parameter for the EB key store backed by a file.
+ *
+ * On load the file is memory mapped, entries are decoded lazily on access.
+ * On store to the same file only entries added since the load are appended,
+ * together with a new index. Existing records are not rewritten.
+ */
+public class EBKeyStoreParameter implements KeyStore.LoadStoreParameter {
+    protected final File file;
+    protected final KeyStore.ProtectionParameter protection;
+
+    public EBKeyStoreParameter(File file) {
+        this(file, (char[]) null);
+    }
+
+    public EBKeyStoreParameter(File file, char[] password) {
+        this.file = file;
+        this.protection = new KeyStore.PasswordProtection(password);
+    }
+
+    public EBKeyStoreParameter(File file, KeyStore.ProtectionParameter protection) {
+        this.file = file;
+        this.protection = protection;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public KeyStore.ProtectionParameter getProtectionParameter() {
+        return protection;
+    }
+
+    /**
+     * Returns password from the protection parameter, null if not protected.
+     * @return password or null
+     */
+    public char[] getPassword(){
+        if (protection instanceof KeyStore.PasswordProtection){
+            return ((KeyStore.PasswordProtection) protection).getPassword();
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,949 @@
+package com.enigmabridge.provider.keystore.eb;
+
+import com.enigmabridge.EBCompactDecoder;
+import com.enigmabridge.EBCompactEncoding;
+import com.enigmabridge.EBEngine;
+import com.enigmabridge.provider.EBKeyBase;
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.rsa.EBRSAKey;
+import com.enigmabridge.provider.rsa.EBRSAPrivateKey;
+import com.enigmabridge.provider.rsa.EBRSAPublicKey;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.PBEParametersGenerator;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.modes.CBCBlockCipher;
+import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.util.Arrays;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.*;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Key store for EB keys intended for very large numbers of keys.
+ *
+ * Entries are stored as independent records, an index maps aliases to record offsets.
+ * Loading reads only the index, records are decoded on engineGetKey() / engineGetCertificate().
+ * Loaded via {@link EBKeyStoreParameter} the file is memory mapped and a store to the same
+ * file appends only new records and a new index, existing records are not rewritten.
+ * Other stores (new file, password change) write a new file next to the target and rename it over.
+ *
+ * Entries are protected by the store password (PBKDF2 derived AES-256-CBC + HMAC-SHA256 per record),
+ * per-entry passwords are ignored. If the store password is null, records are stored in plain.
+ *
+ * <pre>
+ *  File:
+ *      header (HEADER_LENGTH bytes)
+ *          "EBKS", u16 version, u16 flags, i32 iterations, salt (16), password check (16), i32 reserved
+ *      records, appended
+ *          u8 entry type, u16 alias length, alias, i64 date, i32 payload length, payload,
+ *          u16 chain length, (i32 length, X.509 certificate)*
+ *      index blocks, appended, the last one is valid
+ *          i32 count, (u16 alias length, alias, i64 record offset)*
+ *      footer (FOOTER_LENGTH bytes)
+ *          i64 index offset, i32 index length, "EBKI"
+ * </pre>
+ *
+ * Reads are thread safe, mutations should be synchronized by the caller as with other key stores.
+ */
+public class EBKeyStoreSpi extends KeyStoreSpi {
+    public static final int STORE_VERSION = 1;
+
+    protected static final int HEADER_MAGIC = 0x45424B53;  // "EBKS"
+    protected static final int FOOTER_MAGIC = 0x45424B49;  // "EBKI"
+    protected static final int HEADER_LENGTH = 48;
+    protected static final int FOOTER_LENGTH = 16;
+    protected static final int FLAG_PROTECTED = 0x1;
+
+    protected static final int SALT_SIZE = 16;
+    protected static final int CHECK_SIZE = 16;
+    protected static final int IV_SIZE = 16;
+    protected static final int MAC_SIZE = 32;
+    protected static final int ITERATIONS = 4096;
+
+    // Entry types
+    protected static final int ENTRY_KEY = 1;
+    protected static final int ENTRY_CERTIFICATE = 2;
+
+    protected static final byte[] CHECK_CONSTANT = "EBKS-password-check".getBytes(EBCompactEncoding.UTF8);
+
+    protected final EnigmaProvider provider;
+    protected final SecureRandom random = new SecureRandom();
+
+    /**
+     * Alias -> Long record offset for persisted entries, Alias -> PendingEntry for entries not stored yet.
+     */
+    protected final ConcurrentHashMap<String, Object> index = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Loaded store data, heap or memory mapped. Only absolute reads are used, shared among threads.
+     */
+    protected volatile ByteBuffer data;
+
+    /**
+     * File the store was loaded from, null if loaded from the stream.
+     */
+    protected File file;
+
+    /**
+     * Length of the valid data in the file, appends start here.
+     */
+    protected long dataLength;
+
+    // Protection
+    protected byte[] salt;
+    protected int iterations = ITERATIONS;
+    protected byte[] encKey;
+    protected byte[] macKey;
+    protected byte[] passwordCheck;
+
+    /**
+     * Decoders are not thread safe, keep one per thread so intern caches are reused.
+     */
+    protected final ThreadLocal<EBCompactDecoder> decoders = new ThreadLocal<EBCompactDecoder>(){
+        @Override
+        protected EBCompactDecoder initialValue() {
+            return new EBCompactDecoder();
+        }
+    };
+
+    /**
+     * Entry added after the load, not yet written.
+     */
+    protected static class PendingEntry {
+        final int type;
+        final Date date;
+        final byte[] encoded;
+        final Certificate[] chain;
+
+        PendingEntry(int type, Date date, byte[] encoded, Certificate[] chain) {
+            this.type = type;
+            this.date = date;
+            this.encoded = encoded;
+            this.chain = chain;
+        }
+    }
+
+    /**
+     * Parsed record header. Payload and certificates stay in the buffer.
+     */
+    protected static class Record {
+        int type;
+        String alias;
+        Date date;
+        int payloadOffset;
+        int payloadLength;
+        int chainOffset;
+    }
+
+    public EBKeyStoreSpi(EnigmaProvider provider) {
+        this.provider = provider;
+    }
+
+    // Key store SPI
+
+    @Override
+    public Key engineGetKey(String alias, char[] password) throws NoSuchAlgorithmException, UnrecoverableKeyException {
+        final Object entry = index.get(alias);
+        if (entry == null){
+            return null;
+        }
+
+        try {
+            if (entry instanceof PendingEntry){
+                final PendingEntry pending = (PendingEntry) entry;
+                return pending.type == ENTRY_KEY ? decodeKey(ByteBuffer.wrap(pending.encoded), 0) : null;
+            }
+
+            final ByteBuffer buffer = data;
+            final Record record = readRecord(buffer, alias, (Long) entry);
+            if (record.type != ENTRY_KEY){
+                return null;
+            }
+
+            if (!isProtected()){
+                return decodeKey(buffer, record.payloadOffset);
+            }
+
+            final byte[] plain = decryptPayload(buffer, record);
+            return decodeKey(ByteBuffer.wrap(plain), 0);
+
+        } catch (IOException e) {
+            final UnrecoverableKeyException ex = new UnrecoverableKeyException("Key could not be decoded: " + e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        }
+    }
+
+    @Override
+    public Certificate[] engineGetCertificateChain(String alias) {
+        final Object entry = index.get(alias);
+        if (entry == null){
+            return null;
+        }
+
+        if (entry instanceof PendingEntry){
+            final PendingEntry pending = (PendingEntry) entry;
+            return pending.type == ENTRY_KEY && pending.chain != null && pending.chain.length > 0 ? pending.chain : null;
+        }
+
+        try {
+            final ByteBuffer buffer = data;
+            final Record record = readRecord(buffer, alias, (Long) entry);
+            if (record.type != ENTRY_KEY){
+                return null;
+            }
+
+            final Certificate[] chain = readChain(buffer, record.chainOffset);
+            return chain.length == 0 ? null : chain;
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Certificate chain could not be decoded", e);
+        }
+    }
+
+    @Override
+    public Certificate engineGetCertificate(String alias) {
+        final Object entry = index.get(alias);
+        if (entry == null){
+            return null;
+        }
+
+        if (entry instanceof PendingEntry){
+            final PendingEntry pending = (PendingEntry) entry;
+            return pending.chain != null && pending.chain.length > 0 ? pending.chain[0] : null;
+        }
+
+        try {
+            final ByteBuffer buffer = data;
+            final Record record = readRecord(buffer, alias, (Long) entry);
+            final Certificate[] chain = readChain(buffer, record.chainOffset);
+            return chain.length == 0 ? null : chain[0];
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Certificate could not be decoded", e);
+        }
+    }
+
+    @Override
+    public Date engineGetCreationDate(String alias) {
+        final Object entry = index.get(alias);
+        if (entry == null){
+            return null;
+        }
+
+        if (entry instanceof PendingEntry){
+            return ((PendingEntry) entry).date;
+        }
+
+        try {
+            return readRecord(data, alias, (Long) entry).date;
+        } catch (IOException e) {
+            throw new IllegalStateException("Record could not be read", e);
+        }
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) throws KeyStoreException {
+        if (!(key instanceof EBKeyBase)){
+            throw new KeyStoreException("Only EB keys can be stored in the EB key store");
+        }
+
+        if ((key instanceof PrivateKey) && !(key instanceof EBRSAPublicKey) && (chain == null || chain.length == 0)){
+            throw new KeyStoreException("no certificate chain for private key");
+        }
+
+        try {
+            final byte[] encoded = ((EBKeyBase) key).getEncodedCompact();
+            index.put(alias, new PendingEntry(ENTRY_KEY, new Date(), encoded, chain));
+
+        } catch (IOException e) {
+            throw new KeyStoreException("Key could not be encoded", e);
+        }
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) throws KeyStoreException {
+        if (!EBCompactEncoding.isCompact(key)){
+            throw new KeyStoreException("Only compact encoded EB keys can be stored in the EB key store");
+        }
+
+        index.put(alias, new PendingEntry(ENTRY_KEY, new Date(), Arrays.clone(key), chain));
+    }
+
+    @Override
+    public void engineSetCertificateEntry(String alias, Certificate cert) throws KeyStoreException {
+        final Object entry = index.get(alias);
+        if (entry != null && entryType(alias, entry) != ENTRY_CERTIFICATE){
+            throw new KeyStoreException("key store already has a key entry with alias " + alias);
+        }
+
+        index.put(alias, new PendingEntry(ENTRY_CERTIFICATE, new Date(), null, new Certificate[]{cert}));
+    }
+
+    @Override
+    public void engineDeleteEntry(String alias) throws KeyStoreException {
+        index.remove(alias);
+    }
+
+    @Override
+    public Enumeration<String> engineAliases() {
+        return Collections.enumeration(new ArrayList<String>(index.keySet()));
+    }
+
+    @Override
+    public boolean engineContainsAlias(String alias) {
+        return index.containsKey(alias);
+    }
+
+    @Override
+    public int engineSize() {
+        return index.size();
+    }
+
+    @Override
+    public boolean engineIsKeyEntry(String alias) {
+        final Object entry = index.get(alias);
+        return entry != null && entryType(alias, entry) == ENTRY_KEY;
+    }
+
+    @Override
+    public boolean engineIsCertificateEntry(String alias) {
+        final Object entry = index.get(alias);
+        return entry != null && entryType(alias, entry) == ENTRY_CERTIFICATE;
+    }
+
+    @Override
+    public String engineGetCertificateAlias(Certificate cert) {
+        for (String alias : index.keySet()){
+            final Certificate c = engineGetCertificate(alias);
+            if (c != null && c.equals(cert)){
+                return alias;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void engineStore(OutputStream stream, char[] password) throws IOException, NoSuchAlgorithmException, CertificateException {
+        final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(stream));
+        writeFull(dos, password);
+        dos.flush();
+    }
+
+    @Override
+    public void engineStore(KeyStore.LoadStoreParameter param) throws IOException, NoSuchAlgorithmException, CertificateException {
+        if (!(param instanceof EBKeyStoreParameter)){
+            throw new IllegalArgumentException("Only EBKeyStoreParameter is supported");
+        }
+
+        final EBKeyStoreParameter p = (EBKeyStoreParameter) param;
+        final char[] password = p.getPassword();
+        if (file != null && file.equals(p.getFile()) && file.exists() && dataLength > 0
+                && file.length() == dataLength && isSamePassword(password)){
+            appendToFile();
+            return;
+        }
+
+        storeToFile(p.getFile(), password);
+        engineLoad(p);
+    }
+
+    /**
+     * Writes the full store to a temporary file in the target directory and renames it over the target.
+     * The target may be the memory mapped file the records are read from, it is never truncated,
+     * so a failed write leaves the original store intact.
+     */
+    protected void storeToFile(File target, char[] password) throws IOException, CertificateException {
+        final File dir = target.getAbsoluteFile().getParentFile();
+        final File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+        boolean done = false;
+        try {
+            final FileOutputStream fos = new FileOutputStream(tmp);
+            try {
+                final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos));
+                writeFull(dos, password);
+                dos.flush();
+                fos.getFD().sync();
+            } finally {
+                fos.close();
+            }
+
+            // Atomic replace on POSIX, platforms not replacing existing files need the target removed first.
+            if (!tmp.renameTo(target) && !(target.delete() && tmp.renameTo(target))){
+                throw new IOException("Key store could not be renamed to " + target);
+            }
+
+            done = true;
+
+        } finally {
+            if (!done && !tmp.delete()){
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public void engineLoad(InputStream stream, char[] password) throws IOException, NoSuchAlgorithmException, CertificateException {
+        reset();
+        if (stream == null){
+            initProtection(password, null, ITERATIONS);
+            return;
+        }
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buff = new byte[8192];
+        int read;
+        while((read = stream.read(buff)) >= 0){
+            bos.write(buff, 0, read);
+        }
+
+        loadBuffer(ByteBuffer.wrap(bos.toByteArray()), password);
+    }
+
+    @Override
+    public void engineLoad(KeyStore.LoadStoreParameter param) throws IOException, NoSuchAlgorithmException, CertificateException {
+        if (param == null){
+            engineLoad(null, null);
+            return;
+        }
+
+        if (!(param instanceof EBKeyStoreParameter)){
+            throw new IllegalArgumentException("Only EBKeyStoreParameter is supported");
+        }
+
+        final EBKeyStoreParameter p = (EBKeyStoreParameter) param;
+        final char[] password = p.getPassword();
+        reset();
+
+        if (!p.getFile().exists() || p.getFile().length() == 0){
+            initProtection(password, null, ITERATIONS);
+            file = p.getFile();
+            return;
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(p.getFile(), "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            loadBuffer(mapped, password);
+            file = p.getFile();
+
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Loading
+
+    protected void reset(){
+        index.clear();
+        data = null;
+        file = null;
+        dataLength = 0;
+        salt = null;
+        encKey = null;
+        macKey = null;
+        passwordCheck = null;
+    }
+
+    /**
+     * Parses header and the last index, records are not touched.
+     */
+    protected void loadBuffer(ByteBuffer buffer, char[] password) throws IOException {
+        final int size = buffer.limit();
+        if (size < HEADER_LENGTH + FOOTER_LENGTH || buffer.getInt(0) != HEADER_MAGIC){
+            throw new IOException("Invalid EB key store");
+        }
+
+        final int version = buffer.getShort(4) & 0xffff;
+        if (version != STORE_VERSION){
+            throw new IOException("Unsupported EB key store version: " + version);
+        }
+
+        final int flags = buffer.getShort(6) & 0xffff;
+        final int iter = buffer.getInt(8);
+        final byte[] storedSalt = new byte[SALT_SIZE];
+        final byte[] storedCheck = new byte[CHECK_SIZE];
+        getBytes(buffer, 12, storedSalt);
+        getBytes(buffer, 12 + SALT_SIZE, storedCheck);
+
+        if ((flags & FLAG_PROTECTED) != 0){
+            if (password == null){
+                throw new IOException("EB key store is password protected");
+            }
+
+            initProtection(password, storedSalt, iter);
+            if (!Arrays.constantTimeAreEqual(passwordCheck, storedCheck)){
+                throw new IOException("EB key store password incorrect");
+            }
+        } else {
+            initProtection(null, storedSalt, iter);
+        }
+
+        final int footer = size - FOOTER_LENGTH;
+        if (buffer.getInt(footer + 12) != FOOTER_MAGIC){
+            throw new IOException("EB key store index not found");
+        }
+
+        final long indexOffset = buffer.getLong(footer);
+        final int indexLength = buffer.getInt(footer + 8);
+        if (indexOffset < HEADER_LENGTH || indexLength < 4 || indexOffset + indexLength > footer){
+            throw new IOException("Invalid EB key store index");
+        }
+
+        final int indexEnd = (int) indexOffset + indexLength;
+        int pos = (int) indexOffset;
+        final int count = buffer.getInt(pos);
+        pos += 4;
+        if (count < 0 || count > (indexEnd - pos) / (2 + 8)){
+            throw new IOException("Invalid EB key store index");
+        }
+
+        for(int i = 0; i < count; i++){
+            checkedSkip(pos, 2, indexEnd);
+            final int aliasLen = buffer.getShort(pos) & 0xffff;
+            checkedSkip(pos, 2 + aliasLen + 8, indexEnd);
+            final String alias = readString(buffer, pos + 2, aliasLen);
+            pos += 2 + aliasLen;
+            index.put(alias, buffer.getLong(pos));
+            pos += 8;
+        }
+
+        data = buffer;
+        dataLength = size;
+    }
+
+    /**
+     * Reads the record header of the alias.
+     * The index is not authenticated, the record has to be the one of the requested alias.
+     */
+    protected Record readRecord(ByteBuffer buffer, String alias, long offset) throws IOException {
+        final Record record = readRecord(buffer, offset);
+        if (!record.alias.equals(alias)){
+            throw new IOException("Record does not belong to the alias");
+        }
+
+        return record;
+    }
+
+    protected Record readRecord(ByteBuffer buffer, long offset) throws IOException {
+        if (buffer == null || offset < HEADER_LENGTH || offset >= buffer.limit()){
+            throw new IOException("Invalid record offset");
+        }
+
+        final int end = buffer.limit();
+        final Record record = new Record();
+        int pos = (int) offset;
+        checkedSkip(pos, 3, end);
+        record.type = buffer.get(pos) & 0xff;
+        final int aliasLen = buffer.getShort(pos + 1) & 0xffff;
+        checkedSkip(pos, 3 + aliasLen + 12, end);
+        record.alias = readString(buffer, pos + 3, aliasLen);
+        pos += 3 + aliasLen;
+        record.date = new Date(buffer.getLong(pos));
+        record.payloadLength = buffer.getInt(pos + 8);
+        record.payloadOffset = pos + 12;
+        record.chainOffset = checkedSkip(record.payloadOffset, record.payloadLength, end);
+        checkedSkip(record.chainOffset, 2, end);
+        return record;
+    }
+
+    protected Certificate[] readChain(ByteBuffer buffer, int offset) throws IOException, CertificateException {
+        final int end = buffer.limit();
+        checkedSkip(offset, 2, end);
+        final int count = buffer.getShort(offset) & 0xffff;
+        final Certificate[] chain = new Certificate[count];
+        if (count == 0){
+            return chain;
+        }
+
+        final CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        int pos = offset + 2;
+        for(int i = 0; i < count; i++){
+            checkedSkip(pos, 4, end);
+            final int len = buffer.getInt(pos);
+            checkedSkip(pos + 4, len, end);
+            final byte[] enc = new byte[len];
+            getBytes(buffer, pos + 4, enc);
+            chain[i] = cf.generateCertificate(new ByteArrayInputStream(enc));
+            pos += 4 + len;
+        }
+
+        return chain;
+    }
+
+    /**
+     * Decodes EB key from the compact record in the buffer.
+     */
+    protected Key decodeKey(ByteBuffer buffer, int offset) throws IOException {
+        final EBEngine engine = provider.getEngine();
+        final EBCompactDecoder decoder = decoders.get().wrap(buffer, offset);
+        switch(decoder.getRecordType()){
+            case EBCompactEncoding.RECORD_KEY_SYMMETRIC:
+                return new EBSymmetricKey.Builder().setEngine(engine).setCompact(decoder).build();
+            case EBCompactEncoding.RECORD_KEY_RSA_PRIVATE:
+                return new EBRSAPrivateKey.Builder().setEngine(engine).setCompact(decoder).build();
+            case EBCompactEncoding.RECORD_KEY_RSA_PUBLIC:
+                return new EBRSAPublicKey.Builder().setEngine(engine).setCompact(decoder).build();
+            case EBCompactEncoding.RECORD_KEY_RSA:
+                return new EBRSAKey.Builder().setEngine(engine).setCompact(decoder).build();
+            default:
+                throw new IOException("Unsupported key record type: " + decoder.getRecordType());
+        }
+    }
+
+    // Writing
+
+    /**
+     * Writes all entries to a new store, persisted records are re-encrypted if the password differs.
+     */
+    protected void writeFull(DataOutputStream out, char[] password) throws IOException, CertificateException {
+        final byte[] oldEncKey = encKey;
+        final byte[] oldMacKey = macKey;
+        final byte[] oldSalt = salt;
+        final byte[] oldCheck = passwordCheck;
+        final int oldIterations = iterations;
+        final ByteBuffer buffer = data;
+        if (isSamePassword(password)){
+            writeFull(out, buffer, oldEncKey, oldMacKey);
+            return;
+        }
+
+        // Loaded records stay protected by the original password, restore it after the write.
+        initProtection(password, null, ITERATIONS);
+        try {
+            writeFull(out, buffer, oldEncKey, oldMacKey);
+        } finally {
+            encKey = oldEncKey;
+            macKey = oldMacKey;
+            salt = oldSalt;
+            passwordCheck = oldCheck;
+            iterations = oldIterations;
+        }
+    }
+
+    protected void writeFull(DataOutputStream out, ByteBuffer buffer, byte[] oldEncKey, byte[] oldMacKey)
+            throws IOException, CertificateException {
+        long pos = writeHeader(out);
+        final Map<String, Long> offsets = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Object> e : index.entrySet()){
+            final String alias = e.getKey();
+            final Object entry = e.getValue();
+            offsets.put(alias, pos);
+
+            if (entry instanceof PendingEntry){
+                pos += writeRecord(out, alias, (PendingEntry) entry);
+                continue;
+            }
+
+            final Record record = readRecord(buffer, alias, (Long) entry);
+            byte[] plain = null;
+            if (record.type == ENTRY_KEY){
+                plain = oldEncKey == null ?
+                        copyBytes(buffer, record.payloadOffset, record.payloadLength) :
+                        decryptPayload(buffer, record, oldEncKey, oldMacKey);
+            }
+
+            final Certificate[] chain = readChain(buffer, record.chainOffset);
+            pos += writeRecord(out, alias, new PendingEntry(record.type, record.date, plain, chain));
+        }
+
+        writeIndex(out, pos, offsets);
+    }
+
+    /**
+     * Appends pending entries and a new index to the loaded file.
+     */
+    protected void appendToFile() throws IOException, CertificateException {
+        final Map<String, Long> offsets = new LinkedHashMap<String, Long>();
+        final Map<String, Object> newIndex = new HashMap<String, Object>();
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final FileChannel channel = raf.getChannel();
+            channel.position(dataLength);
+
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    java.nio.channels.Channels.newOutputStream(channel)));
+
+            long pos = dataLength;
+            for (Map.Entry<String, Object> e : index.entrySet()){
+                final Object entry = e.getValue();
+                if (entry instanceof PendingEntry){
+                    offsets.put(e.getKey(), pos);
+                    newIndex.put(e.getKey(), pos);
+                    pos += writeRecord(out, e.getKey(), (PendingEntry) entry);
+                } else {
+                    offsets.put(e.getKey(), (Long) entry);
+                }
+            }
+
+            writeIndex(out, pos, offsets);
+            out.flush();
+            channel.force(false);
+
+        } finally {
+            raf.close();
+        }
+
+        // Remap so appended records are readable, previously mapped region stays valid for readers.
+        final RandomAccessFile rraf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = rraf.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            dataLength = channel.size();
+        } finally {
+            rraf.close();
+        }
+
+        index.putAll(newIndex);
+    }
+
+    protected int writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(HEADER_MAGIC);
+        out.writeShort(STORE_VERSION);
+        out.writeShort(isProtected() ? FLAG_PROTECTED : 0);
+        out.writeInt(iterations);
+        out.write(salt);
+        out.write(passwordCheck);
+        out.writeInt(0);
+        return HEADER_LENGTH;
+    }
+
+    /**
+     * Writes a record, returns number of bytes written.
+     */
+    protected int writeRecord(DataOutputStream out, String alias, PendingEntry entry) throws IOException, CertificateEncodingException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        final DataOutputStream rec = new DataOutputStream(bos);
+
+        rec.writeByte(entry.type);
+        EBCompactEncoding.writeString16(rec, alias);
+        rec.writeLong(entry.date.getTime());
+
+        byte[] payload = entry.encoded == null ? new byte[0] : entry.encoded;
+        if (entry.type == ENTRY_KEY && isProtected()){
+            payload = encryptPayload(alias, payload);
+        }
+
+        rec.writeInt(payload.length);
+        rec.write(payload);
+
+        final Certificate[] chain = entry.chain == null ? new Certificate[0] : entry.chain;
+        rec.writeShort(chain.length);
+        for (Certificate cert : chain){
+            final byte[] enc = cert.getEncoded();
+            rec.writeInt(enc.length);
+            rec.write(enc);
+        }
+
+        rec.flush();
+        bos.writeTo(out);
+        return bos.size();
+    }
+
+    protected void writeIndex(DataOutputStream out, long indexOffset, Map<String, Long> offsets) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(16 + offsets.size() * 32);
+        final DataOutputStream idx = new DataOutputStream(bos);
+        idx.writeInt(offsets.size());
+        for (Map.Entry<String, Long> e : offsets.entrySet()){
+            EBCompactEncoding.writeString16(idx, e.getKey());
+            idx.writeLong(e.getValue());
+        }
+        idx.flush();
+
+        bos.writeTo(out);
+        out.writeLong(indexOffset);
+        out.writeInt(bos.size());
+        out.writeInt(FOOTER_MAGIC);
+    }
+
+    // Protection
+
+    protected boolean isProtected(){
+        return encKey != null;
+    }
+
+    protected boolean isSamePassword(char[] password){
+        if (password == null){
+            return !isProtected();
+        }
+
+        if (!isProtected()){
+            return false;
+        }
+
+        final byte[][] keys = deriveKeys(password, salt, iterations);
+        return Arrays.constantTimeAreEqual(computeCheck(keys[1]), passwordCheck);
+    }
+
+    protected void initProtection(char[] password, byte[] storeSalt, int iter){
+        iterations = iter;
+        if (storeSalt == null){
+            storeSalt = new byte[SALT_SIZE];
+            random.nextBytes(storeSalt);
+        }
+
+        salt = storeSalt;
+        if (password == null){
+            encKey = null;
+            macKey = null;
+            passwordCheck = new byte[CHECK_SIZE];
+            return;
+        }
+
+        final byte[][] keys = deriveKeys(password, salt, iterations);
+        encKey = keys[0];
+        macKey = keys[1];
+        passwordCheck = computeCheck(macKey);
+    }
+
+    protected static byte[][] deriveKeys(char[] password, byte[] salt, int iterations){
+        final PKCS5S2ParametersGenerator gen = new PKCS5S2ParametersGenerator(new SHA256Digest());
+        gen.init(PBEParametersGenerator.PKCS5PasswordToUTF8Bytes(password), salt, iterations);
+
+        final byte[] keys = ((KeyParameter) gen.generateDerivedMacParameters(64 * 8)).getKey();
+        return new byte[][]{Arrays.copyOfRange(keys, 0, 32), Arrays.copyOfRange(keys, 32, 64)};
+    }
+
+    protected static byte[] computeCheck(byte[] macKey){
+        final HMac mac = newMac(macKey);
+        mac.update(CHECK_CONSTANT, 0, CHECK_CONSTANT.length);
+
+        final byte[] res = new byte[MAC_SIZE];
+        mac.doFinal(res, 0);
+        return Arrays.copyOf(res, CHECK_SIZE);
+    }
+
+    protected static HMac newMac(byte[] key){
+        final HMac mac = new HMac(new SHA256Digest());
+        mac.init(new KeyParameter(key));
+        return mac;
+    }
+
+    /**
+     * iv || AES-256-CBC-PKCS7(plain) || HMAC-SHA256(alias || iv || ciphertext)
+     */
+    protected byte[] encryptPayload(String alias, byte[] plain) throws IOException {
+        final byte[] iv = new byte[IV_SIZE];
+        random.nextBytes(iv);
+
+        final PaddedBufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
+        cipher.init(true, new ParametersWithIV(new KeyParameter(encKey), iv));
+
+        final byte[] res = new byte[IV_SIZE + cipher.getOutputSize(plain.length) + MAC_SIZE];
+        System.arraycopy(iv, 0, res, 0, IV_SIZE);
+        try {
+            int len = cipher.processBytes(plain, 0, plain.length, res, IV_SIZE);
+            len += cipher.doFinal(res, IV_SIZE + len);
+
+            final byte[] aliasBytes = alias.getBytes(EBCompactEncoding.UTF8);
+            final HMac mac = newMac(macKey);
+            mac.update(aliasBytes, 0, aliasBytes.length);
+            mac.update(res, 0, IV_SIZE + len);
+            mac.doFinal(res, IV_SIZE + len);
+            return Arrays.copyOf(res, IV_SIZE + len + MAC_SIZE);
+
+        } catch (InvalidCipherTextException e) {
+            throw new IOException("Record encryption failed", e);
+        }
+    }
+
+    protected byte[] decryptPayload(ByteBuffer buffer, Record record) throws IOException {
+        return decryptPayload(buffer, record, encKey, macKey);
+    }
+
+    protected static byte[] decryptPayload(ByteBuffer buffer, Record record, byte[] encKey, byte[] macKey) throws IOException {
+        final byte[] payload = copyBytes(buffer, record.payloadOffset, record.payloadLength);
+        if (payload.length < IV_SIZE + MAC_SIZE){
+            throw new IOException("Record too short");
+        }
+
+        final int ctLen = payload.length - IV_SIZE - MAC_SIZE;
+        final byte[] aliasBytes = record.alias.getBytes(EBCompactEncoding.UTF8);
+        final HMac mac = newMac(macKey);
+        mac.update(aliasBytes, 0, aliasBytes.length);
+        mac.update(payload, 0, IV_SIZE + ctLen);
+
+        final byte[] computed = new byte[MAC_SIZE];
+        mac.doFinal(computed, 0);
+        if (!Arrays.constantTimeAreEqual(computed, Arrays.copyOfRange(payload, IV_SIZE + ctLen, payload.length))){
+            throw new IOException("Record integrity check failed");
+        }
+
+        final PaddedBufferedBlockCipher cipher = new PaddedBufferedBlockCipher(new CBCBlockCipher(new AESEngine()));
+        cipher.init(false, new ParametersWithIV(new KeyParameter(encKey), payload, 0, IV_SIZE));
+
+        final byte[] plain = new byte[cipher.getOutputSize(ctLen)];
+        try {
+            int len = cipher.processBytes(payload, IV_SIZE, ctLen, plain, 0);
+            len += cipher.doFinal(plain, len);
+            return Arrays.copyOf(plain, len);
+
+        } catch (InvalidCipherTextException e) {
+            throw new IOException("Record decryption failed", e);
+        }
+    }
+
+    // Helpers
+
+    protected int entryType(String alias, Object entry){
+        if (entry instanceof PendingEntry){
+            return ((PendingEntry) entry).type;
+        }
+
+        try {
+            return readRecord(data, alias, (Long) entry).type;
+        } catch (IOException e) {
+            throw new IllegalStateException("Record could not be read", e);
+        }
+    }
+
+    /**
+     * Returns pos + len if the field fits before the end.
+     */
+    protected static int checkedSkip(int pos, int len, int end) throws IOException {
+        if (len < 0 || pos < 0 || pos + len > end || pos + len < pos){
+            throw new IOException("Corrupted EB key store");
+        }
+
+        return pos + len;
+    }
+
+    protected static void getBytes(ByteBuffer buffer, int offset, byte[] dst){
+        if (buffer.hasArray()){
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, dst, 0, dst.length);
+            return;
+        }
+
+        for(int i = 0; i < dst.length; i++){
+            dst[i] = buffer.get(offset + i);
+        }
+    }
+
+    protected static byte[] copyBytes(ByteBuffer buffer, int offset, int len){
+        final byte[] res = new byte[len];
+        getBytes(buffer, offset, res);
+        return res;
+    }
+
+    protected static String readString(ByteBuffer buffer, int offset, int len){
+        return new String(copyBytes(buffer, offset, len), EBCompactEncoding.UTF8);
+    }
+}
@@ -1,5 +1,8 @@
 package com.enigmabridge.provider.rsa;
 
+import com.enigmabridge.events.EBEvent;
+import com.enigmabridge.events.EBEventType;
+import com.enigmabridge.events.EBEvents;
 import com.enigmabridge.provider.EnigmaProvider;
 import com.enigmabridge.provider.rsa.engine.RSABlindedEngine;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
@@ -432,6 +435,59 @@ public class CipherSpi
     }
 
     protected byte[] engineDoFinal(
+            byte[]  input,
+            int     inputOffset,
+            int     inputLen)
+            throws IllegalBlockSizeException, BadPaddingException
+    {
+        final EBEvent event = EBEvents.begin(EBEventType.CIPHER);
+        boolean failed = true;
+        try
+        {
+            final byte[] res = doFinalInternal(input, inputOffset, inputLen);
+            failed = false;
+            return res;
+        }
+        finally
+        {
+            commitEvent(event, inputLen, failed);
+        }
+    }
+
+    protected int engineDoFinal(
+            byte[]  input,
+            int     inputOffset,
+            int     inputLen,
+            byte[]  output,
+            int     outputOffset)
+            throws IllegalBlockSizeException, BadPaddingException
+    {
+        final EBEvent event = EBEvents.begin(EBEventType.CIPHER);
+        boolean failed = true;
+        try
+        {
+            final int res = doFinalInternal(input, inputOffset, inputLen, output, outputOffset);
+            failed = false;
+            return res;
+        }
+        finally
+        {
+            commitEvent(event, inputLen, failed);
+        }
+    }
+
+    private void commitEvent(EBEvent event, int inputLen, boolean failed)
+    {
+        if (event != null)
+        {
+            event.set("algorithm", "RSA/" + getClass().getSimpleName())
+                    .set("inputLength", inputLen)
+                    .set("failed", failed)
+                    .commit();
+        }
+    }
+
+    protected byte[] doFinalInternal(
         byte[]  input,
         int     inputOffset,
         int     inputLen) 
@@ -471,7 +527,7 @@ public class CipherSpi
         }
     }
 
-    protected int engineDoFinal(
+    protected int doFinalInternal(
         byte[]  input,
         int     inputOffset,
         int     inputLen,
@@ -1,11 +1,14 @@
 package com.enigmabridge.provider.rsa;
 
+import com.enigmabridge.EBCompactDecoder;
+import com.enigmabridge.EBCompactEncoding;
 import com.enigmabridge.provider.EBKeyBase;
 import com.enigmabridge.provider.asn1.EBASNUtils;
 import com.enigmabridge.provider.asn1.EBJSONEncodedUOKey;
 import org.bouncycastle.asn1.ASN1Sequence;
 import org.json.JSONObject;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.MalformedURLException;
@@ -141,6 +144,29 @@ public class EBRSAKey extends EBKeyBase implements PrivateKey, RSAKey {
         return super.getEncoded(EBASNUtils.eb_rsa);
     }
 
+    @Override
+    protected int getCompactRecordType() {
+        return EBCompactEncoding.RECORD_KEY_RSA;
+    }
+
+    @Override
+    protected void writeCompactExtension(DataOutputStream out) throws IOException {
+        EBCompactEncoding.writeBytes16(out, modulus == null ? null : modulus.toByteArray());
+        EBCompactEncoding.writeBytes16(out, publicExponent == null ? null : publicExponent.toByteArray());
+    }
+
+    @Override
+    protected void readCompactExtension(EBCompactDecoder decoder) throws IOException {
+        if (!decoder.hasExtension()){
+            return;
+        }
+
+        final byte[] mod = decoder.readBytes16();
+        final byte[] exp = decoder.readBytes16();
+        modulus = mod.length == 0 ? null : new BigInteger(mod);
+        publicExponent = exp.length == 0 ? null : new BigInteger(exp);
+    }
+
     @Override
     public BigInteger getModulus() {
         return modulus;
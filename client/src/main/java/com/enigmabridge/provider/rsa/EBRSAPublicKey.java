@@ -1,5 +1,6 @@
 package com.enigmabridge.provider.rsa;
 
+import com.enigmabridge.EBCompactEncoding;
 import com.enigmabridge.provider.asn1.EBASNUtils;
 import com.enigmabridge.provider.asn1.EBJSONEncodedUOKey;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -68,4 +69,9 @@ public class EBRSAPublicKey extends EBRSAKey implements RSAPublicKey {
     public byte[] getEncoded() {
         return super.getEncoded(EBASNUtils.eb_rsa_pub);
     }
+
+    @Override
+    protected int getCompactRecordType() {
+        return EBCompactEncoding.RECORD_KEY_RSA_PUBLIC;
+    }
 }
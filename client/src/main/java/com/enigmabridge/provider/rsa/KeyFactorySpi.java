@@ -8,6 +8,7 @@ import com.enigmabridge.provider.EnigmaProvider;
 import com.enigmabridge.provider.asn1.EBASNUtils;
 import com.enigmabridge.provider.asn1.EBEncodableUOKey;
 import com.enigmabridge.provider.asn1.EBJSONEncodedUOKey;
+import com.enigmabridge.provider.specs.EBCompactEncodedUOKeySpec;
 import com.enigmabridge.provider.specs.EBConfigurationUOKeySpec;
 import com.enigmabridge.provider.specs.EBJSONEncodedUOKeySpec;
 import com.enigmabridge.provider.specs.EBKeyCreateSpec;
@@ -81,6 +82,16 @@ public class KeyFactorySpi
 
             return new EBJSONEncodedUOKeySpec(k.toJSON(null));
         }
+        else if (EBCompactEncodedUOKeySpec.class.isAssignableFrom(spec) && key instanceof EBRSAKey)
+        {
+            final EBRSAKey k = (EBRSAKey) key;
+            try {
+                return new EBCompactEncodedUOKeySpec(k.getEncodedCompact());
+
+            } catch (IOException e) {
+                throw new InvalidKeySpecException("Exception in generating specs", e);
+            }
+        }
         else if (spec.isAssignableFrom(EBConfigurationUOKeySpec.class) && key instanceof EBRSAKey)
         {
             final EBRSAKey k = (EBRSAKey) key;
@@ -313,6 +324,25 @@ public class KeyFactorySpi
                 throw new InvalidKeySpecException("Key could not be parsed", e);
             }
         }
+        else if (keySpec instanceof EBCompactEncodedUOKeySpec)
+        {
+            final byte[] encoded = ((EBCompactEncodedUOKeySpec) keySpec).getEncoded();
+            try {
+                final EBRSAPrivateKey tmpKey = new EBRSAPrivateKey.Builder()
+                        .setEngine(engine)
+                        .setCompact(encoded)
+                        .build();
+
+                if (tmpKey.getKeyType() != UserObjectKeyType.PRIVATE) {
+                    throw new InvalidKeySpecException("Key type is invalid: " + tmpKey.getKeyType());
+                }
+
+                return tmpKey;
+
+            } catch (IOException e) {
+                throw new InvalidKeySpecException("Key could not be parsed", e);
+            }
+        }
         else if (keySpec instanceof EBConfigurationUOKeySpec)
         {
             final String configLine = ((EBConfigurationUOKeySpec) keySpec).getConfigLine();
@@ -1,7 +1,7 @@
 package com.enigmabridge.provider.rsa.engine;
 
 import com.enigmabridge.EBCryptoException;
-import com.enigmabridge.EBDevSettings;
+import com.enigmabridge.EBDiagnostics;
 import com.enigmabridge.comm.EBCommStatus;
 import com.enigmabridge.comm.EBCorruptedException;
 import com.enigmabridge.comm.EBProcessDataCall;
@@ -248,19 +248,21 @@ class RSACoreEngine
 
     private void test6f00(EBProcessDataCall call, byte[] inputBytes){
         EBProcessDataResponse response = call.getPdResponse();
-        if (EBDevSettings.shouldLog6f00RequestResponse()
-                && response != null
-                && response.getStatusCode() == EBCommStatus.ERROR_CLASS_ERR_CHECK_ERRORS_6f){
-
-            // Logging 6f00 errors to detect possible crypto errors / incompatibility.
-            LOG.debug(String.format("RSA 0x6f00 error. encryption: %s, input size: %d, leading zero: %s \n" +
+        if (response != null
+                && inputBytes != null
+                && response.getStatusCode() == EBCommStatus.ERROR_CLASS_ERR_CHECK_ERRORS_6f
+                && EBDiagnostics.shouldCapture(EBDiagnostics.Kind.PROCESS_DATA_6F00)){
+
+            // Capturing 6f00 errors to detect possible crypto errors / incompatibility.
+            EBDiagnostics.capture(EBDiagnostics.Kind.PROCESS_DATA_6F00,
+                    "RSA 0x6f00 error. encryption: %s, input size: %d, leading zero: %s \n" +
                             "  request [%s]\n" +
                             "  response [%s]",
                     forEncryption,
                     inputBytes.length,
-                    inputBytes[0] == 0,
+                    inputBytes.length > 0 && inputBytes[0] == 0,
                     call.getRawRequest(),
-                    call.getRawResponse()));
+                    call.getRawResponse());
         }
     }
 }
@@ -0,0 +1,525 @@
+package com.enigmabridge.provider.rsa.signature;
+
+import com.enigmabridge.provider.parameters.EBRSAKeyParameter;
+import com.enigmabridge.provider.rsa.EBRSAPrivateKey;
+import com.enigmabridge.provider.rsa.RSAUtil;
+import com.enigmabridge.provider.rsa.engine.RSABlindedEngine;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.DigestInfo;
+import org.bouncycastle.crypto.AsymmetricBlockCipher;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.encodings.PKCS1Encoding;
+import org.bouncycastle.crypto.engines.RSAEngine;
+import org.bouncycastle.crypto.generators.MGF1BytesGenerator;
+import org.bouncycastle.crypto.params.MGFParameters;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.params.RSAKeyParameters;
+import org.bouncycastle.crypto.signers.PSSSigner;
+import org.bouncycastle.jcajce.provider.util.DigestFactory;
+import org.bouncycastle.util.Arrays;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Signs many pre-computed digests with one EB RSA key.
+ *
+ * Signatures are standard PKCS#1 v1.5 (as {@link DigestSignatureSpi}) or RSASSA-PSS with MGF1,
+ * verifiable by any JCA provider.
+ * Encoding (EMSA-PKCS1-v1_5 / EMSA-PSS) and blinding are done locally, only the raw RSA operation
+ * is one ProcessData call per digest, calls run concurrently with the bounded concurrency.
+ * Verification is local, with the public part of the key.
+ */
+public class EBBatchSigner {
+    public static final int DEFAULT_CONCURRENCY = 16;
+    public static final String DEFAULT_DIGEST = "SHA-256";
+
+    protected EBRSAPrivateKey privateKey;
+    protected String digestAlgorithm = DEFAULT_DIGEST;
+
+    /**
+     * PSS parameters, null for PKCS#1 v1.5 signatures.
+     */
+    protected PSSParameterSpec pssSpec;
+    protected SecureRandom random;
+
+    protected ExecutorService executorService;
+    protected boolean ownExecutor;
+    protected int concurrency = DEFAULT_CONCURRENCY;
+
+    protected EBRSAKeyParameter keyParam;
+    protected RSAKeyParameters publicParam;
+    protected AlgorithmIdentifier algId;
+    protected int digestSize;
+    protected Semaphore callPermits;
+
+    protected final AtomicLong signed = new AtomicLong();
+    protected final AtomicLong failed = new AtomicLong();
+
+    public static abstract class AbstractBuilder<T extends EBBatchSigner, B extends AbstractBuilder<T, B>> {
+        public B setPrivateKey(EBRSAPrivateKey a) {
+            getObj().setPrivateKey(a);
+            return getThisBuilder();
+        }
+
+        public B setDigestAlgorithm(String a) {
+            getObj().setDigestAlgorithm(a);
+            return getThisBuilder();
+        }
+
+        public B setPssSpec(PSSParameterSpec a) {
+            getObj().setPssSpec(a);
+            return getThisBuilder();
+        }
+
+        public B setRandom(SecureRandom a) {
+            getObj().setRandom(a);
+            return getThisBuilder();
+        }
+
+        public B setExecutorService(ExecutorService a) {
+            getObj().setExecutorService(a);
+            return getThisBuilder();
+        }
+
+        public B setConcurrency(int a) {
+            getObj().setConcurrency(a);
+            return getThisBuilder();
+        }
+
+        public abstract T build();
+        public abstract B getThisBuilder();
+        public abstract T getObj();
+    }
+
+    public static class Builder extends AbstractBuilder<EBBatchSigner, Builder> {
+        private final EBBatchSigner parent = new EBBatchSigner();
+
+        @Override
+        public Builder getThisBuilder() {
+            return this;
+        }
+
+        @Override
+        public EBBatchSigner getObj() {
+            return parent;
+        }
+
+        @Override
+        public EBBatchSigner build() {
+            if (parent.getPrivateKey() == null){
+                throw new NullPointerException("Private key is null");
+            }
+
+            if (parent.getConcurrency() <= 0){
+                throw new IllegalArgumentException("Concurrency has to be positive");
+            }
+
+            parent.init();
+            return parent;
+        }
+    }
+
+    protected void init(){
+        if (pssSpec != null){
+            if (!"MGF1".equalsIgnoreCase(pssSpec.getMGFAlgorithm()) || pssSpec.getTrailerField() != 1){
+                throw new IllegalArgumentException("Only MGF1 PSS with the implicit trailer is supported");
+            }
+            digestAlgorithm = pssSpec.getDigestAlgorithm();
+        }
+
+        final Digest digest = DigestFactory.getDigest(digestAlgorithm);
+        final ASN1ObjectIdentifier oid = DigestFactory.getOID(digestAlgorithm);
+        if (digest == null || oid == null){
+            throw new IllegalArgumentException("Unsupported digest: " + digestAlgorithm);
+        }
+
+        digestSize = digest.getDigestSize();
+        algId = new AlgorithmIdentifier(oid, DERNull.INSTANCE);
+        keyParam = RSAUtil.generatePrivateKeyParameter(privateKey);
+        publicParam = new RSAKeyParameters(false, privateKey.getModulus(), privateKey.getPublicExponent());
+        if (pssSpec != null){
+            if (getMgfDigest() == null){
+                throw new IllegalArgumentException("Unsupported MGF1 digest");
+            }
+
+            if ((publicParam.getModulus().bitLength() + 6) / 8 < digestSize + pssSpec.getSaltLength() + 2){
+                throw new IllegalArgumentException("Key too small for the digest and salt length");
+            }
+        }
+
+        callPermits = new Semaphore(concurrency);
+
+        if (random == null){
+            random = new SecureRandom();
+        }
+
+        if (executorService == null){
+            executorService = Executors.newFixedThreadPool(concurrency);
+            ownExecutor = true;
+        }
+    }
+
+    /**
+     * Shuts down the executor if created by the signer.
+     */
+    public void shutdown(){
+        if (ownExecutor){
+            executorService.shutdown();
+        }
+    }
+
+    // Signing
+
+    public Future<byte[]> signAsync(final byte[] digest){
+        checkDigest(digest);
+        return executorService.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return signDigest(digest);
+            }
+        });
+    }
+
+    public List<Future<byte[]>> signAsync(List<byte[]> digests){
+        final List<Future<byte[]>> res = new ArrayList<Future<byte[]>>(digests.size());
+        for(byte[] digest : digests){
+            res.add(signAsync(digest));
+        }
+        return res;
+    }
+
+    public byte[] sign(byte[] digest) throws SignatureException {
+        return getResult(signAsync(digest));
+    }
+
+    /**
+     * Signs all digests concurrently.
+     * @param digests digests to sign
+     * @return signatures in the order of digests
+     * @throws SignatureException first failure
+     */
+    public List<byte[]> sign(List<byte[]> digests) throws SignatureException {
+        final List<Future<byte[]>> futures = signAsync(digests);
+        final List<byte[]> res = new ArrayList<byte[]>(futures.size());
+        for(Future<byte[]> future : futures){
+            res.add(getResult(future));
+        }
+        return res;
+    }
+
+    /**
+     * Signs digests from the iterator, signatures are passed to the listener in the input order.
+     * At most 2 * concurrency digests are pending at a time.
+     *
+     * @param digests digests to sign
+     * @param listener signature listener
+     * @return number of signed digests
+     * @throws SignatureException first failure, signing stops
+     */
+    public long sign(Iterator<byte[]> digests, EBBatchSignerListener listener) throws SignatureException {
+        final int window = 2 * concurrency;
+        final ArrayDeque<byte[]> pendingDigests = new ArrayDeque<byte[]>(window);
+        final ArrayDeque<Future<byte[]>> pendingResults = new ArrayDeque<Future<byte[]>>(window);
+        long index = 0;
+
+        while(digests.hasNext()){
+            final byte[] digest = digests.next();
+            pendingDigests.add(digest);
+            pendingResults.add(signAsync(digest));
+
+            if (pendingResults.size() >= window){
+                listener.onSignature(index++, pendingDigests.poll(), getResult(pendingResults.poll()));
+            }
+        }
+
+        while(!pendingResults.isEmpty()){
+            listener.onSignature(index++, pendingDigests.poll(), getResult(pendingResults.poll()));
+        }
+
+        return index;
+    }
+
+    /**
+     * Signs one digest, blocks on the ProcessData call.
+     * @param digest digest
+     * @return signature
+     * @throws Exception
+     */
+    protected byte[] signDigest(byte[] digest) throws Exception {
+        callPermits.acquireUninterruptibly();
+        try {
+            final ParametersWithRandom param = new ParametersWithRandom(keyParam, random);
+            final byte[] signature;
+
+            if (pssSpec == null){
+                final AsymmetricBlockCipher cipher = new PKCS1Encoding(new RSABlindedEngine());
+                cipher.init(true, param);
+
+                final byte[] encoded = derEncode(digest);
+                signature = cipher.processBlock(encoded, 0, encoded.length);
+
+            } else {
+                final AsymmetricBlockCipher cipher = new RSABlindedEngine();
+                cipher.init(true, param);
+
+                final byte[] encoded = pssEncode(digest);
+                signature = cipher.processBlock(encoded, 0, encoded.length);
+            }
+
+            signed.incrementAndGet();
+            return signature;
+
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            throw e;
+
+        } finally {
+            callPermits.release();
+        }
+    }
+
+    // Verification
+
+    /**
+     * Verifies the signature locally.
+     * @param digest signed digest
+     * @param signature signature
+     * @return true if valid
+     */
+    public boolean verify(byte[] digest, byte[] signature){
+        if (digest == null || digest.length != digestSize){
+            return false;
+        }
+
+        try {
+            if (pssSpec == null){
+                final AsymmetricBlockCipher cipher = new PKCS1Encoding(new RSAEngine());
+                cipher.init(false, publicParam);
+                final byte[] decoded = cipher.processBlock(signature, 0, signature.length);
+                return isDigestInfoValid(decoded, digest);
+
+            } else {
+                final PSSSigner signer = createPssSigner(new RSAEngine());
+                signer.init(false, publicParam);
+                signer.update(digest, 0, digest.length);
+                return signer.verifySignature(signature);
+            }
+
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Verifies signatures locally.
+     * @param digests signed digests
+     * @param signatures signatures, in the order of digests
+     * @return verification results
+     */
+    public boolean[] verify(List<byte[]> digests, List<byte[]> signatures){
+        if (digests.size() != signatures.size()){
+            throw new IllegalArgumentException("Number of digests and signatures differ");
+        }
+
+        final boolean[] res = new boolean[digests.size()];
+        for(int i = 0; i < res.length; i++){
+            res[i] = verify(digests.get(i), signatures.get(i));
+        }
+        return res;
+    }
+
+    // Encoding
+
+    protected PSSSigner createPssSigner(AsymmetricBlockCipher engine){
+        final Digest mgfDigest = getMgfDigest();
+        final Digest contentDigest = new PSSSignatureSpi.NullPssDigest(DigestFactory.getDigest(pssSpec.getDigestAlgorithm()));
+        return new PSSSigner(engine, contentDigest, mgfDigest, pssSpec.getSaltLength(), PSSSigner.TRAILER_IMPLICIT);
+    }
+
+    /**
+     * EMSA-PSS encoding of the digest, RFC 8017 section 9.1.1.
+     * BC PSSSigner cannot be used with the EB key parameters, only the raw RSA operation goes to the engine.
+     *
+     * @param mHash message digest
+     * @return encoded message, emLen bytes
+     */
+    protected byte[] pssEncode(byte[] mHash){
+        final int emBits = publicParam.getModulus().bitLength() - 1;
+        final int emLen = (emBits + 7) / 8;
+        final int sLen = pssSpec.getSaltLength();
+        if (emLen < digestSize + sLen + 2){
+            throw new IllegalArgumentException("Key too small for the digest and salt length");
+        }
+
+        final byte[] salt = new byte[sLen];
+        random.nextBytes(salt);
+
+        // H = Hash(00 00 00 00 00 00 00 00 || mHash || salt)
+        final Digest digest = DigestFactory.getDigest(pssSpec.getDigestAlgorithm());
+        final byte[] h = new byte[digestSize];
+        digest.update(new byte[8], 0, 8);
+        digest.update(mHash, 0, mHash.length);
+        digest.update(salt, 0, sLen);
+        digest.doFinal(h, 0);
+
+        // EM = maskedDB || H || 0xbc, DB = PS || 0x01 || salt
+        final byte[] em = new byte[emLen];
+        final int dbLen = emLen - digestSize - 1;
+        em[dbLen - sLen - 1] = 0x01;
+        System.arraycopy(salt, 0, em, dbLen - sLen, sLen);
+
+        final byte[] dbMask = new byte[dbLen];
+        final MGF1BytesGenerator mgf = new MGF1BytesGenerator(getMgfDigest());
+        mgf.init(new MGFParameters(h));
+        mgf.generateBytes(dbMask, 0, dbLen);
+        for(int i = 0; i < dbLen; i++){
+            em[i] ^= dbMask[i];
+        }
+
+        em[0] &= (byte) (0xff >>> (8 * emLen - emBits));
+        System.arraycopy(h, 0, em, dbLen, digestSize);
+        em[emLen - 1] = (byte) 0xbc;
+        return em;
+    }
+
+    protected Digest getMgfDigest(){
+        final AlgorithmParameterSpec mgfSpec = pssSpec.getMGFParameters();
+        return DigestFactory.getDigest(mgfSpec instanceof MGF1ParameterSpec
+                ? ((MGF1ParameterSpec) mgfSpec).getDigestAlgorithm()
+                : pssSpec.getDigestAlgorithm());
+    }
+
+    protected byte[] derEncode(byte[] digest) throws IOException {
+        return new DigestInfo(algId, digest).getEncoded(ASN1Encoding.DER);
+    }
+
+    /**
+     * Compares decoded signature with the DigestInfo, also accepts encoding with NULL parameters left out.
+     */
+    protected boolean isDigestInfoValid(byte[] sig, byte[] digest) throws IOException {
+        final byte[] expected = derEncode(digest);
+        if (sig.length == expected.length){
+            return Arrays.constantTimeAreEqual(sig, expected);
+
+        } else if (sig.length == expected.length - 2){
+            final int sigOffset = sig.length - digest.length - 2;
+            final int expectedOffset = expected.length - digest.length - 2;
+
+            expected[1] -= 2;
+            expected[3] -= 2;
+
+            int nonEqual = 0;
+            for (int i = 0; i < digest.length; i++){
+                nonEqual |= (sig[sigOffset + i] ^ expected[expectedOffset + i]);
+            }
+
+            for (int i = 0; i < sigOffset; i++){
+                nonEqual |= (sig[i] ^ expected[i]);
+            }
+
+            return nonEqual == 0;
+        }
+
+        return false;
+    }
+
+    protected void checkDigest(byte[] digest){
+        if (digest == null || digest.length != digestSize){
+            throw new IllegalArgumentException("Digest has to be " + digestSize + " bytes long");
+        }
+    }
+
+    protected byte[] getResult(Future<byte[]> future) throws SignatureException {
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SignatureException("Interrupted", e);
+
+        } catch (ExecutionException e) {
+            throw new SignatureException("Signing failed", e.getCause());
+        }
+    }
+
+    // Metrics
+
+    public long getSigned() {
+        return signed.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    // Getters & setters
+
+    public EBRSAPrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public PSSParameterSpec getPssSpec() {
+        return pssSpec;
+    }
+
+    public ExecutorService getExecutorService() {
+        return executorService;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    protected EBBatchSigner setPrivateKey(EBRSAPrivateKey privateKey) {
+        this.privateKey = privateKey;
+        return this;
+    }
+
+    protected EBBatchSigner setDigestAlgorithm(String digestAlgorithm) {
+        this.digestAlgorithm = digestAlgorithm;
+        return this;
+    }
+
+    protected EBBatchSigner setPssSpec(PSSParameterSpec pssSpec) {
+        this.pssSpec = pssSpec;
+        return this;
+    }
+
+    protected EBBatchSigner setRandom(SecureRandom random) {
+        this.random = random;
+        return this;
+    }
+
+    protected EBBatchSigner setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+        return this;
+    }
+
+    protected EBBatchSigner setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+}
@@ -0,0 +1,15 @@
+package com.enigmabridge.provider.rsa.signature;
+
+/**
+ * Receives signatures of the stream signing, in the input order.
+ */
+public interface EBBatchSignerListener {
+    /**
+     * Called for each signed digest.
+     *
+     * @param index index of the digest in the stream
+     * @param digest signed digest
+     * @param signature signature
+     */
+    void onSignature(long index, byte[] digest, byte[] signature);
+}
@@ -1,5 +1,8 @@
 package com.enigmabridge.provider.rsa.signature;
 
+import com.enigmabridge.events.EBEvent;
+import com.enigmabridge.events.EBEventType;
+import com.enigmabridge.events.EBEvents;
 import com.enigmabridge.provider.rsa.EBRSAPrivateKey;
 import com.enigmabridge.provider.rsa.EBRSAPublicKey;
 import com.enigmabridge.provider.rsa.RSAUtil;
@@ -154,6 +157,29 @@ public class PSSSignatureSpi
 
     protected byte[] engineSign()
         throws SignatureException
+    {
+        final EBEvent event = EBEvents.begin(EBEventType.SIGNATURE);
+        boolean failed = true;
+        try
+        {
+            final byte[] res = signInternal();
+            failed = false;
+            return res;
+        }
+        finally
+        {
+            if (event != null)
+            {
+                event.set("algorithm", getClass().getSimpleName())
+                        .set("operation", "sign")
+                        .set("failed", failed)
+                        .commit();
+            }
+        }
+    }
+
+    private byte[] signInternal()
+        throws SignatureException
     {
         try
         {
@@ -343,7 +369,7 @@ public class PSSSignatureSpi
         }
     }
 
-    private class NullPssDigest
+    static class NullPssDigest
         implements Digest
     {
         private ByteArrayOutputStream bOut = new ByteArrayOutputStream();
@@ -0,0 +1,19 @@
+package com.enigmabridge.provider.specs;
+
+import java.security.spec.KeySpec;
+
+/**
+ * Support key factory from keys serialized in the compact binary form.
+ * See {@link com.enigmabridge.EBCompactEncoding}.
+ */
+public class EBCompactEncodedUOKeySpec implements KeySpec {
+    protected final byte[] encoded;
+
+    public EBCompactEncodedUOKeySpec(byte[] encoded) {
+        this.encoded = encoded;
+    }
+
+    public byte[] getEncoded() {
+        return encoded;
+    }
+}
@@ -0,0 +1,175 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * AESEBWRAP round trip, format against a local computation with the same key and tamper rejection.
+ * Loopback endpoint runs the AES user objects.
+ */
+public class EBAESWrapTest {
+    private final Random random = new Random(1);
+    private EBLoopbackEndpoint endpoint;
+    private EnigmaProvider provider;
+    private EBSymmetricKey ebKey;
+    private byte[] aesKey;
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        aesKey = new byte[16];
+        random.nextBytes(aesKey);
+
+        final UserObjectKeyBase uoEnc = buildUo(EBTestingUtils.UOID_AES, UserObjectType.TYPE_PLAINAES);
+        final UserObjectKeyBase uoDec = buildUo(EBTestingUtils.UOID_AES + 1, UserObjectType.TYPE_PLAINAESDECRYPT);
+        endpoint = new EBLoopbackEndpoint()
+                .addUo(uoEnc, aesKey)
+                .addUo(uoDec, aesKey)
+                .start();
+
+        final EBEngine engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpoint.getEndpointInfo())
+                .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                .build());
+
+        provider = new EnigmaProvider(engine);
+        ebKey = new EBSymmetricKey.Builder()
+                .setUo(uoEnc)
+                .setInversionKey(new EBSymmetricKey.Builder().setUo(uoDec))
+                .setEngine(engine)
+                .build();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (endpoint != null){
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testRoundTrip() throws Exception {
+        final Cipher wrap = Cipher.getInstance("AESEBWRAP", provider);
+        final Cipher unwrap = Cipher.getInstance("AESKWEB", provider);
+
+        for(int len = 1; len <= 70; len++){
+            final byte[] keyData = randomData(len);
+            wrap.init(Cipher.WRAP_MODE, ebKey);
+            final byte[] wrapped = wrap.wrap(new SecretKeySpec(keyData, "AES"));
+            assertTrue(Arrays.equals(wrapped, reference(keyData)), "Wrap format mismatch, length: " + len);
+
+            // Deterministic.
+            assertTrue(Arrays.equals(wrap.wrap(new SecretKeySpec(keyData, "AES")), wrapped));
+
+            unwrap.init(Cipher.UNWRAP_MODE, ebKey);
+            final Key key = unwrap.unwrap(wrapped, "AES", Cipher.SECRET_KEY);
+            assertEquals(key.getAlgorithm(), "AES");
+            assertTrue(Arrays.equals(key.getEncoded(), keyData), "Unwrapped key mismatch, length: " + len);
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testTamper() throws Exception {
+        final Cipher wrap = Cipher.getInstance("AESEBWRAP", provider);
+        final Cipher unwrap = Cipher.getInstance("AESEBWRAP", provider);
+        wrap.init(Cipher.WRAP_MODE, ebKey);
+        unwrap.init(Cipher.UNWRAP_MODE, ebKey);
+
+        final byte[] wrapped = wrap.wrap(new SecretKeySpec(randomData(32), "AES"));
+        assertEquals(wrapped.length, 16 + 48);
+
+        // Any flipped bit in any block.
+        for(int i = 0; i < wrapped.length; i++){
+            final byte[] tampered = wrapped.clone();
+            tampered[i] ^= (byte) (1 << (i % 8));
+            assertUnwrapFails(unwrap, tampered, "Tampered byte " + i + " accepted");
+        }
+
+        // Blocks swapped, truncated, extended, not aligned.
+        final byte[] swapped = wrapped.clone();
+        System.arraycopy(wrapped, 16, swapped, 32, 16);
+        System.arraycopy(wrapped, 32, swapped, 16, 16);
+        assertUnwrapFails(unwrap, swapped, "Swapped blocks accepted");
+        assertUnwrapFails(unwrap, Arrays.copyOf(wrapped, wrapped.length - 16), "Truncated blob accepted");
+        assertUnwrapFails(unwrap, Arrays.copyOf(wrapped, wrapped.length + 16), "Extended blob accepted");
+        assertUnwrapFails(unwrap, Arrays.copyOf(wrapped, wrapped.length - 1), "Unaligned blob accepted");
+        assertUnwrapFails(unwrap, Arrays.copyOf(wrapped, 16), "Single block accepted");
+
+        // Valid blob still unwraps with the same cipher.
+        assertEquals(unwrap.unwrap(wrapped, "AES", Cipher.SECRET_KEY).getEncoded().length, 32);
+    }
+
+    private static void assertUnwrapFails(Cipher unwrap, byte[] wrapped, String message){
+        try {
+            unwrap.unwrap(wrapped, "AES", Cipher.SECRET_KEY);
+        } catch(GeneralSecurityException e){
+            return;
+        }
+
+        throw new AssertionError(message);
+    }
+
+    /**
+     * wrapped = AES-CBC(K, IV = 0, D || P), P = len || key || zero padding, D = SHA-256("EBWRAP1" || P)[0..16].
+     */
+    private byte[] reference(byte[] keyData) throws Exception {
+        final int pLen = (4 + keyData.length + 15) / 16 * 16;
+        final byte[] p = new byte[pLen];
+        p[0] = (byte) (keyData.length >>> 24);
+        p[1] = (byte) (keyData.length >>> 16);
+        p[2] = (byte) (keyData.length >>> 8);
+        p[3] = (byte) keyData.length;
+        System.arraycopy(keyData, 0, p, 4, keyData.length);
+
+        final MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        sha.update("EBWRAP1".getBytes("US-ASCII"));
+        final byte[] d = sha.digest(p);
+
+        final byte[] plain = new byte[16 + pLen];
+        System.arraycopy(d, 0, plain, 0, 16);
+        System.arraycopy(p, 0, plain, 16, pLen);
+
+        final Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(new byte[16]));
+        return aes.doFinal(plain);
+    }
+
+    private byte[] randomData(int len){
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static UserObjectKeyBase buildUo(long uoid, int type){
+        return new UserObjectKeyBase.Builder()
+                .setUoid(uoid)
+                .setUserObjectType(type)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .build();
+    }
+}
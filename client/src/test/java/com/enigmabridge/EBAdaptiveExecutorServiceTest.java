@@ -0,0 +1,123 @@
+package com.enigmabridge;
+
+import com.enigmabridge.client.EBAdaptiveExecutorService;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Adaptive limit driven by synthetic latency samples and a manual clock.
+ */
+public class EBAdaptiveExecutorServiceTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test(groups = {"basic"})
+    public void testGrowShrinkClamp() throws Exception {
+        final ManualExecutor executor = new ManualExecutor(2, 16);
+        try {
+            // Stable latency with queued tasks, limit grows up to the maximum.
+            double prev = executor.getLimit();
+            for(int i = 0; i < 500; i++){
+                executor.sample(MILLI, 1);
+                assertTrue(executor.getLimit() >= prev, "Limit decreased under stable latency");
+                assertTrue(executor.getLimit() <= 16);
+                prev = executor.getLimit();
+            }
+
+            assertTrue(executor.getLimitIncreases() > 0);
+            assertEquals(executor.getLimitDecreases(), 0);
+            assertTrue(executor.getLimit() == 16.0);
+            assertEquals(executor.getCorePoolSize(), 16);
+            assertEquals(executor.getMaximumPoolSize(), 16);
+
+            // Latency grows, limit decreases down to the minimum.
+            for(int i = 0; i < 500; i++){
+                executor.sample(4 * MILLI, 0);
+                assertTrue(executor.getLimit() <= prev, "Limit increased under growing latency");
+                assertTrue(executor.getLimit() >= 2);
+                prev = executor.getLimit();
+            }
+
+            assertTrue(executor.getLimitDecreases() > 0);
+            assertTrue(executor.getLimit() == 2.0);
+            assertEquals(executor.getCorePoolSize(), 2);
+            assertEquals(executor.getMaximumPoolSize(), 2);
+            assertEquals(executor.getMinRttNanos(), MILLI);
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testNoDemandNoGrowth() throws Exception {
+        final ManualExecutor executor = new ManualExecutor(2, 16);
+        try {
+            for(int i = 0; i < 100; i++){
+                executor.sample(MILLI, 0);
+            }
+
+            assertTrue(executor.getLimit() == 2.0);
+            assertEquals(executor.getLimitIncreases(), 0);
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testMinRttWindow() throws Exception {
+        final ManualExecutor executor = new ManualExecutor(2, 16);
+        try {
+            executor.sample(MILLI, 0);
+            for(int i = 0; i < 20; i++){
+                executor.sample(4 * MILLI, 0);
+            }
+
+            assertEquals(executor.getMinRttNanos(), MILLI);
+            assertTrue(executor.getLimit() == 2.0);
+
+            // The first window still saw the 1 ms sample, the next one contains only 4 ms samples.
+            executor.now += EBAdaptiveExecutorService.MIN_RTT_WINDOW_NANOS;
+            executor.sample(4 * MILLI, 0);
+            assertEquals(executor.getMinRttNanos(), MILLI);
+
+            executor.now += EBAdaptiveExecutorService.MIN_RTT_WINDOW_NANOS;
+            executor.sample(4 * MILLI, 0);
+            assertEquals(executor.getMinRttNanos(), 4 * MILLI);
+
+            // New baseline, the limit may grow again.
+            for(int i = 0; i < 50; i++){
+                executor.sample(4 * MILLI, 1);
+            }
+            assertTrue(executor.getLimit() > 2.0);
+            assertTrue(executor.getLimitIncreases() > 0);
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Executor with the time set by the test, samples are fed directly.
+     */
+    private static class ManualExecutor extends EBAdaptiveExecutorService {
+        volatile long now;
+
+        ManualExecutor(int minPoolSize, int maxPoolSize) {
+            super(minPoolSize, maxPoolSize);
+        }
+
+        void sample(long rttNanos, int queueDepth){
+            onSample(rttNanos, 1, queueDepth);
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+}
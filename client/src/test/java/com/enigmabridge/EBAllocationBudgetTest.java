@@ -0,0 +1,279 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.*;
+import com.enigmabridge.misc.EBAllocationMeter;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.rsa.EBRSAPrivateKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
+import org.testng.annotations.*;
+
+import javax.crypto.Cipher;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Allocation and CPU budgets of the ProcessData hot path and provider ciphers, against the loopback endpoint.
+ * Guards request building, the connector call and response parsing from silently growing allocations.
+ *
+ * Budgets are per operation with headroom over the measured values, scale them with -Deb.test.budgetScale.
+ * Failure message contains the breakdown of all stages measured by the test.
+ */
+public class EBAllocationBudgetTest {
+    private static final Logger LOG = LoggerFactory.getLogger(EBAllocationBudgetTest.class);
+
+    private static final int WARMUP = 300;
+    private static final int ITERATIONS = 500;
+
+    private static final int AES_SMALL = 16;
+    private static final int AES_LARGE = 1024;
+
+    private static final int RSA_INPUT = 256;
+
+    // Per operation budgets, bytes: fixed part + part per payload byte (hex coding, copies).
+    private static final long BUDGET_BUILD = 12 * 1024;
+    private static final long BUDGET_BUILD_PER_BYTE = 12;
+    private static final long BUDGET_CONNECTOR = 28 * 1024;
+    private static final long BUDGET_CONNECTOR_PER_BYTE = 16;
+    private static final long BUDGET_PARSE = 13 * 1024;
+    private static final long BUDGET_PARSE_PER_BYTE = 20;
+    private static final long BUDGET_CALL = 60 * 1024;
+    private static final long BUDGET_CALL_PER_BYTE = 64;
+    private static final long BUDGET_CIPHER_AES = 60 * 1024;
+    private static final long BUDGET_CIPHER_RSA = 128 * 1024;
+
+    // Per operation CPU budget of the local stages (build, parse), nanoseconds.
+    private static final long BUDGET_CPU_LOCAL = 1000 * 1000;
+
+    private EBLoopbackEndpoint endpoint;
+    private EBEngine engine;
+    private UserObjectKeyBase uoAES;
+    private UserObjectKeyBase uoRSA;
+    private RSAPrivateCrtKey rsaKey;
+
+    public EBAllocationBudgetTest() {
+
+    }
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        if (!EBAllocationMeter.isSupported()){
+            throw new SkipException("Per thread allocation counters are not supported");
+        }
+
+        Security.addProvider(new BouncyCastleProvider());
+
+        final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA");
+        kpGen.initialize(2048);
+        rsaKey = (RSAPrivateCrtKey) kpGen.generateKeyPair().getPrivate();
+
+        endpoint = new EBLoopbackEndpoint();
+        uoAES = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .build();
+
+        uoRSA = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_RSA2k)
+                .setUserObjectType(UserObjectType.TYPE_RSA2048DECRYPT_NOPAD)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("1234567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("2224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("RSA")
+                .setKeyLength(2048)
+                .setKeyType(UserObjectKeyType.PRIVATE)
+                .build();
+
+        endpoint.addUo(uoAES)
+                .addUo(uoRSA, rsaKey.getModulus(), rsaKey.getPrivateExponent())
+                .start();
+
+        engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpoint.getEndpointInfo())
+                .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                .build());
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (endpoint != null){
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"allocation"})
+    public void testProcessDataAES() throws Exception {
+        final EBAllocationMeter meter = new EBAllocationMeter(WARMUP, ITERATIONS);
+        measureProcessData(meter, uoAES, "AES 16 B", payload(AES_SMALL));
+        measureProcessData(meter, uoAES, "AES 1 KiB", payload(AES_LARGE));
+        LOG.info("ProcessData AES allocations:\n{}", meter.getBreakdown());
+
+        assertProcessDataBudgets(meter, "AES 16 B", AES_SMALL);
+        assertProcessDataBudgets(meter, "AES 1 KiB", AES_LARGE);
+    }
+
+    @Test(groups = {"allocation"})
+    public void testProcessDataRSA() throws Exception {
+        final EBAllocationMeter meter = new EBAllocationMeter(WARMUP, ITERATIONS);
+        measureProcessData(meter, uoRSA, "RSA 2048", rsaInput());
+        LOG.info("ProcessData RSA allocations:\n{}", meter.getBreakdown());
+
+        assertProcessDataBudgets(meter, "RSA 2048", RSA_INPUT);
+    }
+
+    @Test(groups = {"allocation"})
+    public void testCipherAES() throws Exception {
+        final EnigmaProvider provider = new EnigmaProvider(engine);
+        final EBSymmetricKey key = new EBSymmetricKey.Builder()
+                .setUo(uoAES)
+                .setEngine(engine)
+                .build();
+
+        final Cipher cipher = Cipher.getInstance("AES/ECB/NoPadding", provider);
+        final byte[] input = payload(AES_SMALL);
+        final EBAllocationMeter meter = new EBAllocationMeter(WARMUP, ITERATIONS);
+        meter.measure("Cipher AES 16 B", new EBAllocationMeter.Task() {
+            @Override
+            public void run() throws Exception {
+                cipher.init(Cipher.ENCRYPT_MODE, key);
+                assertEquals(cipher.doFinal(input).length, AES_SMALL);
+            }
+        });
+
+        LOG.info("Cipher AES allocations:\n{}", meter.getBreakdown());
+        meter.assertBudget("Cipher AES 16 B", BUDGET_CIPHER_AES, 0);
+    }
+
+    @Test(groups = {"allocation"})
+    public void testCipherRSA() throws Exception {
+        final EnigmaProvider provider = new EnigmaProvider(engine);
+        final EBRSAPrivateKey key = new EBRSAPrivateKey.Builder()
+                .setUo(uoRSA)
+                .setEngine(engine)
+                .setModulus(rsaKey.getModulus())
+                .setPublicExponent(rsaKey.getPublicExponent())
+                .build();
+
+        final Cipher cipher = Cipher.getInstance("RSA/ECB/NoPadding", provider);
+        final byte[] input = rsaInput();
+        final EBAllocationMeter meter = new EBAllocationMeter(WARMUP / 3, ITERATIONS / 5);
+        meter.measure("Cipher RSA 2048", new EBAllocationMeter.Task() {
+            @Override
+            public void run() throws Exception {
+                cipher.init(Cipher.DECRYPT_MODE, key);
+                assertTrue(cipher.doFinal(input).length > 0);
+            }
+        });
+
+        LOG.info("Cipher RSA allocations:\n{}", meter.getBreakdown());
+        meter.assertBudget("Cipher RSA 2048", BUDGET_CIPHER_RSA, 0);
+    }
+
+    /**
+     * Measures request building, connector call, response parsing and the whole call separately.
+     */
+    private void measureProcessData(EBAllocationMeter meter, final UserObjectKeyBase uo, String name, final byte[] input)
+            throws Exception
+    {
+        final String function = uo.getUserObjectType().getUoTypeFunctionString();
+        meter.measure("build " + name, new EBAllocationMeter.Task() {
+            @Override
+            public void run() throws Exception {
+                new EBProcessDataRequestBuilder()
+                        .setRequestType(function)
+                        .setUoInfo(uo)
+                        .build(input);
+            }
+        });
+
+        // Connector and parser get the request and response of a single built call.
+        final EBProcessDataCall call = newCall(uo);
+        final EBProcessDataResponse response = call.doRequest(input);
+        assertTrue(response.isCodeOk(), "Loopback ProcessData failed");
+
+        final EBRawRequest rawRequest = call.getRawRequest();
+        meter.measure("connector " + name, new EBAllocationMeter.Task() {
+            @Override
+            public void run() throws Exception {
+                final EBRawResponse raw = new EBConnector()
+                        .setEndpoint(endpoint.getEndpointInfo())
+                        .setSettings(engine.getDefaultSettings().getConnectionSettings())
+                        .setRawRequest(rawRequest)
+                        .request();
+                assertTrue(raw.isSuccessful());
+            }
+        });
+
+        final String body = call.getRawResponse().getBody();
+        meter.measure("parse " + name, new EBAllocationMeter.Task() {
+            @Override
+            public void run() throws Exception {
+                final EBProcessDataResponseParser parser = new EBProcessDataResponseParser();
+                parser.setUo(uo);
+                parser.parseResponse(new JSONObject(body), null, null);
+            }
+        });
+
+        meter.measure("ProcessData " + name, new EBAllocationMeter.Task() {
+            @Override
+            public void run() throws Exception {
+                final EBProcessDataResponse resp = newCall(uo).doRequest(input);
+                if (!resp.isCodeOk()){
+                    throw new IllegalStateException("ProcessData failed: " + resp);
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks budgets of all ProcessData stages measured with the given payload.
+     */
+    private static void assertProcessDataBudgets(EBAllocationMeter meter, String name, int payloadLength){
+        meter.assertBudget("build " + name, BUDGET_BUILD + BUDGET_BUILD_PER_BYTE * payloadLength, BUDGET_CPU_LOCAL);
+        meter.assertBudget("parse " + name, BUDGET_PARSE + BUDGET_PARSE_PER_BYTE * payloadLength, BUDGET_CPU_LOCAL);
+        meter.assertBudget("connector " + name, BUDGET_CONNECTOR + BUDGET_CONNECTOR_PER_BYTE * payloadLength, 0);
+        meter.assertBudget("ProcessData " + name, BUDGET_CALL + BUDGET_CALL_PER_BYTE * payloadLength, 0);
+    }
+
+    private EBProcessDataCall newCall(UserObjectKeyBase uo){
+        return new EBProcessDataCall.Builder()
+                .setEngine(engine)
+                .setUo(uo)
+                .build();
+    }
+
+    private static byte[] payload(int size){
+        final byte[] payload = new byte[size];
+        new Random(size).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * RSA input smaller than the modulus.
+     */
+    private static byte[] rsaInput(){
+        final byte[] input = payload(RSA_INPUT);
+        Arrays.fill(input, 0, 2, (byte) 0);
+        return input;
+    }
+}
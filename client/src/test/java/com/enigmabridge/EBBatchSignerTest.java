@@ -0,0 +1,182 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.rsa.EBRSAPrivateKey;
+import com.enigmabridge.provider.rsa.signature.EBBatchSigner;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.PSSParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Batch signer signatures verified by the JDK provider (SunRsaSign), PKCS#1 v1.5 and PSS.
+ * Loopback endpoint does the raw RSA private operation.
+ */
+public class EBBatchSignerTest {
+    private static final int MESSAGES = 8;
+
+    private final Random random = new Random(1);
+    private EBLoopbackEndpoint endpoint;
+    private EBRSAPrivateKey ebKey;
+    private KeyPair keyPair;
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+        kpGen.initialize(2048);
+        keyPair = kpGen.generateKeyPair();
+        final RSAPrivateCrtKey rsaKey = (RSAPrivateCrtKey) keyPair.getPrivate();
+
+        final UserObjectKeyBase uo = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_RSA2k)
+                .setUserObjectType(UserObjectType.TYPE_RSA2048DECRYPT_NOPAD)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("1234567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("2224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("RSA")
+                .setKeyLength(2048)
+                .setKeyType(UserObjectKeyType.PRIVATE)
+                .build();
+
+        endpoint = new EBLoopbackEndpoint()
+                .addUo(uo, rsaKey.getModulus(), rsaKey.getPrivateExponent())
+                .start();
+
+        final EBEngine engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpoint.getEndpointInfo())
+                .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                .build());
+
+        ebKey = new EBRSAPrivateKey.Builder()
+                .setUo(uo)
+                .setEngine(engine)
+                .setModulus(rsaKey.getModulus())
+                .setPublicExponent(rsaKey.getPublicExponent())
+                .build();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (endpoint != null){
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testPkcs1() throws Exception {
+        final EBBatchSigner signer = new EBBatchSigner.Builder()
+                .setPrivateKey(ebKey)
+                .setDigestAlgorithm("SHA-256")
+                .setConcurrency(4)
+                .build();
+
+        try {
+            final List<byte[]> messages = randomMessages();
+            final List<byte[]> signatures = signer.sign(digests(messages, "SHA-256"));
+
+            final Signature verifier = Signature.getInstance("SHA256withRSA", "SunRsaSign");
+            for(int i = 0; i < messages.size(); i++){
+                verifier.initVerify(keyPair.getPublic());
+                verifier.update(messages.get(i));
+                assertTrue(verifier.verify(signatures.get(i)), "PKCS#1 signature rejected, message " + i);
+                assertTrue(signer.verify(digests(messages, "SHA-256").get(i), signatures.get(i)));
+            }
+
+            // Signature of another message.
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update(messages.get(1));
+            assertFalse(verifier.verify(signatures.get(0)));
+            assertEquals(signer.getSigned(), MESSAGES);
+
+        } finally {
+            signer.shutdown();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testPss() throws Exception {
+        checkPss(new PSSParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, 32, 1), "SHA-256");
+        checkPss(new PSSParameterSpec("SHA-1", "MGF1", MGF1ParameterSpec.SHA1, 20, 1), "SHA-1");
+        checkPss(new PSSParameterSpec("SHA-512", "MGF1", MGF1ParameterSpec.SHA256, 0, 1), "SHA-512");
+    }
+
+    private void checkPss(PSSParameterSpec spec, String digestAlgorithm) throws Exception {
+        final Signature verifier;
+        try {
+            verifier = Signature.getInstance("RSASSA-PSS", "SunRsaSign");
+        } catch(NoSuchAlgorithmException e){
+            throw new SkipException("RSASSA-PSS not supported by the JDK");
+        }
+
+        final EBBatchSigner signer = new EBBatchSigner.Builder()
+                .setPrivateKey(ebKey)
+                .setPssSpec(spec)
+                .setConcurrency(4)
+                .build();
+
+        try {
+            final List<byte[]> messages = randomMessages();
+            final List<byte[]> digests = digests(messages, digestAlgorithm);
+            final List<byte[]> signatures = signer.sign(digests);
+
+            for(int i = 0; i < messages.size(); i++){
+                verifier.setParameter(spec);
+                verifier.initVerify(keyPair.getPublic());
+                verifier.update(messages.get(i));
+                assertTrue(verifier.verify(signatures.get(i)), "PSS signature rejected, " + digestAlgorithm + ", message " + i);
+                assertTrue(signer.verify(digests.get(i), signatures.get(i)));
+            }
+
+            // Tampered signature.
+            final byte[] tampered = signatures.get(0).clone();
+            tampered[10] ^= 1;
+            verifier.setParameter(spec);
+            verifier.initVerify(keyPair.getPublic());
+            verifier.update(messages.get(0));
+            assertFalse(verifier.verify(tampered));
+            assertFalse(signer.verify(digests.get(0), tampered));
+
+        } finally {
+            signer.shutdown();
+        }
+    }
+
+    private List<byte[]> randomMessages(){
+        final List<byte[]> res = new ArrayList<byte[]>(MESSAGES);
+        for(int i = 0; i < MESSAGES; i++){
+            final byte[] message = new byte[1 + random.nextInt(200)];
+            random.nextBytes(message);
+            res.add(message);
+        }
+        return res;
+    }
+
+    private static List<byte[]> digests(List<byte[]> messages, String algorithm) throws Exception {
+        final List<byte[]> res = new ArrayList<byte[]>(messages.size());
+        for(byte[] message : messages){
+            res.add(MessageDigest.getInstance(algorithm).digest(message));
+        }
+        return res;
+    }
+}
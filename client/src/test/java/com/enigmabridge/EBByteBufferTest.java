@@ -0,0 +1,360 @@
+package com.enigmabridge;
+
+import com.enigmabridge.client.EBCommonCryptoBase;
+import com.enigmabridge.client.wrappers.EBWrappedMac;
+import com.enigmabridge.client.wrappers.EBWrappedSignature;
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.comm.EBProcessDataCall;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * ByteBuffer update() / doFinal() of the crypto wrappers and the ByteBuffer ProcessData path,
+ * heap and direct buffers, buffer positions and too short output buffers.
+ */
+public class EBByteBufferTest {
+    private final Random random = new Random(1);
+    private EBLoopbackEndpoint endpoint;
+    private EBEngine engine;
+    private UserObjectKeyBase uo;
+    private byte[] aesKey;
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        aesKey = randomData(16);
+        uo = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .build();
+
+        endpoint = new EBLoopbackEndpoint()
+                .addUo(uo, aesKey)
+                .start();
+
+        engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpoint.getEndpointInfo())
+                .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                .build());
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (endpoint != null){
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testProcessDataHeap() throws Exception {
+        checkProcessData(false, false);
+        checkProcessData(false, true);
+    }
+
+    @Test(groups = {"basic"})
+    public void testProcessDataDirect() throws Exception {
+        checkProcessData(true, true);
+        checkProcessData(true, false);
+    }
+
+    @Test(groups = {"basic"})
+    public void testProcessDataShortOutput() throws Exception {
+        final byte[] data = randomData(64);
+        final ByteBuffer input = ByteBuffer.wrap(data);
+        final ByteBuffer output = ByteBuffer.allocate(63);
+        try {
+            newCall().processData(input, output);
+            throw new AssertionError("Short output buffer accepted");
+
+        } catch(IllegalArgumentException e){
+            // Nothing consumed, nothing written.
+            assertEquals(input.position(), 0);
+            assertEquals(output.position(), 0);
+        }
+
+        // The same input buffer succeeds with a large enough output.
+        final ByteBuffer largeOutput = ByteBuffer.allocateDirect(64);
+        assertEquals(newCall().processData(input, largeOutput), 64);
+        assertEquals(input.remaining(), 0);
+        assertTrue(Arrays.equals(contents(largeOutput, 0, 64), aesCbc(data)));
+    }
+
+    @Test(groups = {"basic"})
+    public void testCryptoBaseHeap() throws Exception {
+        checkCryptoBase(false, false);
+        checkCryptoBase(false, true);
+    }
+
+    @Test(groups = {"basic"})
+    public void testCryptoBaseDirect() throws Exception {
+        checkCryptoBase(true, true);
+        checkCryptoBase(true, false);
+    }
+
+    @Test(groups = {"basic"})
+    public void testCryptoBaseShortOutput() throws Exception {
+        final byte[] data = randomData(100);
+        final ByteBuffer output = ByteBuffer.allocateDirect(50);
+        try {
+            new CipherCrypto(newCipher()).doFinal(directOf(data), output);
+            throw new AssertionError("Short output buffer accepted");
+
+        } catch(ShortBufferException e){
+            assertEquals(output.position(), 0);
+        }
+
+        try {
+            new CipherCrypto(newCipher()).doFinal(ByteBuffer.wrap(data), ByteBuffer.allocate(50));
+            throw new AssertionError("Short output buffer accepted");
+
+        } catch(ShortBufferException e){
+            // Expected.
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testSignatureShortOutput() throws Exception {
+        final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+        kpGen.initialize(1024);
+        final KeyPair keyPair = kpGen.generateKeyPair();
+        final byte[] data = randomData(300);
+
+        // Known signature length, checked before signing.
+        final Signature signature = Signature.getInstance("SHA256withRSA", "SunRsaSign");
+        signature.initSign(keyPair.getPrivate());
+        final EBWrappedSignature known = new EBWrappedSignature(signature, 128);
+        final ByteBuffer input = directOf(data);
+        try {
+            known.doFinal(input, ByteBuffer.allocate(127));
+            throw new AssertionError("Short output buffer accepted");
+
+        } catch(ShortBufferException e){
+            assertEquals(input.position(), 0);
+        }
+
+        final ByteBuffer sig = ByteBuffer.allocateDirect(200);
+        sig.position(10);
+        assertEquals(known.doFinal(input, sig), 128);
+        assertEquals(sig.position(), 138);
+        assertTrue(verify(keyPair, data, contents(sig, 10, 128)));
+
+        // Unknown signature length, the signature computed is kept for the next call.
+        final EBWrappedSignature unknown = new EBWrappedSignature(signature);
+        unknown.update(ByteBuffer.wrap(data, 0, 100), null);
+        try {
+            unknown.doFinal(ByteBuffer.wrap(data, 100, 200), ByteBuffer.allocate(16));
+            throw new AssertionError("Short output buffer accepted");
+
+        } catch(ShortBufferException e){
+            // Expected.
+        }
+
+        final ByteBuffer retry = ByteBuffer.allocate(128);
+        assertEquals(unknown.doFinal(null, retry), 128);
+        assertTrue(verify(keyPair, data, retry.array()));
+    }
+
+    @Test(groups = {"basic"})
+    public void testMacShortOutput() throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(aesKey, "HmacSHA256"));
+        final byte[] data = randomData(100);
+
+        final EBWrappedMac wrapped = new EBWrappedMac(mac);
+        final ByteBuffer input = directOf(data);
+        try {
+            wrapped.doFinal(input, ByteBuffer.allocate(31));
+            throw new AssertionError("Short output buffer accepted");
+
+        } catch(ShortBufferException e){
+            assertEquals(input.position(), 0);
+        }
+
+        final ByteBuffer output = ByteBuffer.allocateDirect(32);
+        assertEquals(wrapped.doFinal(input, output), 32);
+
+        final Mac ref = Mac.getInstance("HmacSHA256");
+        ref.init(new SecretKeySpec(aesKey, "HmacSHA256"));
+        assertTrue(Arrays.equals(contents(output, 0, 32), ref.doFinal(data)));
+    }
+
+    /**
+     * ProcessData on a slice of the input buffer written at an offset of the output buffer.
+     */
+    private void checkProcessData(boolean directIn, boolean directOut) throws Exception {
+        for(int blocks = 1; blocks <= 64; blocks *= 4){
+            final byte[] data = randomData(blocks * 16);
+            final ByteBuffer input = allocate(data.length + 10, directIn);
+            input.position(3);
+            input.put(data);
+            input.limit(3 + data.length);
+            input.position(3);
+
+            final ByteBuffer output = allocate(data.length + 20, directOut);
+            output.position(5);
+
+            final int written = newCall().processData(input, output);
+            assertEquals(written, data.length);
+            assertEquals(input.position(), 3 + data.length);
+            assertEquals(output.position(), 5 + data.length);
+            assertTrue(Arrays.equals(contents(output, 5, data.length), aesCbc(data)),
+                    "ProcessData mismatch, direct in: " + directIn + ", direct out: " + directOut + ", length: " + data.length);
+        }
+    }
+
+    /**
+     * Generic ByteBuffer path of EBCommonCryptoBase, chunked update() calls, doFinal().
+     */
+    private void checkCryptoBase(boolean directIn, boolean directOut) throws Exception {
+        for(int len : new int[]{0, 1, 15, 16, 17, 1000, 4099}){
+            final byte[] data = randomData(len);
+            final IvParameterSpec iv = new IvParameterSpec(randomData(16));
+            final Cipher ref = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            ref.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), iv);
+            final byte[] expected = ref.doFinal(data);
+
+            final Cipher cipher = newCipher();
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), iv);
+            final CipherCrypto crypto = new CipherCrypto(cipher);
+
+            final ByteBuffer input = allocate(len, directIn);
+            input.put(data);
+            input.flip();
+            final ByteBuffer output = allocate(expected.length + 7, directOut);
+            output.position(7);
+
+            int written = 0;
+            while(input.remaining() > 0){
+                final int chunk = Math.min(input.remaining(), 1 + random.nextInt(300));
+                final ByteBuffer slice = input.duplicate();
+                slice.limit(slice.position() + chunk);
+                written += crypto.update(slice, output);
+                assertEquals(slice.remaining(), 0);
+                input.position(input.position() + chunk);
+            }
+
+            written += crypto.doFinal(null, output);
+            assertEquals(written, expected.length);
+            assertEquals(output.position(), 7 + expected.length);
+            assertTrue(Arrays.equals(contents(output, 7, expected.length), expected),
+                    "Cipher mismatch, direct in: " + directIn + ", direct out: " + directOut + ", length: " + len);
+        }
+    }
+
+    private EBProcessDataCall newCall(){
+        return new EBProcessDataCall.Builder()
+                .setEngine(engine)
+                .setUo(uo)
+                .build();
+    }
+
+    private byte[] aesCbc(byte[] data) throws Exception {
+        final Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(new byte[16]));
+        return aes.doFinal(data);
+    }
+
+    private Cipher newCipher() throws Exception {
+        final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(new byte[16]));
+        return cipher;
+    }
+
+    private static boolean verify(KeyPair keyPair, byte[] data, byte[] sig) throws Exception {
+        final Signature verifier = Signature.getInstance("SHA256withRSA", "SunRsaSign");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        return verifier.verify(sig);
+    }
+
+    private static ByteBuffer allocate(int len, boolean direct){
+        return direct ? ByteBuffer.allocateDirect(len) : ByteBuffer.allocate(len);
+    }
+
+    private static ByteBuffer directOf(byte[] data){
+        final ByteBuffer buff = ByteBuffer.allocateDirect(data.length);
+        buff.put(data);
+        buff.flip();
+        return buff;
+    }
+
+    private static byte[] contents(ByteBuffer buffer, int offset, int length){
+        final ByteBuffer dup = buffer.duplicate();
+        dup.clear();
+        dup.position(offset);
+        final byte[] res = new byte[length];
+        dup.get(res);
+        return res;
+    }
+
+    private byte[] randomData(int len){
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Cipher exposed only through the byte array API, ByteBuffer calls use the generic EBCommonCryptoBase path.
+     */
+    private static class CipherCrypto extends EBCommonCryptoBase {
+        private final Cipher cipher;
+
+        CipherCrypto(Cipher cipher) {
+            this.cipher = cipher;
+        }
+
+        @Override
+        public byte[] update(byte[] buffer, int offset, int length) throws SignatureException {
+            return cipher.update(buffer, offset, length);
+        }
+
+        @Override
+        public int update(byte[] buffer, int offset, int length, byte[] bufferOut, int offsetOut) throws SignatureException, ShortBufferException {
+            return cipher.update(buffer, offset, length, bufferOut, offsetOut);
+        }
+
+        @Override
+        public byte[] doFinal(byte[] buffer, int offset, int length) throws BadPaddingException, IllegalBlockSizeException, SignatureException {
+            return buffer == null ? cipher.doFinal() : cipher.doFinal(buffer, offset, length);
+        }
+
+        @Override
+        public int doFinal(byte[] buffer, int offset, int length, byte[] bufferOut, int offsetOut) throws BadPaddingException, IllegalBlockSizeException, SignatureException, ShortBufferException {
+            return buffer == null ? cipher.doFinal(bufferOut, offsetOut) : cipher.doFinal(buffer, offset, length, bufferOut, offsetOut);
+        }
+
+        @Override
+        public boolean verify(byte[] buffer, int offset, int length) throws SignatureException {
+            throw new UnsupportedOperationException("Not a signature object");
+        }
+    }
+}
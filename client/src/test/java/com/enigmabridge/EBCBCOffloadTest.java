@@ -0,0 +1,177 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.macs.CMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * CBC and CMAC offloaded to the EB AES user object, against the JCE / BouncyCastle
+ * implementation with the same key. Loopback endpoint runs the AES user objects.
+ */
+public class EBCBCOffloadTest {
+    private static final int[] LENGTHS = {0, 1, 15, 16, 17, 31, 32, 33, 100, 4095, 4096, 4097,
+            65535, 65536, 65537, 65536 * 2 + 5, 300000};
+
+    private final Random random = new Random(1);
+    private EBLoopbackEndpoint endpoint;
+    private EnigmaProvider provider;
+    private EBSymmetricKey ebKey;
+    private byte[] aesKey;
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        aesKey = new byte[16];
+        random.nextBytes(aesKey);
+
+        final UserObjectKeyBase uoEnc = buildUo(EBTestingUtils.UOID_AES, UserObjectType.TYPE_PLAINAES);
+        final UserObjectKeyBase uoDec = buildUo(EBTestingUtils.UOID_AES + 1, UserObjectType.TYPE_PLAINAESDECRYPT);
+        endpoint = new EBLoopbackEndpoint()
+                .addUo(uoEnc, aesKey)
+                .addUo(uoDec, aesKey)
+                .start();
+
+        final EBEngine engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpoint.getEndpointInfo())
+                .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                .build());
+
+        provider = new EnigmaProvider(engine);
+        ebKey = new EBSymmetricKey.Builder()
+                .setUo(uoEnc)
+                .setInversionKey(new EBSymmetricKey.Builder().setUo(uoDec))
+                .setEngine(engine)
+                .build();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (endpoint != null){
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testCBC() throws Exception {
+        final Cipher eb = Cipher.getInstance("AES/CBC/PKCS5Padding", provider);
+        final Cipher ref = Cipher.getInstance("AES/CBC/PKCS5Padding");
+
+        for(int len : LENGTHS){
+            final byte[] data = randomData(len);
+            final byte[] iv = randomData(16);
+            ref.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(iv));
+            final byte[] expected = ref.doFinal(data);
+
+            eb.init(Cipher.ENCRYPT_MODE, ebKey, new IvParameterSpec(iv));
+            final byte[] ciphertext = process(eb, data);
+            assertTrue(Arrays.equals(ciphertext, expected), "CBC encryption mismatch, length: " + len);
+
+            eb.init(Cipher.DECRYPT_MODE, ebKey, new IvParameterSpec(iv));
+            assertTrue(Arrays.equals(process(eb, ciphertext), data), "CBC decryption mismatch, length: " + len);
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testCBCNoPadding() throws Exception {
+        final Cipher eb = Cipher.getInstance("AES/CBC/NoPadding", provider);
+        final Cipher ref = Cipher.getInstance("AES/CBC/NoPadding");
+
+        for(int len : LENGTHS){
+            final byte[] data = randomData(len - len % 16);
+            final byte[] iv = randomData(16);
+            ref.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(iv));
+            final byte[] expected = ref.doFinal(data);
+
+            eb.init(Cipher.ENCRYPT_MODE, ebKey, new IvParameterSpec(iv));
+            final byte[] ciphertext = process(eb, data);
+            assertTrue(Arrays.equals(ciphertext, expected), "CBC encryption mismatch, length: " + data.length);
+
+            eb.init(Cipher.DECRYPT_MODE, ebKey, new IvParameterSpec(iv));
+            assertTrue(Arrays.equals(process(eb, ciphertext), data), "CBC decryption mismatch, length: " + data.length);
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testCMAC() throws Exception {
+        final Mac eb = Mac.getInstance("AESCMAC", provider);
+        final CMac ref = new CMac(new AESEngine());
+        ref.init(new KeyParameter(aesKey));
+
+        for(int len : LENGTHS){
+            final byte[] data = randomData(len);
+            final byte[] expected = new byte[ref.getMacSize()];
+            ref.update(data, 0, data.length);
+            ref.doFinal(expected, 0);
+
+            eb.init(ebKey);
+            int off = 0;
+            while(off < data.length){
+                final int chunk = Math.min(data.length - off, 1 + random.nextInt(70000));
+                eb.update(data, off, chunk);
+                off += chunk;
+            }
+            assertTrue(Arrays.equals(eb.doFinal(), expected), "CMAC mismatch, length: " + len);
+
+            // Mac is reusable after doFinal.
+            assertTrue(Arrays.equals(eb.doFinal(data), expected), "CMAC mismatch after reset, length: " + len);
+        }
+    }
+
+    /**
+     * Random chunking of update() calls, then doFinal().
+     */
+    private byte[] process(Cipher cipher, byte[] data) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int off = 0;
+        while(off < data.length){
+            final int chunk = Math.min(data.length - off, random.nextInt(3) == 0 ? 1 + random.nextInt(17) : 1 + random.nextInt(70000));
+            final byte[] out = cipher.update(data, off, chunk);
+            if (out != null){
+                bos.write(out);
+            }
+            off += chunk;
+        }
+
+        bos.write(cipher.doFinal());
+        return bos.toByteArray();
+    }
+
+    private byte[] randomData(int len){
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static UserObjectKeyBase buildUo(long uoid, int type){
+        return new UserObjectKeyBase.Builder()
+                .setUoid(uoid)
+                .setUserObjectType(type)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.enigmabridge;
+
+import com.enigmabridge.client.EBClient;
+import com.enigmabridge.client.EBClientExecutorMode;
+import com.enigmabridge.client.EBClientExecutors;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Executors of the client execution modes.
+ */
+public class EBClientExecutorsTest {
+
+    @Test(groups = {"basic"})
+    public void testFixedDefault() throws Exception {
+        assertEquals(EBClientExecutors.getDefaultConcurrency(EBClientExecutorMode.FIXED, 3), 3);
+
+        final EBClient client = new EBClient.Builder()
+                .setWorkerCount(3)
+                .build();
+        try {
+            assertEquals(client.getExecutorMode(), EBClientExecutorMode.FIXED);
+            assertEquals(client.getWorkerCount(), 3);
+            assertEquals(client.getConcurrency(), 3);
+            assertTrue(client.getExecutorService() instanceof ThreadPoolExecutor);
+
+            final ThreadPoolExecutor executor = (ThreadPoolExecutor) client.getExecutorService();
+            assertEquals(executor.getCorePoolSize(), 3);
+            assertEquals(executor.getMaximumPoolSize(), 3);
+            assertEquals(client.getScheduler().getLimit(), 3);
+
+        } finally {
+            client.getExecutorService().shutdownNow();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testCallerRunsLimit() throws Exception {
+        final int concurrency = 2;
+        final ExecutorService executor = EBClientExecutors.create(EBClientExecutorMode.CALLER_RUNS, concurrency);
+        assertTrue(executor instanceof EBClientExecutors.CallerRunsExecutorService);
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch limitReached = new CountDownLatch(1);
+        final List<Thread> callers = new ArrayList<Thread>();
+        final List<Thread> runners = new ArrayList<Thread>();
+
+        for(int i = 0; i < 6; i++){
+            final Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (runners){
+                                runners.add(Thread.currentThread());
+                            }
+
+                            final int cur = running.incrementAndGet();
+                            synchronized (maxRunning){
+                                maxRunning.set(Math.max(maxRunning.get(), cur));
+                            }
+
+                            // First tasks wait until the limit is occupied.
+                            if (cur >= concurrency){
+                                limitReached.countDown();
+                            }
+                            try {
+                                limitReached.await(10, TimeUnit.SECONDS);
+                                Thread.sleep(10);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            } finally {
+                                running.decrementAndGet();
+                            }
+                        }
+                    });
+                }
+            });
+
+            callers.add(caller);
+            caller.start();
+        }
+
+        for (Thread caller : callers) {
+            caller.join(10000);
+            assertTrue(!caller.isAlive());
+        }
+
+        assertEquals(maxRunning.get(), concurrency);
+        assertEquals(runners.size(), callers.size());
+        assertTrue(runners.containsAll(callers), "Tasks have to run in the submitting threads");
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("Shut down executor accepted a task");
+        } catch(RejectedExecutionException e){
+            // Expected.
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testVirtualFallback() throws Exception {
+        final ExecutorService executor = EBClientExecutors.create(EBClientExecutorMode.VIRTUAL, 8);
+        try {
+            if (EBClientExecutors.isVirtualThreadSupported()){
+                assertEquals(EBClientExecutors.getDefaultConcurrency(EBClientExecutorMode.VIRTUAL, 1),
+                        EBClientExecutors.DEFAULT_VIRTUAL_CONCURRENCY);
+                assertTrue(executor instanceof EBClientExecutors.BoundedExecutorService);
+                assertEquals(((EBClientExecutors.BoundedExecutorService) executor).getConcurrency(), 8);
+                return;
+            }
+
+            // JDK without virtual threads gets the elastic pool.
+            assertEquals(EBClientExecutors.getDefaultConcurrency(EBClientExecutorMode.VIRTUAL, 1),
+                    EBClientExecutors.DEFAULT_ELASTIC_CONCURRENCY);
+            assertTrue(executor instanceof ThreadPoolExecutor);
+
+            final ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            assertEquals(pool.getMaximumPoolSize(), 8);
+            assertTrue(pool.allowsCoreThreadTimeOut());
+            assertEquals(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, "done").get(10, TimeUnit.SECONDS), "done");
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
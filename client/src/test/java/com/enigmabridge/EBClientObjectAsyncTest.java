@@ -0,0 +1,163 @@
+package com.enigmabridge;
+
+import com.enigmabridge.client.EBClient;
+import com.enigmabridge.client.async.EBAsyncCryptoEventDoFinal;
+import com.enigmabridge.client.async.EBAsyncCryptoListenerAccumulative;
+import com.enigmabridge.client.async.EBAsyncResultSinks;
+import com.enigmabridge.client.async.EBClientObjectAsync;
+import com.enigmabridge.client.async.EBClientObjectAsyncSimple;
+import com.enigmabridge.client.wrappers.EBWrappedCipher;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Async client object processes the whole job queue in order, one task at a time.
+ * Local JCE cipher is wrapped, no EB calls.
+ */
+public class EBClientObjectAsyncTest {
+    private static final int CHUNKS = 20;
+    private static final int CHUNK_SIZE = 1000;
+
+    private final Random random = new Random(1);
+    private ExecutorService executor;
+    private EBClient client;
+    private SecretKeySpec key;
+    private IvParameterSpec iv;
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        final byte[] keyData = new byte[16];
+        final byte[] ivData = new byte[16];
+        random.nextBytes(keyData);
+        random.nextBytes(ivData);
+        key = new SecretKeySpec(keyData, "AES");
+        iv = new IvParameterSpec(ivData);
+
+        executor = Executors.newFixedThreadPool(4);
+        client = new EBClient.Builder()
+                .setExecutorService(executor)
+                .setConcurrency(4)
+                .build();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (executor != null){
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testQueueWithListener() throws Exception {
+        final byte[] data = randomData(CHUNKS * CHUNK_SIZE + 7);
+        final EBClientObjectAsync async = newAsync();
+        final FinalListener listener = new FinalListener();
+        async.addListener(listener);
+
+        submitAll(async, data);
+
+        // Stalled queue never reaches doFinal().
+        assertTrue(listener.finished.tryAcquire(10, TimeUnit.SECONDS), "Job queue stalled");
+        assertTrue(async.isDone());
+        assertTrue(Arrays.equals(listener.getAccumulated(), expected(data)));
+    }
+
+    @Test(groups = {"basic"})
+    public void testQueueWithSink() throws Exception {
+        final byte[] data = randomData(CHUNKS * CHUNK_SIZE + 7);
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final EBClientObjectAsync async = newAsync();
+        async.setSink(EBAsyncResultSinks.forStream(bos));
+        async.setMaxPendingTasks(4);
+
+        // Submitting blocks on the full queue, stalled queue would block the caller forever.
+        final Thread submitter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                submitAll(async, data);
+            }
+        });
+        submitter.setDaemon(true);
+        submitter.start();
+        submitter.join(10000);
+        assertTrue(!submitter.isAlive(), "Submitter blocked on the full queue");
+
+        async.get(10, TimeUnit.SECONDS);
+        assertTrue(Arrays.equals(bos.toByteArray(), expected(data)));
+    }
+
+    @Test(groups = {"basic"})
+    public void testConsecutiveStreams() throws Exception {
+        final EBClientObjectAsync async = newAsync();
+        final FinalListener listener = new FinalListener();
+        async.addListener(listener);
+
+        // doFinal() resets the cipher, the next stream starts with the same IV.
+        for(int i = 0; i < 3; i++){
+            final byte[] data = randomData(CHUNK_SIZE * (i + 2));
+            submitAll(async, data);
+            assertTrue(listener.finished.tryAcquire(10, TimeUnit.SECONDS), "Job queue stalled, stream " + i);
+            assertTrue(Arrays.equals(listener.getAccumulated(), expected(data)), "Stream " + i);
+        }
+    }
+
+    private static void submitAll(EBClientObjectAsync async, byte[] data){
+        int off = 0;
+        while(data.length - off > CHUNK_SIZE){
+            async.update(data, off, CHUNK_SIZE);
+            off += CHUNK_SIZE;
+        }
+
+        async.doFinal(data, off, data.length - off);
+    }
+
+    private EBClientObjectAsync newAsync() throws Exception {
+        return new EBClientObjectAsync.Builder()
+                .setClient(client)
+                .setCryptoWrapper(new EBWrappedCipher(newCipher()))
+                .build();
+    }
+
+    private Cipher newCipher() throws Exception {
+        final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, iv);
+        return cipher;
+    }
+
+    private byte[] expected(byte[] data) throws Exception {
+        return newCipher().doFinal(data);
+    }
+
+    private byte[] randomData(int len){
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Accumulates the results, signals each doFinal().
+     */
+    private static class FinalListener extends EBAsyncCryptoListenerAccumulative {
+        final Semaphore finished = new Semaphore(0);
+
+        @Override
+        public void onDoFinalSuccess(EBClientObjectAsyncSimple clientObject, EBAsyncCryptoEventDoFinal evt) {
+            super.onDoFinalSuccess(clientObject, evt);
+            finished.release();
+        }
+    }
+}
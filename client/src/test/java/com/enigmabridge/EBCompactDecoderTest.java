@@ -0,0 +1,130 @@
+package com.enigmabridge;
+
+import com.enigmabridge.misc.EBTestingUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compact record decoder, round trip and rejection of corrupted records.
+ */
+public class EBCompactDecoderTest {
+
+    @Test(groups = {"basic"})
+    public void testRoundTrip() throws Exception {
+        final UserObjectKeyBase uo = buildUo();
+        final UserObjectKeyBase decoded = new UserObjectKeyBase.Builder().setCompact(uo.getEncodedCompact()).build();
+
+        assertEquals(decoded.getUoid(), uo.getUoid());
+        assertEquals(decoded.getKeyType(), UserObjectKeyType.SECRET);
+        assertEquals(decoded.length(), 128);
+        assertEquals(decoded.getAlgorithm(), "AES");
+        assertEquals(decoded.getApiKey(), EBTestingUtils.API_KEY);
+        assertEquals(decoded.getEndpointInfo(), uo.getEndpointInfo());
+    }
+
+    @Test(groups = {"basic"})
+    public void testEndpointNotShared() throws Exception {
+        final byte[] encoded = buildUo().getEncodedCompact();
+        final EBCompactDecoder decoder = new EBCompactDecoder(encoded);
+        final EBEndpointInfo first = decoder.getEndpointInfo();
+        final EBEndpointInfo second = decoder.wrap(java.nio.ByteBuffer.wrap(encoded), 0).getEndpointInfo();
+
+        assertTrue(first != second);
+        first.setPort(1);
+        assertEquals(second.getPort(), 11180);
+    }
+
+    @Test(groups = {"basic"}, expectedExceptions = IOException.class)
+    public void testInvalidKeyType() throws Exception {
+        final byte[] encoded = buildUo().getEncodedCompact();
+        final EBCompactDecoder decoder = new EBCompactDecoder(encoded);
+        encoded[decoder.offKey] = (byte) 0xff;
+
+        new EBCompactDecoder(encoded);
+    }
+
+    @Test(groups = {"basic"})
+    public void testKeyTypeCodes() throws Exception {
+        // Persisted codes are fixed, must not follow the enum order.
+        final UserObjectKeyType[] types = {UserObjectKeyType.PUBLIC, UserObjectKeyType.PRIVATE, UserObjectKeyType.SECRET};
+        final int[] codes = {1, 2, 3};
+        for(int i = 0; i < types.length; i++){
+            final UserObjectKeyBase uo = buildUo(types[i]);
+            final byte[] encoded = uo.getEncodedCompact();
+            final EBCompactDecoder decoder = new EBCompactDecoder(encoded);
+            assertEquals(encoded[decoder.offKey] & 0xff, codes[i]);
+            assertEquals(decoder.getKeyType(), types[i]);
+            assertEquals(new UserObjectKeyBase.Builder().setCompact(encoded).build().getKeyType(), types[i]);
+        }
+
+        // Every key type has a code.
+        for(UserObjectKeyType type : UserObjectKeyType.values()){
+            assertEquals(EBCompactEncoding.getKeyType(EBCompactEncoding.getKeyTypeCode(type)), type);
+        }
+        assertEquals(EBCompactEncoding.getKeyTypeCode(null), EBCompactEncoding.KEY_TYPE_NONE);
+        assertEquals(EBCompactEncoding.getKeyType(EBCompactEncoding.KEY_TYPE_NONE), null);
+    }
+
+    @Test(groups = {"basic"}, expectedExceptions = IOException.class)
+    public void testUnknownKeyTypeCode() throws Exception {
+        final byte[] encoded = buildUo().getEncodedCompact();
+        final EBCompactDecoder decoder = new EBCompactDecoder(encoded);
+        encoded[decoder.offKey] = (byte) 4;
+
+        new EBCompactDecoder(encoded);
+    }
+
+    @Test(groups = {"basic"})
+    public void testTruncated() throws Exception {
+        final byte[] encoded = buildUo().getEncodedCompact();
+        for(int len = EBCompactEncoding.HEADER_LENGTH; len < encoded.length; len++){
+            // Record length field kept, buffer cut.
+            try {
+                new EBCompactDecoder(Arrays.copyOf(encoded, len));
+                throw new AssertionError("Truncated record accepted, length: " + len);
+            } catch(IOException e){
+                // Expected.
+            }
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testCorruptedFieldLength() throws Exception {
+        final byte[] encoded = buildUo().getEncodedCompact();
+        final EBCompactDecoder decoder = new EBCompactDecoder(encoded);
+
+        // API key length pointing past the record end.
+        encoded[decoder.offApiKey] = (byte) 0xff;
+        encoded[decoder.offApiKey + 1] = (byte) 0xff;
+        try {
+            new EBCompactDecoder(encoded);
+            throw new AssertionError("Corrupted field length accepted");
+        } catch(IOException e){
+            // Expected.
+        }
+    }
+
+    private static UserObjectKeyBase buildUo() throws Exception {
+        return buildUo(UserObjectKeyType.SECRET);
+    }
+
+    private static UserObjectKeyBase buildUo(UserObjectKeyType keyType) throws Exception {
+        return new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(new EBEndpointInfo("https", "site2.enigmabridge.com", 11180))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(keyType)
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.comm.EBDataEncoding;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * ProcessData wire encoding codec and per endpoint negotiation.
+ */
+public class EBDataEncodingTest {
+    private static final String BASE64URL_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        EBDataEncoding.clear();
+    }
+
+    @Test(groups = {"basic"})
+    public void testBase64UrlVectors() throws Exception {
+        // RFC 4648 test vectors, without padding.
+        final String[] plain = {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+        final String[] encoded = {"", "Zg", "Zm8", "Zm9v", "Zm9vYg", "Zm9vYmE", "Zm9vYmFy"};
+        for(int i = 0; i < plain.length; i++){
+            final byte[] data = plain[i].getBytes("US-ASCII");
+            assertEquals(EBDataEncoding.base64UrlEncode(data, 0, data.length), encoded[i]);
+            assertTrue(Arrays.equals(EBDataEncoding.base64UrlDecode(encoded[i]), data));
+        }
+
+        assertTrue(Arrays.equals(EBDataEncoding.base64UrlDecode("Zm8="), "fo".getBytes("US-ASCII")));
+    }
+
+    @Test(groups = {"basic"})
+    public void testBase64UrlRoundTrip() throws Exception {
+        final Random random = new Random(1);
+        for(int len = 0; len < 300; len++){
+            final byte[] data = new byte[len + 3];
+            random.nextBytes(data);
+
+            final String encoded = EBDataEncoding.encode(data, 3, len, EBDataEncoding.BASE64URL);
+            assertEquals(encoded.length(), (len * 4 + 2) / 3);
+            for(int i = 0; i < encoded.length(); i++){
+                assertTrue(BASE64URL_ALPHABET.indexOf(encoded.charAt(i)) >= 0);
+            }
+
+            assertTrue(Arrays.equals(EBDataEncoding.decode(encoded, EBDataEncoding.BASE64URL),
+                    Arrays.copyOfRange(data, 3, data.length)));
+            assertTrue(Arrays.equals(EBDataEncoding.decode(EBDataEncoding.encode(data, 3, len, null), null),
+                    Arrays.copyOfRange(data, 3, data.length)));
+        }
+    }
+
+    @Test(groups = {"basic"}, expectedExceptions = IllegalArgumentException.class)
+    public void testBase64UrlInvalid() throws Exception {
+        EBDataEncoding.base64UrlDecode("Zm9v+g");
+    }
+
+    @Test(groups = {"basic"})
+    public void testNegotiation() throws Exception {
+        final EBEndpointInfo endpoint = new EBEndpointInfo("https", "site2.enigmabridge.com", 11180);
+        final String preferred = EBDataEncoding.BASE64URL;
+
+        // Hex until the endpoint answers in the accepted encoding.
+        assertEquals(EBDataEncoding.getRequestEncoding(endpoint, preferred), EBDataEncoding.HEX);
+        EBDataEncoding.onResponse(endpoint, preferred, EBDataEncoding.BASE64URL);
+        assertEquals(EBDataEncoding.getRequestEncoding(endpoint, preferred), EBDataEncoding.BASE64URL);
+        assertEquals(EBDataEncoding.getRequestEncoding(endpoint, null), EBDataEncoding.HEX);
+
+        // Endpoint not indicating the encoding stays on hex.
+        EBDataEncoding.onResponse(endpoint, preferred, null);
+        assertEquals(EBDataEncoding.getRequestEncoding(endpoint, preferred), EBDataEncoding.HEX);
+
+        EBDataEncoding.onResponse(endpoint, preferred, EBDataEncoding.BASE64URL);
+        EBDataEncoding.reset(endpoint);
+        assertEquals(EBDataEncoding.getRequestEncoding(endpoint, preferred), EBDataEncoding.HEX);
+    }
+
+    @Test(groups = {"basic"})
+    public void testSettings() throws Exception {
+        final EBConnectionSettings settings = new EBConnectionSettings().setDataEncoding(EBDataEncoding.BASE64URL);
+        final EBConnectionSettings deserialized = new EBConnectionSettings(settings.toJSON(null));
+        assertEquals(deserialized.getDataEncoding(), EBDataEncoding.BASE64URL);
+        assertEquals(deserialized, settings);
+        assertEquals(settings.copy(), settings);
+    }
+}
@@ -0,0 +1,121 @@
+package com.enigmabridge;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Data key cache expiration, use limits, eviction and metrics. Time is driven by the test.
+ */
+public class EBDataKeyCacheTest {
+
+    @Test(groups = {"basic"})
+    public void testMaxAge() throws Exception {
+        final ManualClockCache cache = new ManualClockCache(10, 1000, 0);
+        final EBDataKeyCache.Fingerprint fp = fingerprint(1);
+        cache.put(fp, key(1));
+
+        cache.now = 999;
+        assertTrue(Arrays.equals(cache.get(fp), key(1)));
+
+        cache.now = 1000;
+        assertTrue(cache.get(fp) == null);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getExpirations(), 1);
+    }
+
+    @Test(groups = {"basic"})
+    public void testMaxUses() throws Exception {
+        final ManualClockCache cache = new ManualClockCache(10, 1000, 2);
+        final EBDataKeyCache.Fingerprint fp = fingerprint(1);
+        cache.put(fp, key(1));
+
+        assertTrue(cache.get(fp) != null);
+        assertTrue(cache.get(fp) != null);
+        assertTrue(cache.get(fp) == null);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getExpirations(), 1);
+    }
+
+    @Test(groups = {"basic"})
+    public void testPurgeOnPut() throws Exception {
+        final ManualClockCache cache = new ManualClockCache(10, 1000, 0);
+        for(int i = 0; i < 5; i++){
+            cache.put(fingerprint(i), key(i));
+        }
+
+        // Expired keys are dropped on the next put, without being looked up.
+        cache.now = 1000 + EBDataKeyCache.PURGE_INTERVAL_MILLI;
+        cache.put(fingerprint(10), key(10));
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getExpirations(), 5);
+    }
+
+    @Test(groups = {"basic"})
+    public void testEvictionZeroizes() throws Exception {
+        final ManualClockCache cache = new ManualClockCache(2, 1000, 0);
+        cache.put(fingerprint(0), key(0));
+        cache.put(fingerprint(1), key(1));
+        final byte[] stored0 = cache.entries.get(fingerprint(0)).key;
+        final byte[] stored1 = cache.entries.get(fingerprint(1)).key;
+
+        // Key 0 was used last, key 1 is evicted.
+        assertTrue(cache.get(fingerprint(0)) != null);
+        cache.put(fingerprint(2), key(2));
+
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getEvictions(), 1);
+        assertTrue(Arrays.equals(stored1, new byte[stored1.length]), "Evicted key not zeroized");
+        assertTrue(Arrays.equals(stored0, key(0)));
+
+        cache.clear();
+        assertTrue(Arrays.equals(stored0, new byte[stored0.length]), "Cleared key not zeroized");
+    }
+
+    @Test(groups = {"basic"})
+    public void testCountersAndCopies() throws Exception {
+        final ManualClockCache cache = new ManualClockCache(10, 1000, 0);
+        assertTrue(cache.get(fingerprint(1)) == null);
+        cache.put(fingerprint(1), key(1));
+
+        final byte[] returned = cache.get(fingerprint(1));
+        Arrays.fill(returned, (byte) 0);
+        assertTrue(Arrays.equals(cache.get(fingerprint(1)), key(1)), "Cached key shared with the caller");
+
+        assertEquals(cache.getHits(), 2);
+        assertEquals(cache.getMisses(), 1);
+        assertTrue(Math.abs(cache.getHitRatio() - 2.0 / 3.0) < 1e-9);
+
+        // Fingerprint parts are length-prefixed.
+        assertTrue(!EBDataKeyCache.fingerprint(new byte[]{1, 2}, new byte[]{3})
+                .equals(EBDataKeyCache.fingerprint(new byte[]{1}, new byte[]{2, 3})));
+    }
+
+    private static EBDataKeyCache.Fingerprint fingerprint(int i){
+        return EBDataKeyCache.fingerprint(new byte[]{(byte) i});
+    }
+
+    private static byte[] key(int i){
+        final byte[] key = new byte[32];
+        Arrays.fill(key, (byte) (i + 1));
+        return key;
+    }
+
+    private static class ManualClockCache extends EBDataKeyCache {
+        long now;
+
+        ManualClockCache(int maxEntries, long maxAgeMilli, long maxUses) {
+            setMaxEntries(maxEntries);
+            setMaxAgeMilli(maxAgeMilli);
+            setMaxUses(maxUses);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        }
+    }
+}
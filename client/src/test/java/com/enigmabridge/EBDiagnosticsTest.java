@@ -0,0 +1,183 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBRawRequest;
+import com.enigmabridge.comm.EBRawResponse;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Sampling, rate limiting, ring buffer and redaction of captured diagnostics.
+ */
+@SuppressWarnings("deprecation")
+public class EBDiagnosticsTest {
+
+    @AfterMethod(alwaysRun = true)
+    public void restoreDefaults(){
+        EBDiagnostics.setEnabled(true);
+        for(EBDiagnostics.Kind kind : EBDiagnostics.Kind.values()){
+            EBDiagnostics.setSamplingRate(kind, EBDiagnostics.DEFAULT_SAMPLING_RATE);
+            EBDiagnostics.setMaxPerSecond(kind, EBDiagnostics.DEFAULT_MAX_PER_SECOND);
+        }
+        EBDiagnostics.setCapacity(EBDiagnostics.DEFAULT_CAPACITY);
+    }
+
+    @Test(groups = {"basic"})
+    public void testSamplingRate() throws Exception {
+        final EBDiagnostics.Kind kind = EBDiagnostics.Kind.REQUEST_FAILED;
+        EBDiagnostics.setMaxPerSecond(kind, 1000);
+
+        // Every 4th event passes.
+        EBDiagnostics.setSamplingRate(kind, 0.25);
+        assertEquals(countCaptured(kind, 100), 25);
+
+        EBDiagnostics.setSamplingRate(kind, 1.0);
+        assertEquals(countCaptured(kind, 10), 10);
+
+        EBDiagnostics.setSamplingRate(kind, 0.0);
+        assertEquals(countCaptured(kind, 10), 0);
+
+        // Disabled diagnostics do not even count the events.
+        EBDiagnostics.setSamplingRate(kind, 1.0);
+        EBDiagnostics.setEnabled(false);
+        final long events = EBDiagnostics.getEventCount(kind);
+        assertEquals(countCaptured(kind, 10), 0);
+        assertEquals(EBDiagnostics.getEventCount(kind), events);
+    }
+
+    @Test(groups = {"basic"})
+    public void testRateLimit() throws Exception {
+        final EBDiagnostics.Kind kind = EBDiagnostics.Kind.CREATE_UO_FAILED;
+        EBDiagnostics.setSamplingRate(kind, 1.0);
+        EBDiagnostics.setMaxPerSecond(kind, 3);
+
+        final long events = EBDiagnostics.getEventCount(kind);
+        final long captured = EBDiagnostics.getCapturedCount(kind);
+        assertEquals(countCaptured(kind, 10), 3);
+        assertEquals(EBDiagnostics.getEventCount(kind) - events, 10);
+        assertEquals(EBDiagnostics.getCapturedCount(kind) - captured, 3);
+
+        // Other kinds have own limits.
+        EBDiagnostics.setSamplingRate(EBDiagnostics.Kind.PROCESS_DATA_6F00, 1.0);
+        assertTrue(EBDiagnostics.shouldCapture(EBDiagnostics.Kind.PROCESS_DATA_6F00));
+    }
+
+    @Test(groups = {"basic"})
+    public void testRingWrapAround() throws Exception {
+        EBDiagnostics.setCapacity(3);
+        for(int i = 0; i < 5; i++){
+            EBDiagnostics.capture(EBDiagnostics.Kind.REQUEST_FAILED, "event %d", i);
+        }
+
+        final List<EBDiagnostics.Record> records = EBDiagnostics.getRecords();
+        assertEquals(records.size(), 3);
+        for(int i = 0; i < 3; i++){
+            assertEquals(records.get(i).getMessage(), "event " + (i + 2));
+            assertEquals(records.get(i).getKind(), EBDiagnostics.Kind.REQUEST_FAILED);
+        }
+
+        final String[] lines = EBDiagnostics.dump().split("\n");
+        assertEquals(lines.length, 3);
+        assertTrue(lines[0].endsWith("REQUEST_FAILED: event 2"), lines[0]);
+        assertTrue(lines[2].endsWith("REQUEST_FAILED: event 4"), lines[2]);
+
+        EBDiagnostics.clear();
+        assertEquals(EBDiagnostics.getRecords().size(), 0);
+    }
+
+    @Test(groups = {"basic"})
+    public void testLazyFormatting() throws Exception {
+        EBDiagnostics.setCapacity(4);
+        EBDiagnostics.capture(EBDiagnostics.Kind.PROCESS_DATA_6F00, "size: %d, leading zero: %s", 128, true);
+
+        final EBDiagnostics.Record record = EBDiagnostics.getRecords().get(0);
+        assertTrue(!record.isFormatted());
+
+        final String message = record.getMessage();
+        assertEquals(message, "size: 128, leading zero: true");
+        assertTrue(record.isFormatted());
+        assertTrue(record.getMessage() == message);
+    }
+
+    @Test(groups = {"basic"})
+    public void testRedactedSnapshot() throws Exception {
+        EBDiagnostics.setCapacity(4);
+
+        final byte[] data = new byte[100];
+        for(int i = 0; i < data.length; i++){
+            data[i] = (byte) (i + 1);
+        }
+
+        final EBRawRequest request = new EBRawRequest();
+        request.setMethod("POST");
+        request.setPath("1.0/TEST_API/ProcessData/0102030405060708");
+        request.setBody("{\"data\":\"" + EBUtils.byte2hex(data) + "\"}");
+
+        final EBRawResponse response = new EBRawResponse()
+                .setHttpCode(200)
+                .setSuccessful(true)
+                .setBody("{\"status\":\"6f00\",\"result\":\"" + EBUtils.byte2hex(data) + "\"}");
+
+        final Object secret = new Object(){
+            @Override
+            public String toString() {
+                return "SECRET";
+            }
+        };
+
+        EBDiagnostics.capture(EBDiagnostics.Kind.PROCESS_DATA_6F00, "request [%s] response [%s] data [%s] other [%s]",
+                request, response, data, secret);
+
+        // Caller objects may change after the capture.
+        Arrays.fill(data, (byte) 0);
+        request.setPath("changed");
+
+        final String message = EBDiagnostics.getRecords().get(0).getMessage();
+        assertTrue(message.contains("method=POST, path=1.0/TEST_API/ProcessData/0102030405060708"), message);
+        assertTrue(message.contains("bodyLength=" + request.getBody().length()), message);
+        assertTrue(message.contains("httpCode=200"), message);
+        assertTrue(message.contains("len=" + response.getBody().length()), message);
+        assertTrue(message.contains("len=100, hex=" + EBUtils.byte2hex(expectedPrefix()) + "..."), message);
+        assertTrue(!message.contains(EBUtils.byte2hex(new byte[]{32, 33, 34})), message);
+        assertTrue(!message.contains("SECRET"), message);
+        assertTrue(message.length() < 1024, message);
+    }
+
+    @Test(groups = {"basic"})
+    public void testDevSettingsDelegation() throws Exception {
+        EBDiagnostics.setSamplingRate(EBDiagnostics.Kind.CREATE_UO_FAILED, 0.5);
+        EBDiagnostics.setSamplingRate(EBDiagnostics.Kind.PROCESS_DATA_6F00, 0.0);
+        assertTrue(EBDevSettings.shouldLogFailedCreateUO());
+        assertTrue(!EBDevSettings.shouldLog6f00RequestResponse());
+
+        EBDiagnostics.setSamplingRate(EBDiagnostics.Kind.PROCESS_DATA_6F00, 1.0);
+        assertTrue(EBDevSettings.shouldLog6f00RequestResponse());
+
+        EBDiagnostics.setEnabled(false);
+        assertTrue(!EBDevSettings.shouldLogFailedCreateUO());
+        assertTrue(!EBDevSettings.shouldLog6f00RequestResponse());
+    }
+
+    private static int countCaptured(EBDiagnostics.Kind kind, int events){
+        int res = 0;
+        for(int i = 0; i < events; i++){
+            if (EBDiagnostics.shouldCapture(kind)){
+                res += 1;
+            }
+        }
+        return res;
+    }
+
+    private static byte[] expectedPrefix(){
+        final byte[] res = new byte[EBDiagnostics.MAX_HEX_BYTES];
+        for(int i = 0; i < res.length; i++){
+            res[i] = (byte) (i + 1);
+        }
+        return res;
+    }
+}
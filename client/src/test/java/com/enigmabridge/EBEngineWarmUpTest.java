@@ -0,0 +1,119 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EnigmaProvider;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Warm-up against the loopback endpoint: future completion, connections and collected errors.
+ */
+public class EBEngineWarmUpTest {
+
+    @Test(groups = {"basic"})
+    public void testWarmUp() throws Exception {
+        final EBLoopbackEndpoint endpoint = new EBLoopbackEndpoint().start();
+        try {
+            final EBEngine engine = createEngine(endpoint.getEndpointInfo());
+            final UserObjectKeyBase uo = newUoBuilder(endpoint.getEndpointInfo()).build();
+
+            final Future<EBEngineWarmUp> future = engine.warmUp(3, Collections.singletonList(uo));
+            final EBEngineWarmUp warmUp = future.get(30, TimeUnit.SECONDS);
+
+            assertTrue(future.isDone());
+            assertTrue(warmUp.isSuccessful(), "Errors: " + warmUp.getErrors());
+            assertEquals(warmUp.getErrors().size(), 0);
+            assertTrue(warmUp.getEngine() == engine);
+
+            // Endpoint of the UO is the default one, connected once.
+            assertEquals(warmUp.getHandshakes(), 3);
+            assertTrue(warmUp.getDurationMilli() >= 0);
+
+            // Provider lookups.
+            final EBEngineWarmUp providerWarmUp = new EnigmaProvider(engine).warmUp(1, null).get(30, TimeUnit.SECONDS);
+            assertTrue(providerWarmUp.isSuccessful(), "Errors: " + providerWarmUp.getErrors());
+            assertEquals(providerWarmUp.getHandshakes(), 1);
+
+        } finally {
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testErrorsCollected() throws Exception {
+        final EBLoopbackEndpoint endpoint = new EBLoopbackEndpoint().start();
+        final EBLoopbackEndpoint stopped = new EBLoopbackEndpoint().start();
+        final EBEndpointInfo stoppedInfo = stopped.getEndpointInfo();
+        stopped.stop();
+
+        try {
+            final EBEngine engine = createEngine(endpoint.getEndpointInfo());
+
+            // Same host, other port, nobody listening.
+            final UserObjectKeyBase deadUo = newUoBuilder(stoppedInfo).build();
+            final UserObjectKeyBase badKeysUo = newUoBuilder(endpoint.getEndpointInfo())
+                    .setCommKeys(new EBCommKeys()
+                            .setEncKey("0102030405")
+                            .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                    .build();
+
+            final EBEngineWarmUp warmUp = new EBEngineWarmUp.Builder()
+                    .setEngine(engine)
+                    .setConnectionsPerEndpoint(2)
+                    .addUserObject(deadUo)
+                    .addUserObject(badKeysUo)
+                    .build()
+                    .start()
+                    .get(30, TimeUnit.SECONDS);
+
+            // Future completes, failures are recorded: one for the dead endpoint, one for the comm keys.
+            assertTrue(!warmUp.isSuccessful());
+            assertEquals(warmUp.getErrors().size(), 2, "Errors: " + warmUp.getErrors());
+            assertEquals(warmUp.getHandshakes(), 2);
+
+        } finally {
+            endpoint.stop();
+        }
+    }
+
+    private static EBEngine createEngine(EBEndpointInfo endpointInfo){
+        final EBEngine engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpointInfo)
+                .setConnectionSettings(createConnectionSettings())
+                .build());
+        return engine;
+    }
+
+    private static EBConnectionSettings createConnectionSettings(){
+        return new EBConnectionSettings()
+                .setMethod(EBCommUtils.METHOD_POST)
+                .setConnectTimeoutMilli(5000)
+                .setReadTimeoutMilli(5000);
+    }
+
+    private static UserObjectKeyBase.Builder newUoBuilder(EBEndpointInfo endpointInfo){
+        return new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setEndpointInfo(endpointInfo)
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setConnectionSettings(createConnectionSettings())
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET);
+    }
+}
@@ -0,0 +1,312 @@
+package com.enigmabridge;
+
+import com.enigmabridge.client.envelope.EBEnvelopeCipher;
+import com.enigmabridge.client.envelope.EBEnvelopeHeader;
+import com.enigmabridge.client.envelope.EBEnvelopeKeyWrapper;
+import com.enigmabridge.client.envelope.EBEnvelopeRSAKeyWrapper;
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.rsa.EBRSAPrivateKey;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Segmented envelope format: header, round trips on both local backends, tampering and truncation.
+ * Data keys are wrapped locally, RSA wrapper runs against the loopback endpoint.
+ */
+public class EBEnvelopeCipherTest {
+    private static final int SEGMENT = 64;
+    private static final int TAG = EBEnvelopeCipher.TAG_LENGTH;
+
+    private final Random random = new Random(1);
+    private final EBEnvelopeKeyWrapper wrapper = new XorKeyWrapper();
+
+    @Test(groups = {"basic"})
+    public void testHeaderRoundTrip() throws Exception {
+        final byte[] wrapped = randomData(40);
+        final byte[] prefix = randomData(EBEnvelopeCipher.NONCE_PREFIX_LENGTH);
+        final byte[] encoded = new EBEnvelopeHeader(EBEnvelopeHeader.WRAP_EB_RSA_OAEP, EBEnvelopeHeader.DATA_AES_256_GCM,
+                0x1122334455667788L, 12345, wrapped, prefix).getEncoded();
+
+        assertEquals(encoded.length, EBEnvelopeHeader.FIXED_LENGTH + wrapped.length + 1 + prefix.length);
+        for(int i = 0; i < encoded.length; i++){
+            assertTrue(EBEnvelopeHeader.getRequiredLength(encoded, 0, i) > i);
+        }
+        assertEquals(EBEnvelopeHeader.getHeaderLength(encoded, 0, encoded.length), encoded.length);
+
+        final EBEnvelopeHeader parsed = EBEnvelopeHeader.parse(encoded, 0, encoded.length);
+        assertEquals(parsed.getVersion(), EBEnvelopeHeader.VERSION_1);
+        assertEquals(parsed.getWrapAlgorithm(), EBEnvelopeHeader.WRAP_EB_RSA_OAEP);
+        assertEquals(parsed.getDataAlgorithm(), EBEnvelopeHeader.DATA_AES_256_GCM);
+        assertEquals(parsed.getKeyId(), 0x1122334455667788L);
+        assertEquals(parsed.getSegmentSize(), 12345);
+        assertTrue(Arrays.equals(parsed.getWrappedKey(), wrapped));
+        assertTrue(Arrays.equals(parsed.getNoncePrefix(), prefix));
+        assertTrue(Arrays.equals(parsed.getEncoded(), encoded));
+
+        final byte[] badMagic = encoded.clone();
+        badMagic[0] ^= 1;
+        try {
+            EBEnvelopeHeader.parse(badMagic, 0, badMagic.length);
+            throw new AssertionError("Invalid magic accepted");
+        } catch(IOException e){
+            // Expected.
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testRoundTrip() throws Exception {
+        final int[] lengths = {0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 3 * SEGMENT, 3 * SEGMENT + 5, 1000};
+        for (int len : lengths) {
+            final byte[] plaintext = randomData(len);
+            for (boolean jcaEnc : new boolean[]{true, false}) {
+                final byte[] envelope = encrypt(newCipher(true, jcaEnc), plaintext);
+                final EBEnvelopeHeader header = EBEnvelopeHeader.parse(envelope, 0, envelope.length);
+                assertEquals(header.getSegmentSize(), SEGMENT);
+
+                // Full segments and the last one, the last one may be full or empty.
+                final int segments = len == 0 ? 1 : (len + SEGMENT - 1) / SEGMENT;
+                assertEquals(envelope.length, header.getEncoded().length + len + segments * TAG, "Length " + len);
+
+                for (boolean jcaDec : new boolean[]{true, false}) {
+                    assertTrue(Arrays.equals(decrypt(newCipher(false, jcaDec), envelope), plaintext),
+                            "Length " + len + ", JCA encryption " + jcaEnc + ", JCA decryption " + jcaDec);
+                }
+            }
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testStream() throws Exception {
+        final byte[] plaintext = randomData(3 * EBEnvelopeCipher.STREAM_BUFFER_SIZE + 17);
+        final EBEnvelopeCipher enc = new EBEnvelopeCipher(wrapper, true, new SecureRandom());
+        final ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+        enc.process(new ByteArrayInputStream(plaintext), envelope);
+
+        final EBEnvelopeCipher dec = new EBEnvelopeCipher(wrapper, false);
+        final ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        dec.process(new ByteArrayInputStream(envelope.toByteArray()), decrypted);
+        assertTrue(Arrays.equals(decrypted.toByteArray(), plaintext));
+    }
+
+    @Test(groups = {"basic"})
+    public void testTampered() throws Exception {
+        final byte[] plaintext = randomData(3 * SEGMENT + 5);
+        final byte[] envelope = encrypt(newCipher(true, true), plaintext);
+        final int headerLen = EBEnvelopeHeader.getHeaderLength(envelope, 0, envelope.length);
+
+        for (boolean jca : new boolean[]{true, false}) {
+            // Key id, segment size field, nonce prefix, every segment body and tag.
+            final int[] positions = {8, 19, headerLen - 1, headerLen, headerLen + SEGMENT + TAG - 1,
+                    headerLen + SEGMENT + TAG + 3, envelope.length - TAG - 1, envelope.length - 1};
+            for (int pos : positions) {
+                final byte[] tampered = envelope.clone();
+                tampered[pos] ^= 0x01;
+                assertTrue(decrypt(newCipher(false, jca), tampered) == null, "Tampered byte accepted, position " + pos);
+            }
+
+            // Reordered segments.
+            final byte[] swapped = envelope.clone();
+            System.arraycopy(envelope, headerLen, swapped, headerLen + SEGMENT + TAG, SEGMENT + TAG);
+            System.arraycopy(envelope, headerLen + SEGMENT + TAG, swapped, headerLen, SEGMENT + TAG);
+            assertTrue(decrypt(newCipher(false, jca), swapped) == null, "Reordered segments accepted");
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testTruncated() throws Exception {
+        final byte[] plaintext = randomData(3 * SEGMENT);
+        final byte[] envelope = encrypt(newCipher(true, true), plaintext);
+        final int headerLen = EBEnvelopeHeader.getHeaderLength(envelope, 0, envelope.length);
+
+        // Dropping whole trailing segments leaves a segment not marked as the last one.
+        for (boolean jca : new boolean[]{true, false}) {
+            for (int len = 0; len < envelope.length; len++) {
+                assertTrue(decrypt(newCipher(false, jca), Arrays.copyOf(envelope, len)) == null, "Truncated envelope accepted, length " + len);
+            }
+        }
+
+        // Segment appended.
+        final byte[] extended = Arrays.copyOf(envelope, envelope.length + SEGMENT + TAG);
+        System.arraycopy(envelope, headerLen, extended, envelope.length, SEGMENT + TAG);
+        assertTrue(decrypt(newCipher(false, true), extended) == null, "Extended envelope accepted");
+    }
+
+    @Test(groups = {"basic"})
+    public void testOnlyAuthenticatedReleased() throws Exception {
+        final byte[] plaintext = randomData(5 * SEGMENT);
+        final byte[] envelope = encrypt(newCipher(true, true), plaintext);
+        final int headerLen = EBEnvelopeHeader.getHeaderLength(envelope, 0, envelope.length);
+
+        // Third segment corrupted, the first two are released, nothing of the third.
+        envelope[headerLen + 2 * (SEGMENT + TAG) + 5] ^= 0x01;
+        for (boolean jca : new boolean[]{true, false}) {
+            final EBEnvelopeCipher dec = newCipher(false, jca);
+            final ByteArrayOutputStream released = new ByteArrayOutputStream();
+            try {
+                for (int off = 0; off < envelope.length; off += 7) {
+                    released.write(dec.update(envelope, off, Math.min(7, envelope.length - off)));
+                }
+                released.write(dec.doFinal(new byte[0], 0, 0));
+                throw new AssertionError("Corrupted segment accepted");
+
+            } catch (GeneralSecurityException e) {
+                assertEquals(released.size(), 2 * SEGMENT);
+                assertTrue(Arrays.equals(released.toByteArray(), Arrays.copyOf(plaintext, 2 * SEGMENT)));
+            }
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testRSAWrapperUsesKeyEngine() throws Exception {
+        final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+        kpGen.initialize(2048);
+        final RSAPrivateCrtKey rsaKey = (RSAPrivateCrtKey) kpGen.generateKeyPair().getPrivate();
+
+        final UserObjectKeyBase uo = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_RSA2k)
+                .setUserObjectType(UserObjectType.TYPE_RSA2048DECRYPT_NOPAD)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("1234567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("2224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("RSA")
+                .setKeyLength(2048)
+                .setKeyType(UserObjectKeyType.PRIVATE)
+                .build();
+
+        final EBLoopbackEndpoint endpoint = new EBLoopbackEndpoint()
+                .addUo(uo, rsaKey.getModulus(), rsaKey.getPrivateExponent())
+                .start();
+
+        // Registered provider has an engine without settings, the key engine has to be used.
+        final boolean registered = Security.getProvider(EnigmaProvider.PROVIDER_NAME) == null;
+        if (registered){
+            Security.addProvider(new EnigmaProvider());
+        }
+
+        try {
+            final EBEngine engine = new EBEngine();
+            engine.setDefaultSettings(new EBSettingsBase.Builder()
+                    .setApiKey(EBTestingUtils.API_KEY)
+                    .setEndpointInfo(endpoint.getEndpointInfo())
+                    .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                    .build());
+
+            final EBRSAPrivateKey ebKey = new EBRSAPrivateKey.Builder()
+                    .setUo(uo)
+                    .setEngine(engine)
+                    .setModulus(rsaKey.getModulus())
+                    .setPublicExponent(rsaKey.getPublicExponent())
+                    .build();
+
+            final EBEnvelopeRSAKeyWrapper rsaWrapper = new EBEnvelopeRSAKeyWrapper(ebKey);
+            final byte[] plaintext = randomData(3 * SEGMENT + 1);
+            final byte[] envelope = new EBEnvelopeCipher(rsaWrapper, true).doFinal(plaintext, 0, plaintext.length);
+            assertTrue(Arrays.equals(new EBEnvelopeCipher(rsaWrapper, false).doFinal(envelope, 0, envelope.length), plaintext));
+
+        } finally {
+            if (registered){
+                Security.removeProvider(EnigmaProvider.PROVIDER_NAME);
+            }
+            endpoint.stop();
+        }
+    }
+
+    private EBEnvelopeCipher newCipher(boolean forEncryption, final boolean jca){
+        return new EBEnvelopeCipher(wrapper, forEncryption, new SecureRandom()) {
+            {
+                jcaEnabled = jca;
+            }
+        }.setSegmentSize(SEGMENT);
+    }
+
+    /**
+     * Encrypts in chunks not aligned to the segments.
+     */
+    private byte[] encrypt(EBEnvelopeCipher cipher, byte[] plaintext) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int off = 0;
+        while(plaintext.length - off > 23){
+            bos.write(cipher.update(plaintext, off, 23));
+            off += 23;
+        }
+
+        bos.write(cipher.doFinal(plaintext, off, plaintext.length - off));
+        return bos.toByteArray();
+    }
+
+    /**
+     * Decrypts in chunks not aligned to the segments, null if the envelope is rejected.
+     */
+    private byte[] decrypt(EBEnvelopeCipher cipher, byte[] envelope) throws Exception {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            int off = 0;
+            while(envelope.length - off > 31){
+                bos.write(cipher.update(envelope, off, 31));
+                off += 31;
+            }
+
+            bos.write(cipher.doFinal(envelope, off, envelope.length - off));
+            return bos.toByteArray();
+
+        } catch(GeneralSecurityException e){
+            return null;
+        }
+    }
+
+    private byte[] randomData(int len){
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Local key wrapper, no EB calls.
+     */
+    private static class XorKeyWrapper implements EBEnvelopeKeyWrapper {
+        @Override
+        public int getWrapAlgorithm() {
+            return EBEnvelopeHeader.WRAP_EB_AES;
+        }
+
+        @Override
+        public long getKeyId() {
+            return EBTestingUtils.UOID_AES;
+        }
+
+        @Override
+        public byte[] wrap(byte[] dataKey) throws IOException {
+            return xor(dataKey);
+        }
+
+        @Override
+        public byte[] unwrap(byte[] wrappedKey) throws IOException {
+            return xor(wrappedKey);
+        }
+
+        private static byte[] xor(byte[] data){
+            final byte[] res = new byte[data.length];
+            for(int i = 0; i < data.length; i++){
+                res[i] = (byte) (data[i] ^ 0x5a);
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.enigmabridge;
+
+import com.enigmabridge.events.EBEvent;
+import com.enigmabridge.events.EBEventSink;
+import com.enigmabridge.events.EBEventType;
+import com.enigmabridge.events.EBEvents;
+import com.enigmabridge.events.EBJfrAnalyzer;
+import com.enigmabridge.events.EBJfrEventSink;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Client events: sink dispatch, JFR emission and the recording summary.
+ * JFR API is used through reflection, the JFR test is skipped on JDKs without it.
+ */
+public class EBEventsTest {
+
+    @Test(groups = {"basic"})
+    public void testEvents() throws Exception {
+        final EBEventSink prevSink = EBEvents.getSink();
+        try {
+            EBEvents.setSink(null);
+            assertTrue(!EBEvents.isEnabled());
+            assertTrue(EBEvents.begin(EBEventType.CIPHER) == null);
+
+            final CollectingSink sink = new CollectingSink(EnumSet.of(EBEventType.CIPHER));
+            EBEvents.setSink(sink);
+            assertTrue(EBEvents.isEnabled());
+
+            // Type not recorded by the sink, no event is created.
+            assertTrue(EBEvents.begin(EBEventType.SIGNATURE) == null);
+            assertEquals(sink.begun.size(), 0);
+
+            final EBEvent event = EBEvents.begin(EBEventType.CIPHER);
+            assertTrue(event != null);
+            assertEquals(sink.begun.size(), 1);
+            assertTrue(event.getHandle() == sink);
+
+            event.set("algorithm", "AES").set("inputLength", 16);
+            try {
+                event.set("unknown", 1);
+                fail("Unknown field accepted");
+            } catch(IllegalArgumentException e){
+                // Expected.
+            }
+
+            event.commit();
+            assertEquals(sink.committed.size(), 1);
+            assertEquals(event.get("algorithm"), "AES");
+            assertEquals(event.get("inputLength"), 16);
+            assertTrue(event.get("failed") == null);
+            assertTrue(event.get("unknown") == null);
+            assertTrue(event.getDurationNanos() >= 0);
+
+        } finally {
+            EBEvents.setSink(prevSink);
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testJfrSink() throws Exception {
+        if (!EBJfrEventSink.isAvailable()){
+            return;
+        }
+
+        final EBEventSink prevSink = EBEvents.getSink();
+        final EBJfrEventSink sink = new EBJfrEventSink();
+        final JfrRecording recording = new JfrRecording();
+        try {
+            EBEvents.setSink(sink);
+            assertTrue(!sink.isEnabled(EBEventType.CIPHER));
+            assertTrue(EBEvents.begin(EBEventType.CIPHER) == null);
+
+            // Custom events are enabled by default, signature events are disabled by the recording.
+            recording.disable(EBEventType.SIGNATURE.getEventName());
+            recording.start(EBEventType.CIPHER.getEventName(), EBEventType.REQUEST.getEventName());
+            assertTrue(sink.isEnabled(EBEventType.CIPHER));
+            assertTrue(sink.isEnabled(EBEventType.REQUEST));
+            assertTrue(!sink.isEnabled(EBEventType.SIGNATURE));
+            assertTrue(EBEvents.begin(EBEventType.SIGNATURE) == null);
+
+            EBEvents.begin(EBEventType.CIPHER)
+                    .set("algorithm", "AES/CBC/NoPadding")
+                    .set("inputLength", 16)
+                    .commit();
+
+            // Values are converted to the field type.
+            EBEvents.begin(EBEventType.REQUEST)
+                    .set("endpoint", "https://site1.enigmabridge.com:11180")
+                    .set("requestBytes", 100)
+                    .set("httpCode", 200)
+                    .commit();
+
+            recording.stop();
+            assertTrue(!sink.isEnabled(EBEventType.CIPHER));
+            assertTrue(EBEvents.begin(EBEventType.CIPHER) == null);
+
+            final List<Object> events = recording.readEvents();
+            assertEquals(events.size(), 2);
+
+            final Object cipher = recording.find(events, EBEventType.CIPHER.getEventName());
+            assertEquals(recording.getValue(cipher, "algorithm"), "AES/CBC/NoPadding");
+            assertEquals(recording.getValue(cipher, "inputLength"), 16);
+
+            final Object request = recording.find(events, EBEventType.REQUEST.getEventName());
+            assertEquals(recording.getValue(request, "requestBytes"), 100L);
+            assertEquals(recording.getValue(request, "httpCode"), 200);
+
+        } finally {
+            EBEvents.setSink(prevSink);
+            recording.close();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testAnalyzer() throws Exception {
+        final JSONArray events = new JSONArray()
+                .put(event(EBEventType.PROCESS_DATA, "PT0.010S", "uoId", 0xee01, "function", "PLAINAES"))
+                .put(event(EBEventType.PROCESS_DATA, "PT0.030S", "uoId", 0xee01, "function", "PLAINAES", "failed", true))
+                .put(event(EBEventType.PROCESS_DATA, "PT0.020S", "uoId", 0xee01, "function", "PLAINAES"))
+                .put(event(EBEventType.CREATE_UO, "PT1M0.5S", "uoId", 0xee02))
+                .put(event(EBEventType.REQUEST, "PT0.004S", "endpoint", "site1", "attempt", 1))
+                .put(event(EBEventType.REQUEST, "PT0.006S", "endpoint", "site1", "attempt", 2, "failed", true))
+                .put(event(EBEventType.CIPHER, "PT0.001S", "algorithm", "AES"))
+                .put(event(EBEventType.REQUEST, "unknown", "endpoint", "site2"));
+
+        final EBJfrAnalyzer analyzer = new EBJfrAnalyzer();
+        analyzer.add(new JSONObject().put("recording", new JSONObject().put("events", events)));
+
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(bos, true, "UTF-8");
+        analyzer.print(out);
+        final String report = bos.toString("UTF-8");
+
+        assertTrue(report.contains(row("0000ee01 PLAINAES", 3, 1, 0, 20.0, 30.0, 30.0)), report);
+        assertTrue(report.contains(row("0000ee02 create", 1, 0, 0, 60500.0, 60500.0, 60500.0)), report);
+        assertTrue(report.contains(row("site1", 2, 1, 1, 5.0, 6.0, 6.0)), report);
+        assertTrue(report.contains(row("site2", 1, 0, 0, 0.0, 0.0, 0.0)), report);
+        assertTrue(report.indexOf("Per user object:") < report.indexOf("Per endpoint"), report);
+    }
+
+    private static JSONObject event(EBEventType type, String duration, Object... fields){
+        final JSONObject values = new JSONObject().put("duration", duration);
+        for(int i = 0; i < fields.length; i += 2){
+            values.put((String) fields[i], fields[i + 1]);
+        }
+        return new JSONObject().put("type", type.getEventName()).put("values", values);
+    }
+
+    private static String row(String key, int count, int failed, int retries, double mean, double p99, double max){
+        return String.format("%-24s %8d %8d %8d %10.2f %10.2f %10.2f", key, count, failed, retries, mean, p99, max);
+    }
+
+    /**
+     * Sink recording the events of the enabled types.
+     */
+    private static class CollectingSink implements EBEventSink {
+        private final Set<EBEventType> enabled;
+        private final List<EBEvent> begun = new ArrayList<EBEvent>();
+        private final List<EBEvent> committed = new ArrayList<EBEvent>();
+
+        CollectingSink(Set<EBEventType> enabled) {
+            this.enabled = enabled;
+        }
+
+        @Override
+        public boolean isEnabled(EBEventType type) {
+            return enabled.contains(type);
+        }
+
+        @Override
+        public void begin(EBEvent event) {
+            begun.add(event);
+            event.setHandle(this);
+        }
+
+        @Override
+        public void commit(EBEvent event) {
+            committed.add(event);
+        }
+    }
+
+    /**
+     * jdk.jfr.Recording accessed through reflection.
+     */
+    private static class JfrRecording {
+        private final Object recording;
+        private File file;
+
+        JfrRecording() throws Exception {
+            recording = Class.forName("jdk.jfr.Recording").newInstance();
+        }
+
+        void start(String... eventNames) throws Exception {
+            for (String eventName : eventNames) {
+                recording.getClass().getMethod("enable", String.class).invoke(recording, eventName);
+            }
+            recording.getClass().getMethod("start").invoke(recording);
+        }
+
+        void disable(String eventName) throws Exception {
+            recording.getClass().getMethod("disable", String.class).invoke(recording, eventName);
+        }
+
+        void stop() throws Exception {
+            recording.getClass().getMethod("stop").invoke(recording);
+        }
+
+        List<Object> readEvents() throws Exception {
+            file = File.createTempFile("eb-events", ".jfr");
+            final Object path = File.class.getMethod("toPath").invoke(file);
+            final Class<?> pathCls = Class.forName("java.nio.file.Path");
+            recording.getClass().getMethod("dump", pathCls).invoke(recording, path);
+
+            final List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+                    .getMethod("readAllEvents", pathCls).invoke(null, path);
+
+            final List<Object> res = new ArrayList<Object>();
+            for (Object event : events) {
+                if (getName(event).startsWith("com.enigmabridge.")){
+                    res.add(event);
+                }
+            }
+            return res;
+        }
+
+        Object find(List<Object> events, String name) throws Exception {
+            for (Object event : events) {
+                if (name.equals(getName(event))){
+                    return event;
+                }
+            }
+            throw new AssertionError("Event not found: " + name);
+        }
+
+        String getName(Object event) throws Exception {
+            final Object type = event.getClass().getMethod("getEventType").invoke(event);
+            return (String) type.getClass().getMethod("getName").invoke(type);
+        }
+
+        Object getValue(Object event, String field) throws Exception {
+            return Class.forName("jdk.jfr.consumer.RecordedObject")
+                    .getMethod("getValue", String.class).invoke(event, field);
+        }
+
+        void close() throws Exception {
+            recording.getClass().getMethod("close").invoke(recording);
+            if (file != null && !file.delete()){
+                file.deleteOnExit();
+            }
+        }
+    }
+}
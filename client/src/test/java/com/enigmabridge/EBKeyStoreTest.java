@@ -0,0 +1,303 @@
+package com.enigmabridge;
+
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EBKeyBase;
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.keystore.eb.EBKeyStoreParameter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.Enumeration;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * EB key store file round trips: new store, append, password change and reload.
+ */
+public class EBKeyStoreTest {
+    private static final char[] PASSWORD = "password".toCharArray();
+    private static final char[] PASSWORD2 = "password2".toCharArray();
+
+    private EnigmaProvider provider;
+    private File dir;
+    private File file;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        provider = new EnigmaProvider(new EBEngine());
+        dir = File.createTempFile("ebks", "");
+        assertTrue(dir.delete() && dir.mkdir());
+        file = new File(dir, "test.ebks");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        final File[] files = dir.listFiles();
+        if (files != null){
+            for(File f : files){
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test(groups = {"basic"})
+    public void testLoadAppendRekeyReload() throws Exception {
+        // New store.
+        KeyStore ks = load(file, PASSWORD);
+        addKeys(ks, 0, 200);
+        ks.store(new EBKeyStoreParameter(file, PASSWORD));
+        checkKeys(load(file, PASSWORD), 200);
+
+        // Append to the mapped file, same password.
+        ks = load(file, PASSWORD);
+        final long sizeBefore = file.length();
+        addKeys(ks, 200, 50);
+        ks.store(new EBKeyStoreParameter(file, PASSWORD));
+        assertTrue(file.length() > sizeBefore);
+        checkKeys(ks, 250);
+        checkKeys(load(file, PASSWORD), 250);
+
+        // Password change rewrites the mapped file.
+        ks = load(file, PASSWORD);
+        ks.store(new EBKeyStoreParameter(file, PASSWORD2));
+        checkKeys(ks, 250);
+        checkKeys(load(file, PASSWORD2), 250);
+        assertLoadFails(file, PASSWORD);
+
+        // Append after the password change.
+        ks = load(file, PASSWORD2);
+        addKeys(ks, 250, 10);
+        ks.store(new EBKeyStoreParameter(file, PASSWORD2));
+        checkKeys(load(file, PASSWORD2), 260);
+
+        // No temporary files left.
+        assertEquals(dir.listFiles().length, 1);
+    }
+
+    @Test(groups = {"basic"})
+    public void testStoreToEmptyFile() throws Exception {
+        new FileOutputStream(file).close();
+        assertEquals(file.length(), 0);
+
+        final KeyStore ks = load(file, PASSWORD);
+        addKeys(ks, 0, 5);
+        ks.store(new EBKeyStoreParameter(file, PASSWORD));
+        checkKeys(load(file, PASSWORD), 5);
+    }
+
+    @Test(groups = {"basic"})
+    public void testUnprotected() throws Exception {
+        final KeyStore ks = load(file, null);
+        addKeys(ks, 0, 20);
+        ks.store(new EBKeyStoreParameter(file, (char[]) null));
+
+        final KeyStore ks2 = load(file, null);
+        addKeys(ks2, 20, 5);
+        ks2.store(new EBKeyStoreParameter(file, (char[]) null));
+        checkKeys(load(file, null), 25);
+
+        // Protecting a plain store.
+        load(file, null).store(new EBKeyStoreParameter(file, PASSWORD));
+        checkKeys(load(file, PASSWORD), 25);
+    }
+
+    @Test(groups = {"basic"})
+    public void testIndexPointsToAnotherRecord() throws Exception {
+        checkIndexSwap(PASSWORD);
+        checkIndexSwap(null);
+    }
+
+    @Test(groups = {"basic"})
+    public void testCorruptedStore() throws Exception {
+        final KeyStore ks = load(null, null);
+        addKeys(ks, 0, 3);
+        ks.setCertificateEntry("cert", EBTestingUtils.createCertificate(EBTestingUtils.TEST_ROOT_CERT1));
+        final byte[] stored = store(ks, null);
+
+        // Truncated store.
+        for(int len = 0; len < stored.length; len++){
+            try {
+                loadStream(Arrays.copyOf(stored, len), null);
+                throw new AssertionError("Truncated store loaded, length: " + len);
+            } catch(IOException e){
+                // Expected.
+            }
+        }
+
+        // Any byte overwritten, loading and reading fails with checked exceptions only.
+        for(int pos = 0; pos < stored.length; pos++){
+            for(byte val : new byte[]{(byte) 0xff, (byte) 0x7f, (byte) 0x80}){
+                final byte[] corrupted = stored.clone();
+                corrupted[pos] = val;
+                readAllEntries(corrupted, "position " + pos + ", value " + val);
+            }
+        }
+    }
+
+    /**
+     * Index entry of one alias is redirected to the record of another one, the record must not be returned.
+     */
+    private void checkIndexSwap(char[] password) throws Exception {
+        final KeyStore ks = load(null, password);
+        addKeys(ks, 0, 2);
+        final byte[] stored = store(ks, password);
+
+        // Footer: i64 index offset, i32 index length, magic. Index: i32 count, (u16 alias length, alias, i64 offset)*
+        final ByteBuffer buffer = ByteBuffer.wrap(stored);
+        int pos = (int) buffer.getLong(stored.length - 16);
+        final int count = buffer.getInt(pos);
+        assertEquals(count, 2);
+        pos += 4;
+
+        final int[] offsetPositions = new int[count];
+        final String[] aliases = new String[count];
+        for(int i = 0; i < count; i++){
+            final int aliasLen = buffer.getShort(pos) & 0xffff;
+            aliases[i] = new String(stored, pos + 2, aliasLen, "UTF-8");
+            offsetPositions[i] = pos + 2 + aliasLen;
+            pos = offsetPositions[i] + 8;
+        }
+
+        final long first = buffer.getLong(offsetPositions[0]);
+        buffer.putLong(offsetPositions[0], buffer.getLong(offsetPositions[1]));
+        buffer.putLong(offsetPositions[1], first);
+
+        final KeyStore swapped = loadStream(stored, password);
+        for(String alias : aliases){
+            try {
+                swapped.getKey(alias, null);
+                throw new AssertionError("Record of another alias returned for " + alias);
+            } catch(UnrecoverableKeyException e){
+                // Expected.
+            }
+
+            try {
+                swapped.getCreationDate(alias);
+                throw new AssertionError("Record of another alias used for " + alias);
+            } catch(IllegalStateException e){
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    /**
+     * Loads the store and reads all entries, only checked exceptions are allowed.
+     */
+    private void readAllEntries(byte[] stored, String desc) throws Exception {
+        final KeyStore ks;
+        try {
+            ks = loadStream(stored, null);
+        } catch(IOException e){
+            return;
+        }
+
+        final Enumeration<String> aliases = ks.aliases();
+        while(aliases.hasMoreElements()){
+            final String alias = aliases.nextElement();
+            try {
+                ks.getKey(alias, null);
+            } catch(UnrecoverableKeyException e){
+                // Corrupted record.
+            } catch(RuntimeException e){
+                throw new AssertionError("Unexpected exception, " + desc + ": " + e);
+            }
+
+            try {
+                final Certificate cert = ks.getCertificate(alias);
+                ks.getCreationDate(alias);
+                if (cert != null){
+                    assertNotNull(cert.getPublicKey());
+                }
+            } catch(IllegalStateException e){
+                if (!(e.getCause() instanceof IOException) && !(e.getCause() instanceof CertificateException)){
+                    throw new AssertionError("Unexpected exception, " + desc + ": " + e.getCause());
+                }
+            }
+        }
+    }
+
+    private byte[] store(KeyStore ks, char[] password) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ks.store(bos, password);
+        return bos.toByteArray();
+    }
+
+    private KeyStore loadStream(byte[] stored, char[] password) throws Exception {
+        final KeyStore ks = KeyStore.getInstance("EBKS", provider);
+        ks.load(stored == null ? null : new ByteArrayInputStream(stored), password);
+        return ks;
+    }
+
+    private KeyStore load(File f, char[] password) throws Exception {
+        if (f == null){
+            return loadStream(null, password);
+        }
+
+        final KeyStore ks = KeyStore.getInstance("EBKS", provider);
+        ks.load(new EBKeyStoreParameter(f, password));
+        return ks;
+    }
+
+    private static void assertLoadFails(File f, char[] password) throws Exception {
+        try {
+            KeyStore.getInstance("EBKS", new EnigmaProvider(new EBEngine())).load(new EBKeyStoreParameter(f, password));
+            throw new AssertionError("Key store loaded with a wrong password");
+        } catch(IOException e){
+            // Expected.
+        }
+    }
+
+    private void addKeys(KeyStore ks, int from, int count) throws Exception {
+        for(int i = from; i < from + count; i++){
+            ks.setKeyEntry(alias(i), buildKey(i), null, null);
+        }
+    }
+
+    private static void checkKeys(KeyStore ks, int count) throws Exception {
+        assertEquals(ks.size(), count);
+        for(int i = 0; i < count; i++){
+            final Key key = ks.getKey(alias(i), null);
+            assertTrue(key instanceof EBSymmetricKey, "Key missing: " + alias(i));
+            assertEquals(((EBKeyBase) key).getUserObjectInfo().getUoid(), EBTestingUtils.UOID_AES + i);
+        }
+    }
+
+    private static String alias(int i){
+        return "key-" + i;
+    }
+
+    private EBSymmetricKey buildKey(int i) throws Exception {
+        final UserObjectKeyBase uo = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES + i)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .build();
+
+        return new EBSymmetricKey.Builder()
+                .setUo(uo)
+                .setEngine(provider.getEngine())
+                .build();
+    }
+}
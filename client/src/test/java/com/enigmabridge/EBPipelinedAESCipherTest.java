@@ -0,0 +1,185 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Pipelined AES cipher against the JCE implementation with the same key, all modes and paddings,
+ * random update() chunking and cipher streams. Loopback endpoint runs the AES user objects.
+ */
+public class EBPipelinedAESCipherTest {
+    // Chunked modes, one call per chunk.
+    private static final int[] LENGTHS = {0, 1, 15, 16, 17, 33, 4095, 4096, 4097, 8192 * 3 + 7, 65537, 300000};
+
+    // One call per block.
+    private static final int[] LENGTHS_PER_BLOCK = {0, 1, 15, 16, 17, 33, 4097, 20000};
+
+    private final Random random = new Random(1);
+    private EBLoopbackEndpoint endpoint;
+    private EnigmaProvider provider;
+    private EBSymmetricKey ebKey;
+    private byte[] aesKey;
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        aesKey = new byte[16];
+        random.nextBytes(aesKey);
+
+        final UserObjectKeyBase uoEnc = buildUo(EBTestingUtils.UOID_AES, UserObjectType.TYPE_PLAINAES);
+        final UserObjectKeyBase uoDec = buildUo(EBTestingUtils.UOID_AES + 1, UserObjectType.TYPE_PLAINAESDECRYPT);
+        endpoint = new EBLoopbackEndpoint()
+                .addUo(uoEnc, aesKey)
+                .addUo(uoDec, aesKey)
+                .start();
+
+        final EBEngine engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpoint.getEndpointInfo())
+                .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                .build());
+
+        provider = new EnigmaProvider(engine);
+        ebKey = new EBSymmetricKey.Builder()
+                .setUo(uoEnc)
+                .setInversionKey(new EBSymmetricKey.Builder().setUo(uoDec))
+                .setEngine(engine)
+                .build();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (endpoint != null){
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testCBC() throws Exception {
+        check("CBC/PKCS5Padding", "CBC/PKCS5Padding", LENGTHS, false);
+        check("CBC4/NoPadding", "CBC/NoPadding", LENGTHS, true);
+    }
+
+    @Test(groups = {"basic"})
+    public void testECB() throws Exception {
+        check("ECB/PKCS5Padding", "ECB/PKCS5Padding", LENGTHS_PER_BLOCK, false);
+        check("ECB/NoPadding", "ECB/NoPadding", LENGTHS_PER_BLOCK, true);
+    }
+
+    @Test(groups = {"basic"})
+    public void testCTR() throws Exception {
+        check("CTR/NoPadding", "CTR/NoPadding", LENGTHS_PER_BLOCK, false);
+        check("CTR16/NoPadding", "CTR/NoPadding", LENGTHS_PER_BLOCK, false);
+    }
+
+    @Test(groups = {"basic"})
+    public void testStreams() throws Exception {
+        final byte[] data = randomData(100000);
+        final byte[] iv = randomData(16);
+        final Cipher ref = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        ref.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(iv));
+        final byte[] expected = ref.doFinal(data);
+
+        final Cipher eb = Cipher.getInstance("AESPIPELINED/CBC/PKCS5Padding", provider);
+        eb.init(Cipher.ENCRYPT_MODE, ebKey, new IvParameterSpec(iv));
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final CipherOutputStream cos = new CipherOutputStream(bos, eb);
+        int off = 0;
+        while(off < data.length){
+            final int chunk = Math.min(data.length - off, 1 + random.nextInt(9000));
+            cos.write(data, off, chunk);
+            off += chunk;
+        }
+        cos.close();
+        assertTrue(Arrays.equals(bos.toByteArray(), expected));
+
+        final Cipher dec = Cipher.getInstance("AESPIPELINED/CBC/PKCS5Padding", provider);
+        dec.init(Cipher.DECRYPT_MODE, ebKey, new IvParameterSpec(iv));
+        final CipherInputStream cis = new CipherInputStream(new ByteArrayInputStream(expected), dec);
+        final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        final byte[] buff = new byte[1000];
+        int read;
+        while((read = cis.read(buff)) >= 0){
+            plain.write(buff, 0, read);
+        }
+        cis.close();
+        assertTrue(Arrays.equals(plain.toByteArray(), data));
+    }
+
+    private void check(String ebTransformation, String refTransformation, int[] lengths, boolean aligned) throws Exception {
+        final Cipher eb = Cipher.getInstance("AESPIPELINED/" + ebTransformation, provider);
+        final Cipher ref = Cipher.getInstance("AES/" + refTransformation);
+        final boolean ecb = refTransformation.startsWith("ECB");
+
+        for(int len : lengths){
+            final byte[] data = randomData(aligned ? len - len % 16 : len);
+            final IvParameterSpec iv = ecb ? null : new IvParameterSpec(randomData(16));
+            ref.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), iv);
+            final byte[] expected = ref.doFinal(data);
+
+            eb.init(Cipher.ENCRYPT_MODE, ebKey, iv);
+            final byte[] ciphertext = process(eb, data);
+            assertTrue(Arrays.equals(ciphertext, expected), ebTransformation + " encryption mismatch, length: " + data.length);
+
+            eb.init(Cipher.DECRYPT_MODE, ebKey, iv);
+            assertTrue(Arrays.equals(process(eb, ciphertext), data), ebTransformation + " decryption mismatch, length: " + data.length);
+        }
+    }
+
+    /**
+     * Random chunking of update() calls, then doFinal().
+     */
+    private byte[] process(Cipher cipher, byte[] data) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int off = 0;
+        while(off < data.length){
+            final int chunk = Math.min(data.length - off, random.nextInt(3) == 0 ? 1 + random.nextInt(17) : 1 + random.nextInt(20000));
+            final byte[] out = cipher.update(data, off, chunk);
+            if (out != null){
+                bos.write(out);
+            }
+            off += chunk;
+        }
+
+        bos.write(cipher.doFinal());
+        return bos.toByteArray();
+    }
+
+    private byte[] randomData(int len){
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static UserObjectKeyBase buildUo(long uoid, int type){
+        return new UserObjectKeyBase.Builder()
+                .setUoid(uoid)
+                .setUserObjectType(type)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .build();
+    }
+}
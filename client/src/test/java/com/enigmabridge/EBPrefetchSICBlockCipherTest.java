@@ -0,0 +1,267 @@
+package com.enigmabridge;
+
+import com.enigmabridge.provider.aes.EBPrefetchSICBlockCipher;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.StreamBlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.SICBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Keystream prefetching SIC mode against BouncyCastle SICBlockCipher, number of engine calls.
+ * Local AES engine stands for the EB AES engine, each processBlock() is one ProcessData call.
+ */
+public class EBPrefetchSICBlockCipherTest {
+    private static final int[] CHUNKS = {1, 7, 16, 33, 1000};
+
+    private final Random random = new Random(1);
+    private ExecutorService executor;
+    private byte[] key;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        key = new byte[16];
+        random.nextBytes(key);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test(groups = {"basic"})
+    public void testEquivalence() throws Exception {
+        final CountingEngine engine = new CountingEngine();
+        final EBPrefetchSICBlockCipher cipher = newCipher(engine, EBPrefetchSICBlockCipher.DEFAULT_LOOKAHEAD);
+
+        for(int len = 0; len < 1200; len += 1 + len / 8){
+            for(int chunk : CHUNKS){
+                final byte[] iv = new byte[16];
+                random.nextBytes(iv);
+                checkMessage(cipher, iv, randomData(len), chunk);
+            }
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testReinitAndReset() throws Exception {
+        final EBPrefetchSICBlockCipher cipher = newCipher(new CountingEngine(), 4);
+        final byte[] iv = new byte[16];
+        random.nextBytes(iv);
+
+        // Message ending in the middle of the prefetch window, then the same IV again after reset.
+        final byte[] data = randomData(500);
+        final byte[] expected = reference(iv, data, 0, data.length);
+        cipher.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        assertTrue(Arrays.equals(process(cipher, data, 0, 100, 16), Arrays.copyOf(expected, 100)));
+
+        cipher.reset();
+        assertTrue(Arrays.equals(process(cipher, data, 0, data.length, 16), expected));
+
+        // New IV without the key, engine keeps the key.
+        final byte[] iv2 = iv.clone();
+        iv2[0] ^= 1;
+        cipher.init(false, new ParametersWithIV(null, iv2));
+        assertTrue(Arrays.equals(process(cipher, data, 0, data.length, 5), reference(iv2, data, 0, data.length)));
+    }
+
+    @Test(groups = {"basic"})
+    public void testCounterWrap() throws Exception {
+        final EBPrefetchSICBlockCipher cipher = newCipher(new CountingEngine(), 8);
+
+        // Carry over several bytes.
+        final byte[] carry = new byte[16];
+        random.nextBytes(carry);
+        Arrays.fill(carry, 11, 16, (byte) 0xff);
+        carry[15] = (byte) 0xfd;
+        checkMessage(cipher, carry, randomData(200), 16);
+
+        // Whole block counter wraps to zero.
+        final byte[] wrap = new byte[16];
+        Arrays.fill(wrap, (byte) 0xff);
+        wrap[15] = (byte) 0xfe;
+        checkMessage(cipher, wrap, randomData(200), 7);
+    }
+
+    @Test(groups = {"basic"})
+    public void testShortIvRange() throws Exception {
+        final CountingEngine engine = new CountingEngine();
+        final EBPrefetchSICBlockCipher cipher = newCipher(engine, 8);
+
+        // 15 B IV leaves 1 B counter, 256 blocks.
+        final byte[] iv = new byte[15];
+        random.nextBytes(iv);
+        cipher.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+
+        final byte[] data = randomData(256 * 16);
+        final byte[] actual = process(cipher, data, 0, data.length, 16);
+
+        final SICBlockCipher sic = new SICBlockCipher(new AESEngine());
+        sic.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        final byte[] expected = new byte[data.length];
+        try {
+            sic.processBytes(data, 0, data.length, expected, 0);
+        } catch(IllegalStateException e){
+            // BC reports the overflow when producing the last byte of the last block.
+        }
+        assertTrue(Arrays.equals(Arrays.copyOf(actual, data.length - 1), Arrays.copyOf(expected, data.length - 1)));
+
+        // Counter overflowing into the IV is refused, never requested.
+        try {
+            cipher.processBlock(data, 0, new byte[16], 0);
+            throw new AssertionError("Counter overflow not detected");
+        } catch(IllegalStateException e){
+            // Expected.
+        }
+        awaitIdle(engine);
+        assertEquals(engine.calls.get(), 256);
+    }
+
+    @Test(groups = {"basic"})
+    public void testCallCount() throws Exception {
+        final CountingEngine engine = new CountingEngine();
+        final EBPrefetchSICBlockCipher cipher = newCipher(engine, EBPrefetchSICBlockCipher.DEFAULT_LOOKAHEAD);
+        final byte[] iv = new byte[16];
+        random.nextBytes(iv);
+
+        // Nothing requested on init.
+        cipher.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        assertEquals(engine.calls.get(), 0);
+
+        // Single block message costs one call.
+        process(cipher, new byte[16], 0, 16, 16);
+        cipher.reset();
+        awaitIdle(engine);
+        assertEquals(engine.calls.get(), 1);
+
+        // Waste of a short message is bounded by the blocks it used.
+        engine.calls.set(0);
+        process(cipher, new byte[64], 0, 64, 64);
+        cipher.reset();
+        awaitIdle(engine);
+        assertTrue(engine.calls.get() <= 2 * 4, "Calls: " + engine.calls.get());
+
+        // Long message, window capped by the lookahead.
+        engine.calls.set(0);
+        process(cipher, new byte[16 * 1000], 0, 16 * 1000, 512);
+        cipher.reset();
+        awaitIdle(engine);
+        assertTrue(engine.calls.get() <= 1000 + EBPrefetchSICBlockCipher.DEFAULT_LOOKAHEAD + 1, "Calls: " + engine.calls.get());
+    }
+
+    @Test(groups = {"basic"}, expectedExceptions = IllegalArgumentException.class)
+    public void testLookaheadCap() throws Exception {
+        new EBPrefetchSICBlockCipher(new CountingEngine(), EBPrefetchSICBlockCipher.MAX_LOOKAHEAD + 1);
+    }
+
+    private void checkMessage(EBPrefetchSICBlockCipher cipher, byte[] iv, byte[] data, int chunk) throws Exception {
+        cipher.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        final byte[] expected = reference(iv, data, 0, data.length);
+        final byte[] actual = process(cipher, data, 0, data.length, chunk);
+        assertTrue(Arrays.equals(actual, expected), "Mismatch, length: " + data.length + ", chunk: " + chunk);
+
+        // Decryption is the same operation.
+        cipher.init(false, new ParametersWithIV(new KeyParameter(key), iv));
+        assertTrue(Arrays.equals(process(cipher, actual, 0, actual.length, chunk), data));
+    }
+
+    private EBPrefetchSICBlockCipher newCipher(BlockCipher engine, int lookahead){
+        final EBPrefetchSICBlockCipher cipher = new EBPrefetchSICBlockCipher(engine, lookahead);
+        cipher.setExecutor(executor);
+        return cipher;
+    }
+
+    private byte[] reference(byte[] iv, byte[] data, int off, int len){
+        final SICBlockCipher sic = new SICBlockCipher(new AESEngine());
+        sic.init(true, new ParametersWithIV(new KeyParameter(key), iv));
+        return process(sic, data, off, len, len == 0 ? 1 : len);
+    }
+
+    /**
+     * Processes data in chunks, whole blocks via processBlock() when aligned, as BufferedBlockCipher does.
+     */
+    private static byte[] process(StreamBlockCipher cipher, byte[] data, int off, int len, int chunk){
+        final int blockSize = cipher.getBlockSize();
+        final byte[] out = new byte[len];
+        int done = 0;
+        while(done < len){
+            final int cur = Math.min(chunk, len - done);
+            if (cur == blockSize){
+                cipher.processBlock(data, off + done, out, done);
+            } else {
+                cipher.processBytes(data, off + done, cur, out, done);
+            }
+            done += cur;
+        }
+        return out;
+    }
+
+    private byte[] randomData(int len){
+        final byte[] data = new byte[len];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private static void awaitIdle(CountingEngine engine) throws InterruptedException {
+        for(int i = 0; i < 500 && engine.running.get() > 0; i++){
+            Thread.sleep(2);
+        }
+    }
+
+    /**
+     * Thread safe AES engine counting the block calls.
+     */
+    private static class CountingEngine implements BlockCipher {
+        private final AESEngine engine = new AESEngine();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+
+        @Override
+        public synchronized void init(boolean forEncryption, CipherParameters params) throws IllegalArgumentException {
+            engine.init(forEncryption, params);
+        }
+
+        @Override
+        public String getAlgorithmName() {
+            return engine.getAlgorithmName();
+        }
+
+        @Override
+        public int getBlockSize() {
+            return engine.getBlockSize();
+        }
+
+        @Override
+        public int processBlock(byte[] in, int inOff, byte[] out, int outOff) {
+            calls.incrementAndGet();
+            running.incrementAndGet();
+            try {
+                synchronized (this){
+                    return engine.processBlock(in, inOff, out, outOff);
+                }
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public synchronized void reset() {
+            engine.reset();
+        }
+    }
+}
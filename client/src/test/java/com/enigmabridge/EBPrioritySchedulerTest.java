@@ -0,0 +1,265 @@
+package com.enigmabridge;
+
+import com.enigmabridge.client.EBAdaptiveExecutorService;
+import com.enigmabridge.client.EBClient;
+import com.enigmabridge.client.EBClientPriority;
+import com.enigmabridge.client.EBPriorityScheduler;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Priority lanes: weighted sharing, reserved concurrency, queue-wait metric and the limit of external executors.
+ * Tasks are run one by one by the test.
+ */
+public class EBPrioritySchedulerTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test(groups = {"basic"})
+    public void testLaneWeights() throws Exception {
+        final ManualExecutor executor = new ManualExecutor();
+        final List<EBClientPriority> order = new ArrayList<EBClientPriority>();
+        final EBPriorityScheduler scheduler = new EBPriorityScheduler(executor, 1, 0);
+
+        // Gate occupies the only slot until all lanes are backlogged.
+        scheduler.submit(EBClientPriority.NORMAL, task(null, null));
+        fillLanes(scheduler, order, 20);
+        executor.runNext();
+
+        runAndCount(executor, order, 13);
+        assertEquals(count(order, EBClientPriority.INTERACTIVE), 8);
+        assertEquals(count(order, EBClientPriority.NORMAL), 4);
+        assertEquals(count(order, EBClientPriority.BULK), 1);
+
+        // Custom weights, equal shares.
+        final ManualExecutor executor2 = new ManualExecutor();
+        final List<EBClientPriority> order2 = new ArrayList<EBClientPriority>();
+        final EBPriorityScheduler scheduler2 = new EBPriorityScheduler(executor2, 1, 0)
+                .setWeight(EBClientPriority.INTERACTIVE, 2)
+                .setWeight(EBClientPriority.NORMAL, 2)
+                .setWeight(EBClientPriority.BULK, 2);
+
+        scheduler2.submit(EBClientPriority.NORMAL, task(null, null));
+        fillLanes(scheduler2, order2, 20);
+        executor2.runNext();
+
+        runAndCount(executor2, order2, 12);
+        assertEquals(count(order2, EBClientPriority.INTERACTIVE), 4);
+        assertEquals(count(order2, EBClientPriority.NORMAL), 4);
+        assertEquals(count(order2, EBClientPriority.BULK), 4);
+    }
+
+    @Test(groups = {"basic"})
+    public void testReservedConcurrency() throws Exception {
+        final ManualExecutor executor = new ManualExecutor();
+        final EBPriorityScheduler scheduler = new EBPriorityScheduler(executor, 4, 1);
+        assertEquals(scheduler.getReserved(), 1);
+
+        // Bulk backlog does not take the reserved slot.
+        for(int i = 0; i < 10; i++){
+            scheduler.submit(EBClientPriority.BULK, task(null, null));
+        }
+        assertEquals(scheduler.getRunning(), 3);
+        assertEquals(scheduler.getQueueDepth(EBClientPriority.BULK), 7);
+
+        scheduler.submit(EBClientPriority.INTERACTIVE, task(null, null));
+        assertEquals(scheduler.getRunning(), 4);
+        scheduler.submit(EBClientPriority.INTERACTIVE, task(null, null));
+        assertEquals(scheduler.getQueueDepth(EBClientPriority.INTERACTIVE), 1);
+
+        // Freed slot goes to the waiting interactive task.
+        executor.runNext();
+        assertEquals(scheduler.getRunning(), 4);
+        assertEquals(scheduler.getQueueDepth(EBClientPriority.INTERACTIVE), 0);
+        assertEquals(scheduler.getQueueDepth(EBClientPriority.BULK), 7);
+
+        // Reserved slot stays free for interactive tasks.
+        executor.runNext();
+        assertEquals(scheduler.getRunning(), 3);
+        assertEquals(scheduler.getQueueDepth(EBClientPriority.BULK), 7);
+
+        executor.runNext();
+        assertEquals(scheduler.getRunning(), 3);
+        assertEquals(scheduler.getQueueDepth(EBClientPriority.BULK), 6);
+    }
+
+    @Test(groups = {"basic"})
+    public void testQueueWait() throws Exception {
+        final ManualExecutor executor = new ManualExecutor();
+        final ManualClockScheduler scheduler = new ManualClockScheduler(executor, 1, 0);
+
+        final Future<String> gate = scheduler.submit(EBClientPriority.NORMAL, task(null, "gate"));
+        final Future<String> first = scheduler.submit(EBClientPriority.NORMAL, task(null, "first"));
+
+        scheduler.now = 5 * MILLI;
+        final Future<String> second = scheduler.submit(EBClientPriority.NORMAL, task(null, "second"));
+        executor.runNext();
+
+        scheduler.now = 15 * MILLI;
+        executor.runNext();
+        executor.runNext();
+
+        assertEquals(gate.get(), "gate");
+        assertEquals(first.get(), "first");
+        assertEquals(second.get(), "second");
+
+        // Waits: gate 0 ms, first 5 ms, second 10 ms.
+        assertEquals(scheduler.getSubmitted(EBClientPriority.NORMAL), 3);
+        assertEquals(scheduler.getDispatched(EBClientPriority.NORMAL), 3);
+        assertEquals(scheduler.getMeanQueueWaitNanos(EBClientPriority.NORMAL), 5 * MILLI);
+        assertEquals(scheduler.getMaxQueueWaitNanos(EBClientPriority.NORMAL), 10 * MILLI);
+        assertEquals(scheduler.getDispatched(EBClientPriority.BULK), 0);
+        assertEquals(scheduler.getMeanQueueWaitNanos(EBClientPriority.BULK), 0);
+
+        // Cancelled waiting task is removed from the lane.
+        scheduler.submit(EBClientPriority.BULK, task(null, null));
+        final Future<String> cancelled = scheduler.submit(EBClientPriority.BULK, task(null, null));
+        assertTrue(cancelled.cancel(false));
+        assertEquals(scheduler.getCancelled(EBClientPriority.BULK), 1);
+        assertEquals(scheduler.getQueueDepth(EBClientPriority.BULK), 0);
+    }
+
+    @Test(groups = {"basic"})
+    public void testExternalExecutorLimit() throws Exception {
+        final ExecutorService fixed = Executors.newFixedThreadPool(4);
+        final ExecutorService cached = Executors.newCachedThreadPool();
+        final EBAdaptiveExecutorService adaptive = new EBAdaptiveExecutorService(2, 16);
+        try {
+            // Threads of the external pool are not started yet.
+            final EBClient fixedClient = new EBClient.Builder().setExecutorService(fixed).build();
+            assertEquals(fixedClient.getWorkerCount(), 4);
+            assertEquals(fixedClient.getScheduler().getLimit(), 4);
+
+            final EBClient cachedClient = new EBClient.Builder().setExecutorService(cached).build();
+            assertEquals(cachedClient.getScheduler().getLimit(), Integer.MAX_VALUE);
+
+            final EBClient adaptiveClient = new EBClient.Builder().setExecutorService(adaptive).build();
+            assertEquals(adaptiveClient.getScheduler().getLimit(), 16);
+
+            final EBClient customClient = new EBClient.Builder().setExecutorService(new DirectExecutorService()).build();
+            assertEquals(customClient.getScheduler().getLimit(), Integer.MAX_VALUE);
+
+            final EBClient limitedClient = new EBClient.Builder()
+                    .setExecutorService(cached)
+                    .setConcurrency(8)
+                    .build();
+            assertEquals(limitedClient.getScheduler().getLimit(), 8);
+
+        } finally {
+            fixed.shutdownNow();
+            cached.shutdownNow();
+            adaptive.shutdownNow();
+        }
+    }
+
+    private static void fillLanes(EBPriorityScheduler scheduler, List<EBClientPriority> order, int count){
+        for(int i = 0; i < count; i++){
+            for(EBClientPriority priority : EBClientPriority.values()){
+                scheduler.submit(priority, task(order, priority.name()));
+            }
+        }
+    }
+
+    private static void runAndCount(ManualExecutor executor, List<EBClientPriority> order, int count){
+        for(int i = 0; i < count; i++){
+            executor.runNext();
+        }
+        assertEquals(order.size(), count);
+    }
+
+    private static int count(List<EBClientPriority> order, EBClientPriority priority){
+        return Collections.frequency(order, priority);
+    }
+
+    private static Callable<String> task(final List<EBClientPriority> order, final String name){
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (order != null){
+                    order.add(EBClientPriority.valueOf(name));
+                }
+                return name;
+            }
+        };
+    }
+
+    /**
+     * Executor holding the tasks until the test runs them.
+     */
+    private static class ManualExecutor implements Executor {
+        private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runNext(){
+            tasks.poll().run();
+        }
+    }
+
+    private static class ManualClockScheduler extends EBPriorityScheduler {
+        volatile long now;
+
+        ManualClockScheduler(Executor executor, int limit, int reserved) {
+            super(executor, limit, reserved);
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+
+    /**
+     * External executor of unknown concurrency.
+     */
+    private static class DirectExecutorService extends AbstractExecutorService {
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return shutdown;
+        }
+    }
+}
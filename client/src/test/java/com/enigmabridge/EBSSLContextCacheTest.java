@@ -0,0 +1,73 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBAdditionalTrust;
+import com.enigmabridge.comm.EBSSLContextCache;
+import com.enigmabridge.misc.EBTestingUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Trust objects with the same configuration share the SSL context, different ones do not.
+ */
+public class EBSSLContextCacheTest {
+
+    @Test(groups = {"basic"})
+    public void testSameConfigShared() throws Exception {
+        final EBAdditionalTrust first = new EBAdditionalTrust(true, true);
+        final EBAdditionalTrust second = new EBAdditionalTrust(true, true);
+        assertTrue(first.getSslSocketFactory() == second.getSslSocketFactory());
+        assertTrue(first.copy().getSslSocketFactory() == first.getSslSocketFactory());
+
+        final EBAdditionalTrust custom1 = new EBAdditionalTrust(true, false, roots(EBTestingUtils.TEST_ROOT_CERT1));
+        final EBAdditionalTrust custom1Again = new EBAdditionalTrust(true, false, roots(EBTestingUtils.TEST_ROOT_CERT1));
+        assertTrue(custom1.getSslSocketFactory() == custom1Again.getSslSocketFactory());
+        assertTrue(custom1.copy().getSslSocketFactory() == custom1.getSslSocketFactory());
+    }
+
+    @Test(groups = {"basic"})
+    public void testDifferentConfigSeparate() throws Exception {
+        final EBAdditionalTrust system = new EBAdditionalTrust(true, true);
+        final EBAdditionalTrust custom1 = new EBAdditionalTrust(true, true, roots(EBTestingUtils.TEST_ROOT_CERT1));
+        final EBAdditionalTrust custom2 = new EBAdditionalTrust(true, true, roots(EBTestingUtils.TEST_ROOT_CERT2));
+
+        assertTrue(system.getSslSocketFactory() != custom1.getSslSocketFactory());
+        assertTrue(custom1.getSslSocketFactory() != custom2.getSslSocketFactory());
+        assertTrue(new EBAdditionalTrust(false, true).getSslSocketFactory() != system.getSslSocketFactory());
+    }
+
+    @Test(groups = {"basic"})
+    public void testDeserializedUsesCache() throws Exception {
+        final EBAdditionalTrust trust = new EBAdditionalTrust(true, false, roots(EBTestingUtils.TEST_ROOT_CERT2));
+        final int size = EBSSLContextCache.size();
+
+        final EBAdditionalTrust restored = deserialize(trust);
+        assertTrue(restored.getSslSocketFactory() != null);
+        assertTrue(restored.getSslSocketFactory() == trust.getSslSocketFactory());
+        assertEquals(EBSSLContextCache.size(), size);
+        assertEquals(restored.getTrustManagers().length, trust.getTrustManagers().length);
+    }
+
+    private static List<Certificate> roots(String pem) throws Exception {
+        return Collections.<Certificate>singletonList(EBTestingUtils.createCertificate(pem));
+    }
+
+    private static EBAdditionalTrust deserialize(EBAdditionalTrust trust) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(trust);
+        oos.close();
+
+        final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        return (EBAdditionalTrust) ois.readObject();
+    }
+}
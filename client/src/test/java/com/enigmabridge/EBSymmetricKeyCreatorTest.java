@@ -0,0 +1,139 @@
+package com.enigmabridge;
+
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EBSymmetricKeyCreator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.security.ProviderException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Concurrent creation of the symmetric key pair, failure of one of the keys.
+ */
+public class EBSymmetricKeyCreatorTest {
+    private ExecutorService executor;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test(groups = {"basic"})
+    public void testEncryptionFailsDecryptionAwaited() throws Exception {
+        final FailingCreator creator = new FailingCreator(true, false, executor);
+        try {
+            creator.generatePair();
+            throw new AssertionError("Failure not reported");
+
+        } catch(ProviderException e){
+            assertTrue(creator.decFinished.get(), "Decryption key creation left running");
+            assertTrue(e.getMessage().contains("encryption failed"), e.getMessage());
+            assertTrue(e.getMessage().contains("created, discarded"), e.getMessage());
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testBothFail() throws Exception {
+        final FailingCreator creator = new FailingCreator(true, true, executor);
+        try {
+            creator.generatePair();
+            throw new AssertionError("Failure not reported");
+
+        } catch(ProviderException e){
+            assertTrue(creator.decFinished.get());
+            assertTrue(e.getMessage().contains("encryption failed"), e.getMessage());
+            assertTrue(e.getMessage().contains("decryption failed"), e.getMessage());
+            assertTrue(e.getCause() instanceof ProviderException);
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testDecryptionFails() throws Exception {
+        final FailingCreator creator = new FailingCreator(false, true, executor);
+        try {
+            creator.generatePair();
+            throw new AssertionError("Failure not reported");
+
+        } catch(ProviderException e){
+            assertEquals(e.getCause().getMessage(), "decryption failed");
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testPair() throws Exception {
+        final EBSymmetricKey.Builder[] pair = new FailingCreator(false, false, executor).generatePair();
+        assertEquals(pair.length, 2);
+        assertEquals(pair[0].getObj().getUserObjectInfo().getUoid(), 2);
+        assertEquals(pair[1].getObj().getUserObjectInfo().getUoid(), 1);
+    }
+
+    /**
+     * Creator without the EB calls, decryption key is created slower than the encryption one.
+     */
+    private static class FailingCreator extends EBSymmetricKeyCreator {
+        final AtomicBoolean decFinished = new AtomicBoolean();
+        private final boolean failEnc;
+        private final boolean failDec;
+
+        FailingCreator(boolean failEnc, boolean failDec, ExecutorService executor) {
+            this.failEnc = failEnc;
+            this.failDec = failDec;
+            this.executor = executor;
+            this.uoKeyCreator = uoKeyCreatorBld
+                    .setEngine(new EBEngine())
+                    .setUoType(UserObjectType.OBJ_PLAINAES)
+                    .build();
+        }
+
+        EBSymmetricKey.Builder[] generatePair(){
+            return generateKeyPair();
+        }
+
+        @Override
+        protected EBSymmetricKey.Builder generateKey(UserObjectKeyCreator creator, boolean forEncryption) {
+            if (forEncryption){
+                if (failEnc){
+                    throw new ProviderException("Create Symmetric key failed", new IOException("encryption failed"));
+                }
+                return buildKey(1);
+            }
+
+            try {
+                Thread.sleep(200);
+                if (failDec){
+                    throw new ProviderException("Create Symmetric key failed", new IOException("decryption failed"));
+                }
+                return buildKey(2);
+
+            } catch (InterruptedException e) {
+                throw new ProviderException(e);
+
+            } finally {
+                decFinished.set(true);
+            }
+        }
+
+        private static EBSymmetricKey.Builder buildKey(long uoid){
+            return new EBSymmetricKey.Builder().setUo(new UserObjectKeyBase.Builder()
+                    .setUoid(uoid)
+                    .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                    .setAlgorithm("AES")
+                    .setKeyLength(128)
+                    .setKeyType(UserObjectKeyType.SECRET)
+                    .build());
+        }
+    }
+}
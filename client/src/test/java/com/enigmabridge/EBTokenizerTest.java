@@ -0,0 +1,168 @@
+package com.enigmabridge;
+
+import com.enigmabridge.client.tokenize.EBTokenizer;
+import com.enigmabridge.client.tokenize.EBTokenizerListener;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tokenizer single-flight, LRU cache and stream ordering. EB calls are replaced by a local function.
+ */
+public class EBTokenizerTest {
+
+    @Test(groups = {"basic"})
+    public void testSingleFlight() throws Exception {
+        final StubTokenizer tokenizer = new StubTokenizer(4, 0);
+        try {
+            final byte[] value = "4111111111111111".getBytes("UTF-8");
+            final List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+            for(int i = 0; i < 5; i++){
+                futures.add(tokenizer.tokenizeAsync(value));
+            }
+
+            // Caller reuses its buffer while the call is in progress.
+            Arrays.fill(value, (byte) 0);
+            tokenizer.release.countDown();
+
+            final byte[] expected = StubTokenizer.transform("4111111111111111".getBytes("UTF-8"));
+            for (Future<byte[]> future : futures) {
+                assertTrue(Arrays.equals(future.get(10, TimeUnit.SECONDS), expected));
+            }
+
+            assertEquals(tokenizer.getCalls(), 1);
+            assertEquals(tokenizer.getCoalesced(), 4);
+            assertEquals(tokenizer.getInFlight(), 0);
+
+        } finally {
+            tokenizer.shutdown();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testCacheBothDirections() throws Exception {
+        final StubTokenizer tokenizer = new StubTokenizer(4, 2);
+        tokenizer.release.countDown();
+        try {
+            final byte[] v1 = value(1);
+            final byte[] t1 = tokenizer.tokenize(v1);
+            assertEquals(tokenizer.getCalls(), 1);
+
+            // Reverse direction is cached by the tokenization.
+            assertTrue(Arrays.equals(tokenizer.detokenize(t1), v1));
+            assertTrue(Arrays.equals(tokenizer.tokenize(v1), t1));
+            assertEquals(tokenizer.getCalls(), 1);
+            assertEquals(tokenizer.getCacheHits(), 2);
+
+            // Cached values are copies.
+            Arrays.fill(tokenizer.tokenize(v1), (byte) 0);
+            assertTrue(Arrays.equals(tokenizer.tokenize(v1), t1));
+
+            // Least recently used pair is evicted.
+            tokenizer.tokenize(value(2));
+            tokenizer.tokenize(value(3));
+            final long calls = tokenizer.getCalls();
+            tokenizer.tokenize(value(3));
+            assertEquals(tokenizer.getCalls(), calls);
+            tokenizer.tokenize(v1);
+            assertEquals(tokenizer.getCalls(), calls + 1);
+
+        } finally {
+            tokenizer.shutdown();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testStreamOrder() throws Exception {
+        final StubTokenizer tokenizer = new StubTokenizer(4, 0);
+        tokenizer.release.countDown();
+        tokenizer.randomDelay = true;
+        try {
+            final List<byte[]> values = new ArrayList<byte[]>();
+            for(int i = 0; i < 100; i++){
+                values.add(value(i));
+            }
+
+            final List<byte[]> results = new ArrayList<byte[]>();
+            final long processed = tokenizer.tokenize(values.iterator(), new EBTokenizerListener() {
+                @Override
+                public void onResult(long index, byte[] input, byte[] output) {
+                    assertEquals(index, results.size());
+                    assertTrue(Arrays.equals(input, values.get((int) index)));
+                    results.add(output);
+                }
+            });
+
+            assertEquals(processed, values.size());
+            for(int i = 0; i < values.size(); i++){
+                assertTrue(Arrays.equals(results.get(i), StubTokenizer.transform(values.get(i))), "Result " + i);
+            }
+
+            // Batch keeps the order as well.
+            final List<byte[]> batch = tokenizer.detokenize(results);
+            for(int i = 0; i < values.size(); i++){
+                assertTrue(Arrays.equals(batch.get(i), values.get(i)), "Batch result " + i);
+            }
+
+        } finally {
+            tokenizer.shutdown();
+        }
+    }
+
+    private static byte[] value(int i){
+        return ("value-" + i).getBytes();
+    }
+
+    /**
+     * Tokenizer with a local invertible function instead of the EB call.
+     */
+    private static class StubTokenizer extends EBTokenizer {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Random random = new Random(1);
+        volatile boolean randomDelay;
+
+        StubTokenizer(int concurrency, int cacheSize) {
+            setConcurrency(concurrency);
+            setCacheSize(cacheSize);
+            init();
+        }
+
+        static byte[] transform(byte[] input){
+            final byte[] res = new byte[input.length];
+            for(int i = 0; i < input.length; i++){
+                res[i] = (byte) (input[input.length - 1 - i] ^ 0x55);
+            }
+            return res;
+        }
+
+        @Override
+        protected byte[] process(boolean tokenize, byte[] input) throws IOException {
+            calls.incrementAndGet();
+            try {
+                release.await();
+                if (randomDelay){
+                    final int delay;
+                    synchronized (random){
+                        delay = random.nextInt(3);
+                    }
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted", e);
+            }
+
+            // The transformation is its own inverse.
+            return transform(input);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.enigmabridge;
+
+import com.enigmabridge.misc.EBTestingUtils;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Replica set balancing state.
+ */
+public class EBUOReplicaSetTest {
+
+    @Test(groups = {"basic"})
+    public void testAddKeepsState() throws Exception {
+        final EBUOReplicaSet set = new EBUOReplicaSet(buildUo(0));
+        set.addReplica(buildUo(1));
+
+        // Member 1 failed, member 0 has a request in progress.
+        final int first = set.acquire(new boolean[]{false, true});
+        assertEquals(first, 0);
+        final int second = set.acquire(new boolean[]{true, false});
+        set.release(second, false);
+
+        set.addReplicas(Arrays.asList(buildUo(2), buildUo(3)));
+        assertEquals(set.size(), 4);
+        assertEquals(set.getOutstanding(0), 1);
+
+        // Failed member is still skipped while healthy ones are available.
+        for(int i = 0; i < 16; i++){
+            final int idx = set.acquire(null);
+            assertTrue(idx != 1, "Failed replica picked after the set was extended");
+            set.release(idx, true);
+        }
+
+        set.release(first, true);
+        assertEquals(set.getOutstanding(0), 0);
+    }
+
+    @Test(groups = {"basic"})
+    public void testBuilderAddsAll() throws Exception {
+        final UserObjectKeyBase uo = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .addReplicas(Arrays.asList(buildUo(1), buildUo(2)))
+                .addReplica(buildUo(3))
+                .build();
+
+        assertTrue(uo.isReplicated());
+        assertEquals(uo.getReplicaSet().size(), 4);
+        assertEquals(uo.getReplicaSet().getReplicas().get(2).getUoid(), EBTestingUtils.UOID_AES + 3);
+    }
+
+    @Test(groups = {"basic"})
+    public void testNoDriftOnAdd() throws Exception {
+        final EBUOReplicaSet set = new EBUOReplicaSet(buildUo(0));
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final List<Thread> threads = new ArrayList<Thread>();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+
+        for(int t = 0; t < 4; t++){
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while(running.get()){
+                            set.release(set.acquire(null), true);
+                        }
+                    } catch(Throwable e){
+                        synchronized (errors){
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // Requests acquired before a swap of the members are released after it.
+        for(int i = 1; i <= 200; i++){
+            set.addReplica(buildUo(i));
+            Thread.yield();
+        }
+
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertTrue(errors.isEmpty(), errors.toString());
+        for(int i = 0; i < set.size(); i++){
+            assertEquals(set.getOutstanding(i), 0, "Outstanding counter drifted, member " + i);
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testSettingsWithoutApiKey() throws Exception {
+        final JSONObject endpointOnly = new JSONObject();
+        endpointOnly.put(EBSettingsBase.FIELD_ENDPOINT, "https://site2.enigmabridge.com:11180");
+
+        // General settings still require the API key.
+        try {
+            new EBSettingsBase(endpointOnly);
+            throw new AssertionError("Settings without API key accepted");
+        } catch(IllegalArgumentException e){
+            // Expected.
+        }
+
+        final UserObjectKeyBase replica = newUoBuilder(1)
+                .setEndpointInfo(new EBEndpointInfo("https://site2.enigmabridge.com:11180"))
+                .build();
+        final UserObjectKeyBase uo = newUoBuilder(0)
+                .setApiKey(EBTestingUtils.API_KEY)
+                .addReplica(replica)
+                .build();
+
+        // Replica inherits the API key of the primary, its settings hold the endpoint only.
+        final JSONObject json = uo.toJSON(null);
+        final UserObjectKeyBase parsed = new UserObjectKeyBase.Builder().setJson(json).build();
+        assertEquals(parsed.getReplicaSet().size(), 2);
+        final UserObjectKeyBase parsedReplica = parsed.getReplicaSet().get(1);
+        assertNull(parsedReplica.getSettings().getApiKey());
+        assertEquals(parsedReplica.getEndpointInfo().getHostname(), "site2.enigmabridge.com");
+
+        // The same settings on the primary are rejected.
+        json.getJSONObject(UserObjectInfoBase.FIELD_SETTINGS).remove(EBSettingsBase.FIELD_APIKEY);
+        try {
+            new UserObjectKeyBase.Builder().setJson(json).build();
+            throw new AssertionError("Primary settings without API key accepted");
+        } catch(IllegalArgumentException e){
+            // Expected.
+        }
+    }
+
+    private static UserObjectKeyBase buildUo(int i){
+        return newUoBuilder(i).build();
+    }
+
+    private static UserObjectKeyBase.Builder newUoBuilder(int i){
+        return new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES + i)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET);
+    }
+}
@@ -0,0 +1,191 @@
+package com.enigmabridge;
+
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBConnectionSettings;
+import com.enigmabridge.misc.EBLoopbackEndpoint;
+import com.enigmabridge.misc.EBTestingUtils;
+import com.enigmabridge.provider.EBSecretKeyFactory;
+import com.enigmabridge.provider.EBSymmetricKey;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.rsa.EBRSAPrivateKey;
+import com.enigmabridge.provider.specs.EBConfigurationUOKeySpec;
+import com.enigmabridge.provider.specs.EBJSONEncodedUOKeySpec;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Provider service registration and SPI instantiation.
+ */
+public class EnigmaProviderTest {
+    private EBLoopbackEndpoint endpoint;
+    private EnigmaProvider provider;
+    private EBRSAPrivateKey ebKey;
+    private KeyPair keyPair;
+    private EBSymmetricKey aesKey;
+    private final byte[] aesKeyData = new byte[16];
+
+    @BeforeClass(alwaysRun = true)
+    public void setUpClass() throws Exception {
+        final KeyPairGenerator kpGen = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+        kpGen.initialize(2048);
+        keyPair = kpGen.generateKeyPair();
+        final RSAPrivateCrtKey rsaKey = (RSAPrivateCrtKey) keyPair.getPrivate();
+
+        final UserObjectKeyBase uo = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_RSA2k)
+                .setUserObjectType(UserObjectType.TYPE_RSA2048DECRYPT_NOPAD)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("1234567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("2224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("RSA")
+                .setKeyLength(2048)
+                .setKeyType(UserObjectKeyType.PRIVATE)
+                .build();
+
+        final UserObjectKeyBase uoAes = new UserObjectKeyBase.Builder()
+                .setUoid(EBTestingUtils.UOID_AES)
+                .setUserObjectType(UserObjectType.TYPE_PLAINAES)
+                .setCommKeys(new EBCommKeys()
+                        .setEncKey("e134567890123456789012345678901234567890123456789012345678901234")
+                        .setMacKey("e224262820223456789012345678901234567890123456789012345678901234"))
+                .setAlgorithm("AES")
+                .setKeyLength(128)
+                .setKeyType(UserObjectKeyType.SECRET)
+                .build();
+
+        new Random(1).nextBytes(aesKeyData);
+        endpoint = new EBLoopbackEndpoint()
+                .addUo(uo, rsaKey.getModulus(), rsaKey.getPrivateExponent())
+                .addUo(uoAes, aesKeyData)
+                .start();
+
+        final EBEngine engine = new EBEngine();
+        engine.setDefaultSettings(new EBSettingsBase.Builder()
+                .setApiKey(EBTestingUtils.API_KEY)
+                .setEndpointInfo(endpoint.getEndpointInfo())
+                .setConnectionSettings(new EBConnectionSettings().setMethod(EBCommUtils.METHOD_POST))
+                .build());
+
+        provider = new EnigmaProvider(engine);
+        ebKey = new EBRSAPrivateKey.Builder()
+                .setUo(uo)
+                .setEngine(engine)
+                .setModulus(rsaKey.getModulus())
+                .setPublicExponent(rsaKey.getPublicExponent())
+                .build();
+
+        aesKey = new EBSymmetricKey.Builder()
+                .setUo(uoAes)
+                .setEngine(engine)
+                .build();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void tearDownClass() throws Exception {
+        if (endpoint != null){
+            endpoint.stop();
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testAliases() throws Exception {
+        // Alias resolves to the implementation class of the target.
+        final Provider.Service alias = provider.getService("Cipher", "AESKWEB");
+        assertNotNull(alias);
+        assertEquals(alias.getClassName(), provider.getService("Cipher", "AESEBWRAP").getClassName());
+        assertTrue(alias.getClassName().endsWith("$EBWrap"), alias.getClassName());
+        assertNotNull(Cipher.getInstance("AESKWEB", provider));
+
+        // Aliases differing only in case do not replace the target.
+        final Provider.Service keyStore = provider.getService("KeyStore", "BouncyCastle");
+        assertNotNull(keyStore);
+        assertTrue(keyStore.getClassName().endsWith("BcKeyStoreSpi$BouncyCastleStore"), keyStore.getClassName());
+        assertNotNull(KeyStore.getInstance("BOUNCYCASTLE", provider));
+    }
+
+    @Test(groups = {"basic"})
+    public void testBCRegisteredOnConstruction() throws Exception {
+        Security.removeProvider(BouncyCastleProvider.PROVIDER_NAME);
+        try {
+            // No EB service looked up yet, EB code relies on BC by name.
+            new EnigmaProvider(provider.getEngine());
+            assertNotNull(Security.getProvider(BouncyCastleProvider.PROVIDER_NAME));
+            assertNotNull(KeyFactory.getInstance("RSA", BouncyCastleProvider.PROVIDER_NAME));
+        } finally {
+            if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null){
+                Security.addProvider(new BouncyCastleProvider());
+            }
+        }
+    }
+
+    @Test(groups = {"basic"})
+    public void testNoArgSpi() throws Exception {
+        // Signature SPIs have no (Provider) constructor, engine comes from the key.
+        final Signature signer = Signature.getInstance("SHA256withRSA", provider);
+        assertEquals(signer.getProvider(), provider);
+
+        final byte[] message = "no-arg SPI constructor".getBytes("UTF-8");
+        signer.initSign(ebKey);
+        signer.update(message);
+        final byte[] signature = signer.sign();
+
+        final Signature verifier = Signature.getInstance("SHA256withRSA", "SunRsaSign");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(message);
+        assertTrue(verifier.verify(signature));
+
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update("another message".getBytes("UTF-8"));
+        assertFalse(verifier.verify(signature));
+    }
+
+    @Test(groups = {"basic"})
+    public void testSecretKeyFromSpecs() throws Exception {
+        final EBJSONEncodedUOKeySpec jsonSpec = (EBJSONEncodedUOKeySpec) SecretKeyFactory.getInstance("AES", provider)
+                .getKeySpec(aesKey, EBJSONEncodedUOKeySpec.class);
+        final EBConfigurationUOKeySpec configSpec = new EBConfigurationUOKeySpec(new EBURLConfig.Builder()
+                .setFromEngine(provider.getEngine())
+                .addElement(aesKey, EBSecretKeyFactory.FIELD_SYMMETRIC_KEY)
+                .build()
+                .toString());
+
+        // Fresh factory for each spec, the first call initializes the engine.
+        checkSecretKey(SecretKeyFactory.getInstance("AES", provider).generateSecret(jsonSpec));
+        checkSecretKey(SecretKeyFactory.getInstance("AES", provider).generateSecret(configSpec));
+    }
+
+    private void checkSecretKey(SecretKey key) throws Exception {
+        assertTrue(key instanceof EBSymmetricKey);
+        assertTrue(((EBSymmetricKey) key).getEBEngine() == provider.getEngine(), "Key not bound to the provider engine");
+
+        final byte[] block = new byte[16];
+        final Cipher ref = Cipher.getInstance("AES/ECB/NoPadding");
+        ref.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKeyData, "AES"));
+
+        final Cipher eb = Cipher.getInstance("AES/ECB/NoPadding", provider);
+        eb.init(Cipher.ENCRYPT_MODE, key);
+        assertTrue(Arrays.equals(eb.doFinal(block), ref.doFinal(block)));
+    }
+}
@@ -0,0 +1,171 @@
+package com.enigmabridge.misc;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures bytes allocated and CPU time consumed by the calling thread, per named stage.
+ * Uses HotSpot per-thread allocation counters, work done on other threads (e.g., HTTP server) is not counted.
+ *
+ * Each stage is run for warm-up iterations first (class loading, JIT), then measured iterations are averaged.
+ * Budgets are checked per operation, exceeded budget fails with the breakdown of all stages measured so far.
+ */
+public class EBAllocationMeter {
+    /**
+     * Multiplies all budgets, for slower or instrumented environments.
+     */
+    public static final String PROPERTY_BUDGET_SCALE = "eb.test.budgetScale";
+
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+    private final int warmup;
+    private final int iterations;
+    private final double budgetScale;
+
+    /**
+     * Measured work.
+     */
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    /**
+     * Per operation averages of one stage.
+     */
+    public static class Stage {
+        private final String name;
+        private final long bytesPerOp;
+        private final long cpuNanosPerOp;
+        private final int iterations;
+
+        public Stage(String name, long bytesPerOp, long cpuNanosPerOp, int iterations) {
+            this.name = name;
+            this.bytesPerOp = bytesPerOp;
+            this.cpuNanosPerOp = cpuNanosPerOp;
+            this.iterations = iterations;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        public long getCpuNanosPerOp() {
+            return cpuNanosPerOp;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+    }
+
+    public EBAllocationMeter(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.budgetScale = Double.parseDouble(System.getProperty(PROPERTY_BUDGET_SCALE, "1.0"));
+        this.threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threadBean.isThreadAllocatedMemorySupported()){
+            throw new UnsupportedOperationException("Thread allocated memory is not supported by the JVM");
+        }
+
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        if (threadBean.isCurrentThreadCpuTimeSupported()){
+            threadBean.setThreadCpuTimeEnabled(true);
+        }
+    }
+
+    /**
+     * Checks whether the JVM provides per-thread allocation counters.
+     * @return true if supported
+     */
+    public static boolean isSupported(){
+        try {
+            final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            return bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported();
+        } catch(Throwable t){
+            // com.sun.management not available on this JVM.
+            return false;
+        }
+    }
+
+    /**
+     * Runs the task warm-up and measured iterations on the calling thread, records the stage.
+     *
+     * @param name stage name
+     * @param task measured work, one operation per run
+     * @return measured stage
+     * @throws Exception task exception
+     */
+    public Stage measure(String name, Task task) throws Exception {
+        for(int i = 0; i < warmup; i++){
+            task.run();
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final boolean cpu = threadBean.isCurrentThreadCpuTimeSupported();
+        final long bytesStart = threadBean.getThreadAllocatedBytes(threadId);
+        final long cpuStart = cpu ? threadBean.getCurrentThreadCpuTime() : 0;
+
+        for(int i = 0; i < iterations; i++){
+            task.run();
+        }
+
+        final long cpuNanos = cpu ? threadBean.getCurrentThreadCpuTime() - cpuStart : 0;
+        final long bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesStart;
+
+        final Stage stage = new Stage(name, bytes / iterations, cpuNanos / iterations, iterations);
+        stages.put(name, stage);
+        return stage;
+    }
+
+    /**
+     * Checks stage budgets, throws AssertionError with the breakdown if exceeded.
+     *
+     * @param name stage name
+     * @param bytesPerOp allowed allocated bytes per operation
+     * @param cpuNanosPerOp allowed CPU time per operation, 0 not to check
+     */
+    public void assertBudget(String name, long bytesPerOp, long cpuNanosPerOp){
+        final Stage stage = stages.get(name);
+        if (stage == null){
+            throw new IllegalArgumentException("Stage was not measured: " + name);
+        }
+
+        final long bytesLimit = (long) (bytesPerOp * budgetScale);
+        final long cpuLimit = (long) (cpuNanosPerOp * budgetScale);
+        final boolean bytesExceeded = stage.getBytesPerOp() > bytesLimit;
+        final boolean cpuExceeded = cpuLimit > 0 && stage.getCpuNanosPerOp() > cpuLimit;
+        if (!bytesExceeded && !cpuExceeded){
+            return;
+        }
+
+        throw new AssertionError(String.format(Locale.ROOT,
+                "Budget of %s exceeded: %d B/op (budget %d B/op), %.1f us/op CPU (budget %.1f us/op)%n%s",
+                name, stage.getBytesPerOp(), bytesLimit,
+                stage.getCpuNanosPerOp() / 1000.0, cpuLimit / 1000.0,
+                getBreakdown()));
+    }
+
+    /**
+     * @return per operation allocations and CPU time of all measured stages
+     */
+    public String getBreakdown(){
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-32s %12s %12s%n", "stage", "B/op", "CPU us/op"));
+        for(Stage stage : stages.values()){
+            sb.append(String.format(Locale.ROOT, "%-32s %12d %12.1f%n",
+                    stage.getName(), stage.getBytesPerOp(), stage.getCpuNanosPerOp() / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    public Map<String, Stage> getStages() {
+        return stages;
+    }
+}
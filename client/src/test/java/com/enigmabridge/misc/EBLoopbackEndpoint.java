@@ -0,0 +1,186 @@
+package com.enigmabridge.misc;
+
+import com.enigmabridge.EBEndpointInfo;
+import com.enigmabridge.EBUtils;
+import com.enigmabridge.UserObjectInfo;
+import com.enigmabridge.comm.EBCommStatus;
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBProcessDataCipher;
+import com.enigmabridge.comm.EBResponseParserBase;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ProcessData endpoint on the loopback interface, for tests not needing the real service.
+ *
+ * Request is decrypted with comm keys of the registered UO, response carries the request data,
+ * the raw RSA private operation result if the UO was registered with the private key,
+ * or AES-CBC with zero IV of the data if the UO was registered with the AES key (PLAINAES encrypts, PLAINAESDECRYPT decrypts).
+ */
+public class EBLoopbackEndpoint {
+    private final Map<Long, UserObjectInfo> uos = new ConcurrentHashMap<Long, UserObjectInfo>();
+    private final Map<Long, BigInteger[]> rsaKeys = new ConcurrentHashMap<Long, BigInteger[]>();
+    private final Map<Long, byte[]> aesKeys = new ConcurrentHashMap<Long, byte[]>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public EBLoopbackEndpoint addUo(UserObjectInfo uo){
+        uos.put(uo.getUoid(), uo);
+        return this;
+    }
+
+    public EBLoopbackEndpoint addUo(UserObjectInfo uo, BigInteger modulus, BigInteger privateExponent){
+        rsaKeys.put(uo.getUoid(), new BigInteger[]{modulus, privateExponent});
+        return addUo(uo);
+    }
+
+    public EBLoopbackEndpoint addUo(UserObjectInfo uo, byte[] aesKey){
+        aesKeys.put(uo.getUoid(), aesKey.clone());
+        return addUo(uo);
+    }
+
+    public synchronized EBLoopbackEndpoint start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 64);
+        executor = Executors.newFixedThreadPool(2);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange, 200, handleRequest(exchange));
+                } catch(Exception e){
+                    respond(exchange, 500, "{}");
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+
+        server.start();
+        return this;
+    }
+
+    public synchronized void stop(){
+        if (server != null){
+            server.stop(0);
+            server = null;
+        }
+
+        if (executor != null){
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public EBEndpointInfo getEndpointInfo(){
+        return new EBEndpointInfo("http", "127.0.0.1", server.getAddress().getPort());
+    }
+
+    private String handleRequest(HttpExchange exchange) throws Exception {
+        // Path: apiVersion/apiBlock/function/nonce[/data]
+        final String[] segments = exchange.getRequestURI().getPath().split("/");
+        final String data = "POST".equalsIgnoreCase(exchange.getRequestMethod())
+                ? new JSONObject(readAll(exchange.getRequestBody())).getString("data")
+                : segments[segments.length - 1];
+
+        final JSONObject resp = new JSONObject();
+        resp.put(EBResponseParserBase.FIELD_FUNCTION, segments.length > 3 ? segments[3] : "ProcessData");
+        resp.put(EBResponseParserBase.FIELD_STATUS, String.format("%04x", EBCommStatus.SW_STAT_OK & 0xffff));
+        resp.put(EBResponseParserBase.FIELD_RESULT, processData(EBUtils.hex2byte(data)));
+        return resp.toString();
+    }
+
+    private String processData(byte[] request) throws Exception {
+        final int commOffset = EBCommUtils.UO_SECTION_SIZE_LENGTH + EBCommUtils.getShort(request, 0);
+
+        UserObjectInfo uo = null;
+        byte[] plain = null;
+        for(UserObjectInfo cur : uos.values()){
+            try {
+                plain = EBProcessDataCipher.initCipher(false, cur.getCommKeys())
+                        .processBuffer(request, commOffset, request.length - commOffset);
+            } catch(Exception e){
+                continue;
+            }
+
+            if (EBCommUtils.getInt(plain, 1) == (int) cur.getUoid()){
+                uo = cur;
+                break;
+            }
+        }
+
+        if (uo == null){
+            throw new IOException("No registered UO matches the request");
+        }
+
+        // Response: flag, UOID, nonce + 1, data.
+        plain[0] = EBCommUtils.OUT_DATA_FLAG;
+        final int nonceOffset = 1 + EBCommUtils.OBJECTID_LENGTH;
+        final int dataOffset = nonceOffset + EBCommUtils.PROCESSDATA_FRESHNESS_NONCE_LENGTH;
+        for(int i = nonceOffset; i < dataOffset; i++){
+            plain[i] += 1;
+        }
+
+        final BigInteger[] rsaKey = rsaKeys.get(uo.getUoid());
+        if (rsaKey != null){
+            final byte[] res = new BigInteger(1, Arrays.copyOfRange(plain, dataOffset, plain.length))
+                    .modPow(rsaKey[1], rsaKey[0]).toByteArray();
+            final int copy = Math.min(res.length, plain.length - dataOffset);
+            Arrays.fill(plain, dataOffset, plain.length, (byte) 0);
+            System.arraycopy(res, res.length - copy, plain, plain.length - copy, copy);
+        }
+
+        final byte[] aesKey = aesKeys.get(uo.getUoid());
+        if (aesKey != null){
+            final Cipher aes = Cipher.getInstance("AES/CBC/NoPadding");
+            aes.init(uo.getUserObjectType().isDecryptionObject() ? Cipher.DECRYPT_MODE : Cipher.ENCRYPT_MODE,
+                    new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(new byte[16]));
+            aes.doFinal(plain, dataOffset, plain.length - dataOffset, plain, dataOffset);
+        }
+
+        final byte[] encrypted = EBProcessDataCipher.initCipher(true, uo.getCommKeys())
+                .processBuffer(plain, 0, plain.length);
+
+        final byte[] response = new byte[EBCommUtils.UO_SECTION_SIZE_LENGTH + encrypted.length];
+        System.arraycopy(encrypted, 0, response, EBCommUtils.UO_SECTION_SIZE_LENGTH, encrypted.length);
+        return EBUtils.byte2hex(response);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        final OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    private static String readAll(InputStream is) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buff = new byte[8192];
+        int read;
+        while((read = is.read(buff)) >= 0){
+            bos.write(buff, 0, read);
+        }
+        return bos.toString("UTF-8");
+    }
+}
@@ -2,10 +2,15 @@ package com.enigmabridge.misc;
 
 import com.enigmabridge.EBUtils;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
 
@@ -31,6 +36,38 @@ public class EBTestingUtils {
     public static final String RSA1k_MODULUS = "00c4bdbd7a912dca46e045e5787fc9bc43e7de4bc86155b3b4e39b1533ea3e2a9fafafe63389657f4ff971e2d0cf636bed5d2f183eac03eb63ad37591055cbf91fdd848652fcc1bbd01c74e01e53337337a2d749a1f07be7f19fce450d551955ce4e36ccc4d143f623544ca17bb42dbfeabc08fef6bbeefc68be8971caa3463d87";
     public static final String RSA2k_MODULUS = "008bc31e1e1986665f2cea471cb5a3315c733672b3ce621b0a1dff711523ef2d0d79df1eca52d2222b7331fe1bd79605a12fb9c9f00e2a34bc7e4e773128816cb6930aab8cd8a7fbd4d50e0b98fa7001e6a5eada763d4eebe103616ab54be0bd0d01dcc25787d36ec86852cd7c2bedd8fcdd0647c7ba4c54df19ccb0848a1e4023967b6c12817f42d6b94bb9b97d994d02eba018bf57878cf16c186674626482947de05258696274a7ab33ab30519c609ac9e360ced6b26932325a3702056382c01bd377cc1e9e19fdb99ebb2369ee46de17b30ce26dc03acb2c16e8472e026249a249dea63dee8811cbf3329d80dfbb4d11ec71267e8c1a64a3d576520f30d901";
 
+    // Self-signed EC roots for trust and key store tests.
+    public static final String TEST_ROOT_CERT1 =
+            "-----BEGIN CERTIFICATE-----\n" +
+            "MIIBiDCCAS+gAwIBAgIUBF8JlF2hRydCoRMAO5RgzndVRbwwCgYIKoZIzj0EAwIw\n" +
+            "GTEXMBUGA1UEAwwORUIgVGVzdCBSb290IDEwIBcNMjYxMDE5MTUwNDE0WhgPMjEy\n" +
+            "NjA5MjUxNTA0MTRaMBkxFzAVBgNVBAMMDkVCIFRlc3QgUm9vdCAxMFkwEwYHKoZI\n" +
+            "zj0CAQYIKoZIzj0DAQcDQgAElhCYzr0DR9KGJCpeITKFTscYBrlrU/8tRGfqI+p3\n" +
+            "9kHyem6VIVz2/CuxilPrDEd8Qv/88AiGM8qwEhN1rcgL+qNTMFEwHQYDVR0OBBYE\n" +
+            "FPTORRtt21jMRWSjfrlC0QnnioOMMB8GA1UdIwQYMBaAFPTORRtt21jMRWSjfrlC\n" +
+            "0QnnioOMMA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDRwAwRAIgOm8SS0Wq\n" +
+            "u4fNRTvFZ8RjAgdqgeUkdbUw3IxAD258KHYCIA4lH4qbEcK3tvRuIGWYEE6fhcBf\n" +
+            "Xt/Ri2MVndP4qNCn\n" +
+            "-----END CERTIFICATE-----\n";
+
+    public static final String TEST_ROOT_CERT2 =
+            "-----BEGIN CERTIFICATE-----\n" +
+            "MIIBijCCAS+gAwIBAgIULWZrcZXIdc/N3WhOK0g/SUovCawwCgYIKoZIzj0EAwIw\n" +
+            "GTEXMBUGA1UEAwwORUIgVGVzdCBSb290IDIwIBcNMjYxMDE5MTUwNDE0WhgPMjEy\n" +
+            "NjA5MjUxNTA0MTRaMBkxFzAVBgNVBAMMDkVCIFRlc3QgUm9vdCAyMFkwEwYHKoZI\n" +
+            "zj0CAQYIKoZIzj0DAQcDQgAEWxIPynyr9iqTaRE8Th9TvNMid4CRQ6t4Gjaico7J\n" +
+            "Jgc7R449zziVsLxpG0FZ0RFXnoQa9BWgvPf2B8BzelXBgqNTMFEwHQYDVR0OBBYE\n" +
+            "FIDmBEJALhCgj3YPS8Yoa9shfkY3MB8GA1UdIwQYMBaAFIDmBEJALhCgj3YPS8Yo\n" +
+            "a9shfkY3MA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDSQAwRgIhAL9GaSJD\n" +
+            "MAFfwQeQTACHq4N+pOs+KoEy25etkov2p2emAiEA8q6nm2lSu1tKNDrWTatiese9\n" +
+            "axmnUWgq2TMIQb+QytM=\n" +
+            "-----END CERTIFICATE-----\n";
+
+    public static X509Certificate createCertificate(String pem) throws CertificateException {
+        return (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(pem.getBytes(Charset.forName("US-ASCII"))));
+    }
+
     public static PublicKey createRSAPublicKey(BigInteger modulus, BigInteger publicExponent) throws NoSuchAlgorithmException, InvalidKeySpecException {
         final RSAPublicKeySpec spec = new RSAPublicKeySpec(modulus, publicExponent);
 
@@ -0,0 +1,170 @@
+package com.enigmabridge.loadgen;
+
+/**
+ * Log-linear latency histogram in microseconds.
+ *
+ * Values below 1024 us are recorded exactly, larger values with relative error below 0.2%.
+ * Not thread safe, each worker records to its own histogram, histograms are merged by add().
+ */
+public class EBLatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 10;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+
+    /**
+     * Largest recordable value, about 73 minutes. Larger values are clamped.
+     */
+    public static final long MAX_VALUE = (1L << 32) - 1;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (32 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private double sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a single value.
+     * @param micros latency in microseconds
+     */
+    public void record(long micros){
+        record(micros, 1);
+    }
+
+    /**
+     * Records a value with the given count.
+     * @param micros latency in microseconds
+     * @param count number of occurrences
+     */
+    public void record(long micros, long count){
+        final long value = Math.max(0, Math.min(MAX_VALUE, micros));
+        counts[indexOf(value)] += count;
+        totalCount += count;
+        sum += (double) value * count;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Records a value and back-fills the samples that were not taken while the operation was stalled,
+     * assuming samples should have been taken every expectedInterval.
+     * Corrects coordinated omission of the closed model.
+     *
+     * @param micros latency in microseconds
+     * @param expectedInterval expected interval between samples in microseconds, 0 disables correction
+     */
+    public void recordCorrected(long micros, long expectedInterval){
+        record(micros);
+        if (expectedInterval <= 0 || micros <= expectedInterval){
+            return;
+        }
+
+        for(long missing = micros - expectedInterval; missing >= expectedInterval; missing -= expectedInterval){
+            record(missing);
+        }
+    }
+
+    /**
+     * Adds all values of the other histogram to this one.
+     * @param other histogram to add
+     */
+    public void add(EBLatencyHistogram other){
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            counts[i] += other.counts[i];
+        }
+
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns a copy with coordinated omission corrected, see {@link #recordCorrected(long, long)}.
+     * @param expectedInterval expected interval between samples in microseconds
+     * @return corrected histogram
+     */
+    public EBLatencyHistogram copyCorrected(long expectedInterval){
+        final EBLatencyHistogram res = new EBLatencyHistogram();
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            final long count = counts[i];
+            if (count == 0){
+                continue;
+            }
+
+            final long value = valueOf(i);
+            res.record(value, count);
+            if (expectedInterval <= 0){
+                continue;
+            }
+
+            for(long missing = value - expectedInterval; missing >= expectedInterval; missing -= expectedInterval){
+                res.record(missing, count);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Returns value at the given percentile. Value is the highest value equivalent to the bucket.
+     * @param percentile percentile, 0..100
+     * @return latency in microseconds
+     */
+    public long getValueAtPercentile(double percentile){
+        if (totalCount == 0){
+            return 0;
+        }
+
+        final double p = Math.max(0.0, Math.min(100.0, percentile));
+        final long target = Math.max(1, (long) Math.ceil(p / 100.0 * totalCount));
+
+        long acc = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            acc += counts[i];
+            if (acc >= target){
+                return Math.min(max, valueOf(i));
+            }
+        }
+
+        return max;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public double getMean(){
+        return totalCount == 0 ? 0.0 : sum / totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    static int indexOf(long value){
+        if (value < SUB_BUCKET_COUNT){
+            return (int) value;
+        }
+
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) ((value >> shift) - SUB_BUCKET_HALF);
+    }
+
+    /**
+     * Highest value falling to the bucket.
+     */
+    static long valueOf(int index){
+        if (index < SUB_BUCKET_COUNT){
+            return index;
+        }
+
+        final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        final long sub = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
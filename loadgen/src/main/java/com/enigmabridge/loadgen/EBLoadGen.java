@@ -0,0 +1,273 @@
+package com.enigmabridge.loadgen;
+
+import com.enigmabridge.EBEndpointInfo;
+import com.enigmabridge.EBEngine;
+import com.enigmabridge.EBSettingsBase;
+import com.enigmabridge.UserObjectKeyBase;
+import com.enigmabridge.comm.EBConnectionSettings;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.security.Security;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Load generator for the EB client, drives ProcessData, provider Cipher / Signature and UO creation
+ * against the real service or the local mock endpoint and reports throughput,
+ * latency percentiles and errors by EB status.
+ *
+ * <pre>
+ *   java -jar loadgen-jar-with-dependencies.jar --endpoint https://site2.enigmabridge.com:11180 \
+ *        --api-key KEY --uo-file uos.json --scenario processdata --concurrency 16 --rate 200 --duration 60
+ *
+ *   java -jar loadgen-jar-with-dependencies.jar --mock --mock-latency-ms 20 --uo-file uos.json --concurrency 8
+ * </pre>
+ */
+public class EBLoadGen {
+    public static final String MOCK_API_KEY = "LOADGEN";
+    public static final String FIELD_MODULUS = "modulus";
+
+    protected final EBLoadGenConfig config;
+
+    public EBLoadGen(EBLoadGenConfig config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final EBLoadGenConfig config;
+        try {
+            config = parseArgs(args);
+        } catch(IllegalArgumentException e){
+            System.err.println(e.getMessage());
+            usage(System.err);
+            System.exit(1);
+            return;
+        }
+
+        if (config == null){
+            usage(System.out);
+            return;
+        }
+
+        final EBLoadResult result = new EBLoadGen(config).run(System.err);
+        result.print(System.out);
+        System.exit(0);
+    }
+
+    /**
+     * Runs the load with the configuration.
+     *
+     * @param progress stream for progress output, may be null
+     * @return result
+     * @throws IOException on initialization failure
+     * @throws InterruptedException if interrupted
+     */
+    public EBLoadResult run(PrintStream progress) throws IOException, InterruptedException {
+        Security.addProvider(new BouncyCastleProvider());
+
+        final List<JSONObject> uos = config.getUoFile() == null
+                ? Collections.<JSONObject>emptyList()
+                : EBLoadScenarios.parseUos(readFile(config.getUoFile()));
+
+        EBMockServer mock = null;
+        String endpoint = config.getEndpoint();
+        String apiKey = config.getApiKey();
+        if (config.isMock()){
+            final EBMockServer.Builder mockBld = new EBMockServer.Builder()
+                    .setPort(config.getMockPort())
+                    .setThreads(Math.max(16, config.getConcurrency()))
+                    .setLatencyMillis(config.getMockLatencyMillis())
+                    .setErrorRate(config.getMockErrorRate())
+                    .setCompactEncoding(!config.isMockHexOnly());
+
+            for(JSONObject json : uos){
+                final UserObjectKeyBase uo = new UserObjectKeyBase.Builder().setJson(EBLoadScenarios.getUoJson(json)).build();
+                mockBld.addUo(uo);
+                if (json.has(EBMockServer.FIELD_PRIVATE_EXPONENT)){
+                    mockBld.addRsaKey(uo.getUoid(),
+                            new BigInteger(json.getString(FIELD_MODULUS), 16),
+                            new BigInteger(json.getString(EBMockServer.FIELD_PRIVATE_EXPONENT), 16));
+                }
+                if (uo.isReplicated()){
+                    for(UserObjectKeyBase replica : uo.getReplicaSet().getReplicas()){
+                        mockBld.addUo(replica);
+                    }
+                }
+            }
+
+            mock = mockBld.build();
+            mock.start();
+            endpoint = mock.getConnectionString();
+            apiKey = apiKey == null ? MOCK_API_KEY : apiKey;
+        }
+
+        try {
+            final EBConnectionSettings settings = new EBConnectionSettings();
+            if (config.getMethod() != null){
+                settings.setMethod(config.getMethod());
+            }
+            if (config.getDataEncoding() != null){
+                settings.setDataEncoding(config.getDataEncoding());
+            }
+
+            final EBEngine engine = new EBEngine();
+            engine.setDefaultSettings(new EBSettingsBase.Builder()
+                    .setApiKey(apiKey)
+                    .setEndpointInfo(new EBEndpointInfo(endpoint))
+                    .setConnectionSettings(settings)
+                    .build());
+
+            final EBLoadScenario scenario = EBLoadScenarios.create(config, engine, uos);
+            final EBLoadResult result = new EBLoadRunner(config, scenario)
+                    .setProgress(progress)
+                    .run();
+
+            if (config.getJsonOutput() != null){
+                writeFile(config.getJsonOutput(), result.toJSON(null).toString(2));
+            }
+
+            return result;
+
+        } finally {
+            if (mock != null){
+                mock.stop();
+            }
+        }
+    }
+
+    /**
+     * Parses command line arguments.
+     *
+     * @param args arguments
+     * @return configuration, null if help was requested
+     * @throws IllegalArgumentException on invalid arguments
+     */
+    public static EBLoadGenConfig parseArgs(String[] args){
+        final EBLoadGenConfig.Builder bld = new EBLoadGenConfig.Builder();
+        for(int i = 0; i < args.length; i++){
+            final String arg = args[i];
+            if ("--help".equals(arg) || "-h".equals(arg)){
+                return null;
+            } else if ("--mock".equals(arg)){
+                bld.setMock(true);
+                continue;
+            } else if ("--mock-hex-only".equals(arg)){
+                bld.setMockHexOnly(true);
+                continue;
+            }
+
+            if (i + 1 >= args.length){
+                throw new IllegalArgumentException("Missing value of " + arg);
+            }
+
+            final String val = args[++i];
+            try {
+                if ("--scenario".equals(arg)){
+                    bld.setScenario(val.toLowerCase());
+                } else if ("--endpoint".equals(arg)){
+                    bld.setEndpoint(val);
+                } else if ("--api-key".equals(arg)){
+                    bld.setApiKey(val);
+                } else if ("--method".equals(arg)){
+                    bld.setMethod(val.toUpperCase());
+                } else if ("--encoding".equals(arg)){
+                    bld.setDataEncoding(val.toLowerCase());
+                } else if ("--uo-file".equals(arg)){
+                    bld.setUoFile(val);
+                } else if ("--concurrency".equals(arg)){
+                    bld.setConcurrency(Integer.parseInt(val));
+                } else if ("--rate".equals(arg)){
+                    bld.setRate(Double.parseDouble(val));
+                } else if ("--payload".equals(arg)){
+                    bld.setPayloadSize(Integer.parseInt(val));
+                } else if ("--duration".equals(arg)){
+                    bld.setDurationMillis((long) (Double.parseDouble(val) * 1000));
+                } else if ("--warmup".equals(arg)){
+                    bld.setWarmupMillis((long) (Double.parseDouble(val) * 1000));
+                } else if ("--co-interval-us".equals(arg)){
+                    bld.setExpectedIntervalMicros(Long.parseLong(val));
+                } else if ("--cipher".equals(arg)){
+                    bld.setCipherAlgorithm(val);
+                } else if ("--signature".equals(arg)){
+                    bld.setSignatureAlgorithm(val);
+                } else if ("--mock-port".equals(arg)){
+                    bld.setMockPort(Integer.parseInt(val));
+                } else if ("--mock-latency-ms".equals(arg)){
+                    bld.setMockLatencyMillis(Long.parseLong(val));
+                } else if ("--mock-error-rate".equals(arg)){
+                    bld.setMockErrorRate(Double.parseDouble(val));
+                } else if ("--json".equals(arg)){
+                    bld.setJsonOutput(val);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } catch(NumberFormatException e){
+                throw new IllegalArgumentException("Invalid value of " + arg + ": " + val);
+            }
+        }
+
+        return bld.build();
+    }
+
+    public static void usage(PrintStream out){
+        out.println("Usage: EBLoadGen [options]");
+        out.println("  --scenario S          processdata (default), cipher, signature, createuo");
+        out.println("  --endpoint URL        EB endpoint, e.g., https://site2.enigmabridge.com:11180");
+        out.println("  --api-key KEY         API key");
+        out.println("  --method M            POST (default) or GET");
+        out.println("  --encoding E          ProcessData wire encoding, hex (default) or base64url, negotiated");
+        out.println("  --uo-file FILE        UO set, JSON array of UO keys or {\"uos\": [...]}");
+        out.println("  --concurrency N       worker threads, default 4");
+        out.println("  --rate R              open model target ops/s, 0 = closed model (default)");
+        out.println("  --payload B           payload size in bytes, default 16");
+        out.println("  --duration S          measured duration in seconds, default 30");
+        out.println("  --warmup S            warm-up in seconds, not recorded, default 5");
+        out.println("  --co-interval-us U    closed model expected interval, default median service time");
+        out.println("  --cipher ALG          cipher scenario transformation, default AES/ECB/NoPadding");
+        out.println("  --signature ALG       signature scenario algorithm, default SHA256withRSA");
+        out.println("  --mock                run against local ProcessData mock endpoint, not for createuo,");
+        out.println("                        RSA keys need hex \"privateExponent\" in the UO file for signatures");
+        out.println("  --mock-port P         mock port, default ephemeral");
+        out.println("  --mock-latency-ms L   mock added latency");
+        out.println("  --mock-error-rate E   mock fraction of error responses, 0..1");
+        out.println("  --mock-hex-only       mock rejects compact encoding, for testing the hex fallback");
+        out.println("  --json FILE           write result as JSON, for comparing runs");
+    }
+
+    private static String readFile(String file) throws IOException {
+        final InputStream is = new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buff = new byte[8192];
+            int read;
+            while((read = is.read(buff)) >= 0){
+                bos.write(buff, 0, read);
+            }
+            return bos.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void writeFile(String file, String data) throws IOException {
+        final OutputStream os = new FileOutputStream(file);
+        try {
+            os.write(data.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    public EBLoadGenConfig getConfig() {
+        return config;
+    }
+}
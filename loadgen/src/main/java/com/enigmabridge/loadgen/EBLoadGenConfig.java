@@ -0,0 +1,362 @@
+package com.enigmabridge.loadgen;
+
+import com.enigmabridge.comm.EBDataEncoding;
+
+/**
+ * Load generator configuration.
+ *
+ * Rate 0 runs the closed model, each worker issues the next operation when the previous one finishes.
+ * Positive rate runs the open model, operations are scheduled at the fixed rate regardless of
+ * the response times and latency is measured from the scheduled start.
+ */
+public class EBLoadGenConfig {
+    public static final String SCENARIO_PROCESS_DATA = "processdata";
+    public static final String SCENARIO_CIPHER = "cipher";
+    public static final String SCENARIO_SIGNATURE = "signature";
+    public static final String SCENARIO_CREATE_UO = "createuo";
+
+    protected String scenario = SCENARIO_PROCESS_DATA;
+    protected String endpoint;
+    protected String apiKey;
+    protected String method;
+    protected String dataEncoding;
+    protected String uoFile;
+    protected int concurrency = 4;
+    protected double rate;
+    protected int payloadSize = 16;
+    protected long durationMillis = 30000;
+    protected long warmupMillis = 5000;
+    protected long expectedIntervalMicros;
+    protected String cipherAlgorithm = "AES/ECB/NoPadding";
+    protected String signatureAlgorithm = "SHA256withRSA";
+    protected boolean mock;
+    protected int mockPort;
+    protected long mockLatencyMillis;
+    protected double mockErrorRate;
+    protected boolean mockHexOnly;
+    protected String jsonOutput;
+
+    public static abstract class AbstractBuilder<T extends EBLoadGenConfig, B extends AbstractBuilder> {
+        public B setScenario(String scenario) {
+            getObj().setScenario(scenario);
+            return getThisBuilder();
+        }
+
+        public B setEndpoint(String endpoint) {
+            getObj().setEndpoint(endpoint);
+            return getThisBuilder();
+        }
+
+        public B setApiKey(String apiKey) {
+            getObj().setApiKey(apiKey);
+            return getThisBuilder();
+        }
+
+        public B setMethod(String method) {
+            getObj().setMethod(method);
+            return getThisBuilder();
+        }
+
+        public B setDataEncoding(String dataEncoding) {
+            getObj().setDataEncoding(dataEncoding);
+            return getThisBuilder();
+        }
+
+        public B setUoFile(String uoFile) {
+            getObj().setUoFile(uoFile);
+            return getThisBuilder();
+        }
+
+        public B setConcurrency(int concurrency) {
+            getObj().setConcurrency(concurrency);
+            return getThisBuilder();
+        }
+
+        public B setRate(double rate) {
+            getObj().setRate(rate);
+            return getThisBuilder();
+        }
+
+        public B setPayloadSize(int payloadSize) {
+            getObj().setPayloadSize(payloadSize);
+            return getThisBuilder();
+        }
+
+        public B setDurationMillis(long durationMillis) {
+            getObj().setDurationMillis(durationMillis);
+            return getThisBuilder();
+        }
+
+        public B setWarmupMillis(long warmupMillis) {
+            getObj().setWarmupMillis(warmupMillis);
+            return getThisBuilder();
+        }
+
+        public B setExpectedIntervalMicros(long expectedIntervalMicros) {
+            getObj().setExpectedIntervalMicros(expectedIntervalMicros);
+            return getThisBuilder();
+        }
+
+        public B setCipherAlgorithm(String cipherAlgorithm) {
+            getObj().setCipherAlgorithm(cipherAlgorithm);
+            return getThisBuilder();
+        }
+
+        public B setSignatureAlgorithm(String signatureAlgorithm) {
+            getObj().setSignatureAlgorithm(signatureAlgorithm);
+            return getThisBuilder();
+        }
+
+        public B setMock(boolean mock) {
+            getObj().setMock(mock);
+            return getThisBuilder();
+        }
+
+        public B setMockPort(int mockPort) {
+            getObj().setMockPort(mockPort);
+            return getThisBuilder();
+        }
+
+        public B setMockLatencyMillis(long mockLatencyMillis) {
+            getObj().setMockLatencyMillis(mockLatencyMillis);
+            return getThisBuilder();
+        }
+
+        public B setMockErrorRate(double mockErrorRate) {
+            getObj().setMockErrorRate(mockErrorRate);
+            return getThisBuilder();
+        }
+
+        public B setMockHexOnly(boolean mockHexOnly) {
+            getObj().setMockHexOnly(mockHexOnly);
+            return getThisBuilder();
+        }
+
+        public B setJsonOutput(String jsonOutput) {
+            getObj().setJsonOutput(jsonOutput);
+            return getThisBuilder();
+        }
+
+        public abstract T build();
+        public abstract B getThisBuilder();
+        public abstract T getObj();
+    }
+
+    public static class Builder extends AbstractBuilder<EBLoadGenConfig, Builder> {
+        private final EBLoadGenConfig parent = new EBLoadGenConfig();
+
+        @Override
+        public Builder getThisBuilder() {
+            return this;
+        }
+
+        @Override
+        public EBLoadGenConfig getObj() {
+            return parent;
+        }
+
+        @Override
+        public EBLoadGenConfig build() {
+            if (parent.concurrency <= 0){
+                throw new IllegalArgumentException("Concurrency has to be positive");
+            }
+
+            if (parent.rate < 0 || parent.durationMillis <= 0 || parent.warmupMillis < 0 || parent.payloadSize < 0){
+                throw new IllegalArgumentException("Rate, duration, warmup and payload size must not be negative");
+            }
+
+            if (parent.mockErrorRate < 0 || parent.mockErrorRate > 1){
+                throw new IllegalArgumentException("Mock error rate has to be in [0, 1]");
+            }
+
+            if (parent.dataEncoding != null && !EBDataEncoding.isSupported(parent.dataEncoding)){
+                throw new IllegalArgumentException("Unknown data encoding " + parent.dataEncoding);
+            }
+
+            if (!parent.mock && parent.endpoint == null){
+                throw new IllegalArgumentException("Endpoint has to be set if mock is not used");
+            }
+
+            if (parent.uoFile == null && !SCENARIO_CREATE_UO.equals(parent.scenario)){
+                throw new IllegalArgumentException("UO file has to be set for the scenario " + parent.scenario);
+            }
+
+            if (!SCENARIO_PROCESS_DATA.equals(parent.scenario)
+                    && !SCENARIO_CIPHER.equals(parent.scenario)
+                    && !SCENARIO_SIGNATURE.equals(parent.scenario)
+                    && !SCENARIO_CREATE_UO.equals(parent.scenario)){
+                throw new IllegalArgumentException("Unknown scenario " + parent.scenario);
+            }
+
+            if (parent.mock && SCENARIO_CREATE_UO.equals(parent.scenario)){
+                throw new IllegalArgumentException("Mock endpoint supports ProcessData only, not UO creation");
+            }
+
+            return parent;
+        }
+    }
+
+    public boolean isOpenModel(){
+        return rate > 0;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    protected void setScenario(String scenario) {
+        this.scenario = scenario;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    protected void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    protected void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    protected void setMethod(String method) {
+        this.method = method;
+    }
+
+    public String getUoFile() {
+        return uoFile;
+    }
+
+    protected void setUoFile(String uoFile) {
+        this.uoFile = uoFile;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    protected void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    protected void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    protected void setPayloadSize(int payloadSize) {
+        this.payloadSize = payloadSize;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    protected void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getWarmupMillis() {
+        return warmupMillis;
+    }
+
+    protected void setWarmupMillis(long warmupMillis) {
+        this.warmupMillis = warmupMillis;
+    }
+
+    public long getExpectedIntervalMicros() {
+        return expectedIntervalMicros;
+    }
+
+    protected void setExpectedIntervalMicros(long expectedIntervalMicros) {
+        this.expectedIntervalMicros = expectedIntervalMicros;
+    }
+
+    public String getCipherAlgorithm() {
+        return cipherAlgorithm;
+    }
+
+    protected void setCipherAlgorithm(String cipherAlgorithm) {
+        this.cipherAlgorithm = cipherAlgorithm;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    protected void setSignatureAlgorithm(String signatureAlgorithm) {
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    public boolean isMock() {
+        return mock;
+    }
+
+    protected void setMock(boolean mock) {
+        this.mock = mock;
+    }
+
+    public int getMockPort() {
+        return mockPort;
+    }
+
+    protected void setMockPort(int mockPort) {
+        this.mockPort = mockPort;
+    }
+
+    public long getMockLatencyMillis() {
+        return mockLatencyMillis;
+    }
+
+    protected void setMockLatencyMillis(long mockLatencyMillis) {
+        this.mockLatencyMillis = mockLatencyMillis;
+    }
+
+    public double getMockErrorRate() {
+        return mockErrorRate;
+    }
+
+    protected void setMockErrorRate(double mockErrorRate) {
+        this.mockErrorRate = mockErrorRate;
+    }
+
+    public String getDataEncoding() {
+        return dataEncoding;
+    }
+
+    protected void setDataEncoding(String dataEncoding) {
+        this.dataEncoding = dataEncoding;
+    }
+
+    public boolean isMockHexOnly() {
+        return mockHexOnly;
+    }
+
+    protected void setMockHexOnly(boolean mockHexOnly) {
+        this.mockHexOnly = mockHexOnly;
+    }
+
+    public String getJsonOutput() {
+        return jsonOutput;
+    }
+
+    protected void setJsonOutput(String jsonOutput) {
+        this.jsonOutput = jsonOutput;
+    }
+}
@@ -0,0 +1,15 @@
+package com.enigmabridge.loadgen;
+
+/**
+ * Single load operation, e.g., one ProcessData call.
+ * Instances are used by one worker thread only.
+ */
+public interface EBLoadOperation {
+    /**
+     * Executes the operation once.
+     *
+     * @return EB status of the operation, {@link com.enigmabridge.comm.EBCommStatus#SW_STAT_OK} on success
+     * @throws Exception failure, counted by the exception class
+     */
+    short execute() throws Exception;
+}
@@ -0,0 +1,198 @@
+package com.enigmabridge.loadgen;
+
+import com.enigmabridge.comm.EBCommStatus;
+import org.json.JSONObject;
+
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Result of the load run, merged from all workers.
+ *
+ * Response time histogram is corrected for coordinated omission:
+ * in the open model latency is measured from the scheduled start of the operation,
+ * in the closed model missing samples are back-filled with the expected interval.
+ * Service time histogram is the plain time spent in the operation.
+ */
+public class EBLoadResult {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9, 99.99, 100.0};
+    private static volatile Map<Short, String> statusNames;
+
+    protected final EBLoadGenConfig config;
+    protected final String scenario;
+    protected EBLatencyHistogram responseTime = new EBLatencyHistogram();
+    protected EBLatencyHistogram serviceTime = new EBLatencyHistogram();
+    protected final Map<String, Long> errors = new TreeMap<String, Long>();
+    protected long operations;
+    protected long measuredNanos;
+    protected long expectedIntervalMicros;
+
+    public EBLoadResult(EBLoadGenConfig config, String scenario) {
+        this.config = config;
+        this.scenario = scenario;
+    }
+
+    /**
+     * Returns name of the EB status code, e.g., SW_STAT_OK.
+     * @param status status code
+     * @return name of the EBCommStatus constant or hex code if unknown
+     */
+    public static String getStatusName(short status){
+        Map<Short, String> names = statusNames;
+        if (names == null){
+            names = new HashMap<Short, String>();
+            for(Field field : EBCommStatus.class.getFields()){
+                if (field.getType() != short.class || !Modifier.isStatic(field.getModifiers())){
+                    continue;
+                }
+
+                try {
+                    final Short value = field.getShort(null);
+                    // Prefer SW_ constants over classes, first one wins.
+                    final String cur = names.get(value);
+                    if (cur == null || (!cur.startsWith("SW_") && field.getName().startsWith("SW_"))){
+                        names.put(value, field.getName());
+                    }
+                } catch (IllegalAccessException e) {
+                    // Skip the field.
+                }
+            }
+            statusNames = names;
+        }
+
+        final String name = names.get(status);
+        return name != null ? name : String.format("0x%04X", status & 0xffff);
+    }
+
+    public void addErrors(Map<String, Long> workerErrors){
+        for(Map.Entry<String, Long> entry : workerErrors.entrySet()){
+            final Long cur = errors.get(entry.getKey());
+            errors.put(entry.getKey(), (cur == null ? 0L : cur) + entry.getValue());
+        }
+    }
+
+    public long getErrorCount(){
+        long res = 0;
+        for(Long count : errors.values()){
+            res += count;
+        }
+        return res;
+    }
+
+    /**
+     * @return completed operations per second in the measured window
+     */
+    public double getThroughput(){
+        return measuredNanos <= 0 ? 0.0 : operations * 1e9 / measuredNanos;
+    }
+
+    public void print(PrintStream out){
+        out.println(String.format("Scenario:     %s, %s model, concurrency %d%s",
+                scenario,
+                config.isOpenModel() ? "open" : "closed",
+                config.getConcurrency(),
+                config.isOpenModel() ? String.format(", target rate %.1f ops/s", config.getRate()) : ""));
+        out.println(String.format("Payload:      %d B", config.getPayloadSize()));
+        out.println(String.format("Duration:     %.1f s measured, %.1f s warm-up",
+                measuredNanos / 1e9, config.getWarmupMillis() / 1000.0));
+        out.println(String.format("Operations:   %d, errors %d (%.2f %%)",
+                operations, getErrorCount(), operations == 0 ? 0.0 : 100.0 * getErrorCount() / operations));
+        out.println(String.format("Throughput:   %.1f ops/s", getThroughput()));
+        if (!config.isOpenModel()){
+            out.println(String.format("CO interval:  %d us", expectedIntervalMicros));
+        }
+
+        out.println();
+        out.println(String.format("%-12s %14s %14s", "percentile", "response ms", "service ms"));
+        for(double p : PERCENTILES){
+            out.println(String.format("%-12s %14.3f %14.3f", formatPercentile(p),
+                    responseTime.getValueAtPercentile(p) / 1000.0,
+                    serviceTime.getValueAtPercentile(p) / 1000.0));
+        }
+        out.println(String.format("%-12s %14.3f %14.3f", "mean",
+                responseTime.getMean() / 1000.0, serviceTime.getMean() / 1000.0));
+
+        if (!errors.isEmpty()){
+            out.println();
+            out.println("Errors:");
+            for(Map.Entry<String, Long> entry : errors.entrySet()){
+                out.println(String.format("  %-40s %10d", entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    public JSONObject toJSON(JSONObject json){
+        if (json == null){
+            json = new JSONObject();
+        }
+
+        final Package pkg = EBCommStatus.class.getPackage();
+        json.put("clientVersion", pkg == null ? null : pkg.getImplementationVersion());
+        json.put("scenario", scenario);
+        json.put("model", config.isOpenModel() ? "open" : "closed");
+        json.put("concurrency", config.getConcurrency());
+        json.put("rate", config.getRate());
+        json.put("payloadSize", config.getPayloadSize());
+        json.put("measuredMillis", measuredNanos / 1000000L);
+        json.put("operations", operations);
+        json.put("errorCount", getErrorCount());
+        json.put("throughput", getThroughput());
+        json.put("expectedIntervalMicros", expectedIntervalMicros);
+        json.put("responseTime", histogramToJSON(responseTime));
+        json.put("serviceTime", histogramToJSON(serviceTime));
+        json.put("errors", new JSONObject(errors));
+        return json;
+    }
+
+    private static JSONObject histogramToJSON(EBLatencyHistogram histogram){
+        final JSONObject json = new JSONObject();
+        json.put("count", histogram.getTotalCount());
+        json.put("meanMicros", histogram.getMean());
+        json.put("minMicros", histogram.getMin());
+        for(double p : PERCENTILES){
+            json.put(formatPercentile(p), histogram.getValueAtPercentile(p));
+        }
+        return json;
+    }
+
+    private static String formatPercentile(double p){
+        if (p >= 100.0){
+            return "max";
+        }
+
+        final String str = p == Math.floor(p) ? String.valueOf((long) p) : String.valueOf(p);
+        return "p" + str;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public EBLatencyHistogram getResponseTime() {
+        return responseTime;
+    }
+
+    public EBLatencyHistogram getServiceTime() {
+        return serviceTime;
+    }
+
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    public long getOperations() {
+        return operations;
+    }
+
+    public long getMeasuredNanos() {
+        return measuredNanos;
+    }
+
+    public long getExpectedIntervalMicros() {
+        return expectedIntervalMicros;
+    }
+}
@@ -0,0 +1,245 @@
+package com.enigmabridge.loadgen;
+
+import com.enigmabridge.comm.EBCommStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the load scenario with the configured concurrency, model and duration.
+ *
+ * Open model: operations are scheduled at start + n / rate, workers take the next slot when free.
+ * If the service cannot keep up, operations start late and the delay counts to the response time,
+ * so stalls are not hidden by the workers waiting for responses (coordinated omission).
+ *
+ * Closed model: each worker issues operations back to back, response time histogram is
+ * corrected with the expected interval, by default the median service time.
+ *
+ * Operations started during the warm-up are not recorded.
+ */
+public class EBLoadRunner {
+    private static final Logger LOG = LoggerFactory.getLogger(EBLoadRunner.class);
+
+    protected final EBLoadGenConfig config;
+    protected final EBLoadScenario scenario;
+
+    /**
+     * Progress is printed here every second, null disables progress.
+     */
+    protected PrintStream progress;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicReference<Exception> initError = new AtomicReference<Exception>();
+
+    public EBLoadRunner(EBLoadGenConfig config, EBLoadScenario scenario) {
+        this.config = config;
+        this.scenario = scenario;
+    }
+
+    /**
+     * Runs the load and blocks until it finishes.
+     *
+     * @return merged result
+     * @throws IOException if scenario operations could not be initialized
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public EBLoadResult run() throws IOException, InterruptedException {
+        final int concurrency = config.getConcurrency();
+        final Worker[] workers = new Worker[concurrency];
+        final CountDownLatch ready = new CountDownLatch(concurrency);
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] times = new long[3];
+
+        for(int i = 0; i < concurrency; i++){
+            workers[i] = new Worker(i, ready, start, times);
+            workers[i].setName("eb-load-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        ready.await();
+        if (initError.get() != null){
+            start.countDown();
+            throw new IOException("Operation could not be initialized", initError.get());
+        }
+
+        final long t0 = System.nanoTime();
+        times[0] = t0;
+        times[1] = t0 + TimeUnit.MILLISECONDS.toNanos(config.getWarmupMillis());
+        times[2] = times[1] + TimeUnit.MILLISECONDS.toNanos(config.getDurationMillis());
+        start.countDown();
+
+        long lastCompleted = 0;
+        for(Worker worker : workers){
+            while(worker.isAlive()){
+                worker.join(1000);
+                if (progress != null && worker.isAlive()){
+                    final long cur = completed.get();
+                    progress.println(String.format("%6.1f s  %8d ops  %8d errors  %8d ops/s",
+                            (System.nanoTime() - t0) / 1e9, cur, failed.get(), cur - lastCompleted));
+                    lastCompleted = cur;
+                }
+            }
+        }
+
+        final EBLoadResult result = new EBLoadResult(config, scenario.getName());
+        for(Worker worker : workers){
+            result.responseTime.add(worker.responseTime);
+            result.serviceTime.add(worker.serviceTime);
+            result.addErrors(worker.errors);
+            result.operations += worker.operations;
+        }
+
+        // Last operations may finish after the end of the window.
+        long lastDone = times[2];
+        for(Worker worker : workers){
+            lastDone = Math.max(lastDone, worker.lastDone);
+        }
+        result.measuredNanos = config.isOpenModel() ? times[2] - times[1] : lastDone - times[1];
+
+        if (!config.isOpenModel()){
+            result.expectedIntervalMicros = config.getExpectedIntervalMicros() > 0
+                    ? config.getExpectedIntervalMicros()
+                    : result.serviceTime.getValueAtPercentile(50.0);
+            result.responseTime = result.serviceTime.copyCorrected(result.expectedIntervalMicros);
+        }
+
+        return result;
+    }
+
+    /**
+     * Error key of the failed operation, status name or exception class.
+     */
+    static String getErrorKey(short status, Exception e){
+        if (e instanceof EBLoadScenarios.HttpException){
+            return "HTTP " + ((EBLoadScenarios.HttpException) e).getHttpCode();
+        } else if (e != null){
+            return e.getClass().getSimpleName();
+        }
+
+        return EBLoadResult.getStatusName(status);
+    }
+
+    private static void waitUntil(long deadline){
+        long remaining;
+        while((remaining = deadline - System.nanoTime()) > 0){
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private class Worker extends Thread {
+        private final int idx;
+        private final CountDownLatch ready;
+        private final CountDownLatch start;
+        private final long[] times;
+
+        private final EBLatencyHistogram responseTime = new EBLatencyHistogram();
+        private final EBLatencyHistogram serviceTime = new EBLatencyHistogram();
+        private final Map<String, Long> errors = new HashMap<String, Long>();
+        private long operations;
+        private long lastDone;
+
+        Worker(int idx, CountDownLatch ready, CountDownLatch start, long[] times) {
+            this.idx = idx;
+            this.ready = ready;
+            this.start = start;
+            this.times = times;
+        }
+
+        @Override
+        public void run() {
+            final EBLoadOperation operation;
+            try {
+                operation = scenario.newOperation(idx);
+            } catch(Exception e){
+                initError.compareAndSet(null, e);
+                return;
+            } finally {
+                ready.countDown();
+            }
+
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (initError.get() != null){
+                return;
+            }
+
+            final long t0 = times[0];
+            final long measureStart = times[1];
+            final long end = times[2];
+            final double interval = config.isOpenModel() ? 1e9 / config.getRate() : 0.0;
+
+            while(true){
+                final long scheduled;
+                if (config.isOpenModel()){
+                    scheduled = t0 + (long) (sequence.getAndIncrement() * interval);
+                    if (scheduled >= end){
+                        break;
+                    }
+
+                    waitUntil(scheduled);
+
+                } else {
+                    scheduled = System.nanoTime();
+                    if (scheduled >= end){
+                        break;
+                    }
+                }
+
+                final long opStart = System.nanoTime();
+                short status = EBCommStatus.SW_STAT_OK;
+                Exception error = null;
+                try {
+                    status = operation.execute();
+                } catch(Exception e){
+                    error = e;
+                    LOG.trace("Operation failed", e);
+                }
+
+                final long done = System.nanoTime();
+                if (scheduled < measureStart){
+                    continue;
+                }
+
+                lastDone = done;
+                operations += 1;
+                completed.incrementAndGet();
+                serviceTime.record(TimeUnit.NANOSECONDS.toMicros(done - opStart));
+                if (config.isOpenModel()){
+                    responseTime.record(TimeUnit.NANOSECONDS.toMicros(done - scheduled));
+                }
+
+                if (error != null || status != EBCommStatus.SW_STAT_OK){
+                    failed.incrementAndGet();
+                    final String key = getErrorKey(status, error);
+                    final Long cur = errors.get(key);
+                    errors.put(key, cur == null ? 1L : cur + 1);
+                }
+            }
+        }
+    }
+
+    public PrintStream getProgress() {
+        return progress;
+    }
+
+    public EBLoadRunner setProgress(PrintStream progress) {
+        this.progress = progress;
+        return this;
+    }
+}
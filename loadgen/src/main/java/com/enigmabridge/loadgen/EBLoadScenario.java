@@ -0,0 +1,20 @@
+package com.enigmabridge.loadgen;
+
+/**
+ * Load scenario, creates operations for worker threads.
+ */
+public interface EBLoadScenario {
+    /**
+     * @return scenario name used in the report
+     */
+    String getName();
+
+    /**
+     * Creates operation for the worker. Called on the worker thread before the run starts.
+     *
+     * @param worker worker index
+     * @return operation
+     * @throws Exception if the operation could not be initialized
+     */
+    EBLoadOperation newOperation(int worker) throws Exception;
+}
@@ -0,0 +1,297 @@
+package com.enigmabridge.loadgen;
+
+import com.enigmabridge.EBEngine;
+import com.enigmabridge.UserObjectKeyBase;
+import com.enigmabridge.UserObjectType;
+import com.enigmabridge.comm.EBCommStatus;
+import com.enigmabridge.comm.EBProcessDataCall;
+import com.enigmabridge.comm.EBProcessDataResponse;
+import com.enigmabridge.create.Constants;
+import com.enigmabridge.create.EBCreateUOSimpleCall;
+import com.enigmabridge.create.EBUOGetTemplateRequest;
+import com.enigmabridge.create.EBUOTemplateKey;
+import com.enigmabridge.provider.EBKeyBase;
+import com.enigmabridge.provider.EnigmaProvider;
+import com.enigmabridge.provider.specs.EBJSONEncodedUOKeySpec;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import java.io.IOException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Load scenarios: ProcessData calls, provider Cipher and Signature operations, UO creation.
+ *
+ * UO set is given as JSON keys, either UO keys or provider keys as produced by their toJSON(),
+ * operations of a worker rotate over the set.
+ */
+public class EBLoadScenarios {
+    public static final String FIELD_UOS = "uos";
+
+    private EBLoadScenarios() {
+    }
+
+    /**
+     * Creates scenario given by the configuration.
+     *
+     * @param config configuration
+     * @param engine engine with default settings set
+     * @param uos UO set, may be empty for UO creation
+     * @return scenario
+     */
+    public static EBLoadScenario create(EBLoadGenConfig config, EBEngine engine, List<JSONObject> uos){
+        final String name = config.getScenario();
+        if (EBLoadGenConfig.SCENARIO_PROCESS_DATA.equals(name)){
+            return new ProcessDataScenario(config, engine, uos);
+        } else if (EBLoadGenConfig.SCENARIO_CIPHER.equals(name)){
+            return new CipherScenario(config, engine, uos);
+        } else if (EBLoadGenConfig.SCENARIO_SIGNATURE.equals(name)){
+            return new SignatureScenario(config, engine, uos);
+        } else if (EBLoadGenConfig.SCENARIO_CREATE_UO.equals(name)){
+            return new CreateUOScenario(config, engine);
+        }
+
+        throw new IllegalArgumentException("Unknown scenario " + name);
+    }
+
+    /**
+     * Parses UO set, either JSON array of keys or object with the array in the "uos" field.
+     *
+     * @param data file contents
+     * @return UO keys
+     */
+    public static List<JSONObject> parseUos(String data){
+        final String trimmed = data.trim();
+        final JSONArray arr = trimmed.startsWith("[")
+                ? new JSONArray(trimmed)
+                : new JSONObject(trimmed).getJSONArray(FIELD_UOS);
+
+        final List<JSONObject> res = new ArrayList<JSONObject>(arr.length());
+        for(int i = 0; i < arr.length(); i++){
+            res.add(arr.getJSONObject(i));
+        }
+        return res;
+    }
+
+    /**
+     * Returns UO part of the key JSON, keys serialized by the provider wrap the UO in the "uo" field.
+     * @param key UO or provider key JSON
+     * @return UO JSON
+     */
+    public static JSONObject getUoJson(JSONObject key){
+        final JSONObject uo = key.optJSONObject(EBKeyBase.FIELD_UO);
+        return uo != null ? uo : key;
+    }
+
+    /**
+     * Returns provider key JSON, plain UO JSON is wrapped to the "uo" field.
+     * @param key UO or provider key JSON
+     * @return provider key JSON
+     */
+    public static JSONObject getKeyJson(JSONObject key){
+        return key.has(EBKeyBase.FIELD_UO) ? key : new JSONObject().put(EBKeyBase.FIELD_UO, key);
+    }
+
+    /**
+     * HTTP level failure of the request.
+     */
+    public static class HttpException extends IOException {
+        private final int httpCode;
+
+        public HttpException(int httpCode) {
+            super("HTTP request failed: " + httpCode);
+            this.httpCode = httpCode;
+        }
+
+        public int getHttpCode() {
+            return httpCode;
+        }
+    }
+
+    /**
+     * Common scenario state.
+     */
+    public static abstract class BaseScenario implements EBLoadScenario {
+        protected final EBLoadGenConfig config;
+        protected final EBEngine engine;
+        protected final List<JSONObject> uos;
+
+        protected BaseScenario(EBLoadGenConfig config, EBEngine engine, List<JSONObject> uos) {
+            this.config = config;
+            this.engine = engine;
+            this.uos = uos;
+        }
+
+        @Override
+        public String getName() {
+            return config.getScenario();
+        }
+
+        protected byte[] newPayload(int worker){
+            final byte[] payload = new byte[config.getPayloadSize()];
+            new Random(worker).nextBytes(payload);
+            return payload;
+        }
+
+        protected void checkUos(){
+            if (uos == null || uos.isEmpty()){
+                throw new IllegalArgumentException("UO set is empty");
+            }
+        }
+    }
+
+    /**
+     * Raw ProcessData calls.
+     */
+    public static class ProcessDataScenario extends BaseScenario {
+        public ProcessDataScenario(EBLoadGenConfig config, EBEngine engine, List<JSONObject> uos) {
+            super(config, engine, uos);
+            checkUos();
+        }
+
+        @Override
+        public EBLoadOperation newOperation(int worker) throws Exception {
+            final UserObjectKeyBase[] keys = new UserObjectKeyBase[uos.size()];
+            for(int i = 0; i < keys.length; i++){
+                keys[i] = new UserObjectKeyBase.Builder().setJson(getUoJson(uos.get(i))).build();
+            }
+
+            final byte[] payload = newPayload(worker);
+            return new EBLoadOperation() {
+                private int counter;
+
+                @Override
+                public short execute() throws Exception {
+                    final EBProcessDataCall call = new EBProcessDataCall.Builder()
+                            .setEngine(engine)
+                            .setUo(keys[counter++ % keys.length])
+                            .build();
+
+                    final EBProcessDataResponse response = call.doRequest(payload);
+                    if (response.getRawResponse() != null && !response.getRawResponse().isSuccessful()){
+                        throw new HttpException(response.getRawResponse().getHttpCode());
+                    }
+
+                    return response.getStatusCode();
+                }
+            };
+        }
+    }
+
+    /**
+     * Provider Cipher encryption with EB secret keys.
+     */
+    public static class CipherScenario extends BaseScenario {
+        public CipherScenario(EBLoadGenConfig config, EBEngine engine, List<JSONObject> uos) {
+            super(config, engine, uos);
+            checkUos();
+        }
+
+        @Override
+        public EBLoadOperation newOperation(int worker) throws Exception {
+            final EnigmaProvider provider = new EnigmaProvider(engine);
+            final String algorithm = config.getCipherAlgorithm();
+            final SecretKeyFactory factory = SecretKeyFactory.getInstance(algorithm.split("/")[0], provider);
+            final SecretKey[] keys = new SecretKey[uos.size()];
+            for(int i = 0; i < keys.length; i++){
+                keys[i] = factory.generateSecret(new EBJSONEncodedUOKeySpec(getKeyJson(uos.get(i))));
+            }
+
+            final Cipher cipher = Cipher.getInstance(algorithm, provider);
+            final byte[] payload = newPayload(worker);
+            return new EBLoadOperation() {
+                private int counter;
+
+                @Override
+                public short execute() throws Exception {
+                    cipher.init(Cipher.ENCRYPT_MODE, keys[counter++ % keys.length]);
+                    cipher.doFinal(payload);
+                    return EBCommStatus.SW_STAT_OK;
+                }
+            };
+        }
+    }
+
+    /**
+     * Provider Signature with EB RSA private keys.
+     */
+    public static class SignatureScenario extends BaseScenario {
+        public SignatureScenario(EBLoadGenConfig config, EBEngine engine, List<JSONObject> uos) {
+            super(config, engine, uos);
+            checkUos();
+        }
+
+        @Override
+        public EBLoadOperation newOperation(int worker) throws Exception {
+            final EnigmaProvider provider = new EnigmaProvider(engine);
+            final KeyFactory factory = KeyFactory.getInstance("RSA", provider);
+            final PrivateKey[] keys = new PrivateKey[uos.size()];
+            for(int i = 0; i < keys.length; i++){
+                keys[i] = factory.generatePrivate(new EBJSONEncodedUOKeySpec(getKeyJson(uos.get(i))));
+            }
+
+            final Signature signature = Signature.getInstance(config.getSignatureAlgorithm(), provider);
+            final byte[] payload = newPayload(worker);
+            return new EBLoadOperation() {
+                private int counter;
+
+                @Override
+                public short execute() throws Exception {
+                    signature.initSign(keys[counter++ % keys.length]);
+                    signature.update(payload);
+                    signature.sign();
+                    return EBCommStatus.SW_STAT_OK;
+                }
+            };
+        }
+    }
+
+    /**
+     * Creation of new AES user objects with client generated keys, calls the enrollment endpoint.
+     */
+    public static class CreateUOScenario extends BaseScenario {
+        public CreateUOScenario(EBLoadGenConfig config, EBEngine engine) {
+            super(config, engine, null);
+        }
+
+        @Override
+        public EBLoadOperation newOperation(int worker) throws Exception {
+            return new EBLoadOperation() {
+                private final byte[] appKey = new byte[16];
+                private final byte[] encKey = new byte[32];
+                private final byte[] macKey = new byte[32];
+
+                @Override
+                public short execute() throws Exception {
+                    engine.getRnd().nextBytes(appKey);
+                    engine.getRnd().nextBytes(encKey);
+                    engine.getRnd().nextBytes(macKey);
+
+                    final EBUOGetTemplateRequest req = new EBUOGetTemplateRequest();
+                    req.setType(UserObjectType.TYPE_PLAINAES);
+                    req.setGenerationCommKey(Constants.GENKEY_CLIENT);
+                    req.setGenerationAppKey(Constants.GENKEY_CLIENT);
+
+                    final EBCreateUOSimpleCall call = new EBCreateUOSimpleCall.Builder()
+                            .setEngine(engine)
+                            .setEndpoint(engine.getEndpointEnrollment())
+                            .setRequest(req)
+                            .addKey(new EBUOTemplateKey(Constants.KEY_APP, appKey))
+                            .addKey(new EBUOTemplateKey(Constants.KEY_COMM_ENC, encKey))
+                            .addKey(new EBUOTemplateKey(Constants.KEY_COMM_MAC, macKey))
+                            .build();
+
+                    return call.create().getStatusCode();
+                }
+            };
+        }
+    }
+}
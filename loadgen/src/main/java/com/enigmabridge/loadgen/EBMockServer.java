@@ -0,0 +1,366 @@
+package com.enigmabridge.loadgen;
+
+import com.enigmabridge.UserObjectInfo;
+import com.enigmabridge.comm.EBCommStatus;
+import com.enigmabridge.comm.EBCommUtils;
+import com.enigmabridge.comm.EBDataEncoding;
+import com.enigmabridge.comm.EBProcessDataCipher;
+import com.enigmabridge.comm.EBResponseParserBase;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local mock of the EB ProcessData endpoint on plain HTTP.
+ *
+ * Request is decrypted and verified with comm keys of the registered UO, the response
+ * echoes the input data protected by the same comm keys, so the client processes it as a regular response.
+ * RSA UOs registered with the private exponent respond with the raw RSA result, so provider
+ * signatures pass the client side fault check; the rest echo the data.
+ * Latency and random error responses can be injected to model the service.
+ *
+ * Request data are decoded per the data encoding header, response is base64url coded
+ * if the client accepts it, unless compact encoding is disabled to model a hex only endpoint.
+ */
+public class EBMockServer {
+    private static final Logger LOG = LoggerFactory.getLogger(EBMockServer.class);
+
+    public static final String FIELD_PRIVATE_EXPONENT = "privateExponent";
+
+    protected final Map<Long, UserObjectInfo> uos = new ConcurrentHashMap<Long, UserObjectInfo>();
+    protected final Map<Long, BigInteger[]> rsaKeys = new ConcurrentHashMap<Long, BigInteger[]>();
+    protected int port;
+    protected int threads = 16;
+    protected long latencyMillis;
+    protected double errorRate;
+    protected short errorStatus = EBCommStatus.SW_STAT_TIMEOUT;
+    protected boolean compactEncoding = true;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private final Random random = new Random();
+
+    public static abstract class AbstractBuilder<T extends EBMockServer, B extends AbstractBuilder> {
+        public B setPort(int port) {
+            getObj().setPort(port);
+            return getThisBuilder();
+        }
+
+        public B setThreads(int threads) {
+            getObj().setThreads(threads);
+            return getThisBuilder();
+        }
+
+        public B setLatencyMillis(long latencyMillis) {
+            getObj().setLatencyMillis(latencyMillis);
+            return getThisBuilder();
+        }
+
+        public B setErrorRate(double errorRate) {
+            getObj().setErrorRate(errorRate);
+            return getThisBuilder();
+        }
+
+        public B setErrorStatus(short errorStatus) {
+            getObj().setErrorStatus(errorStatus);
+            return getThisBuilder();
+        }
+
+        public B setCompactEncoding(boolean compactEncoding) {
+            getObj().setCompactEncoding(compactEncoding);
+            return getThisBuilder();
+        }
+
+        public B addUo(UserObjectInfo uo) {
+            getObj().addUo(uo);
+            return getThisBuilder();
+        }
+
+        public B addRsaKey(long uoid, BigInteger modulus, BigInteger privateExponent) {
+            getObj().addRsaKey(uoid, modulus, privateExponent);
+            return getThisBuilder();
+        }
+
+        public abstract T build();
+        public abstract B getThisBuilder();
+        public abstract T getObj();
+    }
+
+    public static class Builder extends AbstractBuilder<EBMockServer, Builder> {
+        private final EBMockServer parent = new EBMockServer();
+
+        @Override
+        public Builder getThisBuilder() {
+            return this;
+        }
+
+        @Override
+        public EBMockServer getObj() {
+            return parent;
+        }
+
+        @Override
+        public EBMockServer build() {
+            return parent;
+        }
+    }
+
+    /**
+     * Starts the server on the loopback interface.
+     * @throws IOException if the server could not be bound
+     */
+    public synchronized void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 256);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    handleRequest(exchange);
+                } catch(Exception e){
+                    LOG.debug("Mock request failed", e);
+                    respond(exchange, 500, "{}", null);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+
+        server.start();
+        port = server.getAddress().getPort();
+        LOG.info("Mock endpoint listening on http://127.0.0.1:{}", port);
+    }
+
+    public synchronized void stop(){
+        if (server != null){
+            server.stop(0);
+            server = null;
+        }
+
+        if (executor != null){
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return connection string of the running server
+     */
+    public String getConnectionString(){
+        return "http://127.0.0.1:" + port;
+    }
+
+    protected void handleRequest(HttpExchange exchange) throws Exception {
+        // Path: apiVersion/apiBlock/function/nonce[/data]
+        final String[] segments = exchange.getRequestURI().getPath().split("/");
+        final String function = segments.length > 3 ? segments[3] : "ProcessData";
+        final String data;
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())){
+            data = new JSONObject(readAll(exchange.getRequestBody())).getString("data");
+        } else {
+            data = segments[segments.length - 1];
+        }
+
+        final String requestEncoding = exchange.getRequestHeaders().getFirst(EBDataEncoding.HEADER_DATA_ENCODING);
+        if (EBDataEncoding.isCompact(requestEncoding) && !compactEncoding){
+            respond(exchange, 400, "{}", null);
+            return;
+        }
+
+        final String acceptEncoding = exchange.getRequestHeaders().getFirst(EBDataEncoding.HEADER_ACCEPT_DATA_ENCODING);
+        final String responseEncoding = compactEncoding && EBDataEncoding.BASE64URL.equalsIgnoreCase(acceptEncoding)
+                ? EBDataEncoding.BASE64URL
+                : null;
+
+        if (latencyMillis > 0){
+            Thread.sleep(latencyMillis);
+        }
+
+        final JSONObject resp = new JSONObject();
+        resp.put(EBResponseParserBase.FIELD_FUNCTION, function);
+
+        final boolean fail;
+        synchronized (random){
+            fail = errorRate > 0 && random.nextDouble() < errorRate;
+        }
+
+        if (fail){
+            resp.put(EBResponseParserBase.FIELD_STATUS, String.format("%04x", errorStatus & 0xffff));
+            resp.put(EBResponseParserBase.FIELD_STATUS_DETAIL, "mock error");
+        } else {
+            resp.put(EBResponseParserBase.FIELD_STATUS, String.format("%04x", EBCommStatus.SW_STAT_OK & 0xffff));
+            final byte[] response = processData(EBDataEncoding.decode(data, requestEncoding));
+            resp.put(EBResponseParserBase.FIELD_RESULT, EBDataEncoding.encode(response, 0, response.length, responseEncoding));
+        }
+
+        respond(exchange, 200, resp.toString(), responseEncoding);
+    }
+
+    /**
+     * Decrypts the request and builds the echo response.
+     *
+     * @param request request packet: plain length, plain data, protected data
+     * @return response packet
+     */
+    protected byte[] processData(byte[] request) throws Exception {
+        final int plainLength = EBCommUtils.getShort(request, 0);
+        final int commOffset = EBCommUtils.UO_SECTION_SIZE_LENGTH + plainLength;
+
+        // UOID is encrypted, the UO is found by trying comm keys of the registered UOs.
+        UserObjectInfo uo = null;
+        byte[] plain = null;
+        for(UserObjectInfo cur : uos.values()){
+            try {
+                plain = EBProcessDataCipher.initCipher(false, cur.getCommKeys())
+                        .processBuffer(request, commOffset, request.length - commOffset);
+            } catch(Exception e){
+                // MAC mismatch, not this UO.
+                continue;
+            }
+
+            if (EBCommUtils.getInt(plain, 1) == (int) cur.getUoid()){
+                uo = cur;
+                break;
+            }
+        }
+
+        if (uo == null){
+            throw new IOException("No registered UO matches the request");
+        }
+
+        if (plain[0] != EBCommUtils.IN_DATA_FLAG){
+            throw new IOException("Invalid request flag");
+        }
+
+        // Response: flag, UOID, nonce + 1, data.
+        plain[0] = EBCommUtils.OUT_DATA_FLAG;
+        final int nonceOffset = 1 + EBCommUtils.OBJECTID_LENGTH;
+        final int dataOffset = nonceOffset + EBCommUtils.PROCESSDATA_FRESHNESS_NONCE_LENGTH;
+        for(int i = nonceOffset; i < dataOffset; i++){
+            plain[i] += 1;
+        }
+
+        final BigInteger[] rsaKey = rsaKeys.get(uo.getUoid());
+        if (rsaKey != null){
+            rsaPrivate(rsaKey, plain, dataOffset);
+        }
+
+        final byte[] encrypted = EBProcessDataCipher.initCipher(true, uo.getCommKeys())
+                .processBuffer(plain, 0, plain.length);
+
+        final byte[] response = new byte[EBCommUtils.UO_SECTION_SIZE_LENGTH + encrypted.length];
+        EBCommUtils.setShort(response, 0, (short) 0);
+        System.arraycopy(encrypted, 0, response, EBCommUtils.UO_SECTION_SIZE_LENGTH, encrypted.length);
+        return response;
+    }
+
+    /**
+     * Replaces the data part with the raw RSA private operation result of the same length.
+     */
+    private static void rsaPrivate(BigInteger[] rsaKey, byte[] plain, int dataOffset){
+        final int len = plain.length - dataOffset;
+        final byte[] data = new byte[len];
+        System.arraycopy(plain, dataOffset, data, 0, len);
+
+        final byte[] res = new BigInteger(1, data).modPow(rsaKey[1], rsaKey[0]).toByteArray();
+        final int copy = Math.min(res.length, len);
+        Arrays.fill(plain, dataOffset, plain.length, (byte) 0);
+        System.arraycopy(res, res.length - copy, plain, plain.length - copy, copy);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body, String dataEncoding) throws IOException {
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if (dataEncoding != null){
+            exchange.getResponseHeaders().set(EBDataEncoding.HEADER_DATA_ENCODING, dataEncoding);
+        }
+        exchange.sendResponseHeaders(code, bytes.length);
+        final OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    private static String readAll(InputStream is) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final byte[] buff = new byte[8192];
+        int read;
+        while((read = is.read(buff)) >= 0){
+            bos.write(buff, 0, read);
+        }
+        return bos.toString("UTF-8");
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    protected void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    protected void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    protected void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    protected void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public short getErrorStatus() {
+        return errorStatus;
+    }
+
+    protected void setErrorStatus(short errorStatus) {
+        this.errorStatus = errorStatus;
+    }
+
+    public boolean isCompactEncoding() {
+        return compactEncoding;
+    }
+
+    protected void setCompactEncoding(boolean compactEncoding) {
+        this.compactEncoding = compactEncoding;
+    }
+
+    protected void addUo(UserObjectInfo uo) {
+        uos.put(uo.getUoid(), uo);
+    }
+
+    protected void addRsaKey(long uoid, BigInteger modulus, BigInteger privateExponent) {
+        rsaKeys.put(uoid, new BigInteger[]{modulus, privateExponent});
+    }
+}